@@ -5,6 +5,7 @@ plugins {
     application
     checkstyle
     id("io.freefair.lombok") version "8.6"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.home"
@@ -16,6 +17,14 @@ repositories {
 
 application {
     mainClass.set("org.home.Main")
+    // The start scripts use the class-data sharing archive made by createCdsArchive when it exists, and keep a
+    // continuous flight recording with the bundled settings that is dumped on exit.
+    applicationDefaultJvmArgs = listOf(
+        "-XX:SharedArchiveFile=APP_HOME_PLACEHOLDER/lib/habit-tracker.jsa",
+        "-Xshare:auto",
+        "-XX:StartFlightRecording=name=habit-tracker,settings=APP_HOME_PLACEHOLDER/jfr/habit-tracker.jfc," +
+            "maxage=6h,maxsize=250m,dumponexit=true,filename=habit-tracker.jfr"
+    )
 }
 
 dependencies {
@@ -27,6 +36,49 @@ dependencies {
     testImplementation("org.testcontainers:postgresql:1.19.0")
     implementation("org.postgresql:postgresql:42.7.2")
     implementation("org.liquibase:liquibase-core:4.24.0")
+    // The check-in benchmark runs on the no-op JDBC driver of the tests.
+    "jmhImplementation"(sourceSets.test.get().output)
+}
+
+tasks.startScripts {
+    doLast {
+        unixScript.writeText(unixScript.readText().replace("APP_HOME_PLACEHOLDER", "'\"\$APP_HOME\"'"))
+        windowsScript.writeText(windowsScript.readText().replace("APP_HOME_PLACEHOLDER", "%APP_HOME%"))
+    }
+}
+
+val createCdsArchive by tasks.registering(Exec::class) {
+    description = "Loads the classes of the installed application once and archives them for faster startups."
+    group = "distribution"
+    dependsOn(tasks.installDist)
+    val installDir = tasks.installDist.get().destinationDir
+    val libDir = installDir.resolve("lib")
+    val archive = libDir.resolve("habit-tracker.jsa")
+    workingDir = installDir
+    // The archive must be made by the java the start scripts run, with the class path they build.
+    executable = System.getenv("JAVA_HOME")?.let { "$it/bin/java" } ?: "java"
+    outputs.file(archive)
+    doFirst {
+        val classPath = tasks.startScripts.get().classpath!!.files.joinToString(File.pathSeparator) {
+            libDir.resolve(it.name).canonicalPath
+        }
+        // The training run only loads classes, so it needs no database and writes none.
+        args("-XX:ArchiveClassesAtExit=${archive.canonicalPath}", "-cp", classPath, "org.home.CdsTraining")
+    }
+}
+
+val analyzeRecording by tasks.registering(JavaExec::class) {
+    description = "Prints the latency tables of a flight recording, given with -Precording=<file.jfr>."
+    group = "application"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("org.home.jfr.RecordingAnalyzer")
+    args(project.findProperty("recording")?.toString() ?: "habit-tracker.jfr")
+}
+
+jmh {
+    includes.set(listOf(project.findProperty("jmhIncludes")?.toString() ?: ".*"))
+    // -PjmhProfilers=gc reports the bytes allocated per operation next to the time.
+    project.findProperty("jmhProfilers")?.let { profilers.set(it.toString().split(",")) }
 }
 
 tasks.withType<Test> {
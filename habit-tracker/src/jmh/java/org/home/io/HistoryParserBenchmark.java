@@ -0,0 +1,82 @@
+package org.home.io;
+
+import org.home.repository.RecordBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many history lines per second are parsed into a {@link RecordBatch}, leaving out the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HistoryParserBenchmark {
+
+    private static final int LINES = 1_000_000;
+
+    @Param({"CSV", "NDJSON"})
+    private HistoryFormat format;
+
+    private byte[] file;
+    private HistoryRow row;
+    private RecordBatch batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder content = new StringBuilder(LINES * 80);
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < LINES; i++) {
+            String title = "Habit " + (i / 1000);
+            if (format == HistoryFormat.CSV) {
+                content.append(title).append(",Some description,DAILY,").append(date.plusDays(i % 1000))
+                        .append(',').append(i % 3 != 0).append('\n');
+            } else {
+                content.append("{\"title\":\"").append(title).append("\",\"description\":\"Some description\",")
+                        .append("\"frequency\":\"DAILY\",\"date\":\"").append(date.plusDays(i % 1000))
+                        .append("\",\"completed\":").append(i % 3 != 0).append("}\n");
+            }
+        }
+        file = content.toString().getBytes(StandardCharsets.UTF_8);
+        row = new HistoryRow(1 << 16);
+        batch = new RecordBatch(8192);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int parse() throws IOException {
+        RowParser parser = format == HistoryFormat.CSV ? new CsvRowParser() : new NdjsonRowParser();
+        ChannelLineReader reader = new ChannelLineReader(Channels.newChannel(new ByteArrayInputStream(file)), 1 << 16);
+        int batches = 0;
+        while (reader.next()) {
+            parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), row, reader.lineNumber());
+            batch.add(1L, row.epochDay, row.completed);
+            if (batch.isFull()) {
+                batch.clear();
+                batches++;
+            }
+        }
+        batch.clear();
+        return batches;
+    }
+}
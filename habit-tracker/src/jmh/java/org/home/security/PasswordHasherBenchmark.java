@@ -0,0 +1,47 @@
+package org.home.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many password checks, and therefore logins, one core can do per second at different costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class PasswordHasherBenchmark {
+
+    @Param({"10000", "100000", "210000", "600000"})
+    private int iterations;
+
+    private PasswordHasher passwordHasher;
+    private String stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        passwordHasher = new PasswordHasher(iterations, 1, 1);
+        stored = passwordHasher.hash("password123");
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return passwordHasher.verify("password123", stored);
+    }
+}
@@ -0,0 +1,60 @@
+package org.home.service;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.repository.HabitRecordRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a check-in on the no-op JDBC driver of the tests, that is what the application adds to its statements.
+ * Run it with {@code -PjmhProfilers=gc} to see the bytes allocated per check-in, which
+ * {@code CheckInAllocationTest} keeps within a budget.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class CheckInBenchmark {
+
+    private final LocalDate date = LocalDate.of(2024, 10, 1);
+    private HabitRecordService recordService;
+    private Habit habit;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        NoopDriver.register();
+        new HabitRecordRepository(new DBConnectionProvider(NoopDriver.URL, "", ""));
+        recordService = new HabitRecordService();
+        habit = new Habit("Drink water", "Eight glasses", Frequency.DAILY, 1L);
+        habit.setId(7L);
+    }
+
+    @Benchmark
+    public long insertIfAbsent() {
+        return HabitRecordRepository.insertIfAbsent(7L, date.toEpochDay(), true);
+    }
+
+    @Benchmark
+    public HabitRecord createRecord() {
+        return recordService.createRecord(habit, date, true);
+    }
+}
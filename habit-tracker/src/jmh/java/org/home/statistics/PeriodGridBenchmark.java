@@ -0,0 +1,63 @@
+package org.home.statistics;
+
+import org.home.model.Schedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the statistics of a whole history take to compute for each kind of schedule, leaving out
+ * the database; the time should grow linearly with the length of the history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PeriodGridBenchmark {
+
+    @Param({"365", "3650", "36500"})
+    private int historyDays;
+
+    @Param({"DAILY", "TIMES_PER_WEEK 3", "WEEKDAYS MON,WED,FRI", "EVERY_N_DAYS 3 2000-01-01"})
+    private String schedule;
+
+    private Schedule parsed;
+    private LocalDate from;
+    private LocalDate to;
+    private long[] completedDays;
+    private int length;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parsed = Schedule.parse(schedule);
+        from = LocalDate.of(2000, 1, 1);
+        to = from.plusDays(historyDays - 1);
+        completedDays = new long[historyDays];
+        Random random = new Random(42);
+        for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+            if (random.nextInt(3) != 0) {
+                completedDays[length++] = day;
+            }
+        }
+    }
+
+    @Benchmark
+    public PeriodStatistics compute() {
+        return PeriodGrid.of(parsed, from, to).compute(completedDays, length);
+    }
+}
@@ -0,0 +1,61 @@
+package org.home.tracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what tracing adds to a service call with two statements, at different sample rates, to compare with
+ * the time of the queries themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class TracerBenchmark {
+
+    @Param({"0", "0.05", "1"})
+    private double sampleRate;
+
+    private Tracer tracer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tracer = new Tracer(spans -> { }, sampleRate, 512, 4096, 10);
+        tracer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tracer.stop();
+    }
+
+    @Benchmark
+    public Object serviceCall() {
+        return Tracer.trace("StatisticsService.generateProgressReport", () -> {
+            try (Span query = Tracer.startSpan("db.execute")) {
+                query.setAttribute("db.statement", "SELECT * FROM ylab_schema.habits WHERE id = ?");
+            }
+            try (Span query = Tracer.startSpan("db.execute")) {
+                query.setAttribute("db.statement", "SELECT date FROM ylab_schema.habit_records WHERE habit_id = ?");
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package org.home;
+
+import org.home.config.ConfigLoader;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * The {@code CdsTraining} class is the entry point of the training run that records the class-data sharing
+ * archive of the application.
+ * <p>
+ * It loads every class of the application without initializing it, reads the settings and loads the JDBC
+ * drivers, and exits. No database is connected to, so the archive can be recorded on a machine without one
+ * and recording it never writes any data.
+ */
+public final class CdsTraining {
+
+    private static final String PACKAGE_PATH = "org/home/";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private CdsTraining() {
+    }
+
+    /**
+     * Loads the classes the application starts with.
+     *
+     * @param args ignored
+     * @throws IOException        if the classes of the application cannot be listed
+     * @throws URISyntaxException if the location of the classes is not a valid path
+     */
+    public static void main(String[] args) throws IOException, URISyntaxException {
+        new ConfigLoader();
+        DriverManager.getDrivers();
+        List<String> classNames = applicationClassNames();
+        int loaded = 0;
+        for (String className : classNames) {
+            try {
+                Class.forName(className, false, CdsTraining.class.getClassLoader());
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.out.println("Could not load " + className + ": " + e);
+            }
+        }
+        System.out.println("Loaded " + loaded + " of " + classNames.size() + " application classes");
+    }
+
+    /**
+     * Lists the classes of the application, from the jar or the directory this class was loaded from.
+     */
+    static List<String> applicationClassNames() throws IOException, URISyntaxException {
+        Path source = Path.of(CdsTraining.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<String> classNames = new ArrayList<>();
+        if (Files.isDirectory(source)) {
+            String separator = source.getFileSystem().getSeparator();
+            try (Stream<Path> files = Files.walk(source.resolve(PACKAGE_PATH))) {
+                files.map(file -> source.relativize(file).toString().replace(separator, "/"))
+                        .filter(CdsTraining::isClassFile)
+                        .forEach(path -> classNames.add(toClassName(path)));
+            }
+        } else {
+            try (JarFile jar = new JarFile(source.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String path = entries.nextElement().getName();
+                    if (isClassFile(path)) {
+                        classNames.add(toClassName(path));
+                    }
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static boolean isClassFile(String path) {
+        return path.startsWith(PACKAGE_PATH) && path.endsWith(CLASS_SUFFIX);
+    }
+
+    private static String toClassName(String path) {
+        return path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+    }
+}
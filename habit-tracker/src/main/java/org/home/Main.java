@@ -1,14 +1,23 @@
 package org.home;
 
 import lombok.AllArgsConstructor;
+import org.home.cache.InvalidationBus;
 import org.home.component.ComponentFactory;
 import org.home.component.DefaultComponentFactory;
-import org.home.config.DBConnectionProvider;
 import org.home.config.LiquibaseMigrator;
+import org.home.config.ShardRouter;
 import org.home.console.ConsoleApp;
+import org.home.event.OutboxRelay;
+import org.home.leaderboard.Leaderboards;
 import org.home.repository.HabitRecordRepository;
 import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.RegisteredEmailFilter;
 import org.home.repository.UserRepository;
+import org.home.scheduler.ReminderScheduler;
+import org.home.service.HabitRecordService;
+import org.home.service.HabitService;
+import org.home.tracing.Tracer;
 
 /**
  * The {@code Main} class is the entry point for the application.
@@ -16,18 +25,60 @@ import org.home.repository.UserRepository;
  */
 @AllArgsConstructor
 public class Main {
+
     private ComponentFactory componentFactory;
 
     /**
      * Runs the application, initializing the necessary components.
      */
     public void run() {
-        DBConnectionProvider connProvider = componentFactory.prepareConnector();
-        UserRepository userRepository = componentFactory.createUserRepository(connProvider);
-        HabitRepository habitRepository = componentFactory.createHabitRepository(connProvider);
-        HabitRecordRepository recordRepository = componentFactory.createHabitRecordRepository(connProvider);
-        LiquibaseMigrator.updateMigrations();
-        ConsoleApp.run();
+        ConsoleApp.run(start());
+    }
+
+    /**
+     * Initializes the components and starts the background ones.
+     *
+     * @return the started {@link Leaderboards}, or {@code null} if they are disabled
+     */
+    public Leaderboards start() {
+        Tracer tracer = componentFactory.createTracer();
+        if (tracer != null) {
+            tracer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(tracer::stop, "tracer-shutdown"));
+        }
+        ShardRouter shards = componentFactory.prepareConnector();
+        UserRepository userRepository = componentFactory.createUserRepository(shards);
+        HabitRepository habitRepository = componentFactory.createHabitRepository(shards);
+        HabitRecordRepository recordRepository = componentFactory.createHabitRecordRepository(shards);
+        OutboxRepository outboxRepository = componentFactory.createOutboxRepository(shards);
+        LiquibaseMigrator.updateMigrations(shards);
+        InvalidationBus invalidationBus = componentFactory.createInvalidationBus(shards);
+        if (invalidationBus != null) {
+            invalidationBus.start();
+        }
+        RegisteredEmailFilter emailFilter = componentFactory.createEmailFilter();
+        if (emailFilter != null) {
+            UserRepository.useEmailFilter(emailFilter);
+            InvalidationBus.addListener(emailFilter);
+            emailFilter.start();
+        }
+        OutboxRelay outboxRelay = componentFactory.createOutboxRelay();
+        if (outboxRelay != null) {
+            outboxRelay.start();
+        }
+        ReminderScheduler reminderScheduler = componentFactory.createReminderScheduler();
+        if (reminderScheduler != null) {
+            reminderScheduler.rebuild();
+            HabitRecordService.addListener(reminderScheduler);
+            HabitService.addListener(reminderScheduler);
+            reminderScheduler.start();
+        }
+        Leaderboards leaderboards = componentFactory.createLeaderboards();
+        if (leaderboards != null) {
+            HabitRecordService.addListener(leaderboards);
+            leaderboards.start();
+        }
+        return leaderboards;
     }
 
     /**
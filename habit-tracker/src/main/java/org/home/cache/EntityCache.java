@@ -0,0 +1,178 @@
+package org.home.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The {@code EntityCache} class keeps the most recently used values loaded from the database and evicts them when
+ * the data they were loaded from is written.
+ * <p>
+ * Every cached value is tagged with the consistency keys of the data it was loaded from, for example
+ * {@code user:1} and {@code email:tu@example.com}. Registered with {@link InvalidationBus#addListener}, the cache
+ * drops every value tagged with a written key, whether the write was made by this instance or another one. A value
+ * loaded while one of its keys was being written is returned but not cached, so a stale value cannot outlive the
+ * invalidation that raced with it. Only immutable values, or copies of mutable ones, should be cached.
+ *
+ * @param <K> the type of the cache keys
+ * @param <V> the type of the cached values
+ */
+public class EntityCache<K, V> implements InvalidationListener {
+
+    private final int maxSize;
+    private final BiFunction<? super K, ? super V, ? extends Collection<String>> tags;
+    private final Map<K, V> values;
+    private final Map<String, Set<K>> keysByTag = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long generation;
+
+    /**
+     * Constructs an empty {@code EntityCache}.
+     *
+     * @param maxSize the number of values kept, the least recently used value being evicted first
+     * @param tags    returns the consistency keys of the data a cache key and its value were loaded from
+     */
+    public EntityCache(int maxSize, BiFunction<? super K, ? super V, ? extends Collection<String>> tags) {
+        this.maxSize = Math.max(1, maxSize);
+        this.tags = tags;
+        this.values = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= EntityCache.this.maxSize) {
+                    return false;
+                }
+                untag(eldest.getKey(), eldest.getValue());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of a key, loading and caching it if it is absent.
+     *
+     * @param key    the cache key
+     * @param loader loads the value from the database; a {@code null} value is returned but not cached
+     * @return the cached or loaded value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long loadedAt;
+        synchronized (this) {
+            V value = values.get(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            loadedAt = generation;
+        }
+        misses.increment();
+        V value = loader.apply(key);
+        if (value != null) {
+            synchronized (this) {
+                if (generation == loadedAt) {
+                    values.put(key, value);
+                    for (String tag : tags.apply(key, value)) {
+                        keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Evicts the value of a key.
+     *
+     * @param key the cache key
+     */
+    public synchronized void evict(K key) {
+        generation++;
+        V value = values.remove(key);
+        if (value != null) {
+            untag(key, value);
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(Collection<String> keys, boolean remote) {
+        generation++;
+        for (String tag : keys) {
+            Set<K> tagged = keysByTag.remove(tag);
+            if (tagged == null) {
+                continue;
+            }
+            for (K key : tagged) {
+                V value = values.remove(key);
+                if (value != null) {
+                    untag(key, value);
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        generation++;
+        evictions.add(values.size());
+        values.clear();
+        keysByTag.clear();
+    }
+
+    /**
+     * Returns the number of values cached.
+     *
+     * @return the cache size
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that loaded the value.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of values evicted, because they were written or least recently used.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private void untag(K key, V value) {
+        for (String tag : tags.apply(key, value)) {
+            Set<K> tagged = keysByTag.get(tag);
+            if (tagged != null) {
+                tagged.remove(key);
+                if (tagged.isEmpty()) {
+                    keysByTag.remove(tag);
+                }
+            }
+        }
+    }
+}
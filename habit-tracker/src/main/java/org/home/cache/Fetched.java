@@ -0,0 +1,79 @@
+package org.home.cache;
+
+import java.time.Instant;
+
+/**
+ * A value read from the database, together with when it was read and whether it is stale, that is served from
+ * memory because the database could not be read when it was asked for.
+ *
+ * @param <T> the type of the value
+ */
+public final class Fetched<T> {
+    private final T value;
+    private final Instant fetchedAt;
+    private final boolean stale;
+
+    private Fetched(T value, Instant fetchedAt, boolean stale) {
+        this.value = value;
+        this.fetchedAt = fetchedAt;
+        this.stale = stale;
+    }
+
+    /**
+     * Returns a value just read from the database.
+     *
+     * @param value the value
+     * @param <T>   the type of the value
+     * @return a fresh {@code Fetched}
+     */
+    public static <T> Fetched<T> fresh(T value) {
+        return new Fetched<>(value, Instant.now(), false);
+    }
+
+    /**
+     * Returns the same value marked as stale.
+     *
+     * @return a stale {@code Fetched} with the same value and read time
+     */
+    public Fetched<T> asStale() {
+        return stale ? this : new Fetched<>(value, fetchedAt, true);
+    }
+
+    /**
+     * Returns another value read at the same time and as stale as this one, such as a copy of this value.
+     *
+     * @param value the other value
+     * @param <R>   the type of the other value
+     * @return a {@code Fetched} with the other value
+     */
+    public <R> Fetched<R> withValue(R value) {
+        return new Fetched<>(value, fetchedAt, stale);
+    }
+
+    /**
+     * Returns the value.
+     *
+     * @return the value as it was read
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Returns when the value was read from the database.
+     *
+     * @return the read time
+     */
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Returns whether the value is stale.
+     *
+     * @return {@code true} if the value was served from memory because the database could not be read
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,393 @@
+package org.home.cache;
+
+import org.home.config.ConfigLoader;
+import org.home.config.DBConnectionProvider;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The {@code InvalidationBus} class tells every instance of the application which data was written, so that
+ * data held in memory is evicted everywhere and not only on the instance that wrote it.
+ * <p>
+ * The local {@link InvalidationListener}s hear of every write made by this instance as soon as it has committed,
+ * whether a bus is started or not. Once started, the bus also collects the keys of these writes for a short while,
+ * then sends them to the other instances with {@code NOTIFY} on the primary database of the first shard, several
+ * keys per notification. Keys that could not be sent are queued again and sent once the database is back; if too
+ * many pile up meanwhile, they are replaced by a single notification telling the other instances to drop
+ * everything.
+ * A dedicated connection of every instance {@code LISTEN}s on the same channel and hands the keys written by
+ * other instances to the local listeners. Every time that connection is (re)established the listeners are told
+ * to drop everything, since notifications sent while it was down are lost.
+ */
+public class InvalidationBus {
+
+    /**
+     * The channel notifications are sent on.
+     */
+    public static final String CHANNEL = "habit_tracker_invalidation";
+
+    private static final List<InvalidationListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final int POLL_MILLIS = 500;
+    private static final int MAX_PENDING_KEYS = 10_000;
+    private static final String INVALIDATE_ALL = "*";
+
+    static {
+        DBConnectionProvider.addWriteListener(keys -> notifyListeners(nonNull(keys), false));
+    }
+
+    private final DBConnectionProvider connectionProvider;
+    private final long batchMillis;
+    private final long reconnectMillis;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Consumer<String[]> writeListener = this::enqueue;
+    private final Set<String> pending = new LinkedHashSet<>();
+    private boolean pendingOverflowed;
+    private final LongAdder publishedKeys = new LongAdder();
+    private final LongAdder sentNotifications = new LongAdder();
+    private final LongAdder receivedKeys = new LongAdder();
+    private final LongAdder fullInvalidations = new LongAdder();
+    private ScheduledExecutorService publisher;
+    private Thread listener;
+    private volatile boolean running;
+
+    /**
+     * Constructs an {@code InvalidationBus}.
+     *
+     * @param connectionProvider the database notifications are sent and received through
+     * @param batchMillis        how long written keys are collected before they are sent
+     * @param reconnectMillis    how long the listener waits before connecting again after losing its connection
+     */
+    public InvalidationBus(DBConnectionProvider connectionProvider, long batchMillis, long reconnectMillis) {
+        this.connectionProvider = connectionProvider;
+        this.batchMillis = Math.max(0, batchMillis);
+        this.reconnectMillis = Math.max(1, reconnectMillis);
+    }
+
+    /**
+     * Creates the bus configured in {@code application.yml}.
+     *
+     * @param configLoader       the configuration to read
+     * @param connectionProvider the database notifications are sent and received through
+     * @return a new {@code InvalidationBus} that is not started yet
+     */
+    public static InvalidationBus fromConfig(ConfigLoader configLoader, DBConnectionProvider connectionProvider) {
+        return new InvalidationBus(connectionProvider, configLoader.getInvalidationBatchMillis(),
+                configLoader.getInvalidationReconnectMillis());
+    }
+
+    /**
+     * Registers a listener for invalidations.
+     *
+     * @param listener the {@link InvalidationListener} to notify
+     */
+    public static void addListener(InvalidationListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener for invalidations.
+     *
+     * @param listener the {@link InvalidationListener} to stop notifying
+     */
+    public static void removeListener(InvalidationListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Tells every local listener to drop everything, for example when the repositories are pointed at another
+     * database.
+     */
+    public static void invalidateAllListeners() {
+        for (InvalidationListener invalidationListener : LISTENERS) {
+            try {
+                invalidationListener.invalidateAll();
+            } catch (RuntimeException e) {
+                System.out.println("Invalidation listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void enqueue(String[] keys) {
+        List<String> written = nonNull(keys);
+        if (written.isEmpty()) {
+            return;
+        }
+        publishedKeys.add(written.size());
+
+        ScheduledExecutorService current;
+        synchronized (this) {
+            boolean first = pending.isEmpty() && !pendingOverflowed;
+            if (!pendingOverflowed) {
+                pending.addAll(written);
+                checkOverflow();
+            }
+            current = first ? publisher : null;
+        }
+        if (current != null) {
+            try {
+                current.schedule(this::flush, batchMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Sends the queued keys to the other instances without waiting for the batch to fill. Keys that could not be
+     * sent are queued again and retried after the reconnect delay.
+     *
+     * @return {@code true} if there was nothing to send or everything was sent
+     */
+    public boolean flush() {
+        List<String> keys;
+        boolean all;
+        synchronized (this) {
+            if (pending.isEmpty() && !pendingOverflowed) {
+                return true;
+            }
+            all = pendingOverflowed;
+            keys = all ? List.of(INVALIDATE_ALL) : new ArrayList<>(pending);
+            pending.clear();
+            pendingOverflowed = false;
+        }
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            for (String payload : payloads(keys)) {
+                pstmt.setString(1, CHANNEL);
+                pstmt.setString(2, payload);
+                pstmt.execute();
+                sentNotifications.increment();
+            }
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            System.out.println("Failed to send invalidations, they will be sent again: " + e.getMessage());
+            requeue(keys, all);
+            return false;
+        }
+    }
+
+    /**
+     * Puts keys that could not be sent back in front of the queue and schedules another attempt.
+     */
+    private void requeue(List<String> keys, boolean all) {
+        ScheduledExecutorService current;
+        synchronized (this) {
+            if (all) {
+                pending.clear();
+                pendingOverflowed = true;
+            } else if (!pendingOverflowed) {
+                Set<String> requeued = new LinkedHashSet<>(keys);
+                requeued.addAll(pending);
+                pending.clear();
+                pending.addAll(requeued);
+                checkOverflow();
+            }
+            current = publisher;
+        }
+        if (current != null) {
+            try {
+                current.schedule(this::flush, reconnectMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                System.out.println("Invalidations were not sent before the bus stopped");
+            }
+        }
+    }
+
+    /**
+     * Replaces the queued keys by a single invalidation of everything once there are too many of them.
+     */
+    private void checkOverflow() {
+        if (pending.size() > MAX_PENDING_KEYS) {
+            pending.clear();
+            pendingOverflowed = true;
+        }
+    }
+
+    /**
+     * Starts sending the keys of every write to the other instances and listening for theirs.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+        DBConnectionProvider.addWriteListener(writeListener);
+    }
+
+    /**
+     * Stops the bus after sending the keys still queued.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        DBConnectionProvider.removeWriteListener(writeListener);
+        running = false;
+        listener.interrupt();
+        listener = null;
+        publisher.shutdown();
+        publisher = null;
+        flush();
+    }
+
+    /**
+     * Returns the number of written keys queued for the other instances, including repeated ones.
+     *
+     * @return the published key count
+     */
+    public long getPublishedKeyCount() {
+        return publishedKeys.sum();
+    }
+
+    /**
+     * Returns the number of notifications sent to the other instances.
+     *
+     * @return the sent notification count
+     */
+    public long getSentNotificationCount() {
+        return sentNotifications.sum();
+    }
+
+    /**
+     * Returns the number of keys received from the other instances.
+     *
+     * @return the received key count
+     */
+    public long getReceivedKeyCount() {
+        return receivedKeys.sum();
+    }
+
+    /**
+     * Returns how many times the listeners were told to drop everything.
+     *
+     * @return the full invalidation count
+     */
+    public long getFullInvalidationCount() {
+        return fullInvalidations.sum();
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection conn = connectionProvider.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                conn.setAutoCommit(true);
+                stmt.execute("LISTEN " + CHANNEL);
+                invalidateAll();
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_MILLIS);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                System.out.println("Invalidation listener lost its connection: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(reconnectMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        int header = payload.indexOf('\n');
+        if (header < 0 || payload.substring(0, header).equals(nodeId)) {
+            return;
+        }
+        List<String> keys = Arrays.asList(payload.substring(header + 1).split("\n"));
+        if (keys.contains(INVALIDATE_ALL)) {
+            invalidateAll();
+            return;
+        }
+        receivedKeys.add(keys.size());
+        notifyListeners(keys, true);
+    }
+
+    private void invalidateAll() {
+        fullInvalidations.increment();
+        invalidateAllListeners();
+    }
+
+    private static List<String> nonNull(String[] keys) {
+        List<String> written = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            if (key != null) {
+                written.add(key);
+            }
+        }
+        return written;
+    }
+
+    private static void notifyListeners(Collection<String> keys, boolean remote) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (InvalidationListener invalidationListener : LISTENERS) {
+            try {
+                invalidationListener.invalidate(keys, remote);
+            } catch (RuntimeException e) {
+                System.out.println("Invalidation listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Packs keys into notification payloads: the ID of this instance on the first line, then one key per line.
+     */
+    private List<String> payloads(List<String> keys) {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(nodeId);
+        int bytes = nodeId.length();
+        for (String key : keys) {
+            int keyBytes = key.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (bytes + keyBytes > MAX_PAYLOAD_BYTES && payload.length() > nodeId.length()) {
+                payloads.add(payload.toString());
+                payload.setLength(nodeId.length());
+                bytes = nodeId.length();
+            }
+            payload.append('\n').append(key);
+            bytes += keyBytes;
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+}
@@ -0,0 +1,28 @@
+package org.home.cache;
+
+import java.util.Collection;
+
+/**
+ * The {@code InvalidationListener} interface is notified by {@link InvalidationBus} when data held in memory may
+ * have changed in the database.
+ * <p>
+ * Data is identified by the consistency keys of {@link org.home.config.DBConnectionProvider}, such as
+ * {@code user:1}, {@code email:tu@example.com} or {@code habit:5}. Listeners are called for writes made by this
+ * instance, on the writing thread once the write has committed, and for writes made by other instances, on the
+ * listener thread of the bus, so they should return quickly.
+ */
+public interface InvalidationListener {
+
+    /**
+     * Called when data identified by the given keys was written.
+     *
+     * @param keys   the consistency keys of the written data
+     * @param remote whether the data was written by another instance
+     */
+    void invalidate(Collection<String> keys, boolean remote);
+
+    /**
+     * Called when writes may have been missed, for example after the connection to the database was lost.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,154 @@
+package org.home.cache;
+
+import org.home.config.DatabaseOverloadedException;
+import org.home.config.DatabaseUnavailableException;
+import org.home.config.QueryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code LastKnownGood} class serves the last value read for a key when the database cannot be read.
+ * <p>
+ * Every lookup reads the database, and remembers the value for a bounded number of recently used keys. A lookup
+ * that fails because the database is unavailable, overloaded or too slow gets the remembered value instead,
+ * marked {@link Fetched#isStale() stale}; while the {@link org.home.config.CircuitBreaker} of the database is
+ * open such lookups fail at once, so they are served as fast as from a cache. Keys served stale are read again in
+ * the background at a fixed interval, which lets the first refresh probe the database once the circuit half-opens
+ * and brings the remembered values up to date as soon as it closes. A key never read successfully still fails.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values, which should not be changed by their readers
+ */
+public class LastKnownGood<K, V> {
+
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stale-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long refreshMillis;
+    private final Map<K, Fetched<V>> values;
+    private final Map<K, Supplier<? extends V>> staleKeys = new ConcurrentHashMap<>();
+    private final LongAdder staleServed = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+    private boolean refreshScheduled;
+
+    /**
+     * Constructs an empty {@code LastKnownGood}.
+     *
+     * @param maxSize       the number of keys whose last value is remembered, the least recently used first forgotten
+     * @param refreshMillis how often keys served stale are read again
+     */
+    public LastKnownGood(int maxSize, long refreshMillis) {
+        this.refreshMillis = Math.max(1, refreshMillis);
+        int capacity = Math.max(1, maxSize);
+        this.values = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Fetched<V>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Reads the value of a key, or serves its last value if the database cannot be read.
+     *
+     * @param key    the key
+     * @param loader reads the value of the key from the database, again in the background if it is served stale
+     * @return the value just read, or the last value read marked as stale
+     * @throws DatabaseUnavailableException if the database is unavailable and the key was never read
+     * @throws DatabaseOverloadedException  if the database is overloaded and the key was never read
+     * @throws QueryTimeoutException        if the database did not answer in time and the key was never read
+     */
+    public Fetched<V> get(K key, Supplier<? extends V> loader) {
+        try {
+            return load(key, loader);
+        } catch (DatabaseUnavailableException | DatabaseOverloadedException | QueryTimeoutException e) {
+            Fetched<V> last;
+            synchronized (this) {
+                last = values.get(key);
+            }
+            if (last == null) {
+                throw e;
+            }
+            staleServed.increment();
+            staleKeys.put(key, loader);
+            scheduleRefresh();
+            return last.asStale();
+        }
+    }
+
+    /**
+     * Returns the number of keys served stale and not refreshed yet.
+     *
+     * @return the stale key count
+     */
+    public int getStaleKeyCount() {
+        return staleKeys.size();
+    }
+
+    /**
+     * Returns the number of lookups served a stale value.
+     *
+     * @return the stale served count
+     */
+    public long getStaleServedCount() {
+        return staleServed.sum();
+    }
+
+    /**
+     * Returns the number of stale keys read again in the background.
+     *
+     * @return the refreshed count
+     */
+    public long getRefreshedCount() {
+        return refreshed.sum();
+    }
+
+    private Fetched<V> load(K key, Supplier<? extends V> loader) {
+        Fetched<V> fetched = Fetched.fresh(loader.get());
+        synchronized (this) {
+            values.put(key, fetched);
+        }
+        staleKeys.remove(key);
+        return fetched;
+    }
+
+    private synchronized void scheduleRefresh() {
+        if (!refreshScheduled) {
+            refreshScheduled = true;
+            REFRESHER.schedule(this::refresh, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads the stale keys again until the database fails, and tries again later if any are left.
+     */
+    private void refresh() {
+        List<Map.Entry<K, Supplier<? extends V>>> keys = new ArrayList<>(staleKeys.entrySet());
+        try {
+            for (Map.Entry<K, Supplier<? extends V>> key : keys) {
+                load(key.getKey(), key.getValue());
+                refreshed.increment();
+            }
+        } catch (RuntimeException e) {
+            // the database is still unavailable; the remaining keys are read at the next refresh
+        }
+        synchronized (this) {
+            refreshScheduled = false;
+            if (!staleKeys.isEmpty()) {
+                scheduleRefresh();
+            }
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package org.home.component;
 
-import org.home.config.DBConnectionProvider;
+import org.home.cache.InvalidationBus;
+import org.home.config.ShardRouter;
+import org.home.event.OutboxRelay;
+import org.home.leaderboard.Leaderboards;
 import org.home.repository.HabitRecordRepository;
 import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.RegisteredEmailFilter;
 import org.home.repository.UserRepository;
+import org.home.scheduler.ReminderScheduler;
+import org.home.tracing.Tracer;
 
 /**
  * The {@code ComponentFactory} interface is used to create important components
@@ -13,33 +20,84 @@ import org.home.repository.UserRepository;
  */
 public interface ComponentFactory {
     /**
-     * Creates a database connection provider that will help connect to the database.
+     * Creates the shard router that will help connect to the databases holding the application data.
      *
-     * @return a {@link DBConnectionProvider} to manage the database connection
+     * @return a {@link ShardRouter} to manage the database connections of every shard
      */
-    DBConnectionProvider prepareConnector();
+    ShardRouter prepareConnector();
 
     /**
      * Creates a {@link UserRepository} to manage user-related data in the database.
      *
-     * @param connProvider the {@link DBConnectionProvider} used to connect to the database
+     * @param shards the {@link ShardRouter} used to connect to the databases
      * @return a {@link UserRepository} to interact with user data
      */
-    UserRepository createUserRepository(DBConnectionProvider connProvider);
+    UserRepository createUserRepository(ShardRouter shards);
 
     /**
      * Creates a {@link HabitRepository} to manage habit-related data in the database.
      *
-     * @param connProvider the {@link DBConnectionProvider} used to connect to the database
+     * @param shards the {@link ShardRouter} used to connect to the databases
      * @return a {@link HabitRepository} to interact with habit data
      */
-    HabitRepository createHabitRepository(DBConnectionProvider connProvider);
+    HabitRepository createHabitRepository(ShardRouter shards);
 
     /**
      * Creates a {@link HabitRecordRepository} to manage habit record data in the database.
      *
-     * @param connProvider the {@link DBConnectionProvider} used to connect to the database
+     * @param shards the {@link ShardRouter} used to connect to the databases
      * @return a {@link HabitRecordRepository} to interact with habit record data
      */
-    HabitRecordRepository createHabitRecordRepository(DBConnectionProvider connProvider);
+    HabitRecordRepository createHabitRecordRepository(ShardRouter shards);
+
+    /**
+     * Creates an {@link OutboxRepository} to read the events written alongside habit and record changes.
+     *
+     * @param shards the {@link ShardRouter} used to connect to the databases
+     * @return an {@link OutboxRepository} to interact with the outbox
+     */
+    OutboxRepository createOutboxRepository(ShardRouter shards);
+
+    /**
+     * Creates the {@link OutboxRelay} that publishes outbox events to their consumers.
+     *
+     * @return an {@link OutboxRelay} that is not started yet, or {@code null} if relaying is disabled
+     */
+    OutboxRelay createOutboxRelay();
+
+    /**
+     * Creates the {@link ReminderScheduler} that reminds users of due habits.
+     *
+     * @return a {@link ReminderScheduler} that is not started yet, or {@code null} if reminders are disabled
+     */
+    ReminderScheduler createReminderScheduler();
+
+    /**
+     * Creates the {@link Leaderboards} that rank habits across users.
+     *
+     * @return {@link Leaderboards} that are not started yet, or {@code null} if leaderboards are disabled
+     */
+    Leaderboards createLeaderboards();
+
+    /**
+     * Creates the {@link RegisteredEmailFilter} that spares registrations a query for new emails.
+     *
+     * @return a {@link RegisteredEmailFilter} that is not started yet, or {@code null} if the filter is disabled
+     */
+    RegisteredEmailFilter createEmailFilter();
+
+    /**
+     * Creates the {@link InvalidationBus} that announces writes to the other instances.
+     *
+     * @param shards the {@link ShardRouter} whose first shard carries the notifications
+     * @return an {@link InvalidationBus} that is not started yet, or {@code null} if it is disabled
+     */
+    InvalidationBus createInvalidationBus(ShardRouter shards);
+
+    /**
+     * Creates the {@link Tracer} that records and exports the traces of user actions.
+     *
+     * @return a {@link Tracer} that is not started yet, or {@code null} if tracing is disabled
+     */
+    Tracer createTracer();
 }
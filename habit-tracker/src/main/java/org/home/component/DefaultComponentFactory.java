@@ -1,10 +1,21 @@
 package org.home.component;
 
+import org.home.cache.InvalidationBus;
 import org.home.config.ConfigLoader;
 import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.event.OutboxRelay;
+import org.home.leaderboard.Leaderboards;
 import org.home.repository.HabitRecordRepository;
 import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.RegisteredEmailFilter;
 import org.home.repository.UserRepository;
+import org.home.scheduler.ReminderScheduler;
+import org.home.tracing.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class DefaultComponentFactory implements ComponentFactory {
 
@@ -15,25 +26,70 @@ public class DefaultComponentFactory implements ComponentFactory {
     }
 
     @Override
-    public DBConnectionProvider prepareConnector() {
+    public ShardRouter prepareConnector() {
         String dbUrl = configLoader.getDbUrl();
-        String username = configLoader.getDbUsername();
-        String password = configLoader.getDbPassword();
-        return new DBConnectionProvider(dbUrl, username, password);
+        List<DBConnectionProvider> shards = new ArrayList<>();
+        shards.add(createProvider(dbUrl, configLoader.getDbReplicaUrls()));
+        for (List<String> shardUrls : configLoader.getDbShardUrls()) {
+            shards.add(createProvider(shardUrls.get(0), shardUrls.subList(1, shardUrls.size())));
+        }
+        return new ShardRouter(shards);
+    }
+
+    @Override
+    public UserRepository createUserRepository(ShardRouter shards) {
+        return new UserRepository(shards);
+    }
+
+    @Override
+    public HabitRepository createHabitRepository(ShardRouter shards) {
+        return new HabitRepository(shards);
+    }
+
+    @Override
+    public HabitRecordRepository createHabitRecordRepository(ShardRouter shards) {
+        return new HabitRecordRepository(shards);
+    }
+
+    @Override
+    public OutboxRepository createOutboxRepository(ShardRouter shards) {
+        return new OutboxRepository(shards);
+    }
+
+    @Override
+    public OutboxRelay createOutboxRelay() {
+        return configLoader.isOutboxRelayEnabled() ? OutboxRelay.fromConfig(configLoader) : null;
+    }
+
+    @Override
+    public ReminderScheduler createReminderScheduler() {
+        return configLoader.isRemindersEnabled() ? ReminderScheduler.fromConfig(configLoader) : null;
     }
 
     @Override
-    public UserRepository createUserRepository(DBConnectionProvider connProvider) {
-        return new UserRepository(connProvider);
+    public Leaderboards createLeaderboards() {
+        return configLoader.isLeaderboardsEnabled() ? Leaderboards.fromConfig(configLoader) : null;
     }
 
     @Override
-    public HabitRepository createHabitRepository(DBConnectionProvider connProvider) {
-        return new HabitRepository(connProvider);
+    public RegisteredEmailFilter createEmailFilter() {
+        return configLoader.isEmailFilterEnabled() ? RegisteredEmailFilter.fromConfig(configLoader) : null;
     }
 
     @Override
-    public HabitRecordRepository createHabitRecordRepository(DBConnectionProvider connProvider) {
-        return new HabitRecordRepository(connProvider);
+    public InvalidationBus createInvalidationBus(ShardRouter shards) {
+        return configLoader.isInvalidationEnabled() ? InvalidationBus.fromConfig(configLoader, shards.shard(0)) : null;
+    }
+
+    @Override
+    public Tracer createTracer() {
+        return configLoader.isTracingEnabled() ? Tracer.fromConfig(configLoader) : null;
+    }
+
+    private DBConnectionProvider createProvider(String dbUrl, List<String> replicaUrls) {
+        String username = configLoader.getDbUsername();
+        String password = configLoader.getDbPassword();
+        return new DBConnectionProvider(dbUrl, replicaUrls, configLoader.getReplicaSelection(),
+                configLoader.getReadYourWritesWindowMillis(), username, password);
     }
 }
@@ -0,0 +1,166 @@
+package org.home.config;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CircuitBreaker} class stops trying a database that keeps failing, so that callers fail at once
+ * instead of each waiting for a connection attempt or a query to time out.
+ * <p>
+ * The circuit is closed while the database answers. After a number of consecutive failures, that is connections
+ * or queries that failed because the database could not be reached, the circuit opens and
+ * {@link DBConnectionProvider} refuses connections with a {@link DatabaseUnavailableException}. A slow database
+ * that keeps running into query deadlines still answers, so its timeouts are not failures.
+ * Once the circuit has been open for a while it is half-open: a single connection is let through to probe the
+ * database. The circuit closes as soon as a query on it succeeds and opens again if it fails.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The state of a circuit.
+     */
+    public enum State {
+        /**
+         * The database answers and every connection is allowed.
+         */
+        CLOSED,
+        /**
+         * The database keeps failing and connections are refused.
+         */
+        OPEN,
+        /**
+         * A single connection is allowed to probe whether the database is back.
+         */
+        HALF_OPEN
+    }
+
+    private static final Set<String> UNAVAILABLE_STATES = Set.of("57P01", "57P02", "57P03", "53300");
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private volatile State state = State.CLOSED;
+    private volatile int failures;
+    private long openedAt;
+    private long probeStartedAt;
+    private boolean probing;
+
+    /**
+     * Constructs a closed {@code CircuitBreaker}.
+     *
+     * @param failureThreshold the number of consecutive failures that opens the circuit
+     * @param openMillis       how long the circuit stays open before a probe is let through
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, openMillis));
+    }
+
+    /**
+     * Creates the circuit breaker configured in {@code application.yml}.
+     *
+     * @param configLoader the configuration to read
+     * @return a new closed {@code CircuitBreaker}
+     */
+    public static CircuitBreaker fromConfig(ConfigLoader configLoader) {
+        return new CircuitBreaker(configLoader.getCircuitFailureThreshold(), configLoader.getCircuitOpenMillis());
+    }
+
+    /**
+     * Tells whether a database error means that the database could not be reached, rather than that the query
+     * was wrong or violated a constraint.
+     *
+     * @param e the error of a connection or a query
+     * @return {@code true} for connection errors, server shutdowns and exhausted connection slots
+     */
+    public static boolean isUnavailable(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && (sqlState.startsWith("08") || UNAVAILABLE_STATES.contains(sqlState));
+    }
+
+    /**
+     * Tells whether a connection may be opened now. In the half-open state the first caller becomes the probe,
+     * and must report the outcome with {@link #recordSuccess} or {@link #recordFailure}.
+     *
+     * @return {@code true} if the database may be tried
+     */
+    public boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (state == State.OPEN && now - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probing = false;
+            }
+            if (state == State.HALF_OPEN && (!probing || now - probeStartedAt >= openNanos)) {
+                probing = true;
+                probeStartedAt = now;
+                return true;
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            rejected.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Records that the database answered, which closes the circuit.
+     */
+    public void recordSuccess() {
+        if (state == State.CLOSED && failures == 0) {
+            return;
+        }
+        synchronized (this) {
+            failures = 0;
+            probing = false;
+            state = State.CLOSED;
+        }
+    }
+
+    /**
+     * Records that the database could not be reached.
+     */
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+            opened.increment();
+        }
+    }
+
+    /**
+     * Returns the state of the circuit.
+     *
+     * @return the current {@link State}
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of connections refused because the circuit was open.
+     *
+     * @return the rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns how many times the circuit opened.
+     *
+     * @return the opened count
+     */
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+}
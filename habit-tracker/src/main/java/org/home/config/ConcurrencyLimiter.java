@@ -0,0 +1,339 @@
+package org.home.config;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The {@code ConcurrencyLimiter} class bounds the number of queries running on a database at once, and adapts the
+ * bound to the latency the database shows.
+ * <p>
+ * The limit follows the TCP Vegas algorithm: the shortest latency seen recently stands for the database without
+ * load, and the ratio between it and the latency of every query estimates how many queries are waiting inside the
+ * database. The limit grows while that estimate is small, shrinks once it is large and drops by a tenth whenever a
+ * query is cancelled at its deadline. The shortest latency is measured again every {@value #PROBE_SAMPLES} queries,
+ * so that the limit recovers after the database got faster or slower for good.
+ * <p>
+ * Queries beyond the limit wait in a queue, up to a maximum length past which they are shed at once. Waiting
+ * queries are admitted by {@link Priority}: a query of lower priority is admitted ahead of one of higher priority
+ * only if it has waited longer by the difference of their allowances, so no priority starves. The priority of the
+ * queries of an operation is set with {@link #withPriority}.
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * The priority of the queries of an operation.
+     */
+    public enum Priority {
+        /**
+         * Queries the user waits for to record data, such as checking in a habit.
+         */
+        HIGH(0),
+        /**
+         * Queries of operations with no particular priority.
+         */
+        NORMAL(50),
+        /**
+         * Queries that may wait, such as computing statistics.
+         */
+        LOW(250);
+
+        private final long allowanceNanos;
+
+        Priority(long allowanceMillis) {
+            this.allowanceNanos = TimeUnit.MILLISECONDS.toNanos(allowanceMillis);
+        }
+    }
+
+    private static final int PROBE_SAMPLES = 1000;
+    private static final double DROP_FACTOR = 0.9;
+    private static final ThreadLocal<Priority> PRIORITY = new ThreadLocal<>();
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final int maxQueueLength;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparingLong((Waiter waiter) -> waiter.turn).thenComparingLong(waiter -> waiter.sequence));
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Map<Priority, LongAdder> rejected = new EnumMap<>(Priority.class);
+    private double limit;
+    private int inFlight;
+    private long noLoadRttNanos;
+    private long samples;
+    private long sequence;
+
+    /**
+     * Constructs a {@code ConcurrencyLimiter}.
+     *
+     * @param initialLimit   the number of concurrent queries admitted before any latency is seen
+     * @param minLimit       the smallest limit
+     * @param maxLimit       the largest limit
+     * @param maxQueueLength how many queries may wait for their turn
+     * @param maxWaitMillis  how long a query may wait for its turn
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueueLength, long maxWaitMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueueLength = Math.max(0, maxQueueLength);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        for (Priority priority : Priority.values()) {
+            rejected.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * Creates the limiter configured in {@code application.yml}.
+     *
+     * @param configLoader the configuration to read
+     * @return a new {@code ConcurrencyLimiter}, or {@code null} if limiting is disabled
+     */
+    public static ConcurrencyLimiter fromConfig(ConfigLoader configLoader) {
+        if (!configLoader.isDbLimiterEnabled()) {
+            return null;
+        }
+        return new ConcurrencyLimiter(configLoader.getDbLimiterInitialLimit(), configLoader.getDbLimiterMinLimit(),
+                configLoader.getDbLimiterMaxLimit(), configLoader.getDbLimiterMaxQueue(),
+                configLoader.getDbLimiterMaxWaitMillis());
+    }
+
+    /**
+     * Runs an operation whose queries are admitted with the given priority. A nested operation keeps the
+     * priority of the enclosing one.
+     *
+     * @param priority  the priority of the queries
+     * @param operation the operation
+     * @param <T>       the type of the result
+     * @return the result of the operation
+     */
+    public static <T> T withPriority(Priority priority, Supplier<T> operation) {
+        if (PRIORITY.get() != null) {
+            return operation.get();
+        }
+        PRIORITY.set(priority);
+        try {
+            return operation.get();
+        } finally {
+            PRIORITY.remove();
+        }
+    }
+
+    /**
+     * Returns the priority of the queries executed on this thread.
+     *
+     * @return the priority set by {@link #withPriority}, or {@link Priority#NORMAL}
+     */
+    public static Priority currentPriority() {
+        Priority priority = PRIORITY.get();
+        return priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Waits until a query may run.
+     *
+     * @param priority  the priority of the query
+     * @param waitNanos how long the query may wait at most; it never waits longer than the configured maximum
+     * @return {@code true} if the query may run, in which case {@link #release} must be called once it is done;
+     * {@code false} if it waited too long
+     * @throws DatabaseOverloadedException if too many queries are waiting already
+     */
+    public boolean acquire(Priority priority, long waitNanos) {
+        long remaining = Math.min(waitNanos, maxWaitNanos);
+        lock.lock();
+        try {
+            if (inFlight < (int) limit && waiters.isEmpty()) {
+                inFlight++;
+                admitted.increment();
+                return true;
+            }
+            if (waiters.size() >= maxQueueLength || remaining <= 0) {
+                rejected.get(priority).increment();
+                if (waiters.size() >= maxQueueLength) {
+                    throw new DatabaseOverloadedException("Too many queries are waiting for the database");
+                }
+                return false;
+            }
+            Waiter waiter = new Waiter(System.nanoTime() + priority.allowanceNanos, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            queued.increment();
+            try {
+                while (!waiter.admitted) {
+                    if (remaining <= 0) {
+                        waiters.remove(waiter);
+                        rejected.get(priority).increment();
+                        return false;
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.admitted) {
+                    return true;
+                }
+                waiters.remove(waiter);
+                rejected.get(priority).increment();
+                return false;
+            }
+            admitted.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a query admitted by {@link #acquire} and adapts the limit to its latency.
+     *
+     * @param rttNanos  how long the query ran
+     * @param cancelled whether the query was cancelled at its deadline
+     */
+    public void release(long rttNanos, boolean cancelled) {
+        lock.lock();
+        try {
+            int concurrency = inFlight;
+            inFlight--;
+            if (cancelled) {
+                dropped.increment();
+                limit = Math.max(minLimit, limit * DROP_FACTOR);
+            } else {
+                adapt(Math.max(1, rttNanos), concurrency);
+            }
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.poll();
+                waiter.admitted = true;
+                inFlight++;
+                waiter.condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the number of queries admitted at once
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queries running.
+     *
+     * @return the in-flight count
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queries waiting for their turn.
+     *
+     * @return the queue length
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queries admitted.
+     *
+     * @return the admitted count
+     */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /**
+     * Returns the number of queries that had to wait for their turn.
+     *
+     * @return the queued count
+     */
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    /**
+     * Returns the number of admitted queries cancelled at their deadline.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of queries of a priority that were shed.
+     *
+     * @param priority the priority of the queries
+     * @return the rejected count
+     */
+    public long getRejectedCount(Priority priority) {
+        return rejected.get(priority).sum();
+    }
+
+    /**
+     * Returns the number of queries that were shed.
+     *
+     * @return the rejected count of all priorities
+     */
+    public long getRejectedCount() {
+        return rejected.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    private void adapt(long rttNanos, int concurrency) {
+        samples++;
+        if (noLoadRttNanos == 0 || rttNanos < noLoadRttNanos || samples % PROBE_SAMPLES == 0) {
+            noLoadRttNanos = rttNanos;
+        }
+        if (concurrency * 2 < limit) {
+            return;
+        }
+        double step = Math.max(1, Math.log10(limit));
+        double queueSize = limit * (1 - (double) noLoadRttNanos / rttNanos);
+        if (queueSize <= 3 * step) {
+            limit = Math.min(maxLimit, limit + step);
+        } else if (queueSize >= 6 * step) {
+            limit = Math.max(minLimit, limit - step);
+        }
+    }
+
+    private static final class Waiter {
+        private final long turn;
+        private final long sequence;
+        private final Condition condition;
+        private boolean admitted;
+
+        private Waiter(long turn, long sequence, Condition condition) {
+            this.turn = turn;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
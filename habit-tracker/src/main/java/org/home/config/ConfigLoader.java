@@ -2,25 +2,33 @@ package org.home.config;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * The {@code ConfigLoader} class is responsible for loading configuration properties
  * from a file and providing access to the database connection details and other settings.
+ * <p>
+ * The file is {@code application.yml} on the classpath, so the application starts from any working directory;
+ * the source tree copy is only read when it is missing from the classpath. It is read once per process and
+ * shared by all instances.
  */
 public class ConfigLoader {
 
-    private final Properties properties = new Properties();
+    private static final String CONFIG_RESOURCE = "application.yml";
+    private static final String CONFIG_FILE = "src/main/resources/application.yml";
+
+    private final Properties properties;
 
     /**
-     * Loads the configuration file and stores the properties in memory.
+     * Provides the configuration properties, loading them on first use.
      */
     public ConfigLoader() {
-        try (FileInputStream input = new FileInputStream("src/main/resources/application.yml")) {
-            properties.load(input);
-        } catch (IOException e) {
-            System.out.println("Failed to load properties from config file." + e.getMessage());
-        }
+        this.properties = Loaded.PROPERTIES;
     }
 
     /**
@@ -51,6 +59,554 @@ public class ConfigLoader {
         return properties.getProperty("password");
     }
 
+    /**
+     * Retrieves the read replica URLs from the properties file.
+     * <p>
+     * Replicas are listed as a comma-separated string; an empty value means that
+     * all reads are served by the primary database.
+     *
+     * @return the list of replica URLs, possibly empty
+     */
+    public List<String> getDbReplicaUrls() {
+        String replicaUrls = unquote(properties.getProperty("replica-urls", ""));
+        return Arrays.stream(replicaUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Retrieves the additional shards from the properties file.
+     * <p>
+     * The database configured by {@code url} and {@code replica-urls} is shard 0. Further shards are listed as
+     * a comma-separated string, each entry being the shard's primary URL optionally followed by its replica
+     * URLs separated with {@code |}.
+     *
+     * @return one list per additional shard with the primary URL first and replica URLs after it
+     */
+    public List<List<String>> getDbShardUrls() {
+        String shardUrls = unquote(properties.getProperty("shard-urls", ""));
+        return Arrays.stream(shardUrls.split(","))
+                .map(String::trim)
+                .filter(shard -> !shard.isEmpty())
+                .map(shard -> Arrays.stream(shard.split("\\|")).map(String::trim).toList())
+                .toList();
+    }
+
+    /**
+     * Retrieves the strategy used to pick a read replica.
+     *
+     * @return the replica selection strategy, {@link ReplicaSelection#ROUND_ROBIN} by default
+     */
+    public ReplicaSelection getReplicaSelection() {
+        return ReplicaSelection.valueOf(properties.getProperty("replica-selection", "ROUND_ROBIN").trim());
+    }
+
+    /**
+     * Retrieves how long reads of a user are pinned to the primary after that user's own write.
+     *
+     * @return the read-your-writes window in milliseconds
+     */
+    public long getReadYourWritesWindowMillis() {
+        return Long.parseLong(properties.getProperty("read-your-writes-window-ms", "5000").trim());
+    }
+
+    /**
+     * Retrieves the isolation level of units of work that do not ask for a specific one.
+     *
+     * @return the default {@link TransactionIsolation}
+     */
+    public TransactionIsolation getTransactionIsolation() {
+        return TransactionIsolation.valueOf(properties.getProperty("transaction-isolation", "READ_COMMITTED").trim());
+    }
+
+    /**
+     * Retrieves how many times a unit of work is run again after a serialization failure or deadlock.
+     *
+     * @return the maximum number of retries
+     */
+    public int getTransactionMaxRetries() {
+        return Integer.parseInt(properties.getProperty("transaction-max-retries", "3").trim());
+    }
+
+    /**
+     * Retrieves how long a statement executed outside an operation with a deadline may run.
+     *
+     * @return the statement timeout in milliseconds, or {@code 0} for none
+     */
+    public long getQueryTimeoutMillis() {
+        return Long.parseLong(properties.getProperty("query-timeout-ms", "30000").trim());
+    }
+
+    /**
+     * Retrieves how long the queries of a login may take.
+     *
+     * @return the login deadline in milliseconds, or {@code 0} for none
+     */
+    public long getLoginTimeoutMillis() {
+        return Long.parseLong(properties.getProperty("login-timeout-ms", "3000").trim());
+    }
+
+    /**
+     * Retrieves how long the queries of a statistics request, such as a progress report, may take.
+     *
+     * @return the statistics deadline in milliseconds, or {@code 0} for none
+     */
+    public long getStatisticsTimeoutMillis() {
+        return Long.parseLong(properties.getProperty("statistics-timeout-ms", "10000").trim());
+    }
+
+    /**
+     * Retrieves whether the number of concurrent queries on each database is limited.
+     *
+     * @return {@code true} if queries should pass a concurrency limiter
+     */
+    public boolean isDbLimiterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("db-limiter-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the number of concurrent queries admitted on each database before any latency is seen.
+     *
+     * @return the initial limit
+     */
+    public int getDbLimiterInitialLimit() {
+        return Integer.parseInt(properties.getProperty("db-limiter-initial-limit", "20").trim());
+    }
+
+    /**
+     * Retrieves the smallest number of concurrent queries admitted on each database.
+     *
+     * @return the minimum limit
+     */
+    public int getDbLimiterMinLimit() {
+        return Integer.parseInt(properties.getProperty("db-limiter-min-limit", "2").trim());
+    }
+
+    /**
+     * Retrieves the largest number of concurrent queries admitted on each database.
+     *
+     * @return the maximum limit
+     */
+    public int getDbLimiterMaxLimit() {
+        return Integer.parseInt(properties.getProperty("db-limiter-max-limit", "200").trim());
+    }
+
+    /**
+     * Retrieves how many queries may wait for their turn on each database before further ones are shed.
+     *
+     * @return the maximum queue length
+     */
+    public int getDbLimiterMaxQueue() {
+        return Integer.parseInt(properties.getProperty("db-limiter-max-queue", "200").trim());
+    }
+
+    /**
+     * Retrieves how long a query may wait for its turn before it is shed.
+     *
+     * @return the maximum wait in milliseconds
+     */
+    public long getDbLimiterMaxWaitMillis() {
+        return Long.parseLong(properties.getProperty("db-limiter-max-wait-ms", "1000").trim());
+    }
+
+    /**
+     * Retrieves the number of consecutive failures that stops the application from trying a database.
+     *
+     * @return the failure threshold of the circuit breaker
+     */
+    public int getCircuitFailureThreshold() {
+        return Integer.parseInt(properties.getProperty("circuit-failure-threshold", "5").trim());
+    }
+
+    /**
+     * Retrieves how long a failing database is left alone before it is probed again.
+     *
+     * @return the open time of the circuit breaker in milliseconds
+     */
+    public long getCircuitOpenMillis() {
+        return Long.parseLong(properties.getProperty("circuit-open-ms", "5000").trim());
+    }
+
+    /**
+     * Retrieves how often data served stale while a database was unavailable is read again.
+     *
+     * @return the refresh interval in milliseconds
+     */
+    public long getStaleRefreshMillis() {
+        return Long.parseLong(properties.getProperty("stale-refresh-ms", "1000").trim());
+    }
+
+    /**
+     * Retrieves the PBKDF2 iteration count used to hash new passwords.
+     *
+     * @return the password hashing cost
+     */
+    public int getPasswordHashIterations() {
+        return Integer.parseInt(properties.getProperty("password-hash-iterations", "210000").trim());
+    }
+
+    /**
+     * Retrieves the number of threads dedicated to password hashing.
+     *
+     * @return the hashing thread count; {@code 0} means one per available processor
+     */
+    public int getPasswordHashThreads() {
+        return Integer.parseInt(properties.getProperty("password-hash-threads", "0").trim());
+    }
+
+    /**
+     * Retrieves how many password hashing requests may wait for a free hashing thread.
+     *
+     * @return the hashing queue capacity
+     */
+    public int getPasswordHashQueueCapacity() {
+        return Integer.parseInt(properties.getProperty("password-hash-queue-capacity", "256").trim());
+    }
+
+    /**
+     * Retrieves the number of stripes each login rate limit is spread over.
+     *
+     * @return the login limiter stripe count
+     */
+    public int getLoginLimiterStripes() {
+        return Integer.parseInt(properties.getProperty("login-limiter-stripes", "65536").trim());
+    }
+
+    /**
+     * Retrieves how many login attempts per minute are allowed for one email.
+     *
+     * @return the sustained login rate per email
+     */
+    public int getLoginEmailAttemptsPerMinute() {
+        return Integer.parseInt(properties.getProperty("login-email-attempts-per-minute", "10").trim());
+    }
+
+    /**
+     * Retrieves how many login attempts per minute are allowed from one source.
+     *
+     * @return the sustained login rate per source
+     */
+    public int getLoginSourceAttemptsPerMinute() {
+        return Integer.parseInt(properties.getProperty("login-source-attempts-per-minute", "60").trim());
+    }
+
+    /**
+     * Retrieves how many login attempts may be made back to back before throttling starts.
+     *
+     * @return the login burst size
+     */
+    public int getLoginBurst() {
+        return Integer.parseInt(properties.getProperty("login-burst", "5").trim());
+    }
+
+    /**
+     * Retrieves how many failed logins in a row lock an email out.
+     *
+     * @return the failed login threshold
+     */
+    public int getLoginFailuresBeforeLockout() {
+        return Integer.parseInt(properties.getProperty("login-failures-before-lockout", "5").trim());
+    }
+
+    /**
+     * Retrieves how long an email stays locked out after too many failed logins.
+     *
+     * @return the lockout duration in seconds
+     */
+    public long getLoginLockoutSeconds() {
+        return Long.parseLong(properties.getProperty("login-lockout-seconds", "900").trim());
+    }
+
+    /**
+     * Retrieves whether habit reminders are scheduled.
+     *
+     * @return {@code true} if the reminder scheduler should run
+     */
+    public boolean isRemindersEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("reminders-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the time of day at which reminders of due habits fire.
+     *
+     * @return the reminder time
+     */
+    public LocalTime getReminderTime() {
+        return LocalTime.parse(unquote(properties.getProperty("reminder-time", "09:00")));
+    }
+
+    /**
+     * Retrieves the time zone in which due days and the reminder time are interpreted.
+     *
+     * @return the configured zone, or the system default zone if none is set
+     */
+    public ZoneId getReminderZone() {
+        String zone = unquote(properties.getProperty("reminder-zone", ""));
+        return zone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zone);
+    }
+
+    /**
+     * Retrieves the resolution of the reminder scheduler.
+     *
+     * @return the length of a scheduler tick in milliseconds
+     */
+    public long getReminderTickMillis() {
+        return Long.parseLong(properties.getProperty("reminder-tick-ms", "1000").trim());
+    }
+
+    /**
+     * Retrieves the file that fired reminders are appended to.
+     *
+     * @return the path of the reminder log
+     */
+    public String getReminderLog() {
+        return unquote(properties.getProperty("reminder-log", "reminders.log"));
+    }
+
+    /**
+     * Retrieves whether habit and record events are relayed from the outbox.
+     *
+     * @return {@code true} if the outbox relay should run
+     */
+    public boolean isOutboxRelayEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("outbox-relay-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the largest number of events handed to a consumer at once.
+     *
+     * @return the outbox batch size
+     */
+    public int getOutboxBatchSize() {
+        return Integer.parseInt(properties.getProperty("outbox-batch-size", "500").trim());
+    }
+
+    /**
+     * Retrieves how long the outbox relay waits between polls.
+     *
+     * @return the poll interval in milliseconds
+     */
+    public long getOutboxPollMillis() {
+        return Long.parseLong(properties.getProperty("outbox-poll-ms", "100").trim());
+    }
+
+    /**
+     * Retrieves the file that relayed events are appended to.
+     *
+     * @return the path of the event log
+     */
+    public String getOutboxEventLog() {
+        return unquote(properties.getProperty("outbox-event-log", "habit-events.ndjson"));
+    }
+
+    /**
+     * Retrieves the number of habit records above which a user is deleted in the background.
+     *
+     * @return the record count that makes a deletion asynchronous
+     */
+    public long getUserDeletionAsyncThreshold() {
+        return Long.parseLong(properties.getProperty("user-deletion-async-threshold", "10000").trim());
+    }
+
+    /**
+     * Retrieves how many habit records a background user deletion removes per transaction.
+     *
+     * @return the chunk size
+     */
+    public int getUserDeletionChunkSize() {
+        return Integer.parseInt(properties.getProperty("user-deletion-chunk-size", "5000").trim());
+    }
+
+    /**
+     * Retrieves how long a background user deletion waits between chunks.
+     *
+     * @return the pause in milliseconds
+     */
+    public long getUserDeletionPauseMillis() {
+        return Long.parseLong(properties.getProperty("user-deletion-pause-ms", "50").trim());
+    }
+
+    /**
+     * Retrieves the largest number of keys a batch loader looks up with one query.
+     *
+     * @return the maximum batch size
+     */
+    public int getBatchLoaderMaxSize() {
+        return Integer.parseInt(properties.getProperty("batch-loader-max-size", "500").trim());
+    }
+
+    /**
+     * Retrieves how long a batch loader collects keys before looking them up.
+     *
+     * @return the window in milliseconds
+     */
+    public long getBatchLoaderWindowMillis() {
+        return Long.parseLong(properties.getProperty("batch-loader-window-ms", "2").trim());
+    }
+
+    /**
+     * Retrieves how long a progress report request waits for an identical one already being computed.
+     *
+     * @return the wait in milliseconds
+     */
+    public long getStatisticsCoalesceWaitMillis() {
+        return Long.parseLong(properties.getProperty("statistics-coalesce-wait-ms", "2000").trim());
+    }
+
+    /**
+     * Retrieves whether registrations check new emails against a filter of registered emails first.
+     *
+     * @return {@code true} if the registered email filter should be built and used
+     */
+    public boolean isEmailFilterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("email-filter-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the rate of false positives the registered email filter is sized for.
+     *
+     * @return the false positive rate, between 0 and 1
+     */
+    public double getEmailFilterFalsePositiveRate() {
+        return Double.parseDouble(properties.getProperty("email-filter-false-positive-rate", "0.01").trim());
+    }
+
+    /**
+     * Retrieves the smallest number of emails the registered email filter is sized for.
+     *
+     * @return the minimum capacity
+     */
+    public long getEmailFilterMinCapacity() {
+        return Long.parseLong(properties.getProperty("email-filter-min-capacity", "10000").trim());
+    }
+
+    /**
+     * Retrieves how often the registered email filter is rebuilt from the database.
+     *
+     * @return the rebuild interval in minutes
+     */
+    public long getEmailFilterRebuildMinutes() {
+        return Long.parseLong(properties.getProperty("email-filter-rebuild-minutes", "60").trim());
+    }
+
+    /**
+     * Retrieves whether habit leaderboards are kept.
+     *
+     * @return {@code true} if the leaderboards should be built and followed
+     */
+    public boolean isLeaderboardsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("leaderboards-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the number of last days the completion rate of the leaderboards is computed over.
+     *
+     * @return the number of days
+     */
+    public int getLeaderboardRateDays() {
+        return Integer.parseInt(properties.getProperty("leaderboard-rate-days", "30").trim());
+    }
+
+    /**
+     * Retrieves how often the leaderboards are rebuilt from the database.
+     *
+     * @return the reconcile interval in minutes
+     */
+    public long getLeaderboardReconcileMinutes() {
+        return Long.parseLong(properties.getProperty("leaderboard-reconcile-minutes", "15").trim());
+    }
+
+    /**
+     * Retrieves whether writes are announced to the other instances so that they evict cached data.
+     *
+     * @return {@code true} if the invalidation bus should be started
+     */
+    public boolean isInvalidationEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("invalidation-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves how long written keys are collected before they are announced to the other instances.
+     *
+     * @return the batching delay in milliseconds
+     */
+    public long getInvalidationBatchMillis() {
+        return Long.parseLong(properties.getProperty("invalidation-batch-ms", "50").trim());
+    }
+
+    /**
+     * Retrieves how long the invalidation listener waits before reconnecting after losing its connection.
+     *
+     * @return the reconnect delay in milliseconds
+     */
+    public long getInvalidationReconnectMillis() {
+        return Long.parseLong(properties.getProperty("invalidation-reconnect-ms", "1000").trim());
+    }
+
+    /**
+     * Retrieves how many users and progress reports are cached by each instance.
+     *
+     * @return the number of cached entries of each kind
+     */
+    public int getEntityCacheSize() {
+        return Integer.parseInt(properties.getProperty("entity-cache-size", "10000").trim());
+    }
+
+    /**
+     * Retrieves whether user actions are traced.
+     *
+     * @return {@code true} if the tracer should run
+     */
+    public boolean isTracingEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("tracing-enabled", "true").trim());
+    }
+
+    /**
+     * Retrieves the share of user actions whose traces are recorded.
+     *
+     * @return the sample rate, from {@code 0} for none to {@code 1} for all
+     */
+    public double getTracingSampleRate() {
+        return Double.parseDouble(properties.getProperty("tracing-sample-rate", "0.05").trim());
+    }
+
+    /**
+     * Retrieves the largest number of spans exported at once.
+     *
+     * @return the span batch size
+     */
+    public int getTracingBatchSize() {
+        return Integer.parseInt(properties.getProperty("tracing-batch-size", "512").trim());
+    }
+
+    /**
+     * Retrieves the number of ended spans kept until they are exported.
+     *
+     * @return the span queue size
+     */
+    public int getTracingQueueSize() {
+        return Integer.parseInt(properties.getProperty("tracing-queue-size", "4096").trim());
+    }
+
+    /**
+     * Retrieves how long the tracer waits between exports.
+     *
+     * @return the export interval in milliseconds
+     */
+    public long getTracingExportMillis() {
+        return Long.parseLong(properties.getProperty("tracing-export-ms", "1000").trim());
+    }
+
+    /**
+     * Retrieves the file that spans are appended to.
+     *
+     * @return the path of the trace file
+     */
+    public String getTracingFile() {
+        return unquote(properties.getProperty("tracing-file", "habit-traces.ndjson"));
+    }
+
     /**
      * Retrieves the Liquibase changelog file location from the properties file.
      *
@@ -59,4 +615,43 @@ public class ConfigLoader {
     public String getLiquibaseChangeLog() {
         return properties.getProperty("change-log").substring(10);
     }
+
+    /**
+     * Retrieves whether Liquibase is skipped for databases already migrated with the current changelog.
+     *
+     * @return {@code true} if migrations should be checked against the changelog fingerprint first
+     */
+    public boolean isLiquibaseFastStart() {
+        return Boolean.parseBoolean(properties.getProperty("liquibase-fast-start", "true").trim());
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream input = openConfig()) {
+            properties.load(input);
+        } catch (IOException e) {
+            System.out.println("Failed to load properties from config file." + e.getMessage());
+        }
+        return properties;
+    }
+
+    private static InputStream openConfig() throws IOException {
+        InputStream input = ConfigLoader.class.getClassLoader().getResourceAsStream(CONFIG_RESOURCE);
+        return input != null ? input : new FileInputStream(CONFIG_FILE);
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    /**
+     * Holds the properties read from the configuration file.
+     */
+    private static final class Loaded {
+        private static final Properties PROPERTIES = load();
+    }
 }
@@ -2,16 +2,35 @@ package org.home.config;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * The {@code DBConnectionProvider} class is responsible for creating and providing
  * a database connection using the provided database URL, username, and password.
+ * <p>
+ * Besides the primary database it can be given any number of read replicas. Writes always go to the primary,
+ * while read-only queries are spread over the replicas unless the data they read was written recently by
+ * the same user.
+ * <p>
+ * Every connection it hands out executes its statements within the deadline set by {@link QueryDeadline}, and
+ * no more of them at once than its {@link ConcurrencyLimiter} admits. A {@link CircuitBreaker} stops connecting
+ * to a primary database that keeps failing, and failures to reach it throw a {@link DatabaseUnavailableException}.
  */
 public class DBConnectionProvider {
 
+    private static final List<Consumer<String[]>> WRITE_LISTENERS = new CopyOnWriteArrayList<>();
+
     private final String url;
+    private final List<String> replicaUrls;
     private final String username;
     private final String password;
+    private final ReadReplicaRouter replicaRouter;
+    private final ConcurrencyLimiter limiter;
+    private final CircuitBreaker breaker;
 
     /**
      * Constructs a {@code DBConnectionProvider} with the specified database URL, username, and password.
@@ -21,22 +40,200 @@ public class DBConnectionProvider {
      * @param password the password for the database
      */
     public DBConnectionProvider(String url, String username, String password) {
+        this(url, List.of(), ReplicaSelection.ROUND_ROBIN, 0, username, password);
+    }
+
+    /**
+     * Constructs a {@code DBConnectionProvider} with a primary database and read replicas.
+     *
+     * @param url                      the primary database URL
+     * @param replicaUrls              the read replica URLs, possibly empty
+     * @param replicaSelection         the strategy used to pick a replica for a read
+     * @param readYourWritesWindowMillis how long reads of recently written data stay on the primary
+     * @param username                 the username for the databases
+     * @param password                 the password for the databases
+     */
+    public DBConnectionProvider(String url, List<String> replicaUrls, ReplicaSelection replicaSelection,
+                                long readYourWritesWindowMillis, String username, String password) {
         this.url = url;
+        this.replicaUrls = List.copyOf(replicaUrls);
         this.username = username;
         this.password = password;
+        this.replicaRouter = new ReadReplicaRouter(
+                this.replicaUrls.size(), replicaSelection, readYourWritesWindowMillis);
+        ConfigLoader configLoader = new ConfigLoader();
+        this.limiter = ConcurrencyLimiter.fromConfig(configLoader);
+        this.breaker = CircuitBreaker.fromConfig(configLoader);
+    }
+
+    /**
+     * Returns the limiter of the queries run on this database, to read its metrics.
+     *
+     * @return the {@link ConcurrencyLimiter}, or {@code null} if limiting is disabled
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Returns the circuit breaker of the primary database, to read its state and metrics.
+     *
+     * @return the {@link CircuitBreaker}
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
     }
 
     /**
      * Establishes and returns a {@link Connection} to the database using the provided
      * URL, username, and password.
+     * <p>
+     * Inside a {@link UnitOfWork} the connection of the unit of work is returned instead.
      *
      * @return a {@link Connection} object that represents the database connection
+     * @throws DatabaseUnavailableException if the circuit is open or the database cannot be reached
      */
     public Connection getConnection() {
+        Connection joined = UnitOfWork.join(this);
+        return joined != null ? joined : openConnection();
+    }
+
+    /**
+     * Opens a new connection to the primary database, ignoring any active unit of work.
+     *
+     * @return a new {@link Connection} to the primary database
+     * @throws DatabaseUnavailableException if the circuit is open or the database cannot be reached
+     */
+    Connection openConnection() {
+        if (!breaker.allowRequest()) {
+            throw new DatabaseUnavailableException("The database is unavailable, it will be tried again shortly");
+        }
         try {
-            return DriverManager.getConnection(url, username, password);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return QueryDeadline.guard(DriverManager.getConnection(url, username, password), limiter, breaker);
+        } catch (SQLException e) {
+            breaker.recordFailure();
+            throw new DatabaseUnavailableException("Failed to connect to the database: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Opens a plain connection to the primary database, for long administrative work such as schema migrations.
+     * No query deadline, concurrency limit or circuit breaker applies to it, and it ignores any active
+     * {@link UnitOfWork}.
+     *
+     * @return a new, unguarded {@link Connection} to the primary database
+     * @throws SQLException if the database cannot be reached
+     */
+    Connection openUnguardedConnection() throws SQLException {
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * Returns a connection for a read-only query.
+     * <p>
+     * The connection points to a replica unless there are none, all of them are unreachable, or
+     * {@code consistencyKey} was written within the read-your-writes window, in which case the primary is used.
+     * Inside a {@link UnitOfWork} the read runs on the connection of the unit of work, so it sees its writes.
+     *
+     * @param consistencyKey the key identifying whose data is read (see {@link #userKey}, {@link #emailKey}
+     *                       and {@link #habitKey}), or {@code null} if the read needs no stickiness
+     * @return a {@link Connection} suitable for reading
+     */
+    public Connection getReadConnection(String consistencyKey) {
+        Connection joined = UnitOfWork.join(this);
+        return joined != null ? joined : openReadConnection(replicaRouter.candidates(consistencyKey));
+    }
+
+    /**
+     * Returns a connection for a read-only query of data with several owners, such as a batch of lookups.
+     * <p>
+     * The connection points to the primary if any of the keys was written within the read-your-writes window,
+     * and otherwise behaves like {@link #getReadConnection(String)}.
+     *
+     * @param consistencyKeys the keys identifying whose data is read
+     * @return a {@link Connection} suitable for reading
+     */
+    public Connection getBatchReadConnection(Collection<String> consistencyKeys) {
+        Connection joined = UnitOfWork.join(this);
+        return joined != null ? joined : openReadConnection(replicaRouter.candidatesForAll(consistencyKeys));
+    }
+
+    private Connection openReadConnection(int[] candidates) {
+        for (int replica : candidates) {
+            long start = System.nanoTime();
+            try {
+                Connection connection = DriverManager.getConnection(replicaUrls.get(replica), username, password);
+                connection.setReadOnly(true);
+                replicaRouter.recordSuccess(replica, System.nanoTime() - start);
+                return QueryDeadline.guard(connection, limiter, null);
+            } catch (SQLException e) {
+                replicaRouter.recordFailure(replica);
+                System.out.println("Replica " + replica + " is unavailable: " + e.getMessage());
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * Notes that data identified by the given keys was just written on the primary, so that subsequent
+     * reads of it are served by the primary until replicas catch up.
+     * <p>
+     * The write listeners are told of the keys once the active {@link UnitOfWork}, if any, has committed.
+     *
+     * @param consistencyKeys the keys of the written data
+     */
+    public void markWritten(String... consistencyKeys) {
+        replicaRouter.markWritten(consistencyKeys);
+        if (!WRITE_LISTENERS.isEmpty()) {
+            UnitOfWork.afterCommit(() -> WRITE_LISTENERS.forEach(listener -> listener.accept(consistencyKeys)));
+        }
+    }
+
+    /**
+     * Registers a listener told of the keys of every write marked with {@link #markWritten}, on any database.
+     *
+     * @param listener receives the consistency keys of every write
+     */
+    public static void addWriteListener(Consumer<String[]> listener) {
+        WRITE_LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a write listener.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeWriteListener(Consumer<String[]> listener) {
+        WRITE_LISTENERS.remove(listener);
+    }
+
+    /**
+     * Returns the consistency key for data owned by a user.
+     *
+     * @param userId the ID of the user
+     * @return the consistency key
+     */
+    public static String userKey(Long userId) {
+        return userId == null ? null : "user:" + userId;
+    }
+
+    /**
+     * Returns the consistency key for a user looked up by email.
+     *
+     * @param email the email of the user
+     * @return the consistency key
+     */
+    public static String emailKey(String email) {
+        return email == null ? null : "email:" + email;
+    }
+
+    /**
+     * Returns the consistency key for the records of a habit.
+     *
+     * @param habitId the ID of the habit
+     * @return the consistency key
+     */
+    public static String habitKey(Long habitId) {
+        return habitId == null ? null : "habit:" + habitId;
+    }
 }
@@ -0,0 +1,22 @@
+package org.home.config;
+
+/**
+ * Thrown when a query is shed by the {@link ConcurrencyLimiter} of a database, because too many queries are
+ * already waiting for it or the query waited for its turn longer than allowed.
+ * <p>
+ * Like a {@link QueryTimeoutException}, it reaches the caller of the service operation and rolls back the
+ * {@link UnitOfWork} it runs in; the operation may be tried again later.
+ */
+public class DatabaseOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a {@code DatabaseOverloadedException}.
+     *
+     * @param message the detail message
+     */
+    public DatabaseOverloadedException(String message) {
+        super(message);
+    }
+}
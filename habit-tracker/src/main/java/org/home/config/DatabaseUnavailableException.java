@@ -0,0 +1,32 @@
+package org.home.config;
+
+/**
+ * Thrown when a database cannot be reached: connecting to it failed, a query lost its connection, or the
+ * {@link CircuitBreaker} of the database is open and the database is not tried at all.
+ * <p>
+ * Unlike an {@link java.sql.SQLException}, which repositories report and swallow, it reaches the caller of the
+ * service operation, so that an unreachable database is never mistaken for one without data.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a {@code DatabaseUnavailableException}.
+     *
+     * @param message the detail message
+     */
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a {@code DatabaseUnavailableException} caused by a failed connection or query.
+     *
+     * @param message the detail message
+     * @param cause   the error the database was found unavailable with
+     */
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
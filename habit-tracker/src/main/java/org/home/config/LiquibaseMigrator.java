@@ -1,48 +1,162 @@
 package org.home.config;
 
-import liquibase.Liquibase;
+import liquibase.Scope;
+import liquibase.command.CommandScope;
+import liquibase.command.core.TagCommandStep;
+import liquibase.command.core.UpdateCommandStep;
+import liquibase.command.core.helpers.DbUrlConnectionCommandStep;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
-import liquibase.exception.LiquibaseException;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import lombok.AllArgsConstructor;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The {@code LiquibaseMigrator} class is responsible for running database migrations
  * using Liquibase. It loads configuration settings, establishes a database connection,
  * and applies the Liquibase changelog to update the database schema.
+ * <p>
+ * In fast-start mode the changelog and the files it includes are fingerprinted with SHA-256, and after a
+ * migration the fingerprint is stored as the Liquibase tag of the last applied changeset. A database whose
+ * {@code DATABASECHANGELOG} already ends with the current fingerprint is left alone without loading Liquibase
+ * at all, which saves most of the startup time of an instance joining an up-to-date database.
+ * <p>
+ * The sample users, habits and records are changesets of the {@code seed} context. Their ids do not encode a
+ * shard, so they are only applied to shard 0; the other shards get the schema alone.
  */
 @AllArgsConstructor
 public class LiquibaseMigrator {
 
+    private static final Pattern INCLUDE = Pattern.compile("<include\\s+file=\"([^\"]+)\"");
+    private static final String LAST_TAG_SQL =
+            "SELECT tag FROM databasechangelog ORDER BY orderexecuted DESC LIMIT 1";
+    private static final String SEED_CONTEXT = "seed";
+    private static final String SCHEMA_CONTEXT = "schema";
+
     private static ConfigLoader configLoader = new ConfigLoader();
 
     /**
-     * Applies database schema changes using Liquibase. It connects to the database
-     * using the credentials and URL provided by the {@link ConfigLoader}, and then
-     * applies the changes specified in the Liquibase changelog.
+     * Applies database schema changes using Liquibase. It connects to the primary database
+     * of every shard and applies the changes specified in the Liquibase changelog provided by
+     * the {@link ConfigLoader}, so that all shards share the same schema. Only shard 0 is seeded
+     * with sample data. Shards already migrated with the same changelog are skipped in fast-start mode, and
+     * shards that cannot be reached are reported and left for the next start.
+     * <p>
+     * Migrations run on unguarded connections, so neither {@code query-timeout-ms} nor the deadline of an
+     * enclosing operation cuts a long changeset short.
+     *
+     * @param shards the {@link ShardRouter} whose shards are migrated
      */
-    public static void updateMigrations() {
-        String dbUrl = configLoader.getDbUrl();
-        String username = configLoader.getDbUsername();
-        String password = configLoader.getDbPassword();
+    public static void updateMigrations(ShardRouter shards) {
         String changeLogFile = configLoader.getLiquibaseChangeLog();
+        String fingerprint = configLoader.isLiquibaseFastStart() ? fingerprint(changeLogFile) : null;
+
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            try (Connection connection = shards.shard(shard).openUnguardedConnection()) {
+                if (fingerprint != null && fingerprint.equals(lastTag(connection))) {
+                    System.out.println("Schema of shard " + shard + " is up to date");
+                    continue;
+                }
+                FullMigration.update(connection, changeLogFile, fingerprint,
+                        shard == 0 ? SEED_CONTEXT : SCHEMA_CONTEXT);
+                System.out.println("Migration of shard " + shard + " is completed successfully");
+            } catch (SQLException e) {
+                System.out.println("SQL Exception in migration of shard " + shard + " " + e.getMessage());
+            }
+        }
+    }
 
+    /**
+     * Computes the fingerprint of a changelog and the files it includes, in order.
+     *
+     * @param changeLogFile the classpath location of the changelog
+     * @return the fingerprint, or {@code null} if a file could not be read
+     */
+    static String fingerprint(String changeLogFile) {
         try {
-            Connection connection = DriverManager.getConnection(dbUrl, username, password);
-            Database database =
-                    DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            Liquibase liquibase =
-                    new Liquibase(changeLogFile, new ClassLoaderResourceAccessor(), database);
-            liquibase.update();
-            System.out.println("Migration is completed successfully");
-        } catch (SQLException | LiquibaseException e) {
-            System.out.println("SQL Exception in migration " + e.getMessage());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] changeLog = readResource(changeLogFile);
+            digest.update(changeLog);
+            String directory = changeLogFile.substring(0, changeLogFile.lastIndexOf('/') + 1);
+            Matcher include = INCLUDE.matcher(new String(changeLog, StandardCharsets.UTF_8));
+            while (include.find()) {
+                digest.update(readResource(directory + include.group(1)));
+            }
+            return "changelog-" + HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.out.println("Failed to fingerprint the changelog: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] readResource(String path) throws IOException {
+        try (InputStream input = LiquibaseMigrator.class.getClassLoader().getResourceAsStream(path)) {
+            if (input == null) {
+                throw new IOException("Resource not found: " + path);
+            }
+            return input.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns the tag of the last changeset applied to a database.
+     */
+    private static String lastTag(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery(LAST_TAG_SQL)) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        } catch (SQLException e) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs the Liquibase update and tag commands. It is a class of its own so that Liquibase is only loaded when
+     * a migration is needed.
+     */
+    private static final class FullMigration {
+
+        private static final String TAG_COMMAND = "tag";
+
+        private static void update(Connection connection, String changeLogFile, String fingerprint,
+                                   String context) throws SQLException {
+            try {
+                Database database =
+                        DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+                Scope.child(Scope.Attr.resourceAccessor.name(), new ClassLoaderResourceAccessor(), () -> {
+                    new CommandScope(UpdateCommandStep.COMMAND_NAME)
+                            .addArgumentValue(DbUrlConnectionCommandStep.DATABASE_ARG, database)
+                            .addArgumentValue(UpdateCommandStep.CHANGELOG_FILE_ARG, changeLogFile)
+                            .addArgumentValue(UpdateCommandStep.CONTEXTS_ARG, context)
+                            .execute();
+                    if (fingerprint != null) {
+                        new CommandScope(TAG_COMMAND)
+                                .addArgumentValue(DbUrlConnectionCommandStep.DATABASE_ARG, database)
+                                .addArgumentValue(TagCommandStep.TAG_ARG, fingerprint)
+                                .execute();
+                    }
+                });
+            } catch (SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException(e.getMessage(), e);
+            }
         }
     }
 }
@@ -0,0 +1,344 @@
+package org.home.config;
+
+import org.home.jfr.QueryEvent;
+import org.home.jfr.QueryRecorder;
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code QueryDeadline} class bounds how long the queries of a service operation may run.
+ * <p>
+ * A service runs an operation {@link #within} a timeout, which sets a deadline for every statement the operation
+ * executes on its thread; nested operations keep the earlier deadline. Statements executed outside any operation
+ * get the configured {@code query-timeout-ms} each. Every connection handed out by {@link DBConnectionProvider}
+ * executes its statements through this class: a statement is not started once the deadline has passed, and a
+ * statement still running at the deadline is cancelled on the server with {@link Statement#cancel()}. Either way
+ * a {@link QueryTimeoutException} is thrown instead of the {@link SQLException}, so the timeout reaches the caller
+ * of the operation rather than being swallowed by a repository.
+ * <p>
+ * If the database has a {@link ConcurrencyLimiter}, a statement waits for its turn before it starts, no longer
+ * than the deadline, and its latency is reported to the limiter once it is done. A statement that fails because
+ * the database cannot be reached throws a {@link DatabaseUnavailableException}, and the outcome of every statement
+ * is reported to the {@link CircuitBreaker} of the database. A statement cancelled at its deadline counts as an
+ * answer of the database, which was reached to cancel it, unless it failed with a connection error.
+ * <p>
+ * Every statement executes in a {@link Tracer} span named {@code db.execute}, carrying its SQL, which covers the
+ * wait for the limiter as well, and is recorded as a {@link QueryEvent} for JDK Flight Recorder together with
+ * the rows read from its result.
+ * <p>
+ * Only the execution of a statement is bounded: rows fetched while a large result set is iterated are not, so
+ * long scans run outside operations and rely on the per-statement timeout for their first rows only.
+ */
+public final class QueryDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+    private static final long DEFAULT_TIMEOUT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(0, new ConfigLoader().getQueryTimeoutMillis()));
+    private static final ScheduledThreadPoolExecutor CANCELLER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "query-canceller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final LongAdder TIMEOUTS = new LongAdder();
+    private static final LongAdder CANCELLATIONS = new LongAdder();
+
+    static {
+        CANCELLER.setRemoveOnCancelPolicy(true);
+    }
+
+    private QueryDeadline() {
+    }
+
+    /**
+     * Runs an operation whose queries must complete within a timeout.
+     *
+     * @param timeoutMillis the time the operation may spend; zero or less keeps the deadline of an enclosing
+     *                      operation, if any
+     * @param operation     the operation
+     * @param <T>           the type of the result
+     * @return the result of the operation
+     * @throws QueryTimeoutException if a query of the operation ran into the deadline
+     */
+    public static <T> T within(long timeoutMillis, Supplier<T> operation) {
+        Long outer = DEADLINE.get();
+        if (timeoutMillis > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (outer == null || deadline - outer < 0) {
+                DEADLINE.set(deadline);
+            }
+        }
+        try {
+            return operation.get();
+        } finally {
+            if (outer == null) {
+                DEADLINE.remove();
+            } else {
+                DEADLINE.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Returns the deadline of the operation running on this thread, to hand it over to another thread.
+     *
+     * @return the deadline in {@link System#nanoTime()} units, or {@code null} if no operation sets one
+     */
+    static Long currentDeadline() {
+        return DEADLINE.get();
+    }
+
+    /**
+     * Runs an operation handed over from another thread within the deadline of that thread's operation.
+     *
+     * @param deadline  the deadline returned by {@link #currentDeadline()}, or {@code null} for none
+     * @param operation the operation
+     * @param <T>       the type of the result
+     * @return the result of the operation
+     */
+    static <T> T withDeadline(Long deadline, Supplier<T> operation) {
+        Long outer = DEADLINE.get();
+        if (deadline == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(deadline);
+        }
+        try {
+            return operation.get();
+        } finally {
+            if (outer == null) {
+                DEADLINE.remove();
+            } else {
+                DEADLINE.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Throws if the deadline of the operation running on this thread has passed, so that long computations
+     * between queries give up early as well.
+     *
+     * @throws QueryTimeoutException if the deadline has passed
+     */
+    public static void check() {
+        Long deadline = DEADLINE.get();
+        if (deadline != null && deadline - System.nanoTime() <= 0) {
+            TIMEOUTS.increment();
+            throw new QueryTimeoutException("The operation ran past its deadline");
+        }
+    }
+
+    /**
+     * Returns the time left before the deadline of the operation running on this thread.
+     *
+     * @return the remaining time in milliseconds, at least zero, or {@code -1} if no operation sets a deadline
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE.get();
+        return deadline == null ? -1 : Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Waits for a result computed on another thread, such as a batched lookup, no longer than the deadline of
+     * the operation running on this thread.
+     *
+     * @param future the result to wait for
+     * @param <T>    the type of the result
+     * @return the result
+     * @throws QueryTimeoutException if the deadline passes first
+     * @throws CompletionException   if the computation failed
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        long remaining = remainingMillis();
+        if (remaining < 0 || future.isDone()) {
+            return future.join();
+        }
+        try {
+            return future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            TIMEOUTS.increment();
+            throw new QueryTimeoutException("Gave up waiting for a result at the deadline of the operation");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Returns the number of queries that were not started or were cancelled because of a deadline.
+     *
+     * @return the timeout count
+     */
+    public static long getTimeoutCount() {
+        return TIMEOUTS.sum();
+    }
+
+    /**
+     * Returns the number of running queries cancelled on the server.
+     *
+     * @return the cancellation count
+     */
+    public static long getCancellationCount() {
+        return CANCELLATIONS.sum();
+    }
+
+    /**
+     * Wraps a connection so that its statements are executed within the deadline of the running operation.
+     *
+     * @param connection the connection to wrap
+     * @param limiter    the {@link ConcurrencyLimiter} of the database, or {@code null} if it has none
+     * @param breaker    the {@link CircuitBreaker} of the database, or {@code null} if it has none
+     * @return the guarded connection
+     */
+    static Connection guard(Connection connection, ConcurrencyLimiter limiter, CircuitBreaker breaker) {
+        return (Connection) Proxy.newProxyInstance(QueryDeadline.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    Class<?> type = method.getReturnType();
+                    if (type == Statement.class || type == PreparedStatement.class
+                            || type == CallableStatement.class) {
+                        String sql = type != Statement.class ? (String) args[0] : null;
+                        QueryRecorder recorder = new QueryRecorder(sql);
+                        return Proxy.newProxyInstance(QueryDeadline.class.getClassLoader(), new Class<?>[] {type},
+                                (statementProxy, statementMethod, statementArgs) ->
+                                        execute((Statement) result, sql, recorder, limiter, breaker,
+                                                statementMethod, statementArgs));
+                    }
+                    return result;
+                });
+    }
+
+    private static Object execute(Statement statement, String sql, QueryRecorder recorder, ConcurrencyLimiter limiter,
+                                  CircuitBreaker breaker, Method method, Object[] args) throws Throwable {
+        if (!method.getName().startsWith("execute")) {
+            if (method.getName().equals("close")) {
+                recorder.finish();
+            }
+            return invoke(statement, method, args);
+        }
+        try (Span span = Tracer.startSpan("db.execute")) {
+            if (span.isSampled()) {
+                span.setAttribute("db.method", method.getName());
+                span.setAttribute("db.statement", sql != null ? sql
+                        : args != null && args.length > 0 && args[0] instanceof String ? args[0] : null);
+            }
+            QueryEvent event = recorder.begin();
+            try {
+                return recorder.executed(event, method, args,
+                        executeGuarded(statement, limiter, breaker, method, args));
+            } catch (Throwable e) {
+                span.recordError(e);
+                recorder.failed(event, method, args);
+                throw e;
+            }
+        }
+    }
+
+    private static Object executeGuarded(Statement statement, ConcurrencyLimiter limiter, CircuitBreaker breaker,
+                                         Method method, Object[] args) throws Throwable {
+        Long deadline = DEADLINE.get();
+        if (deadline != null && deadline - System.nanoTime() <= 0) {
+            TIMEOUTS.increment();
+            throw new QueryTimeoutException("The operation ran past its deadline before the query started");
+        }
+        if (limiter != null) {
+            long waitNanos = deadline != null ? deadline - System.nanoTime() : Long.MAX_VALUE;
+            if (!limiter.acquire(ConcurrencyLimiter.currentPriority(), waitNanos)) {
+                if (deadline != null && deadline - System.nanoTime() <= 0) {
+                    TIMEOUTS.increment();
+                    throw new QueryTimeoutException("The operation ran past its deadline waiting for the database");
+                }
+                throw new DatabaseOverloadedException("The query waited too long for the database");
+            }
+        }
+        AtomicBoolean cancelled = new AtomicBoolean();
+        long start = System.nanoTime();
+        try {
+            Object result = executeWithin(statement, method, args, deadline, cancelled);
+            if (breaker != null) {
+                breaker.recordSuccess();
+            }
+            return result;
+        } catch (QueryTimeoutException e) {
+            if (breaker != null) {
+                if (e.getCause() instanceof SQLException && CircuitBreaker.isUnavailable((SQLException) e.getCause())) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
+            }
+            throw e;
+        } catch (SQLException e) {
+            if (!CircuitBreaker.isUnavailable(e)) {
+                if (breaker != null) {
+                    breaker.recordSuccess();
+                }
+                throw e;
+            }
+            if (breaker != null) {
+                breaker.recordFailure();
+            }
+            throw new DatabaseUnavailableException("The database is unavailable: " + e.getMessage(), e);
+        } finally {
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - start, cancelled.get());
+            }
+        }
+    }
+
+    private static Object executeWithin(Statement statement, Method method, Object[] args, Long deadline,
+                                        AtomicBoolean cancelled) throws Throwable {
+        long timeoutNanos = deadline != null ? Math.max(1, deadline - System.nanoTime()) : DEFAULT_TIMEOUT_NANOS;
+        if (timeoutNanos <= 0) {
+            return invoke(statement, method, args);
+        }
+        ScheduledFuture<?> cancellation = CANCELLER.schedule(() -> {
+            cancelled.set(true);
+            try {
+                statement.cancel();
+                CANCELLATIONS.increment();
+            } catch (SQLException e) {
+                System.out.println("Failed to cancel a query: " + e.getMessage());
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+        try {
+            return invoke(statement, method, args);
+        } catch (SQLException e) {
+            if (cancelled.get()) {
+                TIMEOUTS.increment();
+                throw new QueryTimeoutException("The query was cancelled at the deadline: " + e.getMessage(), e);
+            }
+            throw e;
+        } finally {
+            cancellation.cancel(false);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.home.config;
+
+/**
+ * Thrown when a query is cancelled, or not started, because the deadline of the operation running it has passed.
+ * <p>
+ * Unlike an {@link java.sql.SQLException}, which repositories report and swallow, it reaches the caller of the
+ * service operation, and rolls back the {@link UnitOfWork} it runs in.
+ */
+public class QueryTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a {@code QueryTimeoutException}.
+     *
+     * @param message the detail message
+     */
+    public QueryTimeoutException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a {@code QueryTimeoutException} for a query that was cancelled while it ran.
+     *
+     * @param message the detail message
+     * @param cause   the error the cancelled query failed with
+     */
+    public QueryTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,160 @@
+package org.home.config;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@code ReadReplicaRouter} class decides which replica serves a read-only query.
+ * <p>
+ * It keeps a small amount of state per replica (observed latency and a "down until" mark after a failed
+ * connection attempt) and remembers which keys were recently written, so that a user reads their own
+ * writes from the primary until replicas have had time to catch up.
+ */
+class ReadReplicaRouter {
+    private static final long FAILURE_BACKOFF_NANOS = 30_000_000_000L;
+    private static final int STICKY_KEYS_PURGE_THRESHOLD = 10_000;
+    private static final int EWMA_WEIGHT = 8;
+
+    private final int replicaCount;
+    private final ReplicaSelection selection;
+    private final long stickyWindowNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLongArray latencyNanos;
+    private final AtomicLongArray downUntilNanos;
+    private final Map<String, Long> stickyUntilNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code ReadReplicaRouter} for the given number of replicas.
+     *
+     * @param replicaCount      the number of replicas to route between
+     * @param selection         the strategy used to pick a replica
+     * @param stickyWindowMillis how long a written key is served by the primary
+     */
+    ReadReplicaRouter(int replicaCount, ReplicaSelection selection, long stickyWindowMillis) {
+        this.replicaCount = replicaCount;
+        this.selection = selection;
+        this.stickyWindowNanos = stickyWindowMillis * 1_000_000L;
+        this.latencyNanos = new AtomicLongArray(replicaCount);
+        this.downUntilNanos = new AtomicLongArray(replicaCount);
+    }
+
+    /**
+     * Returns the replicas to try for a read, in order of preference.
+     *
+     * @param key the consistency key of the read, or {@code null} if the read has no owner
+     * @return the indexes of the healthy replicas to try; empty if the read must go to the primary
+     */
+    int[] candidates(String key) {
+        if (replicaCount == 0 || isSticky(key)) {
+            return new int[0];
+        }
+        long now = System.nanoTime();
+        int first = selection == ReplicaSelection.LEAST_LATENCY
+                ? fastestReplica(now)
+                : Math.floorMod(nextReplica.getAndIncrement(), replicaCount);
+
+        int[] order = new int[replicaCount];
+        int size = 0;
+        for (int i = 0; i < replicaCount; i++) {
+            int replica = (first + i) % replicaCount;
+            if (isUp(replica, now)) {
+                order[size++] = replica;
+            }
+        }
+        return Arrays.copyOf(order, size);
+    }
+
+    /**
+     * Returns the replicas to try for a read of data with several owners, in order of preference.
+     *
+     * @param keys the consistency keys of the read
+     * @return the indexes of the healthy replicas to try; empty if the read must go to the primary because
+     * one of the keys was recently written
+     */
+    int[] candidatesForAll(Collection<String> keys) {
+        for (String key : keys) {
+            if (isSticky(key)) {
+                return new int[0];
+            }
+        }
+        return candidates(null);
+    }
+
+    /**
+     * Records a successful connection to a replica and how long it took.
+     *
+     * @param replica      the replica index
+     * @param elapsedNanos the time it took to connect
+     */
+    void recordSuccess(int replica, long elapsedNanos) {
+        long previous = latencyNanos.get(replica);
+        long updated = previous == 0 ? elapsedNanos : previous + (elapsedNanos - previous) / EWMA_WEIGHT;
+        latencyNanos.set(replica, updated);
+    }
+
+    /**
+     * Takes a replica out of rotation for a while after a failed connection attempt.
+     *
+     * @param replica the replica index
+     */
+    void recordFailure(int replica) {
+        downUntilNanos.set(replica, System.nanoTime() + FAILURE_BACKOFF_NANOS);
+    }
+
+    /**
+     * Pins reads of the given keys to the primary for the read-your-writes window.
+     *
+     * @param keys the consistency keys that were just written
+     */
+    void markWritten(String... keys) {
+        if (replicaCount == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (stickyUntilNanos.size() > STICKY_KEYS_PURGE_THRESHOLD) {
+            stickyUntilNanos.values().removeIf(until -> until - now <= 0);
+        }
+        for (String key : keys) {
+            if (key != null) {
+                stickyUntilNanos.put(key, now + stickyWindowNanos);
+            }
+        }
+    }
+
+    private boolean isSticky(String key) {
+        if (key == null) {
+            return false;
+        }
+        Long until = stickyUntilNanos.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        stickyUntilNanos.remove(key, until);
+        return false;
+    }
+
+    private boolean isUp(int replica, long now) {
+        long downUntil = downUntilNanos.get(replica);
+        return downUntil == 0 || downUntil - now <= 0;
+    }
+
+    private int fastestReplica(long now) {
+        int best = 0;
+        long bestLatency = Long.MAX_VALUE;
+        for (int i = 0; i < replicaCount; i++) {
+            long latency = latencyNanos.get(i);
+            if (isUp(i, now) && latency < bestLatency) {
+                best = i;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+}
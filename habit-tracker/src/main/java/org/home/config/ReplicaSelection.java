@@ -0,0 +1,20 @@
+package org.home.config;
+
+/**
+ * The {@code ReplicaSelection} enum defines how a read replica is chosen for a read-only query.
+ * <ul>
+ *   <li>{@link #ROUND_ROBIN} - replicas are used in turn.</li>
+ *   <li>{@link #LEAST_LATENCY} - the replica with the lowest observed connection latency is used.</li>
+ * </ul>
+ */
+public enum ReplicaSelection {
+    /**
+     * Spreads reads evenly over all healthy replicas.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Sends reads to the healthy replica that has been answering fastest.
+     */
+    LEAST_LATENCY
+}
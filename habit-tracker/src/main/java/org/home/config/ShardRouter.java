@@ -0,0 +1,184 @@
+package org.home.config;
+
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * The {@code ShardRouter} class maps users, habits and records to one of several databases.
+ * <p>
+ * Every entity lives on the shard of the user that owns it. Ids are allocated from the per-shard
+ * {@code *_id_seq} sequences and encoded as {@code sequenceValue * shardCount + shardIndex}, so they are
+ * unique across all shards and the shard of any user, habit or record id can be computed without a lookup.
+ * With a single shard the encoding leaves sequence values unchanged.
+ * <p>
+ * Queries against every shard run in parallel on threads of the router, in the {@link QueryDeadline}, the
+ * {@link ConcurrencyLimiter} priority and the {@link Tracer} span of the calling thread. Within a
+ * {@link UnitOfWork} they run one shard after another on the calling thread instead, so that they use the
+ * connections of the unit of work and see its uncommitted writes.
+ * <p>
+ * The number of shards must not change once data has been written, because it is part of every id.
+ */
+public class ShardRouter {
+
+    private final List<DBConnectionProvider> shards;
+    private final ExecutorService scatterExecutor;
+
+    /**
+     * Constructs a {@code ShardRouter} over the given shards.
+     *
+     * @param shards the connection providers of the shards, in shard index order
+     */
+    public ShardRouter(List<DBConnectionProvider> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.scatterExecutor = shards.size() > 1
+                ? Executors.newFixedThreadPool(shards.size(), runnable -> {
+                    Thread thread = new Thread(runnable, "shard-scatter");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    /**
+     * Creates a {@code ShardRouter} for an unsharded database.
+     *
+     * @param connectionProvider the connection provider of the only database
+     * @return a router with a single shard
+     */
+    public static ShardRouter single(DBConnectionProvider connectionProvider) {
+        return new ShardRouter(List.of(connectionProvider));
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the shard count
+     */
+    public int shardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the index of the shard an id belongs to.
+     *
+     * @param id a user, habit or record id
+     * @return the shard index
+     */
+    public int shardOf(long id) {
+        return (int) Math.floorMod(id, (long) shards.size());
+    }
+
+    /**
+     * Encodes a sequence value allocated on a shard into a globally unique id.
+     *
+     * @param sequenceValue the value taken from the shard's sequence
+     * @param shard         the index of the shard
+     * @return the id
+     */
+    public long encodeId(long sequenceValue, int shard) {
+        return sequenceValue * shards.size() + shard;
+    }
+
+    /**
+     * Returns the connection provider of the shard an id belongs to.
+     *
+     * @param id a user, habit or record id
+     * @return the connection provider of the owning shard
+     */
+    public DBConnectionProvider forId(Long id) {
+        return shards.get(shardOf(id));
+    }
+
+    /**
+     * Returns the connection provider of a shard.
+     *
+     * @param shard the shard index
+     * @return the connection provider of the shard
+     */
+    public DBConnectionProvider shard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Returns the shard on which a new user with the given email is placed.
+     *
+     * @param email the email of the new user
+     * @return the shard index
+     */
+    public int shardForNewUser(String email) {
+        return Math.floorMod(email.hashCode(), shards.size());
+    }
+
+    /**
+     * Returns the connection providers of all shards.
+     *
+     * @return all shards, in shard index order
+     */
+    public List<DBConnectionProvider> all() {
+        return shards;
+    }
+
+    /**
+     * Runs a query on every shard and collects the results: in parallel, within the deadline, priority and trace
+     * of the calling thread, or one shard after another on the calling thread within a unit of work.
+     *
+     * @param query the query to run against a single shard
+     * @param <T>   the type of the per-shard result
+     * @return the results, in shard index order
+     */
+    public <T> List<T> scatter(Function<DBConnectionProvider, T> query) {
+        if (scatterExecutor == null) {
+            return List.of(query.apply(shards.get(0)));
+        }
+        if (UnitOfWork.isActive()) {
+            List<T> results = new ArrayList<>(shards.size());
+            for (DBConnectionProvider shard : shards) {
+                results.add(query.apply(shard));
+            }
+            return results;
+        }
+        Long deadline = QueryDeadline.currentDeadline();
+        ConcurrencyLimiter.Priority priority = ConcurrencyLimiter.currentPriority();
+        Span parent = Tracer.current();
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int index = 0; index < shards.size(); index++) {
+            DBConnectionProvider shard = shards.get(index);
+            int shardIndex = index;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Span span = Tracer.startSpan("shard.query", parent)) {
+                    span.setAttribute("shard", shardIndex);
+                    try {
+                        return QueryDeadline.withDeadline(deadline,
+                                () -> ConcurrencyLimiter.withPriority(priority, () -> query.apply(shard)));
+                    } catch (RuntimeException e) {
+                        span.recordError(e);
+                        throw e;
+                    }
+                }
+            }, scatterExecutor));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+}
@@ -0,0 +1,43 @@
+package org.home.config;
+
+import java.sql.Connection;
+
+/**
+ * The {@code TransactionIsolation} enum defines the isolation levels a {@link UnitOfWork} can run at.
+ * <ul>
+ *   <li>{@link #READ_COMMITTED} - every statement sees the data committed before it started.</li>
+ *   <li>{@link #REPEATABLE_READ} - every statement sees the data committed before the transaction started.</li>
+ *   <li>{@link #SERIALIZABLE} - the transaction behaves as if it ran alone, or fails with a serialization error.</li>
+ * </ul>
+ */
+public enum TransactionIsolation {
+    /**
+     * The PostgreSQL default; concurrent changes become visible between statements.
+     */
+    READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+
+    /**
+     * A single snapshot for the whole transaction; conflicting updates fail with a serialization error.
+     */
+    REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+
+    /**
+     * Full serializability; transactions that could not have run one after another fail with a serialization error.
+     */
+    SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+    private final int level;
+
+    TransactionIsolation(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns the JDBC constant of the isolation level.
+     *
+     * @return one of the {@code Connection.TRANSACTION_*} constants
+     */
+    public int getLevel() {
+        return level;
+    }
+}
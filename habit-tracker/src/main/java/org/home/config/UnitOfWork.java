@@ -0,0 +1,291 @@
+package org.home.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@code UnitOfWork} class runs a service operation as one transaction per database, however many repository
+ * calls it makes.
+ * <p>
+ * While a unit of work is active on a thread, {@link DBConnectionProvider} hands every repository call on that
+ * thread the same connection to its database, with auto-commit off. Repositories keep their usual
+ * try-with-resources code: closing, committing or switching auto-commit on that connection does nothing, and the
+ * unit of work commits once when the operation returns. A repository that swallows an {@link SQLException} still
+ * rolls the whole unit of work back, because the error is noticed on its way out of the statement.
+ * <p>
+ * A unit of work that fails with a serialization failure or a deadlock is run again from the start, up to the
+ * configured number of retries. Work touching several shards commits them one after another and is atomic per
+ * shard only.
+ */
+public final class UnitOfWork {
+
+    /**
+     * An operation run inside a unit of work.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+
+        /**
+         * Runs the operation.
+         *
+         * @return the result of the operation
+         * @throws SQLException if the operation failed and must be rolled back
+         */
+        T run() throws SQLException;
+    }
+
+    private static final Set<String> RETRYABLE_STATES = Set.of("40001", "40P01");
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+    private static final TransactionIsolation DEFAULT_ISOLATION;
+    private static final int MAX_RETRIES;
+
+    static {
+        ConfigLoader configLoader = new ConfigLoader();
+        DEFAULT_ISOLATION = configLoader.getTransactionIsolation();
+        MAX_RETRIES = configLoader.getTransactionMaxRetries();
+    }
+
+    private final TransactionIsolation isolation;
+    private final Map<DBConnectionProvider, Connection> connections = new IdentityHashMap<>();
+    private final List<Connection> opened = new ArrayList<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private SQLException failure;
+    private boolean rollbackOnly;
+
+    private UnitOfWork(TransactionIsolation isolation) {
+        this.isolation = isolation;
+    }
+
+    /**
+     * Runs an operation in a unit of work at the configured isolation level.
+     *
+     * @param work the operation
+     * @param <T>  the type of the result
+     * @return the result of the operation, or {@code null} if it could not be committed
+     */
+    public static <T> T execute(Work<T> work) {
+        return execute(DEFAULT_ISOLATION, work);
+    }
+
+    /**
+     * Runs an operation in a unit of work. If one is already active on this thread, the operation joins it.
+     *
+     * @param isolation the isolation level of a new unit of work
+     * @param work      the operation
+     * @param <T>       the type of the result
+     * @return the result of the operation, or {@code null} if it could not be committed
+     */
+    public static <T> T execute(TransactionIsolation isolation, Work<T> work) {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            try {
+                return work.run();
+            } catch (SQLException e) {
+                current.fail(e);
+                return null;
+            }
+        }
+        for (int attempt = 0; ; attempt++) {
+            UnitOfWork unitOfWork = new UnitOfWork(isolation);
+            CURRENT.set(unitOfWork);
+            T result = null;
+            try {
+                result = work.run();
+            } catch (SQLException e) {
+                unitOfWork.fail(e);
+            } catch (RuntimeException | Error e) {
+                unitOfWork.rollbackOnly = true;
+                unitOfWork.complete();
+                throw e;
+            } finally {
+                CURRENT.remove();
+            }
+            if (unitOfWork.complete()) {
+                unitOfWork.afterCommit.forEach(Runnable::run);
+                return result;
+            }
+            SQLException error = unitOfWork.failure;
+            if (error == null || !RETRYABLE_STATES.contains(error.getSQLState()) || attempt >= MAX_RETRIES
+                    || !backOff(attempt)) {
+                if (error != null) {
+                    System.out.println("Transaction rolled back: " + error.getMessage());
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a unit of work is active on this thread.
+     *
+     * @return {@code true} if repository calls on this thread share a transaction
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Makes the active unit of work roll back instead of committing. Does nothing outside a unit of work.
+     */
+    public static void setRollbackOnly() {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            current.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * Runs an action once the active unit of work has committed, or right away outside a unit of work. The action
+     * is dropped if the unit of work rolls back.
+     *
+     * @param action the action to run
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork current = CURRENT.get();
+        if (current == null) {
+            action.run();
+        } else {
+            current.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Returns the connection of the active unit of work to the given database, opening it on first use.
+     *
+     * @param connectionProvider the database the connection is for
+     * @return the shared connection, or {@code null} if no unit of work is active on this thread
+     */
+    static Connection join(DBConnectionProvider connectionProvider) {
+        UnitOfWork current = CURRENT.get();
+        if (current == null) {
+            return null;
+        }
+        Connection connection = current.connections.get(connectionProvider);
+        if (connection == null) {
+            Connection real = connectionProvider.openConnection();
+            current.opened.add(real);
+            try {
+                real.setAutoCommit(false);
+                real.setTransactionIsolation(current.isolation.getLevel());
+            } catch (SQLException e) {
+                current.fail(e);
+                throw new IllegalStateException(e);
+            }
+            connection = (Connection) Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, current.new ConnectionHandler(real));
+            current.connections.put(connectionProvider, connection);
+        }
+        return connection;
+    }
+
+    private void fail(SQLException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Commits every connection, or rolls all of them back if anything failed, and closes them.
+     *
+     * @return {@code true} if the unit of work was committed
+     */
+    private boolean complete() {
+        boolean commit = failure == null && !rollbackOnly;
+        for (Connection connection : opened) {
+            try {
+                if (commit) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                fail(e);
+                commit = false;
+            }
+        }
+        for (Connection connection : opened) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Failed to close connection: " + e.getMessage());
+            }
+        }
+        return commit;
+    }
+
+    private static boolean backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L << Math.min(attempt, 6)));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                fail(sqlException);
+            }
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Shares a connection between repository calls: transaction control is left to the unit of work, and the
+     * statements it creates report their errors to it.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close", "commit", "setAutoCommit":
+                    return null;
+                case "rollback":
+                    if (args == null) {
+                        rollbackOnly = true;
+                        return null;
+                    }
+                    break;
+                case "getAutoCommit":
+                    return false;
+                case "isClosed":
+                    return false;
+                default:
+                    break;
+            }
+            Object result = UnitOfWork.this.invoke(connection, method, args);
+            Class<?> type = method.getReturnType();
+            if (type == Statement.class || type == PreparedStatement.class || type == CallableStatement.class) {
+                return Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(), new Class<?>[] {type},
+                        (statementProxy, statementMethod, statementArgs) ->
+                                UnitOfWork.this.invoke(result, statementMethod, statementArgs));
+            }
+            return result;
+        }
+    }
+}
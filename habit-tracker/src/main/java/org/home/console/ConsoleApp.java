@@ -1,15 +1,31 @@
 package org.home.console;
 
 import lombok.NoArgsConstructor;
-import org.home.model.Frequency;
+import org.home.cache.Fetched;
+import org.home.config.DatabaseOverloadedException;
+import org.home.config.DatabaseUnavailableException;
+import org.home.config.QueryTimeoutException;
+import org.home.io.HabitHistoryExporter;
+import org.home.io.HabitHistoryImporter;
+import org.home.io.ImportResult;
+import org.home.leaderboard.LeaderboardEntry;
+import org.home.leaderboard.LeaderboardMetric;
+import org.home.leaderboard.Leaderboards;
 import org.home.model.Habit;
+import org.home.model.Schedule;
 import org.home.model.User;
 import org.home.service.HabitRecordService;
 import org.home.service.HabitService;
 import org.home.service.StatisticsService;
 import org.home.service.UserService;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -27,8 +43,14 @@ public class ConsoleApp {
     private static final HabitService HABIT_SERVICE = new HabitService();
     private static final HabitRecordService RECORD_SERVICE = new HabitRecordService();
     private static final StatisticsService STATISTICS_SERVICE = new StatisticsService();
+    private static final HabitHistoryImporter HISTORY_IMPORTER = new HabitHistoryImporter();
+    private static final HabitHistoryExporter HISTORY_EXPORTER = new HabitHistoryExporter();
+    private static final int LEADERBOARD_SIZE = 10;
     private static User currentUser = null;
+    private static Leaderboards leaderboards = null;
     private static final Scanner SCANNER = new Scanner(System.in);
+    private static final String SCHEDULE_FORMATS =
+            "DAILY, WEEKLY, TIMES_PER_WEEK 3, WEEKDAYS MON,WED,FRI or EVERY_N_DAYS 3";
 
     /**
      * Starts the application and show menus to the user.
@@ -37,11 +59,27 @@ public class ConsoleApp {
      * the main menu is shown where the user can manage their habits and view statistics.
      */
     public static void run() {
+        run(null);
+    }
+
+    /**
+     * Starts the application with leaderboards to show in the main menu.
+     *
+     * @param habitLeaderboards the {@link Leaderboards} to show, or {@code null} if they are disabled
+     */
+    public static void run(Leaderboards habitLeaderboards) {
+        leaderboards = habitLeaderboards;
         while (true) {
-            if (currentUser == null) {
-                showLoginMenu();
-            } else {
-                showMainMenu();
+            try {
+                if (currentUser == null) {
+                    showLoginMenu();
+                } else {
+                    showMainMenu();
+                }
+            } catch (QueryTimeoutException | DatabaseOverloadedException e) {
+                System.out.println("The database is not responding in time. Please try again later.");
+            } catch (DatabaseUnavailableException e) {
+                System.out.println("The database is unavailable. Please try again later.");
             }
         }
     }
@@ -68,6 +106,7 @@ public class ConsoleApp {
         System.out.println("2. Edit Profile");
         System.out.println("3. Delete Account");
         System.out.println("4. Admin Menu");
+        System.out.println("5. Leaderboards");
         System.out.println("0. Logout");
 
         int choice = Integer.parseInt(SCANNER.nextLine());
@@ -77,6 +116,7 @@ public class ConsoleApp {
             case 2 -> editProfile();
             case 3 -> deleteAccount();
             case 4 -> showAdminMenu();
+            case 5 -> viewLeaderboard();
             case 0 -> logout();
             default -> System.out.println("Invalid option, please try again.");
         }
@@ -90,6 +130,8 @@ public class ConsoleApp {
         System.out.println("4. Delete Habit");
         System.out.println("5. Track Habit Completion");
         System.out.println("6. View Habit Statistics");
+        System.out.println("7. Import Habit History");
+        System.out.println("8. Export Habit History");
         System.out.println("0. Back to Main Menu");
 
         int choice = Integer.parseInt(SCANNER.nextLine());
@@ -101,6 +143,8 @@ public class ConsoleApp {
             case 4 -> deleteHabit();
             case 5 -> trackHabitCompletion();
             case 6 -> viewHabitStatistics();
+            case 7 -> importHabitHistory();
+            case 8 -> exportHabitHistory();
             case 0 -> showMainMenu();
             default -> System.out.println("Invalid option, please try again.");
         }
@@ -160,15 +204,21 @@ public class ConsoleApp {
         String title = SCANNER.nextLine();
         System.out.println("Enter habit description:");
         String description = SCANNER.nextLine();
-        System.out.println("Enter habit frequency (DAILY/WEEKLY):");
-        Frequency frequency = Frequency.valueOf(SCANNER.nextLine().toUpperCase());
+        System.out.println("Enter habit frequency (" + SCHEDULE_FORMATS + "):");
+        Schedule schedule = Schedule.parse(SCANNER.nextLine(), LocalDate.now());
 
-        HABIT_SERVICE.createHabit(currentUser, title, description, frequency);
+        HABIT_SERVICE.createHabit(currentUser, title, description, schedule);
         System.out.println("Habit \"" + title + "\" successfully created!");
     }
 
     private static void viewAllHabits() {
-        Map<String, Habit> habits = HABIT_SERVICE.getAllHabits(currentUser);
+        Fetched<Map<String, Habit>> fetched = HABIT_SERVICE.fetchAllHabits(currentUser);
+        if (fetched.isStale()) {
+            System.out.println("The database is unavailable. Showing your habits as of "
+                    + LocalDateTime.ofInstant(fetched.getFetchedAt(), ZoneId.systemDefault())
+                    .truncatedTo(ChronoUnit.SECONDS) + ".");
+        }
+        Map<String, Habit> habits = fetched.getValue();
         if (habits.isEmpty()) {
             System.out.println("You have no habits yet.");
         } else {
@@ -185,10 +235,10 @@ public class ConsoleApp {
         String newTitle = SCANNER.nextLine();
         System.out.println("Enter new description:");
         String newDescription = SCANNER.nextLine();
-        System.out.println("Enter new frequency (DAILY/WEEKLY):");
-        Frequency newFrequency = Frequency.valueOf((SCANNER.nextLine().toUpperCase()));
+        System.out.println("Enter new frequency (" + SCHEDULE_FORMATS + "):");
+        Schedule newSchedule = Schedule.parse(SCANNER.nextLine(), LocalDate.now());
 
-        HABIT_SERVICE.editHabit(currentUser, oldTitle, newTitle, newDescription, newFrequency);
+        HABIT_SERVICE.editHabit(currentUser, oldTitle, newTitle, newDescription, newSchedule);
     }
 
     private static void deleteHabit() {
@@ -222,6 +272,54 @@ public class ConsoleApp {
                 currentUser, habitTitle, startDate, endDate));
     }
 
+    private static void viewLeaderboard() {
+        if (leaderboards == null) {
+            System.out.println("Leaderboards are disabled.");
+            return;
+        }
+        System.out.println("Rank habits by (1. Current streak / 2. Completion rate):");
+        LeaderboardMetric metric = Integer.parseInt(SCANNER.nextLine().trim()) == 2
+                ? LeaderboardMetric.COMPLETION_RATE : LeaderboardMetric.CURRENT_STREAK;
+        System.out.println("Enter a category (DAILY/TIMES_PER_WEEK/WEEKDAYS/EVERY_N_DAYS) or leave empty for all:");
+        String category = SCANNER.nextLine().trim().toUpperCase();
+        List<LeaderboardEntry> entries = leaderboards.getTop(metric,
+                category.isEmpty() ? null : Schedule.Kind.valueOf(category), LEADERBOARD_SIZE);
+        if (entries.isEmpty()) {
+            System.out.println("Nobody is on this leaderboard yet.");
+        }
+        for (LeaderboardEntry entry : entries) {
+            System.out.printf(metric == LeaderboardMetric.COMPLETION_RATE ? "%d. %s (user %d): %.2f%%%n"
+                            : "%d. %s (user %d): %.0f%n",
+                    entry.getRank(), entry.getTitle(), entry.getUserId(), entry.getScore());
+        }
+    }
+
+    private static void importHabitHistory() {
+        System.out.println("Enter the path of the file to import (.csv or .ndjson):");
+        Path file = Path.of(SCANNER.nextLine().trim());
+
+        try {
+            ImportResult result = HISTORY_IMPORTER.importHistory(currentUser, file);
+            System.out.println("Imported " + result.getImportedRecords() + " records, skipped "
+                    + result.getSkippedRecords() + " already tracked, created " + result.getCreatedHabits()
+                    + " habits.");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    private static void exportHabitHistory() {
+        System.out.println("Enter the path of the file to export to (.csv or .ndjson):");
+        Path file = Path.of(SCANNER.nextLine().trim());
+
+        try {
+            long exported = HISTORY_EXPORTER.exportHistory(currentUser, file);
+            System.out.println("Exported " + exported + " records to " + file + ".");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        }
+    }
+
     private static void logout() {
         currentUser = null;
         System.out.println("Logged out successfully.");
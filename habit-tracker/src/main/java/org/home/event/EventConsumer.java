@@ -0,0 +1,29 @@
+package org.home.event;
+
+import org.home.model.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * The {@code EventConsumer} interface receives the events published by an {@link OutboxRelay}.
+ * <p>
+ * Delivery is at least once: a batch whose delivery throws is handed over again on the next poll, so consumers
+ * must tolerate duplicates. Within a shard, and therefore for every user, batches arrive in outbox order.
+ */
+public interface EventConsumer {
+
+    /**
+     * Returns the name the consumer's offsets are stored under. It must stay the same across restarts.
+     *
+     * @return the consumer name
+     */
+    String getName();
+
+    /**
+     * Handles a batch of events.
+     *
+     * @param events the events, in outbox order
+     * @throws Exception if the batch could not be handled and must be delivered again
+     */
+    void accept(List<OutboxEvent> events) throws Exception;
+}
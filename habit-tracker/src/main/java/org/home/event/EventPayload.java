@@ -0,0 +1,69 @@
+package org.home.event;
+
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+
+/**
+ * The {@code EventPayload} class renders habits and habit records as the JSON payload of an outbox event.
+ */
+public final class EventPayload {
+
+    private EventPayload() {
+    }
+
+    /**
+     * Renders a habit.
+     *
+     * @param habit the {@link Habit} to render
+     * @return a JSON object with the id, owner, title, description, frequency and schedule of the habit
+     */
+    public static String of(Habit habit) {
+        return "{\"id\":" + habit.getId() + ",\"userId\":" + habit.getUserId()
+                + ",\"title\":" + jsonString(habit.getTitle())
+                + ",\"description\":" + jsonString(habit.getDescription())
+                + ",\"frequency\":\"" + habit.getFrequency().name()
+                + "\",\"schedule\":\"" + habit.getSchedule() + "\"}";
+    }
+
+    /**
+     * Renders a habit record.
+     *
+     * @param record the {@link HabitRecord} to render
+     * @return a JSON object with the id, habit, date and completion status of the record
+     */
+    public static String of(HabitRecord record) {
+        return "{\"id\":" + record.getId() + ",\"habitId\":" + record.getHabitId()
+                + ",\"date\":\"" + record.getDate() + "\",\"completed\":" + record.isCompleted() + "}";
+    }
+
+    /**
+     * Quotes a string for use in JSON.
+     *
+     * @param value the string to quote, or {@code null}
+     * @return the quoted and escaped string, or {@code null} as a JSON literal
+     */
+    public static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> result.append("\\\"");
+                case '\\' -> result.append("\\\\");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\t' -> result.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package org.home.event;
+
+import org.home.model.OutboxEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * The {@code FileEventConsumer} class appends published events to a local NDJSON file, one event per line.
+ * <p>
+ * It stands in for a message broker: every batch is written with a single write and forced to disk before the
+ * relay moves the consumer's offset, so a crash can repeat events but never lose them.
+ */
+public class FileEventConsumer implements EventConsumer {
+
+    private final String name;
+    private final Path file;
+
+    /**
+     * Constructs a {@code FileEventConsumer}.
+     *
+     * @param name the consumer name its offsets are stored under
+     * @param file the file events are appended to
+     */
+    public FileEventConsumer(String name, Path file) {
+        this.name = name;
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void accept(List<OutboxEvent> events) throws IOException {
+        StringBuilder lines = new StringBuilder(events.size() * 192);
+        for (OutboxEvent event : events) {
+            lines.append("{\"shard\":").append(event.getShard())
+                    .append(",\"transactionId\":").append(event.getPosition().getTransactionId())
+                    .append(",\"id\":").append(event.getPosition().getEventId())
+                    .append(",\"userId\":").append(event.getUserId())
+                    .append(",\"type\":\"").append(event.getType().name())
+                    .append("\",\"aggregateId\":").append(event.getAggregateId())
+                    .append(",\"createdAt\":\"").append(event.getCreatedAt())
+                    .append("\",\"payload\":").append(event.getPayload()).append("}\n");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
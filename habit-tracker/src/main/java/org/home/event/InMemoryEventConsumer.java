@@ -0,0 +1,47 @@
+package org.home.event;
+
+import org.home.model.OutboxEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code InMemoryEventConsumer} class collects published events in memory until they are drained.
+ * <p>
+ * It stands in for a message broker in tests and local runs.
+ */
+public class InMemoryEventConsumer implements EventConsumer {
+
+    private final String name;
+    private final List<OutboxEvent> events = new ArrayList<>();
+
+    /**
+     * Constructs an {@code InMemoryEventConsumer}.
+     *
+     * @param name the consumer name its offsets are stored under
+     */
+    public InMemoryEventConsumer(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void accept(List<OutboxEvent> batch) {
+        events.addAll(batch);
+    }
+
+    /**
+     * Removes and returns all events delivered so far.
+     *
+     * @return the delivered events, in delivery order
+     */
+    public synchronized List<OutboxEvent> drain() {
+        List<OutboxEvent> result = new ArrayList<>(events);
+        events.clear();
+        return result;
+    }
+}
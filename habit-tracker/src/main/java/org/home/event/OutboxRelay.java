@@ -0,0 +1,234 @@
+package org.home.event;
+
+import org.home.config.ConfigLoader;
+import org.home.model.OutboxEvent;
+import org.home.model.OutboxPosition;
+import org.home.repository.OutboxRepository;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code OutboxRelay} class publishes the events of the shard outboxes to a set of {@link EventConsumer}s.
+ * <p>
+ * Each consumer has its own offset per shard, stored next to the outbox. The relay reads the events after the
+ * offset in batches, hands every batch to the consumer and only then moves the offset, so delivery is at least
+ * once and resumes where it stopped after a restart. Events are delivered in outbox order, which keeps the events
+ * of one user in order because all of them live on the user's shard. Events that every consumer has published
+ * are deleted from the outbox.
+ */
+public class OutboxRelay {
+
+    private static final int MAX_BATCHES_PER_POLL = 32;
+
+    private final List<EventConsumer> consumers;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final OutboxPosition[][] offsets;
+    private final OutboxPosition[] purgedUpTo;
+    private final LongAdder[] delivered;
+    private final LongAdder[] failedBatches;
+    private ScheduledExecutorService poller;
+
+    /**
+     * Constructs an {@code OutboxRelay}. The outbox is read through {@link OutboxRepository}.
+     *
+     * @param consumers          the consumers to publish to
+     * @param batchSize          the largest number of events handed to a consumer at once
+     * @param pollIntervalMillis how long the relay waits after a poll before the next one
+     */
+    public OutboxRelay(List<EventConsumer> consumers, int batchSize, long pollIntervalMillis) {
+        int shardCount = OutboxRepository.shardCount();
+        this.consumers = List.copyOf(consumers);
+        this.batchSize = Math.max(1, batchSize);
+        this.pollIntervalMillis = Math.max(1, pollIntervalMillis);
+        this.offsets = new OutboxPosition[consumers.size()][shardCount];
+        this.purgedUpTo = new OutboxPosition[shardCount];
+        this.delivered = new LongAdder[consumers.size()];
+        this.failedBatches = new LongAdder[consumers.size()];
+        for (int i = 0; i < consumers.size(); i++) {
+            delivered[i] = new LongAdder();
+            failedBatches[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates the relay configured in {@code application.yml}, publishing to the configured event log file.
+     *
+     * @param configLoader the configuration to read
+     * @return a new {@code OutboxRelay} that is not started yet
+     */
+    public static OutboxRelay fromConfig(ConfigLoader configLoader) {
+        EventConsumer eventLog = new FileEventConsumer("event-log", Path.of(configLoader.getOutboxEventLog()));
+        return new OutboxRelay(List.of(eventLog), configLoader.getOutboxBatchSize(),
+                configLoader.getOutboxPollMillis());
+    }
+
+    /**
+     * Starts the thread that polls the outboxes.
+     */
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the polling thread after the current poll.
+     */
+    public synchronized void stop() {
+        if (poller != null) {
+            poller.shutdown();
+            poller = null;
+        }
+    }
+
+    /**
+     * Publishes the pending events of every shard to every consumer and deletes the events all of them have
+     * published.
+     *
+     * @return the number of events handed to consumers
+     */
+    public synchronized int pollOnce() {
+        int count = 0;
+        for (int shard = 0; shard < purgedUpTo.length; shard++) {
+            for (int consumer = 0; consumer < consumers.size(); consumer++) {
+                count += publish(consumer, shard);
+            }
+            purge(shard);
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many events a consumer has not published yet, including those of transactions still running.
+     *
+     * @param consumerName the name of the consumer
+     * @return the number of pending events, or {@code -1} if the consumer is unknown or the outbox could not be read
+     */
+    public synchronized long getLag(String consumerName) {
+        int consumer = indexOf(consumerName);
+        if (consumer < 0) {
+            return -1;
+        }
+        long lag = 0;
+        for (int shard = 0; shard < purgedUpTo.length; shard++) {
+            OutboxPosition offset = offset(consumer, shard);
+            long pending = offset == null ? -1 : OutboxRepository.countAfter(shard, offset);
+            if (pending < 0) {
+                return -1;
+            }
+            lag += pending;
+        }
+        return lag;
+    }
+
+    /**
+     * Returns how many events were handed to a consumer since the relay was created.
+     *
+     * @param consumerName the name of the consumer
+     * @return the number of delivered events, counting redeliveries
+     */
+    public long getDeliveredCount(String consumerName) {
+        int consumer = indexOf(consumerName);
+        return consumer < 0 ? 0 : delivered[consumer].sum();
+    }
+
+    /**
+     * Returns how many batches a consumer failed to handle since the relay was created.
+     *
+     * @param consumerName the name of the consumer
+     * @return the number of failed batches
+     */
+    public long getFailedBatchCount(String consumerName) {
+        int consumer = indexOf(consumerName);
+        return consumer < 0 ? 0 : failedBatches[consumer].sum();
+    }
+
+    private void poll() {
+        try {
+            pollOnce();
+        } catch (RuntimeException e) {
+            System.out.println("Failed to relay events: " + e.getMessage());
+        }
+    }
+
+    private int publish(int consumer, int shard) {
+        OutboxPosition offset = offset(consumer, shard);
+        if (offset == null) {
+            return 0;
+        }
+        EventConsumer eventConsumer = consumers.get(consumer);
+        int count = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_POLL; batch++) {
+            List<OutboxEvent> events = OutboxRepository.findAfter(shard, offset, batchSize);
+            if (events.isEmpty()) {
+                break;
+            }
+            try {
+                eventConsumer.accept(events);
+            } catch (Exception e) {
+                failedBatches[consumer].increment();
+                System.out.println("Consumer " + eventConsumer.getName() + " failed to handle events: "
+                        + e.getMessage());
+                break;
+            }
+            count += events.size();
+            delivered[consumer].add(events.size());
+            offset = events.get(events.size() - 1).getPosition();
+            offsets[consumer][shard] = offset;
+            if (!OutboxRepository.saveOffset(shard, eventConsumer.getName(), offset) || events.size() < batchSize) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private void purge(int shard) {
+        OutboxPosition oldest = null;
+        for (OutboxPosition[] consumerOffsets : offsets) {
+            OutboxPosition offset = consumerOffsets[shard];
+            if (offset == null) {
+                return;
+            }
+            if (oldest == null || oldest.isAfter(offset)) {
+                oldest = offset;
+            }
+        }
+        if (oldest != null && (purgedUpTo[shard] == null || oldest.isAfter(purgedUpTo[shard]))) {
+            OutboxRepository.deleteUpTo(shard, oldest);
+            purgedUpTo[shard] = oldest;
+        }
+    }
+
+    private OutboxPosition offset(int consumer, int shard) {
+        if (offsets[consumer][shard] == null) {
+            try {
+                offsets[consumer][shard] = OutboxRepository.findOffset(shard, consumers.get(consumer).getName());
+            } catch (SQLException e) {
+                System.out.println("Got SQL Exception: " + e.getMessage());
+            }
+        }
+        return offsets[consumer][shard];
+    }
+
+    private int indexOf(String consumerName) {
+        for (int i = 0; i < consumers.size(); i++) {
+            if (consumers.get(i).getName().equals(consumerName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
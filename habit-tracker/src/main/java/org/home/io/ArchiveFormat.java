@@ -0,0 +1,98 @@
+package org.home.io;
+
+import org.home.model.Frequency;
+import org.home.model.Schedule;
+
+import java.nio.ByteBuffer;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The {@code ArchiveFormat} class holds the layout constants of record archives written by
+ * {@link RecordArchiveWriter} and read by {@link RecordArchive}.
+ * <p>
+ * An archive starts with a 16-byte header: the magic number, the format version, two reserved bytes and the
+ * offset of the directory. The records of each habit follow as blocks of up to {@link #BLOCK_RECORDS} records.
+ * A block holds the dates as runs of consecutive days, each run written as two unsigned LEB128 varints (the gap
+ * from the last day of the previous run and the run length), followed by a bitmap with one completion bit per
+ * record. The directory at the end lists every habit with its schedule, its totals and, for every block, its
+ * date range, counts and position, so that ranges can be answered without touching the blocks they fully cover.
+ * A schedule takes ten bytes: its kind, the bit mask of its days of the week, its times per week or period
+ * length, and the epoch day of its anchor. Archives of version 1 hold a single frequency byte instead.
+ * All numbers are big-endian.
+ */
+final class ArchiveFormat {
+
+    static final int MAGIC = 0x48544152;
+    static final short VERSION = 2;
+    static final short FREQUENCY_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int BLOCK_RECORDS = 4096;
+    static final int HABIT_ENTRY_SIZE = 8 + 1 + 1 + 4 + 4 + 8 + 8 + 4;
+    static final int BLOCK_ENTRY_SIZE = 4 + 4 + 4 + 4 + 8 + 4;
+    static final int MAX_VARINT_LENGTH = 5;
+
+    private static final Schedule.Kind[] KINDS = Schedule.Kind.values();
+    private static final Frequency[] FREQUENCIES = Frequency.values();
+
+    private ArchiveFormat() {
+    }
+
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static void putSchedule(ByteBuffer buffer, Schedule schedule) {
+        int weekdayMask = 0;
+        for (DayOfWeek weekday : schedule.getWeekdays()) {
+            weekdayMask |= 1 << weekday.ordinal();
+        }
+        LocalDate anchor = schedule.getAnchor();
+        buffer.put((byte) schedule.getKind().ordinal())
+                .put((byte) weekdayMask)
+                .putInt(schedule.getKind() == Schedule.Kind.TIMES_PER_WEEK
+                        ? schedule.getTimesPerWeek() : schedule.getPeriodDays())
+                .putInt(anchor == null ? 0 : Math.toIntExact(anchor.toEpochDay()));
+    }
+
+    static Schedule getSchedule(ByteBuffer buffer, short version) {
+        if (version == FREQUENCY_VERSION) {
+            return Schedule.of(FREQUENCIES[buffer.get()]);
+        }
+        Schedule.Kind kind = KINDS[buffer.get()];
+        int weekdayMask = buffer.get();
+        int count = buffer.getInt();
+        LocalDate anchor = LocalDate.ofEpochDay(buffer.getInt());
+        return switch (kind) {
+            case TIMES_PER_WEEK -> Schedule.timesPerWeek(count);
+            case WEEKDAYS -> {
+                Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+                for (DayOfWeek weekday : DayOfWeek.values()) {
+                    if ((weekdayMask & (1 << weekday.ordinal())) != 0) {
+                        weekdays.add(weekday);
+                    }
+                }
+                yield Schedule.onWeekdays(weekdays);
+            }
+            case EVERY_N_DAYS -> Schedule.everyNDays(count, anchor);
+            default -> Schedule.daily();
+        };
+    }
+}
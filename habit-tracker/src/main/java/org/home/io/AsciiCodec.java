@@ -0,0 +1,146 @@
+package org.home.io;
+
+/**
+ * The {@code AsciiCodec} class reads and writes numbers and ISO dates directly as ASCII bytes.
+ * <p>
+ * It is used on bulk import and export paths, where going through {@code String} and {@code LocalDate}
+ * for every row would dominate the cost. Dates are handled as epoch days for years 0000 to 9999.
+ */
+public final class AsciiCodec {
+
+    /**
+     * The number of bytes of a date in {@code yyyy-MM-dd} form.
+     */
+    public static final int DATE_LENGTH = 10;
+
+    /**
+     * The largest number of bytes {@link #writeLong} may write.
+     */
+    public static final int MAX_LONG_LENGTH = 20;
+
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+
+    private AsciiCodec() {
+    }
+
+    /**
+     * Writes a number in decimal.
+     *
+     * @param value  the number to write
+     * @param dst    the destination buffer
+     * @param offset where to start writing
+     * @return the offset just past the written bytes
+     */
+    public static int writeLong(long value, byte[] dst, int offset) {
+        if (value == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        int pos = offset;
+        if (value < 0) {
+            dst[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            dst[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Writes an epoch day as a {@code yyyy-MM-dd} date.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @param dst      the destination buffer
+     * @param offset   where to start writing
+     * @return the offset just past the written bytes
+     */
+    public static int writeEpochDay(long epochDay, byte[] dst, int offset) {
+        long z = epochDay + 719_468L;
+        long era = Math.floorDiv(z, 146_097L);
+        long dayOfEra = z - era * 146_097L;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+        writeDigits((int) year, 4, dst, offset);
+        dst[offset + 4] = '-';
+        writeDigits(month, 2, dst, offset + 5);
+        dst[offset + 7] = '-';
+        writeDigits(day, 2, dst, offset + 8);
+        return offset + DATE_LENGTH;
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} date into an epoch day.
+     *
+     * @param src    the source buffer
+     * @param offset where the date starts
+     * @return the number of days since 1970-01-01, or {@link Long#MIN_VALUE} if the bytes are not a valid date
+     */
+    public static long parseEpochDay(byte[] src, int offset) {
+        if (src[offset + 4] != '-' || src[offset + 7] != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = parseDigits(src, offset, 4);
+        int month = parseDigits(src, offset + 5, 2);
+        int day = parseDigits(src, offset + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+
+    /**
+     * Returns the number of days between 0000-01-01 and the given epoch day, which is never negative for the
+     * supported years.
+     *
+     * @param epochDay the number of days since 1970-01-01
+     * @return the day index counted from 0000-01-01
+     */
+    public static int dayIndex(long epochDay) {
+        return (int) (epochDay + DAYS_0000_TO_1970);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static int parseDigits(byte[] src, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = src[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void writeDigits(int value, int count, byte[] dst, int offset) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            dst[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.home.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * The {@code ChannelLineReader} class splits the bytes of a channel into lines without decoding them.
+ * <p>
+ * Lines are exposed as ranges of an internal buffer that is refilled from the channel as needed, so memory
+ * use is fixed by the buffer size no matter how large the file is. A line must fit into the buffer.
+ * A UTF-8 byte order mark at the start of the input and {@code \r} before {@code \n} are dropped.
+ */
+final class ChannelLineReader {
+
+    private final ReadableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer byteBuffer;
+    private int readPos;
+    private int scanPos;
+    private int dataEnd;
+    private boolean endOfInput;
+    private int lineStart;
+    private int lineEnd;
+    private long lineNumber;
+
+    ChannelLineReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return {@code true} if there is a line; {@code false} at the end of the input
+     * @throws IOException if reading fails or a line does not fit into the buffer
+     */
+    boolean next() throws IOException {
+        while (true) {
+            for (int i = scanPos; i < dataEnd; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(readPos, i);
+                    readPos = i + 1;
+                    scanPos = readPos;
+                    return true;
+                }
+            }
+            scanPos = dataEnd;
+            if (endOfInput) {
+                if (readPos == dataEnd) {
+                    return false;
+                }
+                setLine(readPos, dataEnd);
+                readPos = dataEnd;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] != ' ' && buffer[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setLine(int start, int end) {
+        lineNumber++;
+        if (lineNumber == 1 && startsWithByteOrderMark(start, end)) {
+            start += 3;
+        }
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private boolean startsWithByteOrderMark(int start, int end) {
+        return end - start >= 3 && buffer[start] == (byte) 0xEF
+                && buffer[start + 1] == (byte) 0xBB && buffer[start + 2] == (byte) 0xBF;
+    }
+
+    private void fill() throws IOException {
+        if (readPos > 0) {
+            System.arraycopy(buffer, readPos, buffer, 0, dataEnd - readPos);
+            dataEnd -= readPos;
+            scanPos -= readPos;
+            readPos = 0;
+        }
+        if (dataEnd == buffer.length) {
+            throw new IOException("Line " + (lineNumber + 1) + " is longer than " + buffer.length + " bytes");
+        }
+        byteBuffer.limit(buffer.length).position(dataEnd);
+        int read = channel.read(byteBuffer);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            dataEnd += read;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.home.io;
+
+import java.io.IOException;
+
+/**
+ * The {@code CsvRowParser} class parses lines of the form
+ * {@code title,description,frequency,schedule,date,completed}.
+ * <p>
+ * The schedule column is optional, so that files written before it was added still import; the frequency stands
+ * for the schedule of their rows. No schedule can be mistaken for the date that follows the frequency in them.
+ * <p>
+ * Fields may be enclosed in double quotes, in which case they may contain commas and doubled quotes.
+ * Quoted fields cannot span lines.
+ */
+final class CsvRowParser implements RowParser {
+
+    static final String HEADER = "title,description,frequency,schedule,date,completed";
+
+    private static final int SHORT_FIELD_LENGTH = 64;
+
+    private final byte[] shortField = new byte[SHORT_FIELD_LENGTH];
+    private int fieldLength;
+    private int pos;
+
+    @Override
+    public boolean isHeader(byte[] line, int start, int end) {
+        return end - start >= 6 && line[start] == 't' && line[start + 1] == 'i' && line[start + 2] == 't'
+                && line[start + 3] == 'l' && line[start + 4] == 'e' && line[start + 5] == ',';
+    }
+
+    @Override
+    public void parse(byte[] line, int start, int end, HistoryRow row, long lineNumber) throws IOException {
+        row.clear();
+        pos = start;
+
+        readField(line, end, row.title, lineNumber);
+        row.titleLength = fieldLength;
+        if (row.titleLength == 0) {
+            throw malformed(lineNumber, "empty title");
+        }
+        readField(line, end, row.description, lineNumber);
+        row.descriptionLength = fieldLength;
+        readField(line, end, shortField, lineNumber);
+        if (!row.setFrequency(shortField, 0, fieldLength)) {
+            throw malformed(lineNumber, "unknown frequency");
+        }
+        readField(line, end, shortField, lineNumber);
+        if (!row.setDate(shortField, 0, fieldLength)) {
+            if (!row.setSchedule(shortField, 0, fieldLength)) {
+                throw malformed(lineNumber, "invalid schedule or date");
+            }
+            readField(line, end, shortField, lineNumber);
+            if (!row.setDate(shortField, 0, fieldLength)) {
+                throw malformed(lineNumber, "invalid date");
+            }
+        }
+        readField(line, end, shortField, lineNumber);
+        if (!row.setCompleted(shortField, 0, fieldLength)) {
+            throw malformed(lineNumber, "completed must be true or false");
+        }
+        if (pos <= end) {
+            throw malformed(lineNumber, "too many fields");
+        }
+    }
+
+    /**
+     * Copies the field at {@link #pos} into {@code dst}, unquoting it, and moves past the following comma.
+     * After the last field {@link #pos} is left beyond {@code end}.
+     */
+    private void readField(byte[] line, int end, byte[] dst, long lineNumber) throws IOException {
+        if (pos > end) {
+            throw malformed(lineNumber, "too few fields");
+        }
+        int length = 0;
+        if (pos < end && line[pos] == '"') {
+            pos++;
+            while (true) {
+                if (pos >= end) {
+                    throw malformed(lineNumber, "unterminated quoted field");
+                }
+                byte b = line[pos++];
+                if (b == '"') {
+                    if (pos < end && line[pos] == '"') {
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+                if (length == dst.length) {
+                    throw malformed(lineNumber, "field too long");
+                }
+                dst[length++] = b;
+            }
+            if (pos < end && line[pos] != ',') {
+                throw malformed(lineNumber, "unexpected character after quoted field");
+            }
+        } else {
+            while (pos < end && line[pos] != ',') {
+                if (length == dst.length) {
+                    throw malformed(lineNumber, "field too long");
+                }
+                dst[length++] = line[pos++];
+            }
+        }
+        fieldLength = length;
+        pos++;
+    }
+
+    private static IOException malformed(long lineNumber, String reason) {
+        return new IOException("Line " + lineNumber + ": " + reason);
+    }
+}
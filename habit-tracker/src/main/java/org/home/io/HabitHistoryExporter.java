@@ -0,0 +1,196 @@
+package org.home.io;
+
+import org.home.model.Habit;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code HabitHistoryExporter} class writes all habit records of a user to a CSV or NDJSON file.
+ * <p>
+ * Records are read through a database cursor and encoded straight into a fixed-size buffer that is flushed
+ * to the file as it fills up, so the history is never held in memory. The parts of a line that describe the
+ * habit are encoded once per habit. Files written here can be read back by {@link HabitHistoryImporter}.
+ */
+public class HabitHistoryExporter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RECORD_TAIL_LENGTH = 64;
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Exports the history of a user, picking the format from the file extension.
+     *
+     * @param user the {@link User} whose habits are exported
+     * @param file the file to write; an existing file is overwritten
+     * @return the number of exported records
+     * @throws IOException if the file cannot be written or the records cannot be read
+     */
+    public long exportHistory(User user, Path file) throws IOException {
+        return exportHistory(user, file, HistoryFormat.of(file));
+    }
+
+    /**
+     * Exports the history of a user in the given format.
+     *
+     * @param user   the {@link User} whose habits are exported
+     * @param file   the file to write; an existing file is overwritten
+     * @param format the format of the file
+     * @return the number of exported records
+     * @throws IOException if the file cannot be written or the records cannot be read
+     */
+    public long exportHistory(User user, Path file, HistoryFormat format) throws IOException {
+        Map<Long, byte[]> linePrefixes = new HashMap<>();
+        for (Habit habit : HabitRepository.getAllUserHabits(user).values()) {
+            linePrefixes.put(habit.getId(), linePrefix(habit, format));
+        }
+        byte[] dateSuffix = (format == HistoryFormat.CSV ? "," : "\",\"completed\":")
+                .getBytes(StandardCharsets.US_ASCII);
+        byte[] lineSuffix = (format == HistoryFormat.CSV ? "\n" : "}\n").getBytes(StandardCharsets.US_ASCII);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output output = new Output(channel);
+            if (format == HistoryFormat.CSV) {
+                output.write((CsvRowParser.HEADER + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+            long[] count = new long[1];
+            long[] currentHabitId = {Long.MIN_VALUE};
+            byte[][] currentPrefix = new byte[1][];
+            boolean read = HabitRecordRepository.forEachUserRecord(user.getId(), (habitId, epochDay, completed) -> {
+                if (habitId != currentHabitId[0]) {
+                    currentHabitId[0] = habitId;
+                    currentPrefix[0] = linePrefixes.get(habitId);
+                }
+                if (currentPrefix[0] == null) {
+                    return;
+                }
+                output.write(currentPrefix[0]);
+                output.writeRecordTail(epochDay, dateSuffix, completed, lineSuffix);
+                count[0]++;
+            });
+            if (!read) {
+                throw new IOException("Could not read the records of user " + user.getEmail());
+            }
+            output.flush();
+            return count[0];
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static byte[] linePrefix(Habit habit, HistoryFormat format) {
+        String prefix;
+        if (format == HistoryFormat.CSV) {
+            prefix = csvField(habit.getTitle()) + "," + csvField(habit.getDescription()) + ","
+                    + habit.getFrequency().name() + "," + csvField(habit.getSchedule().toString()) + ",";
+        } else {
+            prefix = "{\"title\":" + jsonString(habit.getTitle())
+                    + ",\"description\":" + jsonString(habit.getDescription())
+                    + ",\"frequency\":\"" + habit.getFrequency().name()
+                    + "\",\"schedule\":\"" + habit.getSchedule() + "\",\"date\":\"";
+        }
+        return prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean needsQuotes = value.startsWith("\"") || value.contains(",") || value.contains("\n")
+                || value.contains("\r");
+        return needsQuotes ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "\"\"";
+        }
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> result.append("\\\"");
+                case '\\' -> result.append("\\\\");
+                case '\n' -> result.append("\\n");
+                case '\r' -> result.append("\\r");
+                case '\t' -> result.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /**
+     * Buffers bytes on their way to the file.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        private int pos;
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(byte[] bytes) {
+            if (bytes.length > buffer.length - pos) {
+                flush();
+            }
+            if (bytes.length > buffer.length) {
+                writeFully(ByteBuffer.wrap(bytes));
+                return;
+            }
+            System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void writeRecordTail(long epochDay, byte[] dateSuffix, boolean completed, byte[] lineSuffix) {
+            if (buffer.length - pos < MAX_RECORD_TAIL_LENGTH) {
+                flush();
+            }
+            pos = AsciiCodec.writeEpochDay(epochDay, buffer, pos);
+            System.arraycopy(dateSuffix, 0, buffer, pos, dateSuffix.length);
+            pos += dateSuffix.length;
+            byte[] value = completed ? TRUE : FALSE;
+            System.arraycopy(value, 0, buffer, pos, value.length);
+            pos += value.length;
+            System.arraycopy(lineSuffix, 0, buffer, pos, lineSuffix.length);
+            pos += lineSuffix.length;
+        }
+
+        private void flush() {
+            byteBuffer.clear().limit(pos);
+            writeFully(byteBuffer);
+            pos = 0;
+        }
+
+        private void writeFully(ByteBuffer bytes) {
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
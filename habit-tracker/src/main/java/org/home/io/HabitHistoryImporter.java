@@ -0,0 +1,128 @@
+package org.home.io;
+
+import org.home.model.Habit;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.RecordBatch;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * The {@code HabitHistoryImporter} class loads habit records of a user from a CSV or NDJSON file.
+ * <p>
+ * The file is streamed through a fixed-size buffer and parsed in place, and records are saved in batches
+ * through {@link HabitRecordRepository#saveAll(RecordBatch)}, so memory use does not depend on the size of the
+ * file. Habits that the user does not have yet are created from the first row that mentions them. Records for
+ * dates the habit already has, in the database or earlier in the file, are skipped.
+ */
+public class HabitHistoryImporter {
+
+    private static final int LINE_BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_SIZE = 8192;
+
+    /**
+     * Imports a history file, picking the format from its extension.
+     *
+     * @param user the {@link User} who owns the imported habits
+     * @param file the file to import
+     * @return the numbers of imported and skipped records and of created habits
+     * @throws IOException if the file cannot be read, is malformed, or the records cannot be saved;
+     *                     records of earlier batches stay saved
+     */
+    public ImportResult importHistory(User user, Path file) throws IOException {
+        return importHistory(user, file, HistoryFormat.of(file));
+    }
+
+    /**
+     * Imports a history file in the given format.
+     *
+     * @param user   the {@link User} who owns the imported habits
+     * @param file   the file to import
+     * @param format the format of the file
+     * @return the numbers of imported and skipped records and of created habits
+     * @throws IOException if the file cannot be read, is malformed, or the records cannot be saved;
+     *                     records of earlier batches stay saved
+     */
+    public ImportResult importHistory(User user, Path file, HistoryFormat format) throws IOException {
+        Map<String, Habit> habits = HabitRepository.getAllUserHabits(user);
+        RowParser parser = format == HistoryFormat.CSV ? new CsvRowParser() : new NdjsonRowParser();
+        HistoryRow row = new HistoryRow(LINE_BUFFER_SIZE);
+        RecordBatch batch = new RecordBatch(BATCH_SIZE);
+        BitSet recordedDays = new BitSet();
+        byte[] currentTitle = new byte[LINE_BUFFER_SIZE];
+        int currentTitleLength = -1;
+        long habitId = 0;
+        long imported = 0;
+        long skipped = 0;
+        int created = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ChannelLineReader reader = new ChannelLineReader(channel, LINE_BUFFER_SIZE);
+            while (reader.next()) {
+                byte[] line = reader.buffer();
+                if (reader.isBlank()
+                        || reader.lineNumber() == 1 && parser.isHeader(line, reader.lineStart(), reader.lineEnd())) {
+                    continue;
+                }
+                parser.parse(line, reader.lineStart(), reader.lineEnd(), row, reader.lineNumber());
+
+                if (!row.titleEquals(currentTitle, currentTitleLength)) {
+                    flush(batch);
+                    System.arraycopy(row.title, 0, currentTitle, 0, row.titleLength);
+                    currentTitleLength = row.titleLength;
+
+                    Habit habit = habits.get(row.title());
+                    if (habit == null) {
+                        habit = createHabit(user, row);
+                        habits.put(habit.getTitle(), habit);
+                        created++;
+                    }
+                    habitId = habit.getId();
+                    recordedDays.clear();
+                    for (long day : HabitRecordRepository.findRecordedDays(habitId)) {
+                        recordedDays.set(AsciiCodec.dayIndex(day));
+                    }
+                }
+
+                int dayIndex = AsciiCodec.dayIndex(row.epochDay);
+                if (recordedDays.get(dayIndex)) {
+                    skipped++;
+                    continue;
+                }
+                recordedDays.set(dayIndex);
+                batch.add(habitId, row.epochDay, row.completed);
+                imported++;
+                if (batch.isFull()) {
+                    flush(batch);
+                }
+            }
+            flush(batch);
+        }
+        return new ImportResult(imported, skipped, created);
+    }
+
+    private static Habit createHabit(User user, HistoryRow row) throws IOException {
+        Habit habit = new Habit(row.title(), row.description(), row.schedule(), user.getId());
+        HabitRepository.save(habit);
+        if (habit.getId() == null) {
+            throw new IOException("Could not create habit \"" + habit.getTitle() + "\"");
+        }
+        return habit;
+    }
+
+    private static void flush(RecordBatch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        if (!HabitRecordRepository.saveAll(batch)) {
+            throw new IOException("Could not save imported records");
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package org.home.io;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The {@code HistoryFormat} enum lists the file formats habit histories can be imported from and exported to.
+ * <ul>
+ *   <li>{@link #CSV} - one record per line: {@code title,description,frequency,schedule,date,completed}.</li>
+ *   <li>{@link #NDJSON} - one JSON object per line with the same fields.</li>
+ * </ul>
+ */
+public enum HistoryFormat {
+    /**
+     * Comma-separated values with a header line; text fields are quoted when needed.
+     */
+    CSV,
+
+    /**
+     * Newline-delimited JSON objects.
+     */
+    NDJSON;
+
+    /**
+     * Picks the format from the extension of a file name.
+     *
+     * @param file the history file
+     * @return {@link #CSV} for {@code .csv} files, {@link #NDJSON} for {@code .ndjson} and {@code .jsonl} files
+     * @throws IllegalArgumentException if the extension is not recognised
+     */
+    public static HistoryFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        } else if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unknown history file format: " + file);
+    }
+}
@@ -0,0 +1,129 @@
+package org.home.io;
+
+import org.home.model.Frequency;
+import org.home.model.Schedule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@code HistoryRow} class holds one parsed line of a history file.
+ * <p>
+ * A single instance is reused for every line; text fields are kept as UTF-8 bytes so that parsing a row does
+ * not create any objects. A schedule is only parsed when it differs from the one of the previous row.
+ */
+final class HistoryRow {
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final Frequency[] FREQUENCIES = Frequency.values();
+    private static final byte[][] FREQUENCY_NAMES = new byte[FREQUENCIES.length][];
+    private static final int MAX_SCHEDULE_LENGTH = 64;
+
+    static {
+        for (int i = 0; i < FREQUENCIES.length; i++) {
+            FREQUENCY_NAMES[i] = FREQUENCIES[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    final byte[] title;
+    int titleLength;
+    final byte[] description;
+    int descriptionLength;
+    Frequency frequency;
+    Schedule schedule;
+    long epochDay;
+    boolean completed;
+    private final byte[] lastScheduleText = new byte[MAX_SCHEDULE_LENGTH];
+    private int lastScheduleTextLength = -1;
+    private Schedule lastSchedule;
+
+    HistoryRow(int maxTextLength) {
+        this.title = new byte[maxTextLength];
+        this.description = new byte[maxTextLength];
+    }
+
+    void clear() {
+        titleLength = -1;
+        descriptionLength = 0;
+        frequency = null;
+        schedule = null;
+        epochDay = Long.MIN_VALUE;
+    }
+
+    String title() {
+        return new String(title, 0, titleLength, StandardCharsets.UTF_8);
+    }
+
+    String description() {
+        return new String(description, 0, descriptionLength, StandardCharsets.UTF_8);
+    }
+
+    Schedule schedule() {
+        return schedule != null ? schedule : Schedule.of(frequency);
+    }
+
+    boolean titleEquals(byte[] other, int otherLength) {
+        return titleLength == otherLength
+                && Arrays.equals(title, 0, titleLength, other, 0, otherLength);
+    }
+
+    boolean setFrequency(byte[] src, int offset, int length) {
+        for (int i = 0; i < FREQUENCY_NAMES.length; i++) {
+            if (equalsIgnoreCase(FREQUENCY_NAMES[i], src, offset, length)) {
+                frequency = FREQUENCIES[i];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean setSchedule(byte[] src, int offset, int length) {
+        if (length > MAX_SCHEDULE_LENGTH) {
+            return false;
+        }
+        if (length != lastScheduleTextLength
+                || !Arrays.equals(lastScheduleText, 0, length, src, offset, offset + length)) {
+            try {
+                lastSchedule = Schedule.parse(new String(src, offset, length, StandardCharsets.US_ASCII));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            System.arraycopy(src, offset, lastScheduleText, 0, length);
+            lastScheduleTextLength = length;
+        }
+        schedule = lastSchedule;
+        return true;
+    }
+
+    boolean setDate(byte[] src, int offset, int length) {
+        if (length != AsciiCodec.DATE_LENGTH) {
+            return false;
+        }
+        epochDay = AsciiCodec.parseEpochDay(src, offset);
+        return epochDay != Long.MIN_VALUE;
+    }
+
+    boolean setCompleted(byte[] src, int offset, int length) {
+        if (equalsIgnoreCase(TRUE, src, offset, length)) {
+            completed = true;
+            return true;
+        } else if (equalsIgnoreCase(FALSE, src, offset, length)) {
+            completed = false;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] letters, byte[] src, int offset, int length) {
+        if (length != letters.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((letters[i] | 0x20) != (src[offset + i] | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package org.home.io;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The {@code ImportResult} class summarises an import of a habit history file.
+ */
+@Getter
+@AllArgsConstructor
+public class ImportResult {
+    private final long importedRecords;
+    private final long skippedRecords;
+    private final int createdHabits;
+}
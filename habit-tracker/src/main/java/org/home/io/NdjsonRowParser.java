@@ -0,0 +1,258 @@
+package org.home.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code NdjsonRowParser} class parses lines holding one flat JSON object such as
+ * {@code {"title":"Run","description":"","frequency":"DAILY","schedule":"DAILY","date":"2024-10-19",
+ * "completed":true}}.
+ * <p>
+ * {@code description} and {@code schedule} are optional, the frequency standing for a missing schedule, and
+ * unknown fields are ignored, provided their values are strings, numbers, booleans or {@code null}.
+ */
+final class NdjsonRowParser implements RowParser {
+
+    private static final byte[] TITLE = "title".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DESCRIPTION = "description".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FREQUENCY = "frequency".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SCHEDULE = "schedule".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATE = "date".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMPLETED = "completed".getBytes(StandardCharsets.US_ASCII);
+    private static final int SHORT_FIELD_LENGTH = 64;
+
+    private final byte[] key = new byte[SHORT_FIELD_LENGTH];
+    private final byte[] shortField = new byte[SHORT_FIELD_LENGTH];
+    private int fieldLength;
+    private int pos;
+    private long lineNumber;
+
+    @Override
+    public boolean isHeader(byte[] line, int start, int end) {
+        return false;
+    }
+
+    @Override
+    public void parse(byte[] line, int start, int end, HistoryRow row, long lineNumber) throws IOException {
+        row.clear();
+        this.pos = start;
+        this.lineNumber = lineNumber;
+        boolean hasCompleted = false;
+
+        skipWhitespace(line, end);
+        expect(line, end, '{');
+        skipWhitespace(line, end);
+        if (pos < end && line[pos] == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace(line, end);
+                readString(line, end, key, true);
+                int keyLength = fieldLength;
+                skipWhitespace(line, end);
+                expect(line, end, ':');
+                skipWhitespace(line, end);
+                if (matches(TITLE, keyLength)) {
+                    readString(line, end, row.title, false);
+                    row.titleLength = fieldLength;
+                } else if (matches(DESCRIPTION, keyLength)) {
+                    readString(line, end, row.description, false);
+                    row.descriptionLength = fieldLength;
+                } else if (matches(FREQUENCY, keyLength)) {
+                    readString(line, end, shortField, false);
+                    if (!row.setFrequency(shortField, 0, fieldLength)) {
+                        throw malformed("unknown frequency");
+                    }
+                } else if (matches(SCHEDULE, keyLength)) {
+                    readString(line, end, shortField, false);
+                    if (!row.setSchedule(shortField, 0, fieldLength)) {
+                        throw malformed("invalid schedule");
+                    }
+                } else if (matches(DATE, keyLength)) {
+                    readString(line, end, shortField, false);
+                    if (!row.setDate(shortField, 0, fieldLength)) {
+                        throw malformed("invalid date");
+                    }
+                } else if (matches(COMPLETED, keyLength)) {
+                    int literalStart = pos;
+                    skipLiteral(line, end);
+                    if (!row.setCompleted(line, literalStart, pos - literalStart)) {
+                        throw malformed("completed must be true or false");
+                    }
+                    hasCompleted = true;
+                } else {
+                    skipValue(line, end);
+                }
+                skipWhitespace(line, end);
+                if (pos < end && line[pos] == ',') {
+                    pos++;
+                } else {
+                    expect(line, end, '}');
+                    break;
+                }
+            }
+        }
+        skipWhitespace(line, end);
+        if (pos != end) {
+            throw malformed("unexpected content after object");
+        }
+        if (row.titleLength <= 0 || row.frequency == null || row.epochDay == Long.MIN_VALUE || !hasCompleted) {
+            throw malformed("title, frequency, date and completed are required");
+        }
+    }
+
+    private boolean matches(byte[] name, int keyLength) {
+        if (name.length != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (key[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the JSON string at {@link #pos} into {@code dst} as UTF-8. Keys that do not fit are truncated,
+     * as they cannot match a known name anyway.
+     */
+    private void readString(byte[] line, int end, byte[] dst, boolean truncate) throws IOException {
+        expect(line, end, '"');
+        int length = 0;
+        while (true) {
+            if (pos >= end) {
+                throw malformed("unterminated string");
+            }
+            byte b = line[pos++];
+            if (b == '"') {
+                break;
+            }
+            int codePoint = -1;
+            if (b == '\\') {
+                if (pos >= end) {
+                    throw malformed("unterminated string");
+                }
+                byte escape = line[pos++];
+                switch (escape) {
+                    case '"', '\\', '/' -> b = escape;
+                    case 'b' -> b = '\b';
+                    case 'f' -> b = '\f';
+                    case 'n' -> b = '\n';
+                    case 'r' -> b = '\r';
+                    case 't' -> b = '\t';
+                    case 'u' -> codePoint = readUnicodeEscape(line, end);
+                    default -> throw malformed("invalid escape");
+                }
+            }
+            if (codePoint < 0) {
+                if (length < dst.length) {
+                    dst[length++] = b;
+                } else if (!truncate) {
+                    throw malformed("string too long");
+                }
+            } else {
+                int encodedLength = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+                if (length + encodedLength <= dst.length) {
+                    length = encodeUtf8(codePoint, dst, length);
+                } else if (!truncate) {
+                    throw malformed("string too long");
+                }
+            }
+        }
+        fieldLength = length;
+    }
+
+    private int readUnicodeEscape(byte[] line, int end) throws IOException {
+        int unit = readHex4(line, end);
+        if (unit >= 0xD800 && unit <= 0xDBFF) {
+            if (pos + 1 < end && line[pos] == '\\' && line[pos + 1] == 'u') {
+                pos += 2;
+                int low = readHex4(line, end);
+                if (low >= 0xDC00 && low <= 0xDFFF) {
+                    return 0x10000 + ((unit - 0xD800) << 10) + (low - 0xDC00);
+                }
+            }
+            throw malformed("invalid surrogate pair");
+        }
+        if (unit >= 0xDC00 && unit <= 0xDFFF) {
+            throw malformed("invalid surrogate pair");
+        }
+        return unit;
+    }
+
+    private int readHex4(byte[] line, int end) throws IOException {
+        if (pos + 4 > end) {
+            throw malformed("invalid unicode escape");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(line[pos++], 16);
+            if (digit < 0) {
+                throw malformed("invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static int encodeUtf8(int codePoint, byte[] dst, int offset) {
+        if (codePoint < 0x80) {
+            dst[offset++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            dst[offset++] = (byte) (0xC0 | (codePoint >> 6));
+            dst[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            dst[offset++] = (byte) (0xE0 | (codePoint >> 12));
+            dst[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            dst[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            dst[offset++] = (byte) (0xF0 | (codePoint >> 18));
+            dst[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            dst[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            dst[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return offset;
+    }
+
+    private void skipValue(byte[] line, int end) throws IOException {
+        if (pos < end && line[pos] == '"') {
+            readString(line, end, shortField, true);
+        } else if (pos < end && (line[pos] == '{' || line[pos] == '[')) {
+            throw malformed("nested values are not supported");
+        } else {
+            int literalStart = pos;
+            skipLiteral(line, end);
+            if (pos == literalStart) {
+                throw malformed("unsupported value");
+            }
+        }
+    }
+
+    private void skipLiteral(byte[] line, int end) {
+        while (pos < end) {
+            byte b = line[pos];
+            if (b == ',' || b == '}' || b == ' ' || b == '\t') {
+                break;
+            }
+            pos++;
+        }
+    }
+
+    private void skipWhitespace(byte[] line, int end) {
+        while (pos < end && (line[pos] == ' ' || line[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private void expect(byte[] line, int end, char expected) throws IOException {
+        if (pos >= end || line[pos] != expected) {
+            throw malformed("expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Line " + lineNumber + ": " + reason);
+    }
+}
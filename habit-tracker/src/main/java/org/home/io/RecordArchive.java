@@ -0,0 +1,357 @@
+package org.home.io;
+
+import org.home.model.Schedule;
+import org.home.repository.HabitRecordRepository;
+import org.home.statistics.PeriodGrid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code RecordArchive} class answers questions about the records in an archive written by
+ * {@link RecordArchiveWriter} without loading them.
+ * <p>
+ * The file is memory-mapped and only its directory is read up front. A date range query looks up the blocks
+ * that overlap the range in the block index, takes the completion counts of the blocks it covers entirely from
+ * the index and decodes just the one or two blocks at its edges. The statistics are computed over the periods
+ * of the habit's schedule by a {@link PeriodGrid}, as in {@link org.home.service.StatisticsService}, so an
+ * archived habit reports the same numbers its records gave while they were in the database.
+ * <p>
+ * Instances are safe for concurrent reads.
+ */
+public class RecordArchive implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final Map<Long, HabitIndex> habits;
+
+    private RecordArchive(FileChannel channel, MappedByteBuffer data, Map<Long, HabitIndex> habits) {
+        this.channel = channel;
+        this.data = data;
+        this.habits = habits;
+    }
+
+    /**
+     * Opens an archive.
+     *
+     * @param file the archive file
+     * @return the opened archive
+     * @throws IOException if the file cannot be read, is not an archive, or is too large to be mapped
+     */
+    public static RecordArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive " + file + " is too large to be mapped");
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RecordArchive(channel, data, readDirectory(data, file));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the IDs of the habits in the archive.
+     *
+     * @return the habit IDs
+     */
+    public Set<Long> getHabitIds() {
+        return Collections.unmodifiableSet(habits.keySet());
+    }
+
+    /**
+     * Returns the number of records archived for a habit.
+     *
+     * @param habitId the ID of the habit
+     * @return the record count, or {@code 0} if the habit is not in the archive
+     */
+    public long getRecordCount(long habitId) {
+        HabitIndex habit = habits.get(habitId);
+        return habit == null ? 0 : habit.recordCount;
+    }
+
+    /**
+     * Returns the schedule a habit had when it was archived.
+     *
+     * @param habitId the ID of the habit
+     * @return the schedule, or {@code null} if the habit is not in the archive
+     */
+    public Schedule getSchedule(long habitId) {
+        HabitIndex habit = habits.get(habitId);
+        return habit == null ? null : habit.schedule;
+    }
+
+    /**
+     * Calculates the current streak of a habit the way {@link org.home.service.StatisticsService} does.
+     *
+     * @param habitId the ID of the habit
+     * @param today   the day the streak is counted up to
+     * @return the current streak count; returns 0 if the habit is not in the archive or has no completions
+     */
+    public int getCurrentStreak(long habitId, LocalDate today) {
+        HabitIndex habit = habits.get(habitId);
+        if (habit == null || habit.completedCount == 0) {
+            return 0;
+        }
+        PeriodGrid grid = PeriodGrid.of(habit.schedule, LocalDate.ofEpochDay(habit.firstDays[0]), today);
+        long[] completedDays = completedDays(habit, habit.firstDays[0], today.toEpochDay());
+        return (int) grid.compute(completedDays, completedDays.length).getCurrentStreak();
+    }
+
+    /**
+     * Calculates the current streak of a habit up to today the way {@link org.home.service.StatisticsService}
+     * does.
+     *
+     * @param habitId the ID of the habit
+     * @return the current streak count; returns 0 if the habit is not in the archive or has no completions
+     */
+    public int getCurrentStreak(long habitId) {
+        return getCurrentStreak(habitId, LocalDate.now());
+    }
+
+    /**
+     * Calculates the success percentage of a habit within a date range the way
+     * {@link org.home.service.StatisticsService} does.
+     *
+     * @param habitId   the ID of the habit
+     * @param startDate the start date of the interval
+     * @param endDate   the end date of the interval
+     * @return the percentage of successful periods; returns 0.0 if the habit is not in the archive
+     * or if the interval has no periods
+     */
+    public double getSuccessPercentage(long habitId, LocalDate startDate, LocalDate endDate) {
+        HabitIndex habit = habits.get(habitId);
+        if (habit == null) {
+            return 0.0;
+        }
+        PeriodGrid grid = PeriodGrid.of(habit.schedule, startDate, endDate);
+        if (grid.getPeriodCount() == 0) {
+            return 0.0;
+        }
+        long[] completedDays = completedDays(habit, grid.getFirstDay().toEpochDay(),
+                grid.getLastDay().toEpochDay());
+        return grid.compute(completedDays, completedDays.length).getSuccessRate();
+    }
+
+    /**
+     * Counts the completed records of a habit within a date range.
+     *
+     * @param habitId the ID of the habit
+     * @param from    the first date of the range
+     * @param to      the last date of the range
+     * @return the number of completed records dated from {@code from} to {@code to} inclusive
+     */
+    public long countCompleted(long habitId, LocalDate from, LocalDate to) {
+        HabitIndex habit = habits.get(habitId);
+        return habit == null ? 0 : countCompleted(habit, from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Visits every archived record of a habit in date order.
+     *
+     * @param habitId the ID of the habit
+     * @param visitor called for every record
+     */
+    public void forEachRecord(long habitId, HabitRecordRepository.RecordVisitor visitor) {
+        HabitIndex habit = habits.get(habitId);
+        if (habit == null) {
+            return;
+        }
+        ByteBuffer buffer = data.duplicate();
+        for (int block = 0; block < habit.firstDays.length; block++) {
+            buffer.position(Math.toIntExact(habit.offsets[block]));
+            int bitmapStart = Math.toIntExact(habit.offsets[block] + habit.runsLengths[block]);
+            int index = 0;
+            int day = habit.firstDays[block];
+            while (index < habit.recordCounts[block]) {
+                int runStart = day + ArchiveFormat.getVarint(buffer);
+                int runLength = ArchiveFormat.getVarint(buffer);
+                for (int i = 0; i < runLength; i++) {
+                    visitor.visit(habitId, runStart + i, isSet(bitmapStart, index + i));
+                }
+                day = runStart + runLength - 1;
+                index += runLength;
+            }
+        }
+    }
+
+    /**
+     * Closes the archive file. The mapping itself is released once the archive is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long countCompleted(HabitIndex habit, long from, long to) {
+        long count = 0;
+        for (int block = firstBlockEndingAtOrAfter(habit, from); block < habit.firstDays.length; block++) {
+            if (habit.firstDays[block] > to) {
+                break;
+            }
+            if (habit.firstDays[block] >= from && habit.lastDays[block] <= to) {
+                count += habit.completedCounts[block];
+            } else {
+                count += countCompletedInBlock(habit, block, from, to);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the completed days of a habit within a range in ascending order, sized with the block index.
+     */
+    private long[] completedDays(HabitIndex habit, long from, long to) {
+        long[] days = new long[Math.toIntExact(countCompleted(habit, from, to))];
+        int length = 0;
+        ByteBuffer buffer = data.duplicate();
+        for (int block = firstBlockEndingAtOrAfter(habit, from); block < habit.firstDays.length; block++) {
+            if (habit.firstDays[block] > to || length == days.length) {
+                break;
+            }
+            buffer.position(Math.toIntExact(habit.offsets[block]));
+            int bitmapStart = Math.toIntExact(habit.offsets[block] + habit.runsLengths[block]);
+            int index = 0;
+            int day = habit.firstDays[block];
+            while (index < habit.recordCounts[block]) {
+                int runStart = day + ArchiveFormat.getVarint(buffer);
+                int runLength = ArchiveFormat.getVarint(buffer);
+                long low = Math.max(from, runStart);
+                long high = Math.min(to, runStart + runLength - 1L);
+                for (long d = low; d <= high; d++) {
+                    if (isSet(bitmapStart, index + (int) (d - runStart))) {
+                        days[length++] = d;
+                    }
+                }
+                day = runStart + runLength - 1;
+                index += runLength;
+            }
+        }
+        return days;
+    }
+
+    private static int firstBlockEndingAtOrAfter(HabitIndex habit, long day) {
+        int low = 0;
+        int high = habit.lastDays.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (habit.lastDays[middle] < day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long countCompletedInBlock(HabitIndex habit, int block, long from, long to) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(Math.toIntExact(habit.offsets[block]));
+        int bitmapStart = Math.toIntExact(habit.offsets[block] + habit.runsLengths[block]);
+        long count = 0;
+        int index = 0;
+        int day = habit.firstDays[block];
+        while (index < habit.recordCounts[block]) {
+            int runStart = day + ArchiveFormat.getVarint(buffer);
+            int runLength = ArchiveFormat.getVarint(buffer);
+            long low = Math.max(from, runStart);
+            long high = Math.min(to, runStart + runLength - 1L);
+            if (low <= high) {
+                count += countBits(bitmapStart, index + (int) (low - runStart), index + (int) (high - runStart) + 1);
+            }
+            day = runStart + runLength - 1;
+            index += runLength;
+        }
+        return count;
+    }
+
+    private int countBits(int bitmapStart, int from, int to) {
+        int count = 0;
+        int i = from;
+        while (i < to && (i & 7) != 0) {
+            count += isSet(bitmapStart, i++) ? 1 : 0;
+        }
+        while (i + 8 <= to) {
+            count += Integer.bitCount(data.get(bitmapStart + (i >>> 3)) & 0xFF);
+            i += 8;
+        }
+        while (i < to) {
+            count += isSet(bitmapStart, i++) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private boolean isSet(int bitmapStart, int index) {
+        return (data.get(bitmapStart + (index >>> 3)) & (1 << (index & 7))) != 0;
+    }
+
+    private static Map<Long, HabitIndex> readDirectory(ByteBuffer data, Path file) throws IOException {
+        if (data.limit() < ArchiveFormat.HEADER_SIZE || data.getInt(0) != ArchiveFormat.MAGIC) {
+            throw new IOException(file + " is not a record archive");
+        }
+        short version = data.getShort(4);
+        if (version != ArchiveFormat.VERSION && version != ArchiveFormat.FREQUENCY_VERSION) {
+            throw new IOException("Unsupported archive version " + version + " in " + file);
+        }
+        ByteBuffer directory = data.duplicate();
+        directory.position(Math.toIntExact(data.getLong(8)));
+        int habitCount = directory.getInt();
+        Map<Long, HabitIndex> habits = new HashMap<>();
+        for (int i = 0; i < habitCount; i++) {
+            long habitId = directory.getLong();
+            HabitIndex habit = new HabitIndex(ArchiveFormat.getSchedule(directory, version), directory.getLong(),
+                    directory.getLong(), directory.getInt());
+            for (int block = 0; block < habit.firstDays.length; block++) {
+                habit.firstDays[block] = directory.getInt();
+                habit.lastDays[block] = directory.getInt();
+                habit.recordCounts[block] = directory.getInt();
+                habit.completedCounts[block] = directory.getInt();
+                habit.offsets[block] = directory.getLong();
+                habit.runsLengths[block] = directory.getInt();
+            }
+            habits.put(habitId, habit);
+        }
+        return habits;
+    }
+
+    /**
+     * The in-memory directory entry of one habit: its schedule, its totals and the block index.
+     */
+    private static final class HabitIndex {
+        private final Schedule schedule;
+        private final long recordCount;
+        private final long completedCount;
+        private final int[] firstDays;
+        private final int[] lastDays;
+        private final int[] recordCounts;
+        private final int[] completedCounts;
+        private final long[] offsets;
+        private final int[] runsLengths;
+
+        private HabitIndex(Schedule schedule, long recordCount, long completedCount, int blockCount) {
+            this.schedule = schedule;
+            this.recordCount = recordCount;
+            this.completedCount = completedCount;
+            this.firstDays = new int[blockCount];
+            this.lastDays = new int[blockCount];
+            this.recordCounts = new int[blockCount];
+            this.completedCounts = new int[blockCount];
+            this.offsets = new long[blockCount];
+            this.runsLengths = new int[blockCount];
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.home.io;
+
+import org.home.model.Schedule;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code RecordArchiveWriter} class writes habit records into a compact binary archive
+ * (see {@link ArchiveFormat}).
+ * <p>
+ * Records must be added habit by habit and, within a habit, in ascending date order. Blocks are written to
+ * the file as soon as they fill up; only the directory, a few dozen bytes per block, is kept in memory until
+ * the writer is closed.
+ */
+public class RecordArchiveWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(
+            ArchiveFormat.BLOCK_RECORDS * 2 * ArchiveFormat.MAX_VARINT_LENGTH + ArchiveFormat.BLOCK_RECORDS / 8);
+    private final int[] days = new int[ArchiveFormat.BLOCK_RECORDS];
+    private final byte[] bitmap = new byte[ArchiveFormat.BLOCK_RECORDS / 8];
+    private final List<HabitEntry> habits = new ArrayList<>();
+    private HabitEntry currentHabit;
+    private int blockSize;
+    private int blockCompleted;
+    private long position = ArchiveFormat.HEADER_SIZE;
+    private boolean closed;
+
+    /**
+     * Creates an archive file, replacing an existing one.
+     *
+     * @param file the archive to write
+     * @throws IOException if the file cannot be created
+     */
+    public RecordArchiveWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.channel.position(ArchiveFormat.HEADER_SIZE);
+    }
+
+    /**
+     * Starts the records of a habit. Every habit may be started only once.
+     *
+     * @param habitId  the ID of the habit
+     * @param schedule the schedule of the habit
+     * @throws IOException if the records of the previous habit cannot be written
+     */
+    public void startHabit(long habitId, Schedule schedule) throws IOException {
+        flushBlock();
+        for (HabitEntry habit : habits) {
+            if (habit.habitId == habitId) {
+                throw new IllegalStateException("Habit " + habitId + " was already written");
+            }
+        }
+        currentHabit = new HabitEntry(habitId, schedule);
+        habits.add(currentHabit);
+    }
+
+    /**
+     * Adds a record to the current habit.
+     *
+     * @param epochDay  the date of the record as days since 1970-01-01, not earlier than the previous record
+     * @param completed whether the habit was completed on that date
+     * @throws IOException if a full block cannot be written
+     */
+    public void add(long epochDay, boolean completed) throws IOException {
+        if (currentHabit == null) {
+            throw new IllegalStateException("No habit started");
+        }
+        int day = Math.toIntExact(epochDay);
+        if (blockSize > 0 && day < days[blockSize - 1] || blockSize == 0 && day < currentHabit.lastDay) {
+            throw new IllegalArgumentException("Records must be added in date order");
+        }
+        days[blockSize] = day;
+        if (completed) {
+            bitmap[blockSize >>> 3] |= (byte) (1 << (blockSize & 7));
+            blockCompleted++;
+        }
+        blockSize++;
+        if (blockSize == ArchiveFormat.BLOCK_RECORDS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Writes the remaining records and the directory and closes the file.
+     *
+     * @throws IOException if the archive cannot be completed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBlock();
+            writeDirectory();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockSize == 0) {
+            return;
+        }
+        out.clear();
+        int runStart = 0;
+        int previousDay = days[0];
+        for (int i = 1; i <= blockSize; i++) {
+            if (i == blockSize || days[i] != days[i - 1] + 1) {
+                ArchiveFormat.putVarint(out, days[runStart] - previousDay);
+                ArchiveFormat.putVarint(out, i - runStart);
+                previousDay = days[i - 1];
+                runStart = i;
+            }
+        }
+        int runsLength = out.position();
+        out.put(bitmap, 0, (blockSize + 7) >>> 3);
+        out.flip();
+        writeFully(out);
+
+        currentHabit.blocks.add(new BlockEntry(days[0], days[blockSize - 1], blockSize, blockCompleted,
+                position, runsLength));
+        currentHabit.recordCount += blockSize;
+        currentHabit.completedCount += blockCompleted;
+        currentHabit.lastDay = days[blockSize - 1];
+        position += out.limit();
+        Arrays.fill(bitmap, (byte) 0);
+        blockSize = 0;
+        blockCompleted = 0;
+    }
+
+    private void writeDirectory() throws IOException {
+        long directoryOffset = position;
+        ByteBuffer entry = ByteBuffer.allocate(
+                Math.max(ArchiveFormat.HABIT_ENTRY_SIZE, ArchiveFormat.BLOCK_ENTRY_SIZE));
+        entry.putInt(habits.size()).flip();
+        writeFully(entry);
+        for (HabitEntry habit : habits) {
+            entry.clear();
+            entry.putLong(habit.habitId);
+            ArchiveFormat.putSchedule(entry, habit.schedule);
+            entry.putLong(habit.recordCount)
+                    .putLong(habit.completedCount)
+                    .putInt(habit.blocks.size())
+                    .flip();
+            writeFully(entry);
+            for (BlockEntry block : habit.blocks) {
+                entry.clear();
+                entry.putInt(block.firstDay)
+                        .putInt(block.lastDay)
+                        .putInt(block.recordCount)
+                        .putInt(block.completedCount)
+                        .putLong(block.offset)
+                        .putInt(block.runsLength)
+                        .flip();
+                writeFully(entry);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+        header.putInt(ArchiveFormat.MAGIC).putShort(ArchiveFormat.VERSION).putShort((short) 0)
+                .putLong(directoryOffset).flip();
+        channel.position(0);
+        writeFully(header);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static final class HabitEntry {
+        private final long habitId;
+        private final Schedule schedule;
+        private final List<BlockEntry> blocks = new ArrayList<>();
+        private long recordCount;
+        private long completedCount;
+        private int lastDay = Integer.MIN_VALUE;
+
+        private HabitEntry(long habitId, Schedule schedule) {
+            this.habitId = habitId;
+            this.schedule = schedule;
+        }
+    }
+
+    private static final class BlockEntry {
+        private final int firstDay;
+        private final int lastDay;
+        private final int recordCount;
+        private final int completedCount;
+        private final long offset;
+        private final int runsLength;
+
+        private BlockEntry(int firstDay, int lastDay, int recordCount, int completedCount, long offset,
+                           int runsLength) {
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.recordCount = recordCount;
+            this.completedCount = completedCount;
+            this.offset = offset;
+            this.runsLength = runsLength;
+        }
+    }
+}
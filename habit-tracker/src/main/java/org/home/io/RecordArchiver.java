@@ -0,0 +1,63 @@
+package org.home.io;
+
+import org.home.model.Habit;
+import org.home.model.Schedule;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code RecordArchiver} class copies the cold part of a user's habit history into a {@link RecordArchive}.
+ * <p>
+ * Records are streamed from the database cursor straight into a {@link RecordArchiveWriter}, so archiving does
+ * not hold the history in memory. The database rows are left in place.
+ */
+public class RecordArchiver {
+
+    /**
+     * Archives the records of a user dated before the given date.
+     *
+     * @param user   the {@link User} whose records are archived
+     * @param file   the archive file to write; an existing file is overwritten
+     * @param before the first date that is not archived, or {@code null} to archive all records
+     * @return the number of archived records
+     * @throws IOException if the archive cannot be written or the records cannot be read
+     */
+    public long archive(User user, Path file, LocalDate before) throws IOException {
+        Map<Long, Schedule> schedules = new HashMap<>();
+        for (Habit habit : HabitRepository.getAllUserHabits(user).values()) {
+            schedules.put(habit.getId(), habit.getSchedule());
+        }
+
+        try (RecordArchiveWriter writer = new RecordArchiveWriter(file)) {
+            long[] count = new long[1];
+            long[] currentHabitId = {Long.MIN_VALUE};
+            boolean read = HabitRecordRepository.forEachUserRecord(user.getId(), before,
+                    (habitId, epochDay, completed) -> {
+                        try {
+                            if (habitId != currentHabitId[0]) {
+                                currentHabitId[0] = habitId;
+                                writer.startHabit(habitId, schedules.getOrDefault(habitId, Schedule.daily()));
+                            }
+                            writer.add(epochDay, completed);
+                            count[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            if (!read) {
+                throw new IOException("Could not read the records of user " + user.getEmail());
+            }
+            return count[0];
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
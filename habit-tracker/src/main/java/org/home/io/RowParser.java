@@ -0,0 +1,31 @@
+package org.home.io;
+
+import java.io.IOException;
+
+/**
+ * The {@code RowParser} interface turns one line of a history file into a {@link HistoryRow}.
+ */
+interface RowParser {
+
+    /**
+     * Checks whether a line is a header rather than a record.
+     *
+     * @param line  the buffer holding the line
+     * @param start where the line starts
+     * @param end   where the line ends, exclusive
+     * @return {@code true} if the line is a header
+     */
+    boolean isHeader(byte[] line, int start, int end);
+
+    /**
+     * Parses a line into the given row, overwriting its previous contents.
+     *
+     * @param line       the buffer holding the line
+     * @param start      where the line starts
+     * @param end        where the line ends, exclusive
+     * @param row        the row to fill
+     * @param lineNumber the number of the line, for error messages
+     * @throws IOException if the line is malformed
+     */
+    void parse(byte[] line, int start, int end, HistoryRow row, long lineNumber) throws IOException;
+}
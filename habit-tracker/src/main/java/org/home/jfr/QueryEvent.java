@@ -0,0 +1,45 @@
+package org.home.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for a statement executed by a repository.
+ * <p>
+ * The event lasts from the moment the statement is executed, including its wait for the
+ * {@link org.home.config.ConcurrencyLimiter}, until its rows have been read, that is until the result set or the
+ * statement is closed. Its stack trace tells which repository method executed the statement.
+ */
+@Name(QueryEvent.NAME)
+@Label("Repository Query")
+@Category({"Habit Tracker", "Database"})
+@Description("A statement executed by a repository, until its rows have been read")
+@StackTrace(true)
+public class QueryEvent extends jdk.jfr.Event {
+
+    /**
+     * The name the event is recorded under.
+     */
+    public static final String NAME = "org.home.RepositoryQuery";
+
+    @Label("SQL ID")
+    @Description("A hash of the SQL text, the same for every execution of the statement")
+    String sqlId;
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Method")
+    @Description("The JDBC method the statement was executed with")
+    String method;
+
+    @Label("Rows")
+    @Description("The rows read from the result set, or the rows changed by an update")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+}
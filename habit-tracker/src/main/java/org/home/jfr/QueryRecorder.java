@@ -0,0 +1,146 @@
+package org.home.jfr;
+
+import jdk.jfr.EventType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+/**
+ * The {@code QueryRecorder} class records the {@link QueryEvent}s of one statement.
+ * <p>
+ * A statement that returns rows keeps its event open and counts the rows read from its result set until the
+ * result set or the statement is closed, or the statement is executed again. Nothing is allocated, wrapped or
+ * recorded unless a recording has the event enabled.
+ */
+public final class QueryRecorder {
+
+    private static final EventType EVENT_TYPE = EventType.getEventType(QueryEvent.class);
+
+    private final String sql;
+    private QueryEvent open;
+
+    /**
+     * Constructs a {@code QueryRecorder} for a statement.
+     *
+     * @param sql the SQL the statement was prepared with, or {@code null} for a plain statement, whose SQL is
+     *            given when it is executed
+     */
+    public QueryRecorder(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Starts the event of an execution of the statement, ending the event of the previous one.
+     *
+     * @return the started event, or {@code null} if no recording has it enabled
+     */
+    public QueryEvent begin() {
+        finish();
+        if (!EVENT_TYPE.isEnabled()) {
+            return null;
+        }
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records the outcome of an execution.
+     *
+     * @param event  the event returned by {@link #begin()}
+     * @param method the JDBC method the statement was executed with
+     * @param args   the arguments of the method
+     * @param result the result of the method
+     * @return the result to hand to the repository, a result set counting its rows if the event stays open
+     */
+    public Object executed(QueryEvent event, Method method, Object[] args, Object result) {
+        if (event == null) {
+            return result;
+        }
+        describe(event, method, args);
+        if (result instanceof ResultSet resultSet) {
+            open = event;
+            return countRows(resultSet, event);
+        }
+        if (result instanceof Number count) {
+            event.rows = count.longValue();
+        } else if (result instanceof int[] counts) {
+            for (int count : counts) {
+                event.rows += Math.max(0, count);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                event.rows += Math.max(0, count);
+            }
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Records an execution that failed.
+     *
+     * @param event  the event returned by {@link #begin()}
+     * @param method the JDBC method the statement was executed with
+     * @param args   the arguments of the method
+     */
+    public void failed(QueryEvent event, Method method, Object[] args) {
+        if (event == null) {
+            return;
+        }
+        describe(event, method, args);
+        event.failed = true;
+        event.commit();
+    }
+
+    /**
+     * Ends the event whose rows are being read, once the statement is closed.
+     */
+    public void finish() {
+        QueryEvent event = open;
+        if (event != null) {
+            open = null;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the ID events of a statement are recorded under: a hash of its SQL, which is the same on every
+     * instance since {@link String#hashCode()} is specified.
+     *
+     * @param sql the SQL of a statement
+     * @return the SQL ID as eight hexadecimal digits
+     */
+    public static String sqlId(String sql) {
+        String digits = Integer.toHexString(sql.hashCode());
+        return "0".repeat(8 - digits.length()) + digits;
+    }
+
+    private void describe(QueryEvent event, Method method, Object[] args) {
+        String text = sql != null ? sql : args != null && args.length > 0 && args[0] instanceof String s ? s : "";
+        event.sql = text;
+        event.sqlId = sqlId(text);
+        event.method = method.getName();
+    }
+
+    private ResultSet countRows(ResultSet resultSet, QueryEvent event) {
+        return (ResultSet) Proxy.newProxyInstance(QueryRecorder.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("close") && open == event) {
+                        finish();
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(resultSet, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                        event.rows++;
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,142 @@
+package org.home.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@code RecordingAnalyzer} class summarizes a JDK Flight Recorder recording of the application into latency
+ * tables: one for the {@link QueryEvent}s of every repository method, found from the stack traces of the events,
+ * and one for the {@link StatisticsEvent}s of every statistics operation and algorithm path.
+ * <p>
+ * Run it with the path of a recording, such as one dumped by the continuous recording of the start scripts:
+ * <pre>
+ * java -cp habit-tracker.jar org.home.jfr.RecordingAnalyzer habit-tracker.jfr
+ * </pre>
+ */
+public final class RecordingAnalyzer {
+
+    private static final String REPOSITORY_PACKAGE = "org.home.repository.";
+
+    private RecordingAnalyzer() {
+    }
+
+    /**
+     * Prints the latency tables of a recording.
+     *
+     * @param args the path of the recording
+     * @throws IOException if the recording could not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: RecordingAnalyzer <recording.jfr>");
+            return;
+        }
+        System.out.print(summarize(Path.of(args[0])));
+    }
+
+    /**
+     * Reads a recording and formats its latency tables.
+     *
+     * @param recording the path of the recording
+     * @return the tables, with the count, mean, percentiles and maximum of the durations in milliseconds of each
+     * method and the mean number of rows, or of records for statistics
+     * @throws IOException if the recording could not be read
+     */
+    public static String summarize(Path recording) throws IOException {
+        Map<String, Latencies> queries = new TreeMap<>();
+        Map<String, Latencies> statistics = new TreeMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                if (name.equals(QueryEvent.NAME)) {
+                    queries.computeIfAbsent(repositoryMethod(event), key -> new Latencies())
+                            .add(event.getDuration().toNanos(), event.getLong("rows"));
+                } else if (name.equals(StatisticsEvent.NAME)) {
+                    statistics.computeIfAbsent(event.getString("operation") + " " + event.getString("algorithm"),
+                            key -> new Latencies()).add(event.getDuration().toNanos(), event.getInt("historyLength"));
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        appendTable(out, "Repository queries", "Rows", queries);
+        out.append(System.lineSeparator());
+        appendTable(out, "Statistics computations", "Records", statistics);
+        return out.toString();
+    }
+
+    /**
+     * Tells which repository method executed a query: the innermost repository frame of its stack trace.
+     */
+    private static String repositoryMethod(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace != null) {
+            for (RecordedFrame frame : stackTrace.getFrames()) {
+                String type = frame.getMethod().getType().getName();
+                if (type.startsWith(REPOSITORY_PACKAGE) && frame.isJavaFrame()) {
+                    return type.substring(REPOSITORY_PACKAGE.length()) + "." + frame.getMethod().getName();
+                }
+            }
+        }
+        return "sql " + event.getString("sqlId");
+    }
+
+    private static void appendTable(StringBuilder out, String title, String countLabel, Map<String, Latencies> rows) {
+        String format = "%-56s %8s %9s %9s %9s %9s %9s %9s%n";
+        out.append(title).append(System.lineSeparator());
+        out.append(String.format(format, "Method", "Count", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms",
+                countLabel));
+        if (rows.isEmpty()) {
+            out.append("(no events)").append(System.lineSeparator());
+        }
+        rows.forEach((method, latencies) -> {
+            long[] sorted = latencies.sorted();
+            out.append(String.format(format, method, sorted.length, millis(latencies.totalNanos / sorted.length),
+                    millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.95)),
+                    millis(percentile(sorted, 0.99)), millis(sorted[sorted.length - 1]),
+                    String.format("%.1f", (double) latencies.totalCount / sorted.length)));
+        });
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * The durations of the events of one method, and the rows or records they went through.
+     */
+    private static final class Latencies {
+        private long[] durations = new long[16];
+        private int size;
+        private long totalNanos;
+        private long totalCount;
+
+        private void add(long nanos, long count) {
+            if (size == durations.length) {
+                durations = Arrays.copyOf(durations, size * 2);
+            }
+            durations[size++] = nanos;
+            totalNanos += nanos;
+            totalCount += Math.max(0, count);
+        }
+
+        private long[] sorted() {
+            long[] result = Arrays.copyOf(durations, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
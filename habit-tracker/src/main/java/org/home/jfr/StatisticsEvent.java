@@ -0,0 +1,43 @@
+package org.home.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for a statistics computation of the {@link org.home.service.StatisticsService},
+ * covering the query of the habit's records and the pass over its {@link org.home.statistics.PeriodGrid}.
+ */
+@Name(StatisticsEvent.NAME)
+@Label("Statistics Computation")
+@Category({"Habit Tracker", "Statistics"})
+@Description("A streak or period statistics computed over the records of a habit")
+@StackTrace(false)
+public class StatisticsEvent extends jdk.jfr.Event {
+
+    /**
+     * The name the event is recorded under.
+     */
+    public static final String NAME = "org.home.StatisticsComputation";
+
+    @Label("Operation")
+    @Description("What was computed: currentStreak or periodStatistics")
+    public String operation;
+
+    @Label("Habit ID")
+    public long habitId;
+
+    @Label("History Length")
+    @Description("The number of completed records the computation went through")
+    public int historyLength;
+
+    @Label("Periods")
+    @Description("The number of periods of the habit's schedule the computation covered")
+    public long periods;
+
+    @Label("Algorithm")
+    @Description("The path the computation took, such as grid-daily or no-history")
+    public String algorithm;
+}
@@ -0,0 +1,19 @@
+package org.home.leaderboard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.home.model.Schedule;
+
+/**
+ * The {@code LeaderboardEntry} class is one place on a leaderboard.
+ */
+@Getter
+@AllArgsConstructor
+public class LeaderboardEntry {
+    private final int rank;
+    private final Long habitId;
+    private final Long userId;
+    private final String title;
+    private final Schedule.Kind category;
+    private final double score;
+}
@@ -0,0 +1,20 @@
+package org.home.leaderboard;
+
+/**
+ * The {@code LeaderboardMetric} enum lists what habits are ranked by.
+ * <ul>
+ *   <li>{@link #CURRENT_STREAK} - the number of consecutive successful periods up to now;</li>
+ *   <li>{@link #COMPLETION_RATE} - the percentage of successful periods in the last days.</li>
+ * </ul>
+ */
+public enum LeaderboardMetric {
+    /**
+     * The number of consecutive successful periods of the habit's schedule up to the current one.
+     */
+    CURRENT_STREAK,
+
+    /**
+     * The percentage of successful periods of the habit's schedule in the configured number of last days.
+     */
+    COMPLETION_RATE
+}
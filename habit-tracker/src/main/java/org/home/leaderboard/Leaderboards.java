@@ -0,0 +1,309 @@
+package org.home.leaderboard;
+
+import org.home.config.ConfigLoader;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.model.Schedule;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.RecordSeries;
+import org.home.service.HabitRecordListener;
+import org.home.statistics.PeriodGrid;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code Leaderboards} class ranks habits across all users by their current streak and by their completion
+ * rate over the last days, both globally and per category.
+ * <p>
+ * The category of a habit is the kind of its {@link Schedule}, so that streaks counted in days are not ranked
+ * against streaks counted in weeks. Every leaderboard is a {@link RankedSkipList} kept up to date as records
+ * change: a change made through {@link org.home.service.HabitRecordService} marks its habit, and a single worker
+ * thread reads the completed records of the marked habits, computes their standing with a {@link PeriodGrid}
+ * and moves them on the leaderboards, so a write never waits for the leaderboards and a read takes time in
+ * proportion to the number of places read. The worker also rebuilds everything from the database at a fixed
+ * interval, which picks up edited and deleted habits and lets streaks and rates age as days pass.
+ */
+public class Leaderboards implements HabitRecordListener {
+
+    private final Clock clock;
+    private final int rateDays;
+    private final long reconcileMillis;
+    private final Map<Long, Habit> pending = new LinkedHashMap<>();
+    private Map<Long, Standing> standings = new HashMap<>();
+    private Map<LeaderboardMetric, RankedSkipList> global = newBoards();
+    private Map<LeaderboardMetric, Map<Schedule.Kind, RankedSkipList>> byCategory = newCategoryBoards();
+    private ScheduledExecutorService worker;
+    private boolean refreshQueued;
+
+    /**
+     * Constructs empty {@code Leaderboards}.
+     *
+     * @param clock           the clock giving the current day
+     * @param rateDays        the number of last days the completion rate is computed over
+     * @param reconcileMillis how often the leaderboards are rebuilt from the database once started
+     */
+    public Leaderboards(Clock clock, int rateDays, long reconcileMillis) {
+        this.clock = clock;
+        this.rateDays = Math.max(1, rateDays);
+        this.reconcileMillis = Math.max(1, reconcileMillis);
+    }
+
+    /**
+     * Creates the leaderboards configured in {@code application.yml}.
+     *
+     * @param configLoader the configuration to read
+     * @return new {@code Leaderboards} that are not started yet
+     */
+    public static Leaderboards fromConfig(ConfigLoader configLoader) {
+        return new Leaderboards(Clock.systemDefaultZone(), configLoader.getLeaderboardRateDays(),
+                TimeUnit.MINUTES.toMillis(configLoader.getLeaderboardReconcileMinutes()));
+    }
+
+    /**
+     * Returns the best habits of a leaderboard.
+     *
+     * @param metric   what the habits are ranked by
+     * @param category the kind of schedule to rank habits of, or {@code null} to rank all habits
+     * @param limit    the largest number of places to return
+     * @return the places in rank order; habits with a score of zero are not ranked
+     */
+    public synchronized List<LeaderboardEntry> getTop(LeaderboardMetric metric, Schedule.Kind category, int limit) {
+        RankedSkipList board = category == null ? global.get(metric) : byCategory.get(metric).get(category);
+        List<LeaderboardEntry> entries = new ArrayList<>(Math.min(Math.max(limit, 0), board.size()));
+        board.forEachTop(limit, (habitId, score) -> {
+            Standing standing = standings.get(habitId);
+            entries.add(new LeaderboardEntry(entries.size() + 1, habitId, standing.userId, standing.title,
+                    standing.category, score));
+        });
+        return entries;
+    }
+
+    /**
+     * Returns the number of habits on at least one leaderboard.
+     *
+     * @return the ranked habit count
+     */
+    public synchronized int getRankedCount() {
+        return standings.size();
+    }
+
+    /**
+     * Marks the habit of a saved record for a refresh.
+     *
+     * @param habit  the {@link Habit} the record belongs to
+     * @param record the saved {@link HabitRecord}
+     */
+    @Override
+    public void recordSaved(Habit habit, HabitRecord record) {
+        markChanged(habit);
+    }
+
+    /**
+     * Marks the habit of a deleted record for a refresh.
+     *
+     * @param habit  the {@link Habit} the record belonged to
+     * @param record the deleted {@link HabitRecord}
+     */
+    @Override
+    public void recordDeleted(Habit habit, HabitRecord record) {
+        markChanged(habit);
+    }
+
+    /**
+     * Recomputes the standing of every habit whose records changed since the last refresh and moves it on the
+     * leaderboards.
+     *
+     * @return the number of refreshed habits
+     */
+    public int refresh() {
+        List<Habit> habits;
+        synchronized (pending) {
+            habits = new ArrayList<>(pending.values());
+            pending.clear();
+            refreshQueued = false;
+        }
+        LocalDate today = LocalDate.now(clock);
+        for (Habit habit : habits) {
+            RecordSeries completions = HabitRecordRepository.findRecords(habit.getId(), null, null, true);
+            Standing standing = Standing.of(habit, completions, today, rateDays);
+            synchronized (this) {
+                place(standings, global, byCategory, habit.getId(), standing);
+            }
+        }
+        return habits.size();
+    }
+
+    /**
+     * Replaces the leaderboards with ones computed from all habits and records in the database.
+     *
+     * @return the number of ranked habits
+     */
+    public int rebuild() {
+        Map<Long, Habit> habits = new HashMap<>();
+        boolean complete = HabitRepository.forEachHabitWithLastCompletion(
+                (habit, lastCompleted) -> {
+                    if (lastCompleted != null) {
+                        habits.put(habit.getId(), habit);
+                    }
+                });
+        LocalDate today = LocalDate.now(clock);
+        Map<Long, Standing> newStandings = new HashMap<>();
+        Map<LeaderboardMetric, RankedSkipList> newGlobal = newBoards();
+        Map<LeaderboardMetric, Map<Schedule.Kind, RankedSkipList>> newByCategory = newCategoryBoards();
+        complete &= HabitRecordRepository.forEachCompletedSeries(completions -> {
+            Habit habit = habits.get(completions.getHabitId());
+            if (habit != null) {
+                place(newStandings, newGlobal, newByCategory, habit.getId(),
+                        Standing.of(habit, completions, today, rateDays));
+            }
+        });
+        if (!complete) {
+            System.out.println("Leaderboards could not be loaded from every database");
+            return getRankedCount();
+        }
+        synchronized (this) {
+            standings = newStandings;
+            global = newGlobal;
+            byCategory = newByCategory;
+            return standings.size();
+        }
+    }
+
+    /**
+     * Starts the worker thread, which rebuilds the leaderboards at once and then at the reconcile interval, and
+     * refreshes changed habits in between.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboards");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(() -> run(this::rebuild), 0, reconcileMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the worker thread. The leaderboards are kept but no longer follow record changes.
+     */
+    public synchronized void stop() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    private void markChanged(Habit habit) {
+        synchronized (pending) {
+            pending.put(habit.getId(), habit);
+            if (refreshQueued) {
+                return;
+            }
+            refreshQueued = true;
+        }
+        ScheduledExecutorService current;
+        synchronized (this) {
+            current = worker;
+        }
+        if (current != null) {
+            current.execute(() -> run(this::refresh));
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.out.println("Failed to update leaderboards: " + e.getMessage());
+        }
+    }
+
+    private static void place(Map<Long, Standing> standings, Map<LeaderboardMetric, RankedSkipList> global,
+                              Map<LeaderboardMetric, Map<Schedule.Kind, RankedSkipList>> byCategory,
+                              Long habitId, Standing standing) {
+        Standing previous = standing.isRanked() ? standings.put(habitId, standing) : standings.remove(habitId);
+        for (LeaderboardMetric metric : LeaderboardMetric.values()) {
+            if (previous != null && previous.score(metric) > 0) {
+                global.get(metric).remove(habitId, previous.score(metric));
+                byCategory.get(metric).get(previous.category).remove(habitId, previous.score(metric));
+            }
+            if (standing.score(metric) > 0) {
+                global.get(metric).insert(habitId, standing.score(metric));
+                byCategory.get(metric).get(standing.category).insert(habitId, standing.score(metric));
+            }
+        }
+    }
+
+    private static Map<LeaderboardMetric, RankedSkipList> newBoards() {
+        Map<LeaderboardMetric, RankedSkipList> boards = new EnumMap<>(LeaderboardMetric.class);
+        for (LeaderboardMetric metric : LeaderboardMetric.values()) {
+            boards.put(metric, new RankedSkipList());
+        }
+        return boards;
+    }
+
+    private static Map<LeaderboardMetric, Map<Schedule.Kind, RankedSkipList>> newCategoryBoards() {
+        Map<LeaderboardMetric, Map<Schedule.Kind, RankedSkipList>> boards = new EnumMap<>(LeaderboardMetric.class);
+        for (LeaderboardMetric metric : LeaderboardMetric.values()) {
+            Map<Schedule.Kind, RankedSkipList> categories = new EnumMap<>(Schedule.Kind.class);
+            for (Schedule.Kind kind : Schedule.Kind.values()) {
+                categories.put(kind, new RankedSkipList());
+            }
+            boards.put(metric, categories);
+        }
+        return boards;
+    }
+
+    /**
+     * The scores of one habit and what is shown next to them.
+     */
+    private static final class Standing {
+        private final Long userId;
+        private final String title;
+        private final Schedule.Kind category;
+        private final double currentStreak;
+        private final double completionRate;
+
+        private Standing(Habit habit, double currentStreak, double completionRate) {
+            this.userId = habit.getUserId();
+            this.title = habit.getTitle();
+            this.category = habit.getSchedule().getKind();
+            this.currentStreak = currentStreak;
+            this.completionRate = completionRate;
+        }
+
+        private static Standing of(Habit habit, RecordSeries completions, LocalDate today, int rateDays) {
+            Schedule schedule = habit.getSchedule();
+            long[] days = completions.toEpochDays();
+            double streak = 0;
+            if (!completions.isEmpty() && !completions.date(0).isAfter(today)) {
+                streak = PeriodGrid.of(schedule, completions.date(0), today)
+                        .compute(days, days.length).getCurrentStreak();
+            }
+            double rate = PeriodGrid.of(schedule, today.minusDays(rateDays - 1), today)
+                    .compute(days, days.length).getSuccessRate();
+            return new Standing(habit, streak, rate);
+        }
+
+        private double score(LeaderboardMetric metric) {
+            return metric == LeaderboardMetric.CURRENT_STREAK ? currentStreak : completionRate;
+        }
+
+        private boolean isRanked() {
+            return currentStreak > 0 || completionRate > 0;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.home.leaderboard;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@code RankedSkipList} class keeps habit IDs ordered by score, highest first, with ties broken by the
+ * lower ID.
+ * <p>
+ * Inserting and removing an entry take logarithmic time on average, and the first K entries are read by walking
+ * the bottom level, so reading a leaderboard never depends on how many entries there are. The list does not
+ * remember the score of an ID: the caller passes the score an entry was inserted with to remove it. The class is
+ * not thread-safe.
+ */
+final class RankedSkipList {
+
+    /**
+     * Called for every entry read from the list.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(long id, double score);
+    }
+
+    private static final int MAX_LEVEL = 16;
+
+    private final Node head = new Node(0, Double.POSITIVE_INFINITY, MAX_LEVEL);
+    private final Node[] update = new Node[MAX_LEVEL];
+    private int level = 1;
+    private int size;
+
+    /**
+     * Adds an entry. An ID must not be inserted twice without being removed in between.
+     *
+     * @param id    the ID of the habit
+     * @param score the score of the habit
+     */
+    void insert(long id, double score) {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && node.next[i].isBefore(id, score)) {
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        int nodeLevel = randomLevel();
+        for (int i = level; i < nodeLevel; i++) {
+            update[i] = head;
+        }
+        level = Math.max(level, nodeLevel);
+        Node inserted = new Node(id, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            inserted.next[i] = update[i].next[i];
+            update[i].next[i] = inserted;
+        }
+        size++;
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param id    the ID of the habit
+     * @param score the score the entry was inserted with
+     * @return {@code true} if the entry was found and removed; {@code false} otherwise
+     */
+    boolean remove(long id, double score) {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && node.next[i].isBefore(id, score)) {
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        Node removed = node.next[0];
+        if (removed == null || removed.id != id || Double.compare(removed.score, score) != 0) {
+            return false;
+        }
+        for (int i = 0; i < removed.next.length; i++) {
+            update[i].next[i] = removed.next[i];
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Reads the entries with the highest scores in order.
+     *
+     * @param limit   the largest number of entries to read
+     * @param visitor called for every entry read
+     */
+    void forEachTop(int limit, EntryVisitor visitor) {
+        Node node = head.next[0];
+        for (int i = 0; i < limit && node != null; i++, node = node.next[0]) {
+            visitor.visit(node.id, node.score);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the list.
+     *
+     * @return the entry count
+     */
+    int size() {
+        return size;
+    }
+
+    private static int randomLevel() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        int nodeLevel = 1;
+        while (nodeLevel < MAX_LEVEL && (bits & 3) == 0) {
+            nodeLevel++;
+            bits >>>= 2;
+        }
+        return nodeLevel;
+    }
+
+    private static final class Node {
+        private final long id;
+        private final double score;
+        private final Node[] next;
+
+        private Node(long id, double score, int level) {
+            this.id = id;
+            this.score = score;
+            this.next = new Node[level];
+        }
+
+        /**
+         * Tells whether this entry ranks above the given one.
+         */
+        private boolean isBefore(long otherId, double otherScore) {
+            int byScore = Double.compare(otherScore, score);
+            return byScore < 0 || (byScore == 0 && id < otherId);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.home.model;
+
+/**
+ * The {@code EventType} enum names the changes to habits and habit records that are published as events.
+ */
+public enum EventType {
+    /**
+     * A habit was created.
+     */
+    HABIT_CREATED,
+
+    /**
+     * The title, description or frequency of a habit was changed.
+     */
+    HABIT_UPDATED,
+
+    /**
+     * A habit was deleted.
+     */
+    HABIT_DELETED,
+
+    /**
+     * A habit record was created.
+     */
+    RECORD_CREATED,
+
+    /**
+     * The completion status of a habit record was changed.
+     */
+    RECORD_UPDATED,
+
+    /**
+     * A habit record was deleted.
+     */
+    RECORD_DELETED
+}
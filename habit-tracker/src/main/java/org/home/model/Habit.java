@@ -1,22 +1,41 @@
 package org.home.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
 /**
  * The {@code Habit} class represents a user's habit with a title, description,
  * frequency, and the ID of the user who owns it.
+ * <p>
+ * A habit may follow a custom {@link Schedule}, such as three times a week; its frequency is then the plain
+ * frequency closest to that schedule.
  */
 @Getter
 @Setter
-@AllArgsConstructor
 public class Habit {
     private Long id;
     private String title;
     private String description;
     private Frequency frequency;
     private Long userId;
+    private Schedule schedule;
+
+    /**
+     * Constructs a {@code Habit} with all of its fields and the schedule its frequency stands for.
+     *
+     * @param id          the ID of the habit
+     * @param title       the title of the habit
+     * @param description a brief description of the habit
+     * @param frequency   the frequency of the habit
+     * @param userId      the ID of the user who owns the habit
+     */
+    public Habit(Long id, String title, String description, Frequency frequency, Long userId) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.frequency = frequency;
+        this.userId = userId;
+    }
 
     /**
      * Constructs a new {@code Habit} with the specified title, description, frequency, and user ID.
@@ -32,4 +51,46 @@ public class Habit {
         this.frequency = frequency;
         this.userId = userId;
     }
+
+    /**
+     * Constructs a new {@code Habit} following a custom schedule.
+     *
+     * @param title       the title of the habit
+     * @param description a brief description of the habit
+     * @param schedule    when the habit is meant to be done
+     * @param userId      the ID of the user who owns the habit
+     */
+    public Habit(String title, String description, Schedule schedule, Long userId) {
+        this(title, description, schedule.getFrequency(), userId);
+        this.schedule = schedule;
+    }
+
+    /**
+     * Returns when the habit is meant to be done.
+     *
+     * @return the custom schedule of the habit, or the one its frequency stands for
+     */
+    public Schedule getSchedule() {
+        return schedule != null ? schedule : Schedule.of(frequency);
+    }
+
+    /**
+     * Makes the habit follow a schedule, setting its frequency to the closest plain one.
+     *
+     * @param schedule when the habit is meant to be done
+     */
+    public void setSchedule(Schedule schedule) {
+        this.schedule = schedule;
+        this.frequency = schedule.getFrequency();
+    }
+
+    /**
+     * Sets the frequency of the habit, replacing a custom schedule with the one the frequency stands for.
+     *
+     * @param frequency the new frequency
+     */
+    public void setFrequency(Frequency frequency) {
+        this.frequency = frequency;
+        this.schedule = null;
+    }
 }
@@ -0,0 +1,22 @@
+package org.home.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * The {@code OutboxEvent} class represents a change to a habit or habit record, written to the outbox of the
+ * owner's shard in the same transaction as the change itself.
+ */
+@Getter
+@AllArgsConstructor
+public class OutboxEvent {
+    private int shard;
+    private OutboxPosition position;
+    private Long userId;
+    private EventType type;
+    private Long aggregateId;
+    private String payload;
+    private Instant createdAt;
+}
@@ -0,0 +1,35 @@
+package org.home.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The {@code OutboxPosition} class is a place in the outbox of one shard.
+ * <p>
+ * Events are ordered by the id of the transaction that wrote them and then by their own id, which is the order in
+ * which they become visible to readers.
+ */
+@Getter
+@AllArgsConstructor
+public class OutboxPosition {
+
+    /**
+     * The position before the first event.
+     */
+    public static final OutboxPosition START = new OutboxPosition(0, 0);
+
+    private final long transactionId;
+    private final long eventId;
+
+    /**
+     * Tells whether this position is past another one.
+     *
+     * @param other the position to compare with
+     * @return {@code true} if this position comes after {@code other}
+     */
+    public boolean isAfter(OutboxPosition other) {
+        return transactionId != other.transactionId
+                ? transactionId > other.transactionId
+                : eventId > other.eventId;
+    }
+}
@@ -0,0 +1,315 @@
+package org.home.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The {@code Schedule} class describes when a habit is meant to be done.
+ * <p>
+ * Four kinds of schedule are supported:
+ * <ul>
+ *   <li>{@link Kind#DAILY} - every day;</li>
+ *   <li>{@link Kind#TIMES_PER_WEEK} - on a number of distinct days of every Monday to Sunday week, where once
+ *   a week is the plain {@link Frequency#WEEKLY} habit;</li>
+ *   <li>{@link Kind#WEEKDAYS} - on given days of the week;</li>
+ *   <li>{@link Kind#EVERY_N_DAYS} - once in every period of a number of days, counted from an anchor date.</li>
+ * </ul>
+ * A schedule is written as {@code DAILY}, {@code WEEKLY}, {@code TIMES_PER_WEEK 3},
+ * {@code WEEKDAYS MON,WED,FRI} or {@code EVERY_N_DAYS 3 2024-10-01}; {@link #parse} reads and
+ * {@link #toString} writes that form.
+ */
+public final class Schedule {
+
+    /**
+     * The kinds of schedule.
+     */
+    public enum Kind {
+        /**
+         * Every day.
+         */
+        DAILY,
+
+        /**
+         * A number of distinct days in every week.
+         */
+        TIMES_PER_WEEK,
+
+        /**
+         * Given days of the week.
+         */
+        WEEKDAYS,
+
+        /**
+         * Once in every period of a number of days.
+         */
+        EVERY_N_DAYS
+    }
+
+    private static final Schedule DAILY = new Schedule(Kind.DAILY, 1, 0, null);
+    private static final Schedule WEEKLY = new Schedule(Kind.TIMES_PER_WEEK, 1, 0, null);
+
+    private final Kind kind;
+    private final int count;
+    private final int weekdayMask;
+    private final LocalDate anchor;
+
+    private Schedule(Kind kind, int count, int weekdayMask, LocalDate anchor) {
+        this.kind = kind;
+        this.count = count;
+        this.weekdayMask = weekdayMask;
+        this.anchor = anchor;
+    }
+
+    /**
+     * Returns the schedule of a habit done every day.
+     *
+     * @return the daily schedule
+     */
+    public static Schedule daily() {
+        return DAILY;
+    }
+
+    /**
+     * Returns the schedule of a habit done on a number of distinct days of every week.
+     *
+     * @param times the number of days per week, from 1 to 7
+     * @return the schedule
+     * @throws IllegalArgumentException if {@code times} is out of range
+     */
+    public static Schedule timesPerWeek(int times) {
+        if (times < 1 || times > 7) {
+            throw new IllegalArgumentException("Times per week must be from 1 to 7: " + times);
+        }
+        return times == 1 ? WEEKLY : new Schedule(Kind.TIMES_PER_WEEK, times, 0, null);
+    }
+
+    /**
+     * Returns the schedule of a habit done on given days of the week.
+     *
+     * @param weekdays the days of the week
+     * @return the schedule
+     * @throws IllegalArgumentException if no day is given
+     */
+    public static Schedule onWeekdays(Set<DayOfWeek> weekdays) {
+        if (weekdays.isEmpty()) {
+            throw new IllegalArgumentException("At least one day of the week is required");
+        }
+        int mask = 0;
+        for (DayOfWeek weekday : weekdays) {
+            mask |= 1 << (weekday.getValue() - 1);
+        }
+        return new Schedule(Kind.WEEKDAYS, weekdays.size(), mask, null);
+    }
+
+    /**
+     * Returns the schedule of a habit done once in every period of a number of days.
+     *
+     * @param days   the length of a period in days, at least 1
+     * @param anchor the first day of one of the periods
+     * @return the schedule
+     * @throws IllegalArgumentException if {@code days} is less than 1
+     */
+    public static Schedule everyNDays(int days, LocalDate anchor) {
+        if (days < 1) {
+            throw new IllegalArgumentException("Period must be at least one day: " + days);
+        }
+        return days == 1 ? DAILY : new Schedule(Kind.EVERY_N_DAYS, days, 0, Objects.requireNonNull(anchor));
+    }
+
+    /**
+     * Returns the schedule a plain {@link Frequency} stands for.
+     *
+     * @param frequency the frequency of a habit
+     * @return the daily schedule for {@link Frequency#DAILY}, once a week for {@link Frequency#WEEKLY}
+     */
+    public static Schedule of(Frequency frequency) {
+        return frequency == Frequency.WEEKLY ? WEEKLY : DAILY;
+    }
+
+    /**
+     * Reads a schedule written as described in the class documentation. Every-N-days schedules written without
+     * an anchor date are anchored at {@code today}.
+     *
+     * @param text  the written schedule, case-insensitive
+     * @param today the anchor of every-N-days schedules without one
+     * @return the schedule
+     * @throws IllegalArgumentException if the text is not a valid schedule
+     */
+    public static Schedule parse(String text, LocalDate today) {
+        String[] parts = text.trim().toUpperCase(Locale.ROOT).split("\\s+");
+        try {
+            Schedule schedule = switch (parts[0]) {
+                case "DAILY" -> parts.length == 1 ? DAILY : null;
+                case "WEEKLY" -> parts.length == 1 ? WEEKLY : null;
+                case "TIMES_PER_WEEK" -> parts.length == 2 ? timesPerWeek(Integer.parseInt(parts[1])) : null;
+                case "WEEKDAYS" -> parts.length == 2 ? onWeekdays(parseWeekdays(parts[1])) : null;
+                case "EVERY_N_DAYS" -> parts.length == 2 || parts.length == 3 ? everyNDays(
+                        Integer.parseInt(parts[1]), parts.length == 3 ? LocalDate.parse(parts[2]) : today) : null;
+                default -> null;
+            };
+            if (schedule != null) {
+                return schedule;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid schedule: " + text, e);
+        }
+        throw new IllegalArgumentException("Invalid schedule: " + text);
+    }
+
+    /**
+     * Reads a schedule stored by {@link #toString}.
+     *
+     * @param text the written schedule
+     * @return the schedule
+     * @throws IllegalArgumentException if the text is not a valid schedule or an every-N-days schedule has no
+     *                                  anchor date
+     */
+    public static Schedule parse(String text) {
+        return parse(text, null);
+    }
+
+    /**
+     * Returns the kind of the schedule.
+     *
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the number of distinct days per week of a times-per-week schedule.
+     *
+     * @return the times per week, or {@code 0} for the other kinds
+     */
+    public int getTimesPerWeek() {
+        return kind == Kind.TIMES_PER_WEEK ? count : 0;
+    }
+
+    /**
+     * Returns the days of the week of a weekday schedule.
+     *
+     * @return the days of the week, or all of them for the other kinds
+     */
+    public Set<DayOfWeek> getWeekdays() {
+        Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            if (isScheduledOn(weekday)) {
+                weekdays.add(weekday);
+            }
+        }
+        return weekdays;
+    }
+
+    /**
+     * Returns the anchor date of an every-N-days schedule.
+     *
+     * @return the first day of one of the periods, or {@code null} for the other kinds
+     */
+    public LocalDate getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * Returns the plain frequency closest to the schedule: {@link Frequency#WEEKLY} for schedules counted per
+     * week, {@link Frequency#DAILY} for the others.
+     *
+     * @return the frequency
+     */
+    public Frequency getFrequency() {
+        return kind == Kind.TIMES_PER_WEEK ? Frequency.WEEKLY : Frequency.DAILY;
+    }
+
+    /**
+     * Tells whether the habit is due on a given day of the week.
+     *
+     * @param weekday the day of the week
+     * @return {@code false} only for the days a weekday schedule leaves out
+     */
+    public boolean isScheduledOn(DayOfWeek weekday) {
+        return kind != Kind.WEEKDAYS || (weekdayMask & (1 << (weekday.getValue() - 1))) != 0;
+    }
+
+    /**
+     * Returns the first day of the period a date falls in: the Monday of its week for schedules counted per
+     * week, the first day of its period for every-N-days schedules, and the date itself otherwise.
+     *
+     * @param date the date
+     * @return the first day of the period
+     */
+    public LocalDate periodStart(LocalDate date) {
+        return switch (kind) {
+            case TIMES_PER_WEEK -> date.with(DayOfWeek.MONDAY);
+            case EVERY_N_DAYS -> date.minusDays(Math.floorMod(ChronoUnit.DAYS.between(anchor, date), count));
+            default -> date;
+        };
+    }
+
+    /**
+     * Returns the length of a period of the schedule.
+     *
+     * @return {@code 7} for schedules counted per week, the period of every-N-days schedules, and {@code 1}
+     * otherwise
+     */
+    public int getPeriodDays() {
+        return switch (kind) {
+            case TIMES_PER_WEEK -> 7;
+            case EVERY_N_DAYS -> count;
+            default -> 1;
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Schedule)) {
+            return false;
+        }
+        Schedule other = (Schedule) o;
+        return kind == other.kind && count == other.count && weekdayMask == other.weekdayMask
+                && Objects.equals(anchor, other.anchor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, count, weekdayMask, anchor);
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case TIMES_PER_WEEK -> count == 1 ? "WEEKLY" : "TIMES_PER_WEEK " + count;
+            case WEEKDAYS -> "WEEKDAYS " + getWeekdays().stream()
+                    .map(weekday -> weekday.getDisplayName(TextStyle.SHORT, Locale.ENGLISH).toUpperCase(Locale.ROOT))
+                    .collect(Collectors.joining(","));
+            case EVERY_N_DAYS -> "EVERY_N_DAYS " + count + " " + anchor;
+            default -> "DAILY";
+        };
+    }
+
+    private static Set<DayOfWeek> parseWeekdays(String text) {
+        Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+        for (String weekday : text.split(",")) {
+            weekdays.add(parseWeekday(weekday));
+        }
+        return weekdays;
+    }
+
+    private static DayOfWeek parseWeekday(String text) {
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            if (weekday.name().startsWith(text) && text.length() >= 2) {
+                return weekday;
+            }
+        }
+        throw new IllegalArgumentException("Unknown day of the week: " + text);
+    }
+}
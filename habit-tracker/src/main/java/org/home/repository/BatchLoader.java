@@ -0,0 +1,203 @@
+package org.home.repository;
+
+import org.home.config.ConfigLoader;
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The {@code BatchLoader} class turns point lookups into batch lookups.
+ * <p>
+ * Keys requested through {@link #load} are collected for a short window and then looked up together by a
+ * single call of the batch function, which runs one query per shard with {@code WHERE key = ANY(?)}; the
+ * results are handed back to each caller. A batch is sent early once it reaches its maximum size, and a caller
+ * that has all its keys at hand sends them at once with {@link #loadAll}. Keys requested again while their
+ * lookup is pending share it.
+ * <p>
+ * Batches run on other threads and outside any {@link org.home.config.UnitOfWork}, so reads that must see the
+ * uncommitted writes of a unit of work use the point lookups of the repositories instead. A batch is traced as
+ * part of the trace of the caller that opened it.
+ *
+ * @param <K> the type of the keys, which must implement {@code equals} and {@code hashCode}
+ * @param <V> the type of the loaded values
+ */
+public class BatchLoader<K, V> {
+
+    private final Function<Set<K>, Map<K, V>> batchFunction;
+    private final int maxBatchSize;
+    private final Executor windowExecutor;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedKeys = new LongAdder();
+    private Map<K, CompletableFuture<Optional<V>>> pending = new LinkedHashMap<>();
+    private Span pendingSpan;
+
+    /**
+     * Constructs a {@code BatchLoader}.
+     *
+     * @param batchFunction looks up a set of keys and returns the values found, keyed by their keys
+     * @param maxBatchSize  the largest number of keys looked up together
+     * @param windowMillis  how long keys are collected before they are looked up
+     */
+    public BatchLoader(Function<Set<K>, Map<K, V>> batchFunction, int maxBatchSize, long windowMillis) {
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowExecutor = CompletableFuture.delayedExecutor(Math.max(0, windowMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a {@code BatchLoader} sized as configured in {@code application.yml}.
+     *
+     * @param configLoader  the configuration to read
+     * @param batchFunction looks up a set of keys and returns the values found, keyed by their keys
+     * @param <K>           the type of the keys
+     * @param <V>           the type of the loaded values
+     * @return a new {@code BatchLoader}
+     */
+    public static <K, V> BatchLoader<K, V> fromConfig(ConfigLoader configLoader,
+                                                      Function<Set<K>, Map<K, V>> batchFunction) {
+        return new BatchLoader<>(batchFunction, configLoader.getBatchLoaderMaxSize(),
+                configLoader.getBatchLoaderWindowMillis());
+    }
+
+    /**
+     * Requests the value of a key. It is looked up with the other keys requested within the window.
+     *
+     * @param key the key to look up
+     * @return a future completed with the value, or with an empty {@link Optional} if there is none
+     */
+    public CompletableFuture<Optional<V>> load(K key) {
+        loads.increment();
+        CompletableFuture<Optional<V>> result;
+        Map<K, CompletableFuture<Optional<V>>> full = null;
+        Span parent = null;
+        boolean first;
+        synchronized (this) {
+            result = pending.get(key);
+            if (result != null) {
+                return result;
+            }
+            result = new CompletableFuture<>();
+            first = pending.isEmpty();
+            if (first) {
+                pendingSpan = Tracer.current();
+            }
+            pending.put(key, result);
+            if (pending.size() >= maxBatchSize) {
+                full = pending;
+                parent = pendingSpan;
+                pending = new LinkedHashMap<>();
+                pendingSpan = null;
+            }
+        }
+        if (full != null) {
+            run(full, parent);
+        } else if (first) {
+            windowExecutor.execute(this::dispatch);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up several keys at once, together with any keys already waiting for the window to close.
+     *
+     * @param keys the keys to look up
+     * @return the values found, keyed by their keys
+     */
+    public Map<K, V> loadAll(Collection<K> keys) {
+        List<K> requested = new ArrayList<>(keys.size());
+        List<CompletableFuture<Optional<V>>> results = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            requested.add(key);
+            results.add(load(key));
+        }
+        dispatch();
+
+        Map<K, V> found = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < requested.size(); i++) {
+                K key = requested.get(i);
+                results.get(i).join().ifPresent(value -> found.put(key, value));
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return found;
+    }
+
+    /**
+     * Looks up the keys collected so far without waiting for the window to close.
+     */
+    public void dispatch() {
+        Map<K, CompletableFuture<Optional<V>>> batch;
+        Span parent;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            parent = pendingSpan;
+            pending = new LinkedHashMap<>();
+            pendingSpan = null;
+        }
+        run(batch, parent);
+    }
+
+    /**
+     * Returns the number of requested keys, including repeated ones.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Returns the number of batches looked up.
+     *
+     * @return the batch count
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Returns the number of distinct keys looked up in all batches.
+     *
+     * @return the batched key count
+     */
+    public long getBatchedKeyCount() {
+        return batchedKeys.sum();
+    }
+
+    private void run(Map<K, CompletableFuture<Optional<V>>> batch, Span parent) {
+        batches.increment();
+        batchedKeys.add(batch.size());
+        try (Span span = Tracer.startSpan("batch.load", parent)) {
+            span.setAttribute("batch.size", batch.size());
+            try {
+                Map<K, V> found = batchFunction.apply(batch.keySet());
+                batch.forEach((key, result) -> result.complete(Optional.ofNullable(found.get(key))));
+            } catch (RuntimeException e) {
+                span.recordError(e);
+                batch.values().forEach(result -> result.completeExceptionally(e));
+            }
+        }
+    }
+}
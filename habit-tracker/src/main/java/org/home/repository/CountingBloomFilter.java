@@ -0,0 +1,134 @@
+package org.home.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counting Bloom filter of strings.
+ * <p>
+ * Every key sets {@code hashes} counters of four bits, chosen by double hashing of a 64-bit hash of the key.
+ * A key may be present if all its counters are above zero and is certainly absent otherwise. Removing a key
+ * decrements its counters, except those that reached their maximum, which stay there for good. Counters are
+ * updated with compare-and-set, so lookups need no lock; a key must only be removed if it was added.
+ */
+final class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long MAX_COUNT = 0xF;
+
+    private final long capacity;
+    private final int size;
+    private final int hashes;
+    private final AtomicLongArray words;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Constructs an empty filter sized for a number of keys and a false positive rate.
+     *
+     * @param capacity          the number of keys the filter is sized for
+     * @param falsePositiveRate the rate of false positives expected once the filter holds {@code capacity} keys
+     */
+    CountingBloomFilter(long capacity, double falsePositiveRate) {
+        this.capacity = Math.max(1, capacity);
+        double counters = Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.size = (int) Math.max(COUNTERS_PER_WORD, Math.min(counters, Integer.MAX_VALUE - COUNTERS_PER_WORD));
+        this.hashes = (int) Math.max(1, Math.round((double) size / this.capacity * Math.log(2)));
+        this.words = new AtomicLongArray((size + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+    }
+
+    void add(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            increment(index(hash, i));
+        }
+        count.incrementAndGet();
+    }
+
+    void remove(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            decrement(index(hash, i));
+        }
+        count.decrementAndGet();
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            if (counter(index(hash, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the false positive rate expected for the keys the filter holds.
+     */
+    double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-hashes * (double) Math.max(0, count.get()) / size), hashes);
+    }
+
+    private int index(long hash, int i) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        return Math.floorMod(first + i * second, size);
+    }
+
+    private long counter(int index) {
+        return (words.get(index / COUNTERS_PER_WORD) >>> shift(index)) & MAX_COUNT;
+    }
+
+    private void increment(int index) {
+        int word = index / COUNTERS_PER_WORD;
+        int shift = shift(index);
+        long current;
+        do {
+            current = words.get(word);
+            if (((current >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return;
+            }
+        } while (!words.compareAndSet(word, current, current + (1L << shift)));
+    }
+
+    private void decrement(int index) {
+        int word = index / COUNTERS_PER_WORD;
+        int shift = shift(index);
+        long current;
+        do {
+            current = words.get(word);
+            long counter = (current >>> shift) & MAX_COUNT;
+            if (counter == 0 || counter == MAX_COUNT) {
+                return;
+            }
+        } while (!words.compareAndSet(word, current, current - (1L << shift)));
+    }
+
+    private static int shift(int index) {
+        return (index % COUNTERS_PER_WORD) * 4;
+    }
+
+    /**
+     * Hashes a key with 64-bit FNV-1a followed by the MurmurHash3 finalizer.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,26 +1,76 @@
 package org.home.repository;
 
+import org.home.config.ConfigLoader;
 import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.event.EventPayload;
+import org.home.io.AsciiCodec;
+import org.home.model.EventType;
 import org.home.model.Habit;
 import org.home.model.HabitRecord;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * The {@code HabitRecordRepository} class provides methods to manage habit records in the database.
+ * <p>
+ * Records are stored on the same shard as their habit, which is derived from the habit id. Single record
+ * changes are written to the outbox of that shard in the same transaction; bulk imports are not. Lookups of
+ * the records of many habits on a date are batched by a {@link BatchLoader} into one query per shard.
  */
 public class HabitRecordRepository {
 
-    private static DBConnectionProvider connectionProvider;
+    /**
+     * The result of {@link #insertIfAbsent} when the habit already has a record on the date.
+     */
+    public static final long ALREADY_RECORDED = -1;
+
+    /**
+     * The result of {@link #insertIfAbsent} when the record could not be saved.
+     */
+    public static final long NOT_SAVED = -2;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO ylab_schema.records (id, date, completed, habit_id) VALUES (?, ?, ?, ?)";
+    private static final String CHECK_IN_SQL = "WITH inserted AS ("
+            + "INSERT INTO ylab_schema.records (id, date, completed, habit_id) "
+            + "VALUES (?, DATE '1970-01-01' + ?, ?, ?) ON CONFLICT (habit_id, date) DO NOTHING "
+            + "RETURNING id, habit_id, date::date AS day, completed) "
+            + "INSERT INTO ylab_schema.outbox (user_id, event_type, aggregate_id, payload) "
+            + "SELECT h.user_id, 'RECORD_CREATED', i.id, '{\"id\":' || i.id || ',\"habitId\":' || i.habit_id "
+            + "|| ',\"date\":\"' || to_char(i.day, 'YYYY-MM-DD') || '\",\"completed\":' || i.completed || '}' "
+            + "FROM inserted i JOIN ylab_schema.habits h ON h.id = i.habit_id";
+    private static final String COPY_SQL =
+            "COPY ylab_schema.records (id, date, completed, habit_id) FROM STDIN";
+    private static final String EPOCH_DAY = "date::date - DATE '1970-01-01'";
+    private static final String FIND_BY_DATES_SQL = "SELECT r.id, r.habit_id, r.date::date - DATE '1970-01-01', "
+            + "r.completed FROM ylab_schema.records r JOIN unnest(?::bigint[], ?::date[]) AS k (habit_id, day) "
+            + "ON r.habit_id = k.habit_id AND r.date >= k.day AND r.date < k.day + 1";
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_COPY_ROW_LENGTH = 2 * AsciiCodec.MAX_LONG_LENGTH + AsciiCodec.DATE_LENGTH + 5;
+
+    private static ShardRouter shards;
+    private static IdAllocator[] idAllocators;
+    private static BatchLoader<DateKey, HabitRecord> dateLoader;
 
     /**
      * Constructs a new {@code HabitRecordRepository} with the provided database connection provider.
@@ -28,74 +78,289 @@ public class HabitRecordRepository {
      * @param connectionProvider the {@link DBConnectionProvider} used to establish database connections
      */
     public HabitRecordRepository(DBConnectionProvider connectionProvider) {
-        HabitRecordRepository.connectionProvider = connectionProvider;
+        this(ShardRouter.single(connectionProvider));
+    }
+
+    /**
+     * Constructs a new {@code HabitRecordRepository} over the provided shards.
+     *
+     * @param shards the {@link ShardRouter} used to find the database of a habit
+     */
+    public HabitRecordRepository(ShardRouter shards) {
+        HabitRecordRepository.shards = shards;
+        HabitRecordRepository.idAllocators = IdAllocator.forShards(shards, "record_id_seq");
+        HabitRecordRepository.dateLoader =
+                BatchLoader.fromConfig(new ConfigLoader(), HabitRecordRepository::findByDatesOnShards);
     }
 
     /**
      * Retrieves all habit records associated with a specific habit.
      *
      * @param habit the {@link Habit} for which to retrieve records
-     * @return a map of dates to {@link HabitRecord} objects for the specified habit
+     * @return a map of dates to {@link HabitRecord} objects for the specified habit, in date order
      */
     public static Map<LocalDate, HabitRecord> getAllHabitRecords(Habit habit) {
-        String sql = "SELECT * FROM ylab_schema.records WHERE habit_id = ?";
-        try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, habit.getId());
-            ResultSet resultSet = pstmt.executeQuery();
+        RecordSeries series = findRecords(habit.getId(), null, null, false);
+        Map<LocalDate, HabitRecord> result = new LinkedHashMap<>();
+        for (int i = 0; i < series.size(); i++) {
+            result.put(series.date(i), series.record(i));
+        }
+        return result;
+    }
 
-            Map<LocalDate, HabitRecord> result = new HashMap<>();
-            while (resultSet.next()) {
-                result.put(resultSet.getDate("date").toLocalDate(),
-                        getRecordFromResultSet(resultSet));
-            }
-            return result;
+    /**
+     * Retrieves the records of a habit dated within a range, in date order.
+     * <p>
+     * The range is read through the {@code (habit_id, date)} index, so only the requested records are
+     * transferred.
+     *
+     * @param habitId       the ID of the habit
+     * @param from          the first date to include, or {@code null} for no lower bound
+     * @param to            the last date to include, or {@code null} for no upper bound
+     * @param completedOnly whether to leave out records not marked as completed
+     * @return the records found, or an empty {@link RecordSeries} if there are none or they could not be read
+     */
+    public static RecordSeries findRecords(Long habitId, LocalDate from, LocalDate to, boolean completedOnly) {
+        DBConnectionProvider connectionProvider = shards.forId(habitId);
+        try (Connection conn = connectionProvider.getReadConnection(DBConnectionProvider.habitKey(habitId))) {
+            return findRecords(conn, habitId, from, to, completedOnly);
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
         }
-        return new HashMap<>();
+        return RecordSeries.empty();
     }
 
     /**
-     * Saves a new habit record to the database.
+     * Saves a new habit record to the database and assigns the record its id.
      *
      * @param record the {@link HabitRecord} to be saved
      */
     public static void save(HabitRecord record) {
-        String sql = "INSERT INTO ylab_schema.records (date, completed, habit_id) VALUES (?, ?, ?)";
+        DBConnectionProvider connectionProvider = shards.forId(record.getHabitId());
         try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setDate(1, Date.valueOf(record.getDate()));
-            pstmt.setBoolean(2, record.isCompleted());
-            pstmt.setObject(3, record.getHabitId());
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            long id = idAllocators[shards.shardOf(record.getHabitId())].nextId();
+            setInsertParameters(pstmt, id, record);
             pstmt.executeUpdate();
-            ResultSet generatedKeys = pstmt.getGeneratedKeys();
+            record.setId(id);
+            OutboxRepository.appendForHabit(conn, record.getHabitId(), EventType.RECORD_CREATED, id,
+                    EventPayload.of(record));
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.habitKey(record.getHabitId()));
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+    }
 
-            if (generatedKeys.next()) {
-                record.setId(generatedKeys.getLong(1));
+    /**
+     * Checks a habit in on a date: saves a new record unless the habit already has one on that date.
+     * <p>
+     * This is the allocation-light path of a check-in. The record and its outbox event are written by one
+     * statement, which skips the insert on a conflict with the {@code (habit_id, date)} index instead of
+     * looking the date up first, and renders the payload of the event the way {@link EventPayload} does.
+     * Its parameters are bound as primitives, so no {@link Date}, boxed id or payload string is created.
+     * It is not allocation-free: outside a unit of work every call opens a connection and prepares its
+     * statement anew, since connections are neither pooled nor keep their statements.
+     *
+     * @param habitId   the ID of the habit
+     * @param epochDay  the date of the record as days since 1970-01-01
+     * @param completed whether the habit was completed on that date
+     * @return the ID of the new record, {@link #ALREADY_RECORDED} if the habit already has a record on that
+     * date, or {@link #NOT_SAVED} if the record could not be saved
+     */
+    public static long insertIfAbsent(long habitId, long epochDay, boolean completed) {
+        int shard = shards.shardOf(habitId);
+        DBConnectionProvider connectionProvider = shards.shard(shard);
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(CHECK_IN_SQL)) {
+            long id = idAllocators[shard].nextId();
+            pstmt.setLong(1, id);
+            pstmt.setInt(2, Math.toIntExact(epochDay));
+            pstmt.setBoolean(3, completed);
+            pstmt.setLong(4, habitId);
+            if (pstmt.executeUpdate() == 0) {
+                return ALREADY_RECORDED;
             }
+            connectionProvider.markWritten(DBConnectionProvider.habitKey(habitId));
+            return id;
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
         }
+        return NOT_SAVED;
     }
 
     /**
-     * Checks if a habit record exists for a specific habit on a given date.
+     * Saves several new habit records with one batched insert per shard and assigns the records their ids.
+     * <p>
+     * The records of each shard are inserted in a single transaction.
+     *
+     * @param records the {@link HabitRecord} objects to be saved
+     * @return {@code true} if all records were saved; {@code false} otherwise
+     */
+    public static boolean saveAll(List<HabitRecord> records) {
+        List<List<HabitRecord>> byShard = new ArrayList<>();
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (HabitRecord record : records) {
+            byShard.get(shards.shardOf(record.getHabitId())).add(record);
+        }
+
+        boolean saved = true;
+        for (int shard = 0; shard < byShard.size(); shard++) {
+            if (!byShard.get(shard).isEmpty()) {
+                saved &= saveBatch(shard, byShard.get(shard));
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Saves the records of a {@link RecordBatch} with one {@code COPY} per shard.
+     * <p>
+     * This is the bulk import path: rows are encoded straight into a reusable buffer and streamed to the
+     * database, and the saved records get ids but are not handed back. The records of each shard are saved
+     * atomically.
+     *
+     * @param batch the records to be saved
+     * @return {@code true} if all records were saved; {@code false} otherwise
+     */
+    public static boolean saveAll(RecordBatch batch) {
+        boolean saved = true;
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (int shard = 0; shard < shards.shardCount(); shard++) {
+            saved &= copyBatch(shard, batch, buffer);
+        }
+        return saved;
+    }
+
+    /**
+     * Returns the dates a habit already has records for.
      *
      * @param habitId the ID of the habit
-     * @param date    the date to check for the habit record
-     * @return {@code true} if the record exists; {@code false} otherwise
+     * @return the recorded dates as days since 1970-01-01, in ascending order
      */
-    public static boolean recordExists(Long habitId, LocalDate date) {
-        String sql = "SELECT * FROM ylab_schema.records WHERE habit_id = ? AND date = ?";
+    public static long[] findRecordedDays(Long habitId) {
+        String sql = "SELECT " + EPOCH_DAY + " FROM ylab_schema.records WHERE habit_id = ? ORDER BY date";
+        DBConnectionProvider connectionProvider = shards.forId(habitId);
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setLong(1, habitId);
-            pstmt.setDate(2, Date.valueOf(date));
             ResultSet resultSet = pstmt.executeQuery();
-            if (resultSet.next()) {
-                return true;
+            long[] days = new long[16];
+            int count = 0;
+            while (resultSet.next()) {
+                if (count == days.length) {
+                    days = Arrays.copyOf(days, count * 2);
+                }
+                days[count++] = resultSet.getLong(1);
+            }
+            return Arrays.copyOf(days, count);
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return new long[0];
+    }
+
+    /**
+     * Streams all records of a user's habits, ordered by habit and date, without loading them into memory.
+     * <p>
+     * The rows are read through a server-side cursor, a fetch at a time.
+     *
+     * @param userId  the ID of the user
+     * @param visitor called for every record
+     * @return {@code true} if all records were visited; {@code false} otherwise
+     */
+    public static boolean forEachUserRecord(Long userId, RecordVisitor visitor) {
+        return forEachUserRecord(userId, null, visitor);
+    }
+
+    /**
+     * Streams the records of a user's habits dated before the given date, ordered by habit and date,
+     * without loading them into memory.
+     *
+     * @param userId  the ID of the user
+     * @param before  the first date that is not visited, or {@code null} to visit all records
+     * @param visitor called for every record
+     * @return {@code true} if all records were visited; {@code false} otherwise
+     */
+    public static boolean forEachUserRecord(Long userId, LocalDate before, RecordVisitor visitor) {
+        String sql = "SELECT r.habit_id, r." + EPOCH_DAY + ", r.completed FROM ylab_schema.records r "
+                + "JOIN ylab_schema.habits h ON h.id = r.habit_id WHERE h.user_id = ?"
+                + (before == null ? "" : " AND r.date < ?") + " ORDER BY r.habit_id, r.date";
+        DBConnectionProvider connectionProvider = shards.forId(userId);
+        try (Connection conn = connectionProvider.getReadConnection(DBConnectionProvider.userKey(userId));
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            pstmt.setFetchSize(10_000);
+            pstmt.setLong(1, userId);
+            if (before != null) {
+                pstmt.setDate(2, Date.valueOf(before));
+            }
+            ResultSet resultSet = pstmt.executeQuery();
+            while (resultSet.next()) {
+                visitor.visit(resultSet.getLong(1), resultSet.getLong(2), resultSet.getBoolean(3));
+            }
+            conn.commit();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Streams the completed records of every habit in every database, one {@link RecordSeries} per habit,
+     * without loading more than one habit's records into memory.
+     *
+     * @param visitor called with the completed records of every habit that has any
+     * @return {@code true} if all databases were read; {@code false} otherwise
+     */
+    public static boolean forEachCompletedSeries(Consumer<RecordSeries> visitor) {
+        String sql = "SELECT habit_id, id, " + EPOCH_DAY + " FROM ylab_schema.records WHERE completed "
+                + "ORDER BY habit_id, date";
+        boolean complete = true;
+        for (DBConnectionProvider connectionProvider : shards.all()) {
+            try (Connection conn = connectionProvider.getReadConnection(null);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                conn.setAutoCommit(false);
+                pstmt.setFetchSize(10_000);
+                ResultSet resultSet = pstmt.executeQuery();
+                RecordSeries.Builder series = null;
+                long habitId = 0;
+                while (resultSet.next()) {
+                    if (series == null || resultSet.getLong(1) != habitId) {
+                        if (series != null) {
+                            visitor.accept(series.build());
+                        }
+                        habitId = resultSet.getLong(1);
+                        series = new RecordSeries.Builder(habitId);
+                    }
+                    series.add(resultSet.getLong(2), resultSet.getLong(3), true);
+                }
+                if (series != null) {
+                    visitor.accept(series.build());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                System.out.println("Got SQL Exception: " + e.getMessage());
+                complete = false;
             }
+        }
+        return complete;
+    }
+
+    /**
+     * Checks if a habit record exists for a specific habit on a given date.
+     *
+     * @param habitId the ID of the habit
+     * @param date    the date to check for the habit record
+     * @return {@code true} if the record exists; {@code false} otherwise
+     */
+    public static boolean recordExists(Long habitId, LocalDate date) {
+        try (Connection conn = shards.forId(habitId).getConnection()) {
+            return !findRecords(conn, habitId, date, date, false).isEmpty();
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
         }
@@ -103,21 +368,23 @@ public class HabitRecordRepository {
     }
 
     /**
-     * Finds a habit record by its date and associated habit ID.
+     * Finds the date a habit was last completed on.
      *
-     * @param date    the date of the habit record
-     * @param habitId the ID of the associated habit
-     * @return an {@link Optional} containing the {@link HabitRecord} if found, or an empty {@link Optional}
+     * @param habitId the ID of the habit
+     * @return the date of the latest completed record, or an empty {@link Optional} if the habit was never
+     * completed or its records could not be read
      */
-    public static Optional<HabitRecord> findByDateAndHabitId(LocalDate date, Long habitId) {
-        String sql = "SELECT * FROM ylab_schema.records WHERE date = ? AND habit_id = ?";
-        try (Connection conn = connectionProvider.getConnection();
+    public static Optional<LocalDate> findLastCompletion(Long habitId) {
+        String sql = "SELECT max(" + EPOCH_DAY + ") FROM ylab_schema.records WHERE habit_id = ? AND completed";
+        try (Connection conn = shards.forId(habitId).getReadConnection(DBConnectionProvider.habitKey(habitId));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDate(1, Date.valueOf(date));
-            pstmt.setLong(2, habitId);
+            pstmt.setLong(1, habitId);
             ResultSet resultSet = pstmt.executeQuery();
             if (resultSet.next()) {
-                return Optional.of(getRecordFromResultSet(resultSet));
+                long epochDay = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    return Optional.of(LocalDate.ofEpochDay(epochDay));
+                }
             }
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
@@ -125,6 +392,44 @@ public class HabitRecordRepository {
         return Optional.empty();
     }
 
+    /**
+     * Finds a habit record by its date and associated habit ID.
+     *
+     * @param date    the date of the habit record
+     * @param habitId the ID of the associated habit
+     * @return an {@link Optional} containing the {@link HabitRecord} if found, or an empty {@link Optional}
+     */
+    public static Optional<HabitRecord> findByDateAndHabitId(LocalDate date, Long habitId) {
+        RecordSeries series = findRecords(habitId, date, date, false);
+        return series.isEmpty() ? Optional.empty() : Optional.of(series.record(0));
+    }
+
+    /**
+     * Requests a habit record by its date and associated habit ID. The record is looked up together with the
+     * other records requested at about the same time.
+     *
+     * @param date    the date of the habit record
+     * @param habitId the ID of the associated habit
+     * @return a future completed with the {@link HabitRecord} if found, or with an empty {@link Optional}
+     */
+    public static CompletableFuture<Optional<HabitRecord>> loadByDateAndHabitId(LocalDate date, Long habitId) {
+        return dateLoader.load(new DateKey(habitId, date));
+    }
+
+    /**
+     * Finds the records of several habits on a date with one query per shard.
+     *
+     * @param date     the date of the habit records
+     * @param habitIds the IDs of the habits
+     * @return a map of the habit IDs that have a record on the date to their {@link HabitRecord} objects
+     */
+    public static Map<Long, HabitRecord> findByDateAndHabitIds(LocalDate date, Collection<Long> habitIds) {
+        List<DateKey> keys = habitIds.stream().map(habitId -> new DateKey(habitId, date)).toList();
+        Map<Long, HabitRecord> result = new HashMap<>();
+        dateLoader.loadAll(keys).forEach((key, record) -> result.put(key.habitId, record));
+        return result;
+    }
+
     /**
      * Updates an existing habit record.
      *
@@ -133,12 +438,20 @@ public class HabitRecordRepository {
      */
     public static boolean update(HabitRecord record) {
         String sql = "UPDATE ylab_schema.records SET completed = ? WHERE id = ?";
+        DBConnectionProvider connectionProvider = shards.forId(record.getId());
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setBoolean(1, record.isCompleted());
             pstmt.setLong(2, record.getId());
+            conn.setAutoCommit(false);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OutboxRepository.appendForHabit(conn, record.getHabitId(), EventType.RECORD_UPDATED, record.getId(),
+                        EventPayload.of(record));
+            }
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.habitKey(record.getHabitId()));
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.out.println("Error updating record: " + e.getMessage());
@@ -154,11 +467,19 @@ public class HabitRecordRepository {
      */
     public static boolean delete(HabitRecord record) {
         String sql = "DELETE FROM ylab_schema.records WHERE id = ?";
+        DBConnectionProvider connectionProvider = shards.forId(record.getId());
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setLong(1, record.getId());
+            conn.setAutoCommit(false);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OutboxRepository.appendForHabit(conn, record.getHabitId(), EventType.RECORD_DELETED, record.getId(),
+                        EventPayload.of(record));
+            }
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.habitKey(record.getHabitId()));
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.out.println("Error deleting record: " + e.getMessage());
@@ -166,11 +487,230 @@ public class HabitRecordRepository {
         }
     }
 
-    private static HabitRecord getRecordFromResultSet(ResultSet resultSet) throws SQLException {
-        Long id = resultSet.getLong("id");
-        LocalDate date = resultSet.getDate("date").toLocalDate();
-        boolean completed = resultSet.getBoolean("completed");
-        Long habitId = resultSet.getLong("habit_id");
-        return new HabitRecord(id, date, completed, habitId);
+    /**
+     * Counts the records of a user's habits, stopping at a limit so that counting a long history stays cheap.
+     *
+     * @param userId the ID of the user
+     * @param limit  the largest count of interest
+     * @return the number of records, at most {@code limit}, or {@code -1} if they could not be counted
+     */
+    public static long countUserRecords(Long userId, long limit) {
+        String sql = "SELECT count(*) FROM (SELECT 1 FROM ylab_schema.records r "
+                + "JOIN ylab_schema.habits h ON h.id = r.habit_id WHERE h.user_id = ? LIMIT ?) AS limited";
+        DBConnectionProvider connectionProvider = shards.forId(userId);
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            pstmt.setLong(2, limit);
+            ResultSet resultSet = pstmt.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Deletes a chunk of the records of a user's habits in a transaction of its own, without writing events.
+     * <p>
+     * Used to empty a long history a chunk at a time before the user is deleted, so that no single
+     * transaction holds locks on all of it.
+     *
+     * @param userId the ID of the user
+     * @param limit  the largest number of records to delete
+     * @return the number of deleted records, or {@code -1} if they could not be deleted
+     */
+    public static int deleteUserRecords(Long userId, int limit) {
+        String sql = "DELETE FROM ylab_schema.records WHERE id IN (SELECT r.id FROM ylab_schema.records r "
+                + "JOIN ylab_schema.habits h ON h.id = r.habit_id WHERE h.user_id = ? LIMIT ?)";
+        DBConnectionProvider connectionProvider = shards.forId(userId);
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            pstmt.setInt(2, limit);
+            int rowsAffected = pstmt.executeUpdate();
+            connectionProvider.markWritten(DBConnectionProvider.userKey(userId));
+            return rowsAffected;
+        } catch (SQLException e) {
+            System.out.println("Error deleting records: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static RecordSeries findRecords(Connection conn, Long habitId, LocalDate from, LocalDate to,
+                                            boolean completedOnly) throws SQLException {
+        String sql = "SELECT id, " + EPOCH_DAY + ", completed FROM ylab_schema.records WHERE habit_id = ?"
+                + (from == null ? "" : " AND date >= ?") + (to == null ? "" : " AND date < ?")
+                + (completedOnly ? " AND completed" : "") + " ORDER BY date";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int parameter = 1;
+            pstmt.setLong(parameter++, habitId);
+            if (from != null) {
+                pstmt.setDate(parameter++, Date.valueOf(from));
+            }
+            if (to != null) {
+                pstmt.setDate(parameter, Date.valueOf(to.plusDays(1)));
+            }
+            ResultSet resultSet = pstmt.executeQuery();
+            RecordSeries.Builder series = new RecordSeries.Builder(habitId);
+            while (resultSet.next()) {
+                series.add(resultSet.getLong(1), resultSet.getLong(2), resultSet.getBoolean(3));
+            }
+            return series.build();
+        }
+    }
+
+    private static Map<DateKey, HabitRecord> findByDatesOnShards(Set<DateKey> keys) {
+        Map<DateKey, HabitRecord> result = new HashMap<>();
+        shards.scatter(shard -> findByDatesOnShard(shard, keys)).forEach(result::putAll);
+        return result;
+    }
+
+    private static Map<DateKey, HabitRecord> findByDatesOnShard(DBConnectionProvider connectionProvider,
+                                                                Collection<DateKey> keys) {
+        List<DateKey> shardKeys = keys.stream().filter(key -> shards.forId(key.habitId) == connectionProvider).toList();
+        Map<DateKey, HabitRecord> result = new HashMap<>();
+        if (shardKeys.isEmpty()) {
+            return result;
+        }
+        List<String> consistencyKeys =
+                shardKeys.stream().map(key -> DBConnectionProvider.habitKey(key.habitId)).toList();
+        try (Connection conn = connectionProvider.getBatchReadConnection(consistencyKeys);
+             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_DATES_SQL)) {
+            pstmt.setArray(1, conn.createArrayOf("bigint", shardKeys.stream().map(key -> key.habitId).toArray()));
+            pstmt.setArray(2, conn.createArrayOf("date",
+                    shardKeys.stream().map(key -> Date.valueOf(key.date)).toArray()));
+            ResultSet resultSet = pstmt.executeQuery();
+            while (resultSet.next()) {
+                HabitRecord record = new HabitRecord(resultSet.getLong(1),
+                        LocalDate.ofEpochDay(resultSet.getLong(3)), resultSet.getBoolean(4), resultSet.getLong(2));
+                result.put(new DateKey(record.getHabitId(), record.getDate()), record);
+            }
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static boolean saveBatch(int shard, List<HabitRecord> records) {
+        DBConnectionProvider connectionProvider = shards.shard(shard);
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+            conn.setAutoCommit(false);
+            long[] ids = new long[records.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = idAllocators[shard].nextId();
+                setInsertParameters(pstmt, ids[i], records.get(i));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+            for (int i = 0; i < ids.length; i++) {
+                HabitRecord record = records.get(i);
+                record.setId(ids[i]);
+                connectionProvider.markWritten(DBConnectionProvider.habitKey(record.getHabitId()));
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean copyBatch(int shard, RecordBatch batch, byte[] buffer) {
+        DBConnectionProvider connectionProvider = shards.shard(shard);
+        CopyIn copyIn = null;
+        try (Connection conn = connectionProvider.getConnection()) {
+            long lastHabitId = Long.MIN_VALUE;
+            int pos = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                long habitId = batch.habitId(i);
+                if (shards.shardOf(habitId) != shard) {
+                    continue;
+                }
+                if (copyIn == null) {
+                    copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+                }
+                if (pos > buffer.length - MAX_COPY_ROW_LENGTH) {
+                    copyIn.writeToCopy(buffer, 0, pos);
+                    pos = 0;
+                }
+                pos = AsciiCodec.writeLong(idAllocators[shard].nextId(), buffer, pos);
+                buffer[pos++] = '\t';
+                pos = AsciiCodec.writeEpochDay(batch.epochDay(i), buffer, pos);
+                buffer[pos++] = '\t';
+                buffer[pos++] = (byte) (batch.completed(i) ? 't' : 'f');
+                buffer[pos++] = '\t';
+                pos = AsciiCodec.writeLong(habitId, buffer, pos);
+                buffer[pos++] = '\n';
+                if (habitId != lastHabitId) {
+                    connectionProvider.markWritten(DBConnectionProvider.habitKey(habitId));
+                    lastHabitId = habitId;
+                }
+            }
+            if (copyIn != null) {
+                copyIn.writeToCopy(buffer, 0, pos);
+                copyIn.endCopy();
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void setInsertParameters(PreparedStatement pstmt, long id, HabitRecord record)
+            throws SQLException {
+        pstmt.setLong(1, id);
+        pstmt.setDate(2, Date.valueOf(record.getDate()));
+        pstmt.setBoolean(3, record.isCompleted());
+        pstmt.setObject(4, record.getHabitId());
+    }
+
+    /**
+     * Receives the records streamed by {@link #forEachUserRecord}.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+
+        /**
+         * Handles one record.
+         *
+         * @param habitId   the ID of the habit the record belongs to
+         * @param epochDay  the date of the record as days since 1970-01-01
+         * @param completed whether the habit was completed on that date
+         */
+        void visit(long habitId, long epochDay, boolean completed);
+    }
+
+    /**
+     * Identifies a habit record by its habit and date.
+     */
+    private static final class DateKey {
+        private final Long habitId;
+        private final LocalDate date;
+
+        private DateKey(Long habitId, LocalDate date) {
+            this.habitId = habitId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DateKey)) {
+                return false;
+            }
+            DateKey other = (DateKey) o;
+            return Objects.equals(habitId, other.habitId) && Objects.equals(date, other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(habitId, date);
+        }
     }
 }
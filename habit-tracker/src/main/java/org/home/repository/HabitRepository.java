@@ -1,24 +1,46 @@
 package org.home.repository;
 
+import org.home.config.ConfigLoader;
 import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.event.EventPayload;
+import org.home.model.EventType;
 import org.home.model.Frequency;
 import org.home.model.Habit;
+import org.home.model.Schedule;
 import org.home.model.User;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Date;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * The {@code HabitRepository} class provides methods to manage habits in the database.
+ * <p>
+ * A habit is stored on the shard of the user who owns it, and its id is allocated there. Every change is
+ * written to the outbox of that shard in the same transaction. Lookups of many habits by title are batched by a
+ * {@link BatchLoader} into one query per shard.
  */
 public class HabitRepository {
-    private static DBConnectionProvider connectionProvider;
+    private static final String FIND_BY_TITLES_SQL = "SELECT h.* FROM ylab_schema.habits h "
+            + "JOIN unnest(?::bigint[], ?::text[]) AS k (user_id, title) "
+            + "ON h.user_id = k.user_id AND h.title = k.title";
+
+    private static ShardRouter shards;
+    private static IdAllocator[] idAllocators;
+    private static BatchLoader<TitleKey, Habit> titleLoader;
 
     /**
      * Constructs a new {@code HabitRepository} with the provided database connection provider.
@@ -26,7 +48,18 @@ public class HabitRepository {
      * @param connectionProvider the {@link DBConnectionProvider} used to establish database connections
      */
     public HabitRepository(DBConnectionProvider connectionProvider) {
-        HabitRepository.connectionProvider = connectionProvider;
+        this(ShardRouter.single(connectionProvider));
+    }
+
+    /**
+     * Constructs a new {@code HabitRepository} over the provided shards.
+     *
+     * @param shards the {@link ShardRouter} used to find the database of a habit owner
+     */
+    public HabitRepository(ShardRouter shards) {
+        HabitRepository.shards = shards;
+        HabitRepository.idAllocators = IdAllocator.forShards(shards, "habit_id_seq");
+        HabitRepository.titleLoader = BatchLoader.fromConfig(new ConfigLoader(), HabitRepository::findByTitlesOnShards);
     }
 
     /**
@@ -37,7 +70,8 @@ public class HabitRepository {
      */
     public static Map<String, Habit> getAllUserHabits(User user) {
         String sql = "SELECT * FROM ylab_schema.habits WHERE user_id = ?";
-        try (Connection conn = connectionProvider.getConnection();
+        DBConnectionProvider connectionProvider = shards.forId(user.getId());
+        try (Connection conn = connectionProvider.getReadConnection(DBConnectionProvider.userKey(user.getId()));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setLong(1, user.getId());
             ResultSet resultSet = pstmt.executeQuery();
@@ -55,25 +89,61 @@ public class HabitRepository {
     }
 
     /**
-     * Saves a new habit to the database.
+     * Streams every habit of every user together with the date it was last completed, without loading them
+     * into memory. The shards are visited one after another.
+     *
+     * @param visitor called for every habit with the date of its last completed record, or {@code null} if the
+     *                habit was never completed
+     * @return {@code true} if the habits of all shards were visited; {@code false} otherwise
+     */
+    public static boolean forEachHabitWithLastCompletion(BiConsumer<Habit, LocalDate> visitor) {
+        String sql = "SELECT h.*, max(r.date) FILTER (WHERE r.completed) AS last_completed FROM ylab_schema.habits h "
+                + "LEFT JOIN ylab_schema.records r ON r.habit_id = h.id GROUP BY h.id";
+        boolean complete = true;
+        for (DBConnectionProvider connectionProvider : shards.all()) {
+            try (Connection conn = connectionProvider.getReadConnection(null);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                conn.setAutoCommit(false);
+                pstmt.setFetchSize(10_000);
+                ResultSet resultSet = pstmt.executeQuery();
+                while (resultSet.next()) {
+                    Date lastCompleted = resultSet.getDate("last_completed");
+                    visitor.accept(getHabitFromResultSet(resultSet),
+                            lastCompleted == null ? null : lastCompleted.toLocalDate());
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                System.out.println("Got SQL Exception: " + e.getMessage());
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Saves a new habit to the database and assigns the habit its id.
      *
      * @param habit the {@link Habit} to be saved
      */
     public static void save(Habit habit) {
-        String sql = "INSERT INTO ylab_schema.habits (title, description, frequency, user_id) VALUES"
-                + "(?, ?, ?::FREQUENCY, ?)";
+        String sql = "INSERT INTO ylab_schema.habits (id, title, description, frequency, user_id, schedule) VALUES"
+                + "(?, ?, ?, ?::FREQUENCY, ?, ?)";
+        DBConnectionProvider connectionProvider = shards.forId(habit.getUserId());
         try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, habit.getTitle());
-            pstmt.setString(2, habit.getDescription());
-            pstmt.setString(3, habit.getFrequency().name());
-            pstmt.setObject(4, habit.getUserId());
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            long id = idAllocators[shards.shardOf(habit.getUserId())].nextId();
+            pstmt.setLong(1, id);
+            pstmt.setString(2, habit.getTitle());
+            pstmt.setString(3, habit.getDescription());
+            pstmt.setString(4, habit.getFrequency().name());
+            pstmt.setObject(5, habit.getUserId());
+            pstmt.setString(6, habit.getSchedule().toString());
             pstmt.executeUpdate();
-            ResultSet generatedKeys = pstmt.getGeneratedKeys();
-
-            if (generatedKeys.next()) {
-                habit.setId(generatedKeys.getLong(1));
-            }
+            habit.setId(id);
+            OutboxRepository.append(conn, habit.getUserId(), EventType.HABIT_CREATED, id, EventPayload.of(habit));
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.userKey(habit.getUserId()));
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
         }
@@ -88,6 +158,7 @@ public class HabitRepository {
      */
     public static boolean habitExists(Long userId, String title) {
         String sql = "SELECT * FROM ylab_schema.habits WHERE user_id = ? AND title = ?";
+        DBConnectionProvider connectionProvider = shards.forId(userId);
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
@@ -111,7 +182,8 @@ public class HabitRepository {
      */
     public static Optional<Habit> findByTitleAndUserId(String title, Long userId) {
         String sql = "SELECT * FROM ylab_schema.habits WHERE title = ? AND user_id = ?";
-        try (Connection conn = connectionProvider.getConnection();
+        DBConnectionProvider connectionProvider = shards.forId(userId);
+        try (Connection conn = connectionProvider.getReadConnection(DBConnectionProvider.userKey(userId));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, title);
             pstmt.setLong(2, userId);
@@ -125,6 +197,32 @@ public class HabitRepository {
         return Optional.empty();
     }
 
+    /**
+     * Requests a habit by its title and associated user ID. The habit is looked up together with the other
+     * habits requested at about the same time.
+     *
+     * @param title  the title of the habit
+     * @param userId the ID of the associated user
+     * @return a future completed with the {@link Habit} if found, or with an empty {@link Optional}
+     */
+    public static CompletableFuture<Optional<Habit>> loadByTitleAndUserId(String title, Long userId) {
+        return titleLoader.load(new TitleKey(userId, title));
+    }
+
+    /**
+     * Finds habits of a user by their titles with one query.
+     *
+     * @param titles the titles of the habits
+     * @param userId the ID of the associated user
+     * @return a map of the titles found to their {@link Habit} objects
+     */
+    public static Map<String, Habit> findByTitlesAndUserId(Collection<String> titles, Long userId) {
+        List<TitleKey> keys = titles.stream().map(title -> new TitleKey(userId, title)).toList();
+        Map<String, Habit> result = new HashMap<>();
+        titleLoader.loadAll(keys).forEach((key, habit) -> result.put(key.title, habit));
+        return result;
+    }
+
     /**
      * Updates an existing habit in the database.
      *
@@ -132,15 +230,25 @@ public class HabitRepository {
      * @return {@code true} if the update was successful; {@code false} otherwise
      */
     public static boolean update(Habit habit) {
-        String sql = "UPDATE ylab_schema.habits SET title = ?, description = ?, frequency = ?::FREQUENCY WHERE id = ?";
+        String sql = "UPDATE ylab_schema.habits SET title = ?, description = ?, frequency = ?::FREQUENCY, schedule = ? "
+                + "WHERE id = ?";
+        DBConnectionProvider connectionProvider = shards.forId(habit.getId());
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, habit.getTitle());
             pstmt.setString(2, habit.getDescription());
             pstmt.setString(3, habit.getFrequency().name());
-            pstmt.setLong(4, habit.getId());
+            pstmt.setString(4, habit.getSchedule().toString());
+            pstmt.setLong(5, habit.getId());
+            conn.setAutoCommit(false);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OutboxRepository.append(conn, habit.getUserId(), EventType.HABIT_UPDATED, habit.getId(),
+                        EventPayload.of(habit));
+            }
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.userKey(habit.getUserId()));
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.out.println("Error updating habit: " + e.getMessage());
@@ -149,18 +257,27 @@ public class HabitRepository {
     }
 
     /**
-     * Deletes a habit from the database.
+     * Deletes a habit from the database together with its records, which go through {@code ON DELETE CASCADE}.
+     * The {@link EventType#HABIT_DELETED} event stands for the records too.
      *
      * @param habit the {@link Habit} to delete
      * @return {@code true} if the deletion was successful; {@code false} otherwise
      */
     public static boolean delete(Habit habit) {
         String sql = "DELETE FROM ylab_schema.habits WHERE id = ?";
+        DBConnectionProvider connectionProvider = shards.forId(habit.getId());
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setLong(1, habit.getId());
+            conn.setAutoCommit(false);
 
             int rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                OutboxRepository.append(conn, habit.getUserId(), EventType.HABIT_DELETED, habit.getId(),
+                        EventPayload.of(habit));
+            }
+            conn.commit();
+            connectionProvider.markWritten(DBConnectionProvider.userKey(habit.getUserId()));
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.out.println("Error deleting habit: " + e.getMessage());
@@ -168,12 +285,76 @@ public class HabitRepository {
         }
     }
 
-    private static Habit getHabitFromResultSet(ResultSet resultSet) throws SQLException {
+    private static Map<TitleKey, Habit> findByTitlesOnShards(Set<TitleKey> keys) {
+        Map<TitleKey, Habit> result = new HashMap<>();
+        shards.scatter(shard -> findByTitlesOnShard(shard, keys)).forEach(result::putAll);
+        return result;
+    }
+
+    private static Map<TitleKey, Habit> findByTitlesOnShard(DBConnectionProvider connectionProvider,
+                                                            Collection<TitleKey> keys) {
+        List<TitleKey> shardKeys = keys.stream().filter(key -> shards.forId(key.userId) == connectionProvider).toList();
+        Map<TitleKey, Habit> result = new HashMap<>();
+        if (shardKeys.isEmpty()) {
+            return result;
+        }
+        List<String> consistencyKeys = shardKeys.stream().map(key -> DBConnectionProvider.userKey(key.userId)).toList();
+        try (Connection conn = connectionProvider.getBatchReadConnection(consistencyKeys);
+             PreparedStatement pstmt = conn.prepareStatement(FIND_BY_TITLES_SQL)) {
+            pstmt.setArray(1, conn.createArrayOf("bigint", shardKeys.stream().map(key -> key.userId).toArray()));
+            pstmt.setArray(2, conn.createArrayOf("text", shardKeys.stream().map(key -> key.title).toArray()));
+            ResultSet resultSet = pstmt.executeQuery();
+            while (resultSet.next()) {
+                Habit habit = getHabitFromResultSet(resultSet);
+                result.put(new TitleKey(habit.getUserId(), habit.getTitle()), habit);
+            }
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return result;
+    }
+
+    static Habit getHabitFromResultSet(ResultSet resultSet) throws SQLException {
         Long id = resultSet.getLong("id");
         String title = resultSet.getString("title");
         String description = resultSet.getString("description");
         Frequency frequency = Frequency.valueOf(resultSet.getString("frequency"));
         Long userId = resultSet.getLong("user_id");
-        return new Habit(id, title, description, frequency, userId);
+        Habit habit = new Habit(id, title, description, frequency, userId);
+        String schedule = resultSet.getString("schedule");
+        if (schedule != null) {
+            habit.setSchedule(Schedule.parse(schedule));
+        }
+        return habit;
+    }
+
+    /**
+     * Identifies a habit by its owner and title.
+     */
+    private static final class TitleKey {
+        private final Long userId;
+        private final String title;
+
+        private TitleKey(Long userId, String title) {
+            this.userId = userId;
+            this.title = title;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TitleKey)) {
+                return false;
+            }
+            TitleKey other = (TitleKey) o;
+            return Objects.equals(userId, other.userId) && Objects.equals(title, other.title);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, title);
+        }
     }
 }
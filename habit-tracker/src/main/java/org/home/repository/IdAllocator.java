@@ -0,0 +1,117 @@
+package org.home.repository;
+
+import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code IdAllocator} class hands out ids for new rows of one table on one shard.
+ * <p>
+ * Instead of calling {@code nextval} for every insert it reserves a whole block of values with a single
+ * {@code nextval} call: the sequence is incremented by the block size, and the values from the returned one up
+ * to the next increment belong to this allocator alone. Ids within a block are handed out with a lock-free
+ * increment; only the thread that finds the block exhausted goes to the database for the next one.
+ * Values that are reserved but never used are simply skipped.
+ */
+public class IdAllocator {
+
+    private static final String SCHEMA = "ylab_schema";
+
+    private final DBConnectionProvider connectionProvider;
+    private final String sequenceName;
+    private final ShardRouter shards;
+    private final int shard;
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private volatile Block block = new Block(0, 0);
+
+    /**
+     * Constructs an {@code IdAllocator} for a sequence on one shard.
+     *
+     * @param shards       the {@link ShardRouter} used to encode the shard into the id
+     * @param shard        the index of the shard the sequence lives on
+     * @param sequenceName the name of the sequence in {@code ylab_schema}
+     */
+    public IdAllocator(ShardRouter shards, int shard, String sequenceName) {
+        this.connectionProvider = shards.shard(shard);
+        this.sequenceName = sequenceName;
+        this.shards = shards;
+        this.shard = shard;
+    }
+
+    /**
+     * Creates one allocator per shard for the given sequence.
+     *
+     * @param shards       the shards to create allocators for
+     * @param sequenceName the name of the sequence in {@code ylab_schema}
+     * @return the allocators, indexed by shard
+     */
+    public static IdAllocator[] forShards(ShardRouter shards, String sequenceName) {
+        IdAllocator[] allocators = new IdAllocator[shards.shardCount()];
+        for (int shard = 0; shard < allocators.length; shard++) {
+            allocators[shard] = new IdAllocator(shards, shard, sequenceName);
+        }
+        return allocators;
+    }
+
+    /**
+     * Returns the next unused id.
+     *
+     * @return a globally unique id that belongs to this allocator's shard
+     * @throws SQLException if a new block could not be reserved
+     */
+    public long nextId() throws SQLException {
+        while (true) {
+            Block current = block;
+            long value = current.next.getAndIncrement();
+            if (value < current.limit) {
+                return shards.encodeId(value, shard);
+            }
+            refill(current);
+        }
+    }
+
+    private void refill(Block exhausted) throws SQLException {
+        refillLock.lock();
+        try {
+            if (block == exhausted) {
+                block = reserveBlock();
+            }
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private Block reserveBlock() throws SQLException {
+        String sql = "SELECT nextval(?::regclass), increment_by FROM pg_sequences "
+                + "WHERE schemaname = ? AND sequencename = ?";
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, SCHEMA + "." + sequenceName);
+            pstmt.setString(2, SCHEMA);
+            pstmt.setString(3, sequenceName);
+            ResultSet resultSet = pstmt.executeQuery();
+            if (!resultSet.next()) {
+                throw new SQLException("Sequence " + SCHEMA + "." + sequenceName + " does not exist");
+            }
+            long first = resultSet.getLong(1);
+            long size = Math.max(1, resultSet.getLong(2));
+            return new Block(first, first + size);
+        }
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long limit;
+
+        private Block(long first, long limit) {
+            this.next = new AtomicLong(first);
+            this.limit = limit;
+        }
+    }
+}
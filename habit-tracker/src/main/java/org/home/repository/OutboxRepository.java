@@ -0,0 +1,222 @@
+package org.home.repository;
+
+import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.model.EventType;
+import org.home.model.OutboxEvent;
+import org.home.model.OutboxPosition;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code OutboxRepository} class manages the outbox of habit and record events on every shard.
+ * <p>
+ * Events are appended by the other repositories inside the transaction that makes the change, so an event exists
+ * exactly when its change was committed. Every event carries the id of the transaction that wrote it, and
+ * readers only see events of transactions older than every transaction still running. Events are therefore read
+ * in the order they became visible, and an event committed late can never end up behind a reader's position.
+ */
+public class OutboxRepository {
+
+    private static final String POSITION_AFTER = "(txid, id) > (CAST(? AS xid8), ?)";
+
+    private static ShardRouter shards;
+
+    /**
+     * Constructs a new {@code OutboxRepository} with the provided database connection provider.
+     *
+     * @param connectionProvider the {@link DBConnectionProvider} used to establish database connections
+     */
+    public OutboxRepository(DBConnectionProvider connectionProvider) {
+        this(ShardRouter.single(connectionProvider));
+    }
+
+    /**
+     * Constructs a new {@code OutboxRepository} over the provided shards.
+     *
+     * @param shards the {@link ShardRouter} whose outboxes are read
+     */
+    public OutboxRepository(ShardRouter shards) {
+        OutboxRepository.shards = shards;
+    }
+
+    /**
+     * Returns the number of shards with an outbox.
+     *
+     * @return the shard count
+     */
+    public static int shardCount() {
+        return shards.shardCount();
+    }
+
+    /**
+     * Reads the events after a position that are safe to publish.
+     *
+     * @param shard the index of the shard
+     * @param after the position to read after
+     * @param limit the largest number of events to return
+     * @return the events in outbox order, or an empty list if there are none or they could not be read
+     */
+    public static List<OutboxEvent> findAfter(int shard, OutboxPosition after, int limit) {
+        String sql = "SELECT txid::text, id, user_id, event_type, aggregate_id, payload, created_at "
+                + "FROM ylab_schema.outbox WHERE " + POSITION_AFTER
+                + " AND txid < pg_snapshot_xmin(pg_current_snapshot()) ORDER BY txid, id LIMIT ?";
+        try (Connection conn = shards.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            setPosition(pstmt, after);
+            pstmt.setInt(3, limit);
+            ResultSet resultSet = pstmt.executeQuery();
+            List<OutboxEvent> events = new ArrayList<>();
+            while (resultSet.next()) {
+                events.add(new OutboxEvent(shard,
+                        new OutboxPosition(Long.parseLong(resultSet.getString(1)), resultSet.getLong(2)),
+                        resultSet.getLong(3), EventType.valueOf(resultSet.getString(4)), resultSet.getLong(5),
+                        resultSet.getString(6), resultSet.getTimestamp(7).toInstant()));
+            }
+            return events;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Counts the events after a position, including those not yet safe to publish.
+     *
+     * @param shard the index of the shard
+     * @param after the position to count from
+     * @return the number of events, or {@code -1} if they could not be counted
+     */
+    public static long countAfter(int shard, OutboxPosition after) {
+        String sql = "SELECT count(*) FROM ylab_schema.outbox WHERE " + POSITION_AFTER;
+        try (Connection conn = shards.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            setPosition(pstmt, after);
+            ResultSet resultSet = pstmt.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Loads the position a consumer has published up to on a shard.
+     *
+     * @param shard    the index of the shard
+     * @param consumer the name of the consumer
+     * @return the stored position, or {@link OutboxPosition#START} if the consumer has none
+     * @throws SQLException if the position could not be read
+     */
+    public static OutboxPosition findOffset(int shard, String consumer) throws SQLException {
+        String sql = "SELECT last_txid, last_id FROM ylab_schema.outbox_offsets WHERE consumer = ?";
+        try (Connection conn = shards.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, consumer);
+            ResultSet resultSet = pstmt.executeQuery();
+            if (resultSet.next()) {
+                return new OutboxPosition(resultSet.getLong(1), resultSet.getLong(2));
+            }
+            return OutboxPosition.START;
+        }
+    }
+
+    /**
+     * Stores the position a consumer has published up to on a shard.
+     *
+     * @param shard    the index of the shard
+     * @param consumer the name of the consumer
+     * @param position the position of the last published event
+     * @return {@code true} if the position was stored; {@code false} otherwise
+     */
+    public static boolean saveOffset(int shard, String consumer, OutboxPosition position) {
+        String sql = "INSERT INTO ylab_schema.outbox_offsets (consumer, last_txid, last_id) VALUES (?, ?, ?) "
+                + "ON CONFLICT (consumer) DO UPDATE SET last_txid = EXCLUDED.last_txid, last_id = EXCLUDED.last_id";
+        try (Connection conn = shards.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, consumer);
+            pstmt.setLong(2, position.getTransactionId());
+            pstmt.setLong(3, position.getEventId());
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the events up to a position, once every consumer has published them.
+     *
+     * @param shard the index of the shard
+     * @param upTo  the position of the last event to delete
+     * @return the number of deleted events
+     */
+    public static int deleteUpTo(int shard, OutboxPosition upTo) {
+        String sql = "DELETE FROM ylab_schema.outbox WHERE NOT " + POSITION_AFTER;
+        try (Connection conn = shards.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            setPosition(pstmt, upTo);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Appends an event of a user inside the caller's transaction.
+     *
+     * @param conn        the connection of the transaction making the change
+     * @param userId      the ID of the user the change belongs to
+     * @param type        the kind of change
+     * @param aggregateId the ID of the changed habit or record
+     * @param payload     the changed entity as JSON
+     * @throws SQLException if the event could not be written
+     */
+    static void append(Connection conn, Long userId, EventType type, Long aggregateId, String payload)
+            throws SQLException {
+        String sql = "INSERT INTO ylab_schema.outbox (user_id, event_type, aggregate_id, payload) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, userId);
+            pstmt.setString(2, type.name());
+            pstmt.setLong(3, aggregateId);
+            pstmt.setString(4, payload);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Appends an event of the owner of a habit inside the caller's transaction.
+     *
+     * @param conn        the connection of the transaction making the change
+     * @param habitId     the ID of the habit whose owner the change belongs to
+     * @param type        the kind of change
+     * @param aggregateId the ID of the changed habit or record
+     * @param payload     the changed entity as JSON
+     * @throws SQLException if the event could not be written
+     */
+    static void appendForHabit(Connection conn, Long habitId, EventType type, Long aggregateId, String payload)
+            throws SQLException {
+        String sql = "INSERT INTO ylab_schema.outbox (user_id, event_type, aggregate_id, payload) "
+                + "SELECT user_id, ?, ?, ? FROM ylab_schema.habits WHERE id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, type.name());
+            pstmt.setLong(2, aggregateId);
+            pstmt.setString(3, payload);
+            pstmt.setLong(4, habitId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void setPosition(PreparedStatement pstmt, OutboxPosition position) throws SQLException {
+        pstmt.setString(1, Long.toString(position.getTransactionId()));
+        pstmt.setLong(2, position.getEventId());
+    }
+}
@@ -0,0 +1,81 @@
+package org.home.repository;
+
+/**
+ * The {@code RecordBatch} class is a reusable buffer of new habit records kept in primitive columns.
+ * <p>
+ * Bulk imports fill it row by row, hand it to {@link HabitRecordRepository#saveAll(RecordBatch)} when it is
+ * full and then {@link #clear() clear} it, so no objects are created per imported record.
+ */
+public class RecordBatch {
+
+    private final long[] habitIds;
+    private final long[] epochDays;
+    private final boolean[] completed;
+    private int size;
+
+    /**
+     * Constructs an empty {@code RecordBatch}.
+     *
+     * @param capacity the maximum number of records the batch holds
+     */
+    public RecordBatch(int capacity) {
+        this.habitIds = new long[capacity];
+        this.epochDays = new long[capacity];
+        this.completed = new boolean[capacity];
+    }
+
+    /**
+     * Appends a record to the batch.
+     *
+     * @param habitId   the ID of the habit the record belongs to
+     * @param epochDay  the date of the record as days since 1970-01-01
+     * @param completed whether the habit was completed on that date
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(long habitId, long epochDay, boolean completed) {
+        if (isFull()) {
+            throw new IllegalStateException("Record batch is full");
+        }
+        this.habitIds[size] = habitId;
+        this.epochDays[size] = epochDay;
+        this.completed[size] = completed;
+        size++;
+    }
+
+    /**
+     * Returns the number of records in the batch.
+     *
+     * @return the record count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the batch can take no more records.
+     *
+     * @return {@code true} if the batch is full; {@code false} otherwise
+     */
+    public boolean isFull() {
+        return size == habitIds.length;
+    }
+
+    /**
+     * Removes all records from the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    long habitId(int index) {
+        return habitIds[index];
+    }
+
+    long epochDay(int index) {
+        return epochDays[index];
+    }
+
+    boolean completed(int index) {
+        return completed[index];
+    }
+}
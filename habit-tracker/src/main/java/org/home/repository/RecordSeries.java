@@ -0,0 +1,226 @@
+package org.home.repository;
+
+import org.home.model.HabitRecord;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The {@code RecordSeries} class holds the records of one habit in a date range, ordered by date and kept in
+ * primitive columns.
+ * <p>
+ * It is returned by {@link HabitRecordRepository#findRecords}. Dates are stored as days since 1970-01-01, so
+ * sub-ranges are found by binary search and counted without creating objects; {@link HabitRecord} objects are
+ * only made on request.
+ */
+public final class RecordSeries {
+
+    private static final RecordSeries EMPTY = new RecordSeries(0L, new long[0], new long[0], new boolean[0], 0);
+
+    private final long habitId;
+    private final long[] ids;
+    private final long[] epochDays;
+    private final boolean[] completed;
+    private final int size;
+    private final int completedCount;
+
+    private RecordSeries(long habitId, long[] ids, long[] epochDays, boolean[] completed, int size) {
+        this.habitId = habitId;
+        this.ids = ids;
+        this.epochDays = epochDays;
+        this.completed = completed;
+        this.size = size;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (completed[i]) {
+                count++;
+            }
+        }
+        this.completedCount = count;
+    }
+
+    /**
+     * Returns a series without records.
+     *
+     * @return the empty series
+     */
+    public static RecordSeries empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the ID of the habit the records belong to.
+     *
+     * @return the habit ID, or {@code 0} for the {@link #empty()} series
+     */
+    public long getHabitId() {
+        return habitId;
+    }
+
+    /**
+     * Returns the number of records in the series.
+     *
+     * @return the record count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the series has no records.
+     *
+     * @return {@code true} if there are no records; {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of records marked as completed.
+     *
+     * @return the completed record count
+     */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Returns the ID of a record.
+     *
+     * @param index the position of the record, from {@code 0} to {@code size() - 1}
+     * @return the record ID
+     */
+    public long id(int index) {
+        return ids[checkIndex(index)];
+    }
+
+    /**
+     * Returns the date of a record as days since 1970-01-01.
+     *
+     * @param index the position of the record, from {@code 0} to {@code size() - 1}
+     * @return the epoch day of the record
+     */
+    public long epochDay(int index) {
+        return epochDays[checkIndex(index)];
+    }
+
+    /**
+     * Returns the dates of all records as days since 1970-01-01.
+     *
+     * @return a new array of the epoch days in ascending order
+     */
+    public long[] toEpochDays() {
+        return Arrays.copyOf(epochDays, size);
+    }
+
+    /**
+     * Returns the date of a record.
+     *
+     * @param index the position of the record, from {@code 0} to {@code size() - 1}
+     * @return the date of the record
+     */
+    public LocalDate date(int index) {
+        return LocalDate.ofEpochDay(epochDay(index));
+    }
+
+    /**
+     * Tells whether the habit was completed on the date of a record.
+     *
+     * @param index the position of the record, from {@code 0} to {@code size() - 1}
+     * @return {@code true} if the record is marked as completed
+     */
+    public boolean isCompleted(int index) {
+        return completed[checkIndex(index)];
+    }
+
+    /**
+     * Creates the {@link HabitRecord} at a position.
+     *
+     * @param index the position of the record, from {@code 0} to {@code size() - 1}
+     * @return a new {@link HabitRecord}
+     */
+    public HabitRecord record(int index) {
+        return new HabitRecord(id(index), date(index), isCompleted(index), habitId);
+    }
+
+    /**
+     * Finds the position of the record on a date.
+     *
+     * @param date the date to look for
+     * @return the position of the record, or a negative number if the series has none on that date
+     */
+    public int indexOf(LocalDate date) {
+        int index = lowerBound(date.toEpochDay());
+        return index < size && epochDays[index] == date.toEpochDay() ? index : -1;
+    }
+
+    /**
+     * Counts the completed records dated within a range.
+     *
+     * @param from the first date counted
+     * @param to   the last date counted
+     * @return the number of completed records from {@code from} to {@code to} inclusive
+     */
+    public int countCompleted(LocalDate from, LocalDate to) {
+        int count = 0;
+        for (int i = lowerBound(from.toEpochDay()), end = lowerBound(to.toEpochDay() + 1); i < end; i++) {
+            if (completed[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int lowerBound(long epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return index;
+    }
+
+    /**
+     * Collects the rows of a query in date order.
+     */
+    static final class Builder {
+        private final long habitId;
+        private long[] ids = new long[16];
+        private long[] epochDays = new long[16];
+        private boolean[] completed = new boolean[16];
+        private int size;
+
+        Builder(long habitId) {
+            this.habitId = habitId;
+        }
+
+        void add(long id, long epochDay, boolean isCompleted) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                epochDays = Arrays.copyOf(epochDays, size * 2);
+                completed = Arrays.copyOf(completed, size * 2);
+            }
+            ids[size] = id;
+            epochDays[size] = epochDay;
+            completed[size] = isCompleted;
+            size++;
+        }
+
+        RecordSeries build() {
+            return size == 0 ? new RecordSeries(habitId, new long[0], new long[0], new boolean[0], 0)
+                    : new RecordSeries(habitId, ids, epochDays, completed, size);
+        }
+    }
+}
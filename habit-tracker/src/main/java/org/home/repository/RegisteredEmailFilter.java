@@ -0,0 +1,308 @@
+package org.home.repository;
+
+import org.home.cache.InvalidationListener;
+import org.home.config.ConfigLoader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code RegisteredEmailFilter} class tells, without a query, that most unregistered emails are not
+ * registered.
+ * <p>
+ * It holds a counting Bloom filter of the emails of all users, built by streaming {@code users.email} from every
+ * shard and kept up to date by {@link UserRepository} as users are saved, change their email and are deleted.
+ * {@link UserRepository#emailIsAlreadyRegistered} only queries the database for emails the filter might hold.
+ * <p>
+ * The filter is rebuilt at a fixed interval, which drops emails deleted during the previous rebuild, picks up
+ * users registered by other instances and resizes the filter to twice the number of emails; a filter that has
+ * grown past its capacity is rebuilt at once. Until the first build completes every email is looked up in the
+ * database.
+ * <p>
+ * Registered with {@link org.home.cache.InvalidationBus#addListener}, the filter also adds the emails written by
+ * other instances as soon as they are announced, and is rebuilt whenever announcements may have been missed. An
+ * email registered elsewhere that has not reached the filter yet is still rejected by the unique constraint on
+ * {@code users.email}.
+ */
+public class RegisteredEmailFilter implements InvalidationListener {
+
+    private static final String EMAIL_KEY_PREFIX = "email:";
+
+    private final double falsePositiveRate;
+    private final long minCapacity;
+    private final long rebuildMillis;
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder skippedProbes = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final Object rebuildLock = new Object();
+    private volatile CountingBloomFilter filter;
+    private List<String> addedDuringRebuild;
+    private boolean rebuildQueued;
+    private ScheduledExecutorService worker;
+
+    /**
+     * Constructs a {@code RegisteredEmailFilter} that is not built yet.
+     *
+     * @param falsePositiveRate the rate of false positives the filter is sized for
+     * @param minCapacity       the smallest number of emails the filter is sized for
+     * @param rebuildMillis     how often the filter is rebuilt once started
+     */
+    public RegisteredEmailFilter(double falsePositiveRate, long minCapacity, long rebuildMillis) {
+        this.falsePositiveRate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        this.minCapacity = Math.max(1, minCapacity);
+        this.rebuildMillis = Math.max(1, rebuildMillis);
+    }
+
+    /**
+     * Creates the filter configured in {@code application.yml}.
+     *
+     * @param configLoader the configuration to read
+     * @return a new {@code RegisteredEmailFilter} that is not started yet
+     */
+    public static RegisteredEmailFilter fromConfig(ConfigLoader configLoader) {
+        return new RegisteredEmailFilter(configLoader.getEmailFilterFalsePositiveRate(),
+                configLoader.getEmailFilterMinCapacity(),
+                TimeUnit.MINUTES.toMillis(configLoader.getEmailFilterRebuildMinutes()));
+    }
+
+    /**
+     * Tells whether an email might be registered.
+     *
+     * @param email the email to check
+     * @return {@code false} if the email is certainly not registered; {@code true} if it might be or the filter
+     * is not built yet
+     */
+    public boolean mightBeRegistered(String email) {
+        checks.increment();
+        CountingBloomFilter current = filter;
+        if (current == null || current.mightContain(email)) {
+            return true;
+        }
+        skippedProbes.increment();
+        return false;
+    }
+
+    /**
+     * Records the answer of the database for an email the filter might hold.
+     *
+     * @param registered whether the email turned out to be registered
+     */
+    public void recordProbe(boolean registered) {
+        if (!registered && filter != null) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Adds the email of a saved user or the new email of an updated one.
+     *
+     * @param email the registered email
+     */
+    public void added(String email) {
+        ScheduledExecutorService rebuildWorker = null;
+        synchronized (this) {
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(email);
+            }
+            if (filter == null) {
+                return;
+            }
+            filter.add(email);
+            if (filter.getCount() > filter.getCapacity() && !rebuildQueued && worker != null) {
+                rebuildQueued = true;
+                rebuildWorker = worker;
+            }
+        }
+        if (rebuildWorker != null) {
+            rebuildWorker.execute(this::runRebuild);
+        }
+    }
+
+    /**
+     * Removes the email of a deleted user or the old email of an updated one.
+     *
+     * @param email the email that is no longer registered
+     */
+    public synchronized void removed(String email) {
+        if (filter != null && filter.mightContain(email)) {
+            filter.remove(email);
+        }
+    }
+
+    /**
+     * Adds the emails written by other instances that the filter does not hold yet.
+     * <p>
+     * An announced email may have been registered or given up, so it is only ever added; an email given up
+     * elsewhere stays in the filter until the next rebuild, at the cost of one query.
+     *
+     * @param keys   the consistency keys of the written data
+     * @param remote whether the data was written by another instance
+     */
+    @Override
+    public void invalidate(Collection<String> keys, boolean remote) {
+        if (!remote) {
+            return;
+        }
+        for (String key : keys) {
+            if (key.startsWith(EMAIL_KEY_PREFIX)) {
+                String email = key.substring(EMAIL_KEY_PREFIX.length());
+                CountingBloomFilter current = filter;
+                if (current == null || !current.mightContain(email)) {
+                    added(email);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the filter on the worker thread, since emails registered elsewhere may have been missed.
+     */
+    @Override
+    public void invalidateAll() {
+        ScheduledExecutorService rebuildWorker;
+        synchronized (this) {
+            if (filter == null || rebuildQueued || worker == null) {
+                return;
+            }
+            rebuildQueued = true;
+            rebuildWorker = worker;
+        }
+        rebuildWorker.execute(this::runRebuild);
+    }
+
+    /**
+     * Replaces the filter with one built from the emails in the database.
+     *
+     * @return {@code true} if the emails were read from every shard and the filter was replaced
+     */
+    public boolean rebuild() {
+        synchronized (rebuildLock) {
+            CountingBloomFilter next;
+            synchronized (this) {
+                long known = filter == null ? 0 : filter.getCount();
+                next = new CountingBloomFilter(Math.max(minCapacity, 2 * known), falsePositiveRate);
+                addedDuringRebuild = new ArrayList<>();
+            }
+            boolean complete = UserRepository.forEachEmail(next::add);
+            synchronized (this) {
+                if (complete) {
+                    addedDuringRebuild.forEach(next::add);
+                    filter = next;
+                    rebuilds.incrementAndGet();
+                }
+                addedDuringRebuild = null;
+                rebuildQueued = false;
+            }
+            if (!complete) {
+                System.out.println("Registered emails could not be read from every database");
+            }
+            return complete;
+        }
+    }
+
+    /**
+     * Starts the worker thread, which builds the filter at once and then rebuilds it at the rebuild interval.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::runRebuild, 0, rebuildMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the worker thread. The filter is kept and still follows changes made through {@link UserRepository}.
+     */
+    public synchronized void stop() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+        }
+    }
+
+    /**
+     * Returns whether the filter has been built.
+     *
+     * @return {@code true} once the first build has completed
+     */
+    public boolean isBuilt() {
+        return filter != null;
+    }
+
+    /**
+     * Returns the number of emails checked.
+     *
+     * @return the check count
+     */
+    public long getCheckCount() {
+        return checks.sum();
+    }
+
+    /**
+     * Returns the number of checks answered without a query because the email was certainly not registered.
+     *
+     * @return the skipped probe count
+     */
+    public long getSkippedProbeCount() {
+        return skippedProbes.sum();
+    }
+
+    /**
+     * Returns the number of emails the filter might have held that turned out not to be registered.
+     *
+     * @return the false positive count
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Returns the observed share of unregistered emails that still had to be looked up.
+     *
+     * @return the observed false positive rate, or {@code 0.0} if no unregistered email was checked
+     */
+    public double getFalsePositiveRate() {
+        long positives = falsePositives.sum();
+        long negatives = positives + skippedProbes.sum();
+        return negatives == 0 ? 0.0 : (double) positives / negatives;
+    }
+
+    /**
+     * Returns the false positive rate expected from the number of emails the filter holds and its size.
+     *
+     * @return the expected false positive rate, or {@code 1.0} if the filter is not built yet
+     */
+    public double getExpectedFalsePositiveRate() {
+        CountingBloomFilter current = filter;
+        return current == null ? 1.0 : current.getExpectedFalsePositiveRate();
+    }
+
+    /**
+     * Returns the number of completed builds.
+     *
+     * @return the rebuild count
+     */
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+
+    private void runRebuild() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            System.out.println("Failed to rebuild the registered email filter: " + e.getMessage());
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package org.home.repository;
 
+import org.home.cache.InvalidationBus;
+import org.home.config.ConfigLoader;
 import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.event.EventPayload;
+import org.home.model.EventType;
+import org.home.model.Habit;
 import org.home.model.Role;
 import org.home.model.User;
 
@@ -8,17 +14,30 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * The {@code UserRepository} class provides methods for managing user data in the database.
+ * <p>
+ * Users are spread over the shards of a {@link ShardRouter}. Lookups by id go straight to the owning shard,
+ * while lookups by email and listings of all users are scattered over every shard. Lookups of many emails are
+ * batched by a {@link BatchLoader} into one query per shard. Checks of whether an email is registered go
+ * through a {@link RegisteredEmailFilter} when one is in use, which this class keeps up to date.
  */
 public class UserRepository {
 
-    private static DBConnectionProvider connectionProvider;
+    private static ShardRouter shards;
+    private static IdAllocator[] idAllocators;
+    private static BatchLoader<String, User> emailLoader;
+    private static volatile RegisteredEmailFilter emailFilter;
 
     /**
      * Constructs a new {@code UserRepository} with the provided database connection provider.
@@ -26,7 +45,30 @@ public class UserRepository {
      * @param connectionProvider the {@link DBConnectionProvider} used to establish database connections
      */
     public UserRepository(DBConnectionProvider connectionProvider) {
-        UserRepository.connectionProvider = connectionProvider;
+        this(ShardRouter.single(connectionProvider));
+    }
+
+    /**
+     * Constructs a new {@code UserRepository} over the provided shards.
+     *
+     * @param shards the {@link ShardRouter} used to find the database of a user
+     */
+    public UserRepository(ShardRouter shards) {
+        UserRepository.shards = shards;
+        UserRepository.idAllocators = IdAllocator.forShards(shards, "user_id_seq");
+        UserRepository.emailLoader = BatchLoader.fromConfig(new ConfigLoader(), UserRepository::findByEmailsOnShards);
+        UserRepository.emailFilter = null;
+        // data cached from the previous databases must not be served for these
+        InvalidationBus.invalidateAllListeners();
+    }
+
+    /**
+     * Makes email checks go through a filter of registered emails, which this repository then keeps up to date.
+     *
+     * @param filter the {@link RegisteredEmailFilter} to use, or {@code null} to query the database every time
+     */
+    public static void useEmailFilter(RegisteredEmailFilter filter) {
+        emailFilter = filter;
     }
 
     /**
@@ -35,40 +77,35 @@ public class UserRepository {
      * @return a map of user emails to {@link User} objects
      */
     public static Map<String, User> getEntities() {
-        String sql = "SELECT * FROM ylab_schema.users";
-        try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            ResultSet resultSet = pstmt.executeQuery();
-
-            Map<String, User> result = new HashMap<>();
-            while (resultSet.next()) {
-                result.put(resultSet.getString("email"),
-                        getUserFromResultSet(resultSet));
-            }
-            return result;
-        } catch (SQLException e) {
-            System.out.println("Got SQL Exception: " + e.getMessage());
-            }
-        return new HashMap<>();
+        Map<String, User> result = new HashMap<>();
+        shards.scatter(UserRepository::getShardEntities).forEach(result::putAll);
+        return result;
     }
 
     /**
-     * Saves a new user to the database.
+     * Saves a new user to the database and assigns the user its id.
      *
      * @param user the {@link User} to be saved
      */
     public static void save(User user) {
-        String sql = "INSERT INTO ylab_schema.users (name, email, password, role) VALUES (?, ?, ?, ?::ROLE)";
+        String sql = "INSERT INTO ylab_schema.users (id, name, email, password, role) VALUES (?, ?, ?, ?, ?::ROLE)";
+        int shard = shards.shardForNewUser(user.getEmail());
+        DBConnectionProvider connectionProvider = shards.shard(shard);
         try (Connection conn = connectionProvider.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, user.getName());
-            pstmt.setString(2, user.getEmail());
-            pstmt.setString(3, user.getPassword());
-            pstmt.setObject(4, user.getRole().name());
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            long id = idAllocators[shard].nextId();
+            pstmt.setLong(1, id);
+            pstmt.setString(2, user.getName());
+            pstmt.setString(3, user.getEmail());
+            pstmt.setString(4, user.getPassword());
+            pstmt.setObject(5, user.getRole().name());
             pstmt.executeUpdate();
-            ResultSet generatedKeys = pstmt.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                user.setId(generatedKeys.getLong(1));
+            user.setId(id);
+            connectionProvider.markWritten(
+                    DBConnectionProvider.userKey(user.getId()), DBConnectionProvider.emailKey(user.getEmail()));
+            RegisteredEmailFilter filter = emailFilter;
+            if (filter != null) {
+                filter.added(user.getEmail());
             }
         } catch (SQLException e) {
             System.out.println("Got SQL Exception: " + e.getMessage());
@@ -82,39 +119,77 @@ public class UserRepository {
      * @return an {@link Optional} containing the {@link User} if found, or an empty {@link Optional}
      */
     public static Optional<User> findByEmail(String email) {
-        String sql = "SELECT * FROM ylab_schema.users WHERE email = ?";
-        try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, email);
-            ResultSet resultSet = pstmt.executeQuery();
-            if (resultSet.next()) {
-                return Optional.of(getUserFromResultSet(resultSet));
-            }
-        } catch (SQLException e) {
-            System.out.println("Got SQL Exception: " + e.getMessage());
-        }
-        return Optional.empty();
+        return shards.scatter(shard -> findByEmailOnShard(shard, email)).stream()
+                .flatMap(Optional::stream)
+                .findFirst();
+    }
+
+    /**
+     * Requests a user by their email address. The email is looked up together with the other emails requested
+     * at about the same time.
+     *
+     * @param email the email address of the user to find
+     * @return a future completed with the {@link User} if found, or with an empty {@link Optional}
+     */
+    public static CompletableFuture<Optional<User>> loadByEmail(String email) {
+        return emailLoader.load(email);
+    }
+
+    /**
+     * Finds users by their email addresses with one query per shard.
+     *
+     * @param emails the email addresses of the users to find
+     * @return a map of the emails found to their {@link User} objects
+     */
+    public static Map<String, User> findByEmails(Collection<String> emails) {
+        return emailLoader.loadAll(emails);
     }
 
     /**
      * Checks if an email is already registered in the database.
+     * <p>
+     * An email the {@link RegisteredEmailFilter} in use certainly does not hold is not looked up.
      *
      * @param email the email address to check
      * @return {@code true} if the email is already registered; {@code false} otherwise
      */
     public static boolean emailIsAlreadyRegistered(String email) {
-        String sql = "SELECT * FROM ylab_schema.users WHERE email = ?";
-        try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, email);
-            ResultSet resultSet = pstmt.executeQuery();
-            if (resultSet.next()) {
-                return true;
+        RegisteredEmailFilter filter = emailFilter;
+        if (filter != null && !filter.mightBeRegistered(email)) {
+            return false;
+        }
+        boolean registered = shards.scatter(shard -> emailIsRegisteredOnShard(shard, email)).contains(true);
+        if (filter != null) {
+            filter.recordProbe(registered);
+        }
+        return registered;
+    }
+
+    /**
+     * Streams the emails of all users from the primary database of every shard.
+     *
+     * @param visitor receives every email
+     * @return {@code true} if every shard was read; {@code false} if a query failed
+     */
+    public static boolean forEachEmail(Consumer<String> visitor) {
+        String sql = "SELECT email FROM ylab_schema.users";
+        boolean complete = true;
+        for (DBConnectionProvider connectionProvider : shards.all()) {
+            try (Connection conn = connectionProvider.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                conn.setAutoCommit(false);
+                pstmt.setFetchSize(10_000);
+                ResultSet resultSet = pstmt.executeQuery();
+                while (resultSet.next()) {
+                    visitor.accept(resultSet.getString(1));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                System.out.println("Got SQL Exception: " + e.getMessage());
+                complete = false;
             }
-        } catch (SQLException e) {
-            System.out.println("Got SQL Exception: " + e.getMessage());
         }
-        return false;
+        return complete;
     }
 
     /**
@@ -124,7 +199,9 @@ public class UserRepository {
      * @return {@code true} if the update was successful; {@code false} otherwise
      */
     public static boolean update(User user) {
-        String sql = "UPDATE ylab_schema.users SET name = ?, email = ?, password = ?, is_blocked = ? WHERE id = ?";
+        String sql = "UPDATE ylab_schema.users u SET name = ?, email = ?, password = ?, is_blocked = ? "
+                + "FROM ylab_schema.users old WHERE u.id = ? AND old.id = u.id RETURNING old.email";
+        DBConnectionProvider connectionProvider = shards.forId(user.getId());
         try (Connection conn = connectionProvider.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, user.getName());
@@ -133,8 +210,19 @@ public class UserRepository {
             pstmt.setBoolean(4, user.isBlocked());
             pstmt.setLong(5, user.getId());
 
-            int rowsAffected = pstmt.executeUpdate();
-            return rowsAffected > 0;
+            ResultSet resultSet = pstmt.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            String oldEmail = resultSet.getString(1);
+            connectionProvider.markWritten(DBConnectionProvider.userKey(user.getId()),
+                    DBConnectionProvider.emailKey(user.getEmail()), DBConnectionProvider.emailKey(oldEmail));
+            RegisteredEmailFilter filter = emailFilter;
+            if (filter != null && !oldEmail.equals(user.getEmail())) {
+                filter.added(user.getEmail());
+                filter.removed(oldEmail);
+            }
+            return true;
         } catch (SQLException e) {
             System.out.println("Error updating user: " + e.getMessage());
             return false;
@@ -142,18 +230,42 @@ public class UserRepository {
     }
 
     /**
-     * Deletes a user from the database.
+     * Deletes a user from the database together with the user's habits and their records.
+     * <p>
+     * The habits and records go in the same transaction through {@code ON DELETE CASCADE}; a
+     * {@link EventType#HABIT_DELETED} event is written to the outbox for every habit, standing for its records too.
      *
      * @param user the {@link User} to delete
      * @return {@code true} if the deletion was successful; {@code false} otherwise
      */
     public static boolean delete(User user) {
-        String sql = "DELETE FROM ylab_schema.users WHERE email = ?";
+        String habitsSql = "DELETE FROM ylab_schema.habits WHERE user_id = ? RETURNING *";
+        String userSql = "DELETE FROM ylab_schema.users WHERE email = ?";
+        DBConnectionProvider connectionProvider = shards.forId(user.getId());
         try (Connection conn = connectionProvider.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, user.getEmail());
+             PreparedStatement habitsStmt = conn.prepareStatement(habitsSql);
+             PreparedStatement userStmt = conn.prepareStatement(userSql)) {
+            conn.setAutoCommit(false);
+            habitsStmt.setLong(1, user.getId());
+            ResultSet resultSet = habitsStmt.executeQuery();
+            List<String> keys = new ArrayList<>();
+            keys.add(DBConnectionProvider.userKey(user.getId()));
+            keys.add(DBConnectionProvider.emailKey(user.getEmail()));
+            while (resultSet.next()) {
+                Habit habit = HabitRepository.getHabitFromResultSet(resultSet);
+                OutboxRepository.append(conn, user.getId(), EventType.HABIT_DELETED, habit.getId(),
+                        EventPayload.of(habit));
+                keys.add(DBConnectionProvider.habitKey(habit.getId()));
+            }
+            userStmt.setString(1, user.getEmail());
 
-            int rowsAffected = pstmt.executeUpdate();
+            int rowsAffected = userStmt.executeUpdate();
+            conn.commit();
+            connectionProvider.markWritten(keys.toArray(new String[0]));
+            RegisteredEmailFilter filter = emailFilter;
+            if (filter != null && rowsAffected > 0) {
+                filter.removed(user.getEmail());
+            }
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.out.println("Error deleting user: " + e.getMessage());
@@ -161,6 +273,81 @@ public class UserRepository {
         }
     }
 
+    private static Map<String, User> getShardEntities(DBConnectionProvider connectionProvider) {
+        String sql = "SELECT * FROM ylab_schema.users";
+        try (Connection conn = connectionProvider.getReadConnection(null);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            ResultSet resultSet = pstmt.executeQuery();
+
+            Map<String, User> result = new HashMap<>();
+            while (resultSet.next()) {
+                result.put(resultSet.getString("email"),
+                        getUserFromResultSet(resultSet));
+            }
+            return result;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return new HashMap<>();
+    }
+
+    private static Optional<User> findByEmailOnShard(DBConnectionProvider connectionProvider, String email) {
+        String sql = "SELECT * FROM ylab_schema.users WHERE email = ?";
+        try (Connection conn = connectionProvider.getReadConnection(DBConnectionProvider.emailKey(email));
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, email);
+            ResultSet resultSet = pstmt.executeQuery();
+            if (resultSet.next()) {
+                return Optional.of(getUserFromResultSet(resultSet));
+            }
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private static Map<String, User> findByEmailsOnShards(Set<String> emails) {
+        Map<String, User> result = new HashMap<>();
+        shards.scatter(shard -> findByEmailsOnShard(shard, emails)).forEach(result::putAll);
+        return result;
+    }
+
+    private static Map<String, User> findByEmailsOnShard(DBConnectionProvider connectionProvider,
+                                                         Collection<String> emails) {
+        String sql = "SELECT * FROM ylab_schema.users WHERE email = ANY(?)";
+        List<String> consistencyKeys = emails.stream().map(DBConnectionProvider::emailKey).toList();
+        try (Connection conn = connectionProvider.getBatchReadConnection(consistencyKeys);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setArray(1, conn.createArrayOf("varchar", emails.toArray()));
+            ResultSet resultSet = pstmt.executeQuery();
+
+            Map<String, User> result = new HashMap<>();
+            while (resultSet.next()) {
+                User user = getUserFromResultSet(resultSet);
+                result.put(user.getEmail(), user);
+            }
+            return result;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return new HashMap<>();
+    }
+
+    private static boolean emailIsRegisteredOnShard(DBConnectionProvider connectionProvider, String email) {
+        String sql = "SELECT * FROM ylab_schema.users WHERE email = ?";
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, email);
+            ResultSet resultSet = pstmt.executeQuery();
+            if (resultSet.next()) {
+                return true;
+            }
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+        }
+        return false;
+    }
+
     private static User getUserFromResultSet(ResultSet resultSet) throws SQLException {
         Long id = resultSet.getLong("id");
         String name = resultSet.getString("name");
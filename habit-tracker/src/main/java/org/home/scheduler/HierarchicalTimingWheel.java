@@ -0,0 +1,233 @@
+package org.home.scheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code HierarchicalTimingWheel} class keeps timeouts ordered by the tick they are due at, with constant
+ * time insertion and cancellation whatever the number of pending timeouts.
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #WHEEL_SIZE} slots. A slot on level {@code k} spans
+ * {@code 256^k} ticks, so the levels together cover {@code 2^32} ticks ahead of the current one. A timeout is
+ * linked into the slot of the lowest level that can still tell its due tick apart; when time reaches the start
+ * of a higher level slot, that slot is cascaded, moving its timeouts down to the levels below. Timeouts further
+ * ahead than the wheel covers wait in the farthest slot and are put back until they are really due.
+ * <p>
+ * The class is not thread-safe; callers guard it with their own lock.
+ *
+ * @param <T> the type of the value carried by a timeout
+ */
+public class HierarchicalTimingWheel<T> {
+
+    static final int LEVELS = 4;
+    static final int WHEEL_SIZE = 256;
+
+    private static final int BITS = 8;
+    private static final int MASK = WHEEL_SIZE - 1;
+    private static final long SPAN = 1L << (BITS * LEVELS);
+
+    private final Timeout<T>[][] slots;
+    private final int[] levelSizes = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Constructs an empty {@code HierarchicalTimingWheel}.
+     *
+     * @param currentTick the tick the wheel starts at; timeouts due at it or earlier expire on the next tick
+     */
+    public HierarchicalTimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+        // A generic array cannot be created; the cast is safe since the slots only ever hold timeouts of T.
+        @SuppressWarnings("unchecked")
+        Timeout<T>[][] levels = (Timeout<T>[][]) new Timeout<?>[LEVELS][WHEEL_SIZE];
+        this.slots = levels;
+        for (Timeout<T>[] level : slots) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Timeout<T> head = new Timeout<>(0, null);
+                head.prev = head;
+                head.next = head;
+                level[slot] = head;
+            }
+        }
+    }
+
+    /**
+     * Adds a timeout to the wheel.
+     *
+     * @param deadlineTick the tick the timeout is due at
+     * @param value        the value handed out when the timeout expires
+     * @return the handle used to cancel the timeout
+     */
+    public Timeout<T> schedule(long deadlineTick, T value) {
+        Timeout<T> timeout = new Timeout<>(deadlineTick, value);
+        insert(timeout, currentTick + 1);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Removes a pending timeout from the wheel.
+     *
+     * @param timeout the handle returned by {@link #schedule}
+     * @return {@code true} if the timeout was pending; {@code false} if it already expired or was cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (!timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward tick by tick, handing out the value of every timeout that becomes due.
+     * <p>
+     * Stretches of ticks in which nothing can expire or cascade are skipped, so catching up on a long pause
+     * costs little more than the timeouts it fires.
+     * <p>
+     * The consumer may schedule and cancel timeouts; new timeouts are never due before the next tick, and a
+     * cancelled timeout does not expire even if it was due at the same tick.
+     *
+     * @param tick    the tick to move to; ticks at or before the current one are ignored
+     * @param expired called with the value of every expired timeout, in order of ticks
+     * @return the number of expired timeouts
+     */
+    public int advanceTo(long tick, Consumer<? super T> expired) {
+        int count = 0;
+        while (currentTick < tick) {
+            int emptyLevels = 0;
+            while (emptyLevels < LEVELS && levelSizes[emptyLevels] == 0) {
+                emptyLevels++;
+            }
+            if (emptyLevels == LEVELS) {
+                currentTick = tick;
+                break;
+            }
+            if (emptyLevels > 0) {
+                long nextCascade = ((currentTick >>> (BITS * emptyLevels)) + 1) << (BITS * emptyLevels);
+                if (nextCascade > tick) {
+                    currentTick = tick;
+                    break;
+                }
+                currentTick = nextCascade - 1;
+            }
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            Timeout<T> head = slots[0][(int) (currentTick & MASK)];
+            while (head.next != head) {
+                Timeout<T> timeout = head.next;
+                unlink(timeout);
+                if (timeout.deadlineTick > currentTick) {
+                    insert(timeout, currentTick + 1);
+                } else {
+                    size--;
+                    count++;
+                    expired.accept(timeout.value);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the tick the wheel has advanced to.
+     *
+     * @return the current tick
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Returns the number of pending timeouts.
+     *
+     * @return the number of timeouts that neither expired nor were cancelled
+     */
+    public int size() {
+        return size;
+    }
+
+    private void cascade(int level) {
+        Timeout<T> head = slots[level][(int) ((currentTick >>> (BITS * level)) & MASK)];
+        while (head.next != head) {
+            Timeout<T> timeout = head.next;
+            unlink(timeout);
+            insert(timeout, currentTick);
+        }
+    }
+
+    private void insert(Timeout<T> timeout, long earliestTick) {
+        long tick = Math.max(timeout.deadlineTick, earliestTick);
+        long delta = Math.min(tick - currentTick, SPAN - 1);
+        tick = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        Timeout<T> head = slots[level][(int) ((tick >>> (BITS * level)) & MASK)];
+        timeout.level = level;
+        levelSizes[level]++;
+        timeout.prev = head.prev;
+        timeout.next = head;
+        head.prev.next = timeout;
+        head.prev = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        levelSizes[timeout.level]--;
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * A timeout waiting in the wheel, linked into the list of its slot.
+     *
+     * @param <T> the type of the value carried by the timeout
+     */
+    public static final class Timeout<T> {
+        private final long deadlineTick;
+        private final T value;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int level;
+
+        private Timeout(long deadlineTick, T value) {
+            this.deadlineTick = deadlineTick;
+            this.value = value;
+        }
+
+        /**
+         * Returns the tick the timeout is due at.
+         *
+         * @return the deadline tick
+         */
+        public long getDeadlineTick() {
+            return deadlineTick;
+        }
+
+        /**
+         * Returns the value handed out when the timeout expires.
+         *
+         * @return the value of the timeout
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Tells whether the timeout is still waiting in the wheel.
+         *
+         * @return {@code true} if the timeout neither expired nor was cancelled
+         */
+        public boolean isPending() {
+            return prev != null;
+        }
+    }
+}
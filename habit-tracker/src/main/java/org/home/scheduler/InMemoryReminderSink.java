@@ -0,0 +1,34 @@
+package org.home.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The {@code InMemoryReminderSink} class keeps fired reminders in memory until they are drained.
+ * <p>
+ * It stands in for a real delivery channel in tests and local runs.
+ */
+public class InMemoryReminderSink implements ReminderSink {
+
+    private final Queue<Reminder> reminders = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void remind(Reminder reminder) {
+        reminders.add(reminder);
+    }
+
+    /**
+     * Removes and returns all reminders delivered so far.
+     *
+     * @return the delivered reminders, oldest first
+     */
+    public List<Reminder> drain() {
+        List<Reminder> result = new ArrayList<>();
+        for (Reminder reminder = reminders.poll(); reminder != null; reminder = reminders.poll()) {
+            result.add(reminder);
+        }
+        return result;
+    }
+}
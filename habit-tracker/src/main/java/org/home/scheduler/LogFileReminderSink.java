@@ -0,0 +1,54 @@
+package org.home.scheduler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@code LogFileReminderSink} class appends fired reminders to a local log file, one line per reminder.
+ * <p>
+ * Lines are buffered and written out once per tick, so a tick firing many reminders costs a single write.
+ */
+public class LogFileReminderSink implements ReminderSink {
+
+    private final Path file;
+    private BufferedWriter writer;
+
+    /**
+     * Constructs a {@code LogFileReminderSink} appending to the given file.
+     *
+     * @param file the log file; it is created when the first reminder is written
+     */
+    public LogFileReminderSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void remind(Reminder reminder) {
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(reminder.getDueAt() + " user " + reminder.getUserId() + ": habit \""
+                    + reminder.getTitle() + "\" (" + reminder.getHabitId() + ") is due");
+            writer.newLine();
+        } catch (IOException e) {
+            System.out.println("Failed to write reminder to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to write reminders to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.home.scheduler;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * The {@code Reminder} class tells a user that one of their habits is due.
+ */
+@Getter
+@AllArgsConstructor
+public class Reminder {
+    private final Long habitId;
+    private final Long userId;
+    private final String title;
+    private final Instant dueAt;
+}
@@ -0,0 +1,364 @@
+package org.home.scheduler;
+
+import org.home.config.ConfigLoader;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.model.Schedule;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.scheduler.HierarchicalTimingWheel.Timeout;
+import org.home.service.HabitListener;
+import org.home.service.HabitRecordListener;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The {@code ReminderScheduler} class reminds users of habits that are due and not yet done.
+ * <p>
+ * A daily habit is due on the day after it was last completed, a weekly habit on the Monday of the week after
+ * the one it was last completed in, and a habit that was never completed is due in the current period. A
+ * reminder fires at the configured time of day on the due day and, as long as the habit is not marked done,
+ * again in every following period.
+ * <p>
+ * Pending reminders live in a single {@link HierarchicalTimingWheel} driven by one ticker thread, so adding,
+ * moving and cancelling a reminder takes constant time however many habits there are. Marking a habit done
+ * through {@link org.home.service.HabitRecordService} moves its reminder to the next period, and un-checking or
+ * deleting its latest completion moves it back to the period after the previous one. Habits created, edited or
+ * deleted through {@link org.home.service.HabitService}, and the habits of deleted users, get, move or lose their
+ * reminder right away; the whole state is rebuilt from the database with {@link #rebuild()} on startup.
+ */
+public class ReminderScheduler implements HabitRecordListener, HabitListener {
+
+    private final ReminderSink sink;
+    private final Clock clock;
+    private final ZoneId zone;
+    private final LocalTime reminderTime;
+    private final long tickMillis;
+    private final Function<Long, Optional<LocalDate>> lastCompletionFinder;
+    private final Map<Long, Timeout<Pending>> pendingByHabit = new HashMap<>();
+    private HierarchicalTimingWheel<Pending> wheel;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Constructs a {@code ReminderScheduler}.
+     *
+     * @param sink         where fired reminders are delivered
+     * @param clock        the clock giving the current time and the time zone of due days
+     * @param reminderTime the time of day reminders fire at
+     * @param tickMillis   the resolution of the scheduler in milliseconds
+     */
+    public ReminderScheduler(ReminderSink sink, Clock clock, LocalTime reminderTime, long tickMillis) {
+        this(sink, clock, reminderTime, tickMillis, HabitRecordRepository::findLastCompletion);
+    }
+
+    /**
+     * Constructs a {@code ReminderScheduler} that looks up the previous completion of a habit with the given
+     * function when its latest one is un-checked or deleted.
+     *
+     * @param sink                 where fired reminders are delivered
+     * @param clock                the clock giving the current time and the time zone of due days
+     * @param reminderTime         the time of day reminders fire at
+     * @param tickMillis           the resolution of the scheduler in milliseconds
+     * @param lastCompletionFinder finds the date a habit was last completed on, given its ID
+     */
+    public ReminderScheduler(ReminderSink sink, Clock clock, LocalTime reminderTime, long tickMillis,
+                             Function<Long, Optional<LocalDate>> lastCompletionFinder) {
+        this.sink = sink;
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.reminderTime = reminderTime;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.lastCompletionFinder = lastCompletionFinder;
+        this.wheel = new HierarchicalTimingWheel<>(tickOf(clock.instant()));
+    }
+
+    /**
+     * Creates the scheduler configured in {@code application.yml}, writing reminders to the configured log file.
+     *
+     * @param configLoader the configuration to read
+     * @return a new {@code ReminderScheduler} that is not started yet
+     */
+    public static ReminderScheduler fromConfig(ConfigLoader configLoader) {
+        ZoneId zone = configLoader.getReminderZone();
+        return new ReminderScheduler(new LogFileReminderSink(Path.of(configLoader.getReminderLog())),
+                Clock.system(zone), configLoader.getReminderTime(), configLoader.getReminderTickMillis());
+    }
+
+    /**
+     * Replaces all pending reminders with ones computed from the habits and records in the database.
+     *
+     * @return the number of scheduled reminders
+     */
+    public synchronized int rebuild() {
+        pendingByHabit.clear();
+        wheel = new HierarchicalTimingWheel<>(tickOf(clock.instant()));
+        if (!HabitRepository.forEachHabitWithLastCompletion(this::schedule)) {
+            System.out.println("Reminders could not be loaded from every database");
+        }
+        return pendingByHabit.size();
+    }
+
+    /**
+     * Schedules the reminder of a habit, replacing the one it already has.
+     *
+     * @param habit         the habit to remind of
+     * @param lastCompleted the date the habit was last completed, or {@code null} if it never was
+     */
+    public synchronized void schedule(Habit habit, LocalDate lastCompleted) {
+        Schedule schedule = habit.getSchedule();
+        LocalDate dueDay = lastCompleted == null
+                ? schedule.periodStart(LocalDate.now(clock))
+                : schedule.periodStart(lastCompleted).plusDays(schedule.getPeriodDays());
+        put(new Pending(habit, lastCompleted, scheduledFrom(schedule, dueDay)));
+    }
+
+    /**
+     * Cancels the reminder of a habit.
+     *
+     * @param habitId the ID of the habit
+     * @return {@code true} if the habit had a pending reminder; {@code false} otherwise
+     */
+    public synchronized boolean cancel(Long habitId) {
+        Timeout<Pending> timeout = pendingByHabit.remove(habitId);
+        return timeout != null && wheel.cancel(timeout);
+    }
+
+    /**
+     * Returns when the reminder of a habit fires next.
+     *
+     * @param habitId the ID of the habit
+     * @return the time of the next reminder, or an empty {@link Optional} if the habit has none
+     */
+    public synchronized Optional<Instant> getNextReminder(Long habitId) {
+        Timeout<Pending> timeout = pendingByHabit.get(habitId);
+        return timeout == null ? Optional.empty() : Optional.of(dueAt(timeout.getValue().dueDay));
+    }
+
+    /**
+     * Returns the number of habits with a pending reminder.
+     *
+     * @return the number of pending reminders
+     */
+    public synchronized int getPendingCount() {
+        return pendingByHabit.size();
+    }
+
+    /**
+     * Moves a completed habit's reminder to its next period, or back if its latest completion was un-checked.
+     *
+     * @param habit  the {@link Habit} the record belongs to
+     * @param record the saved {@link HabitRecord}
+     */
+    @Override
+    public void recordSaved(Habit habit, HabitRecord record) {
+        if (!record.isCompleted()) {
+            completionRemoved(habit, record.getDate());
+            return;
+        }
+        synchronized (this) {
+            LocalDate lastCompleted = record.getDate();
+            Timeout<Pending> current = pendingByHabit.get(habit.getId());
+            if (current != null && current.getValue().lastCompleted != null
+                    && current.getValue().lastCompleted.isAfter(lastCompleted)) {
+                lastCompleted = current.getValue().lastCompleted;
+            }
+            schedule(habit, lastCompleted);
+        }
+    }
+
+    /**
+     * Moves a habit's reminder back if its latest completion was deleted.
+     *
+     * @param habit  the {@link Habit} the record belonged to
+     * @param record the deleted {@link HabitRecord}
+     */
+    @Override
+    public void recordDeleted(Habit habit, HabitRecord record) {
+        if (record.isCompleted()) {
+            completionRemoved(habit, record.getDate());
+        }
+    }
+
+    /**
+     * Schedules the reminder of a new habit, or moves the reminder of an edited one to its new schedule.
+     *
+     * @param habit the saved {@link Habit}
+     */
+    @Override
+    public synchronized void habitSaved(Habit habit) {
+        Timeout<Pending> current = pendingByHabit.get(habit.getId());
+        schedule(habit, current == null ? null : current.getValue().lastCompleted);
+    }
+
+    /**
+     * Cancels the reminder of a deleted habit.
+     *
+     * @param habit the deleted {@link Habit}
+     */
+    @Override
+    public void habitDeleted(Habit habit) {
+        cancel(habit.getId());
+    }
+
+    /**
+     * Cancels the reminders of the habits of a deleted user.
+     *
+     * @param userId the ID of the deleted user
+     */
+    @Override
+    public synchronized void userDeleted(Long userId) {
+        List<Long> habitIds = new ArrayList<>();
+        pendingByHabit.forEach((habitId, timeout) -> {
+            if (userId.equals(timeout.getValue().habit.getUserId())) {
+                habitIds.add(habitId);
+            }
+        });
+        habitIds.forEach(this::cancel);
+    }
+
+    /**
+     * Starts the ticker thread that fires due reminders.
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reminder-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the ticker thread. Pending reminders are kept.
+     */
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    /**
+     * Fires every reminder that is due at the given time and schedules its repetition in the next period.
+     *
+     * @param now the current time
+     * @return the number of fired reminders
+     */
+    public int advanceTo(Instant now) {
+        List<Reminder> fired = new ArrayList<>();
+        synchronized (this) {
+            List<Pending> due = new ArrayList<>();
+            wheel.advanceTo(tickOf(now), due::add);
+            LocalDate today = LocalDate.ofInstant(now, zone);
+            for (Pending pending : due) {
+                Habit habit = pending.habit;
+                fired.add(new Reminder(habit.getId(), habit.getUserId(), habit.getTitle(), dueAt(pending.dueDay)));
+                put(new Pending(habit, pending.lastCompleted, nextDueDay(pending, today, now)));
+            }
+        }
+        for (Reminder reminder : fired) {
+            sink.remind(reminder);
+        }
+        if (!fired.isEmpty()) {
+            sink.flush();
+        }
+        return fired.size();
+    }
+
+    private void tick() {
+        try {
+            advanceTo(clock.instant());
+        } catch (RuntimeException e) {
+            System.out.println("Failed to fire reminders: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reschedules a habit from its previous completion when the completion it was scheduled from is gone. The
+     * previous completion is looked up outside the lock, so that the ticker is not held up by the database.
+     */
+    private void completionRemoved(Habit habit, LocalDate date) {
+        synchronized (this) {
+            Timeout<Pending> current = pendingByHabit.get(habit.getId());
+            if (current == null || !date.equals(current.getValue().lastCompleted)) {
+                return;
+            }
+        }
+        schedule(habit, lastCompletionFinder.apply(habit.getId()).orElse(null));
+    }
+
+    private void put(Pending pending) {
+        Timeout<Pending> previous = pendingByHabit.put(pending.habit.getId(),
+                wheel.schedule(tickOf(dueAt(pending.dueDay)), pending));
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+    }
+
+    /**
+     * Returns the first due day of the following periods whose reminder time is still ahead, so that a habit
+     * left undone for a long time fires once rather than once per missed period.
+     */
+    private LocalDate nextDueDay(Pending pending, LocalDate today, Instant now) {
+        Schedule schedule = pending.habit.getSchedule();
+        int step = schedule.getPeriodDays();
+        LocalDate next = schedule.periodStart(pending.dueDay).plusDays(step);
+        if (next.isBefore(today)) {
+            next = next.plusDays(ChronoUnit.DAYS.between(next, today) / step * step);
+        }
+        next = scheduledFrom(schedule, next);
+        while (!dueAt(next).isAfter(now)) {
+            next = scheduledFrom(schedule, next.plusDays(step));
+        }
+        return next;
+    }
+
+    private Instant dueAt(LocalDate day) {
+        return day.atTime(reminderTime).atZone(zone).toInstant();
+    }
+
+    private long tickOf(Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), tickMillis);
+    }
+
+    /**
+     * Returns the first day from the given one that the schedule has the habit done on.
+     */
+    private static LocalDate scheduledFrom(Schedule schedule, LocalDate day) {
+        LocalDate scheduled = day;
+        while (!schedule.isScheduledOn(scheduled.getDayOfWeek())) {
+            scheduled = scheduled.plusDays(1);
+        }
+        return scheduled;
+    }
+
+    private static final class Pending {
+        private final Habit habit;
+        private final LocalDate lastCompleted;
+        private final LocalDate dueDay;
+
+        private Pending(Habit habit, LocalDate lastCompleted, LocalDate dueDay) {
+            this.habit = habit;
+            this.lastCompleted = lastCompleted;
+            this.dueDay = dueDay;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.home.scheduler;
+
+/**
+ * The {@code ReminderSink} interface receives the reminders fired by a {@link ReminderScheduler}.
+ * <p>
+ * Reminders are delivered from the scheduler thread, one tick at a time; {@link #flush()} is called after
+ * every tick that fired at least one reminder.
+ */
+public interface ReminderSink {
+
+    /**
+     * Delivers a reminder.
+     *
+     * @param reminder the reminder that became due
+     */
+    void remind(Reminder reminder);
+
+    /**
+     * Pushes out reminders that were buffered by {@link #remind}.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,367 @@
+package org.home.security;
+
+import org.home.config.ConfigLoader;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@code LoginRateLimiter} class throttles login attempts per email and per source before they reach
+ * the database.
+ * <p>
+ * Each limit is a token bucket kept in the GCRA form: a single "theoretical arrival time" per key, advanced
+ * with a compare-and-set. Keys are hashed onto a fixed number of stripes, so memory stays bounded whatever
+ * keys an attacker invents, and state expires by itself because an arrival time in the past means a full
+ * bucket. Two keys landing on the same stripe share their budget, which errs on the side of throttling.
+ * <p>
+ * Failed logins are counted with a second bucket per email; emptying it locks the email out for a while,
+ * a temporary counterpart of blocking the user. Unlike the rate limits, failures and lockouts are kept per exact
+ * email, so an email is never locked out by the failures of another one. They live in {@value #FAILURE_WAYS}
+ * slots per stripe, which remember the email they belong to: a new email takes an empty or expired slot, or else
+ * the one with the fewest recent failures that is not locked out. Memory stays bounded and every check scans a
+ * few slots, and failures of invented emails cannot displace a lockout; while every slot of a stripe holds a
+ * lockout, further emails of that stripe are only rate limited.
+ */
+public class LoginRateLimiter {
+
+    /**
+     * The outcome of asking for a login attempt.
+     */
+    public enum Decision {
+        ALLOWED,
+        RATE_LIMITED,
+        LOCKED_OUT
+    }
+
+    private static final int FAILURE_WAYS = 4;
+
+    private static volatile LoginRateLimiter defaultLimiter;
+
+    private final int mask;
+    private final LongSupplier clock;
+    private final long origin;
+    private final long emailInterval;
+    private final long emailTolerance;
+    private final long sourceInterval;
+    private final long sourceTolerance;
+    private final long failureInterval;
+    private final long failureTolerance;
+    private final long lockoutNanos;
+    private final AtomicLongArray emailArrivals;
+    private final AtomicLongArray sourceArrivals;
+    private final AtomicReferenceArray<Failures> failures;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder lockedOut = new LongAdder();
+    private final LongAdder lockouts = new LongAdder();
+
+    /**
+     * Constructs a {@code LoginRateLimiter} that reads the system clock.
+     *
+     * @param stripes                 the number of stripes per limit, rounded up to a power of two
+     * @param emailAttemptsPerMinute  the sustained attempts allowed for one email
+     * @param sourceAttemptsPerMinute the sustained attempts allowed from one source
+     * @param burst                   how many attempts may be made back to back before throttling starts
+     * @param failuresBeforeLockout   how many failed logins in a row lock the email out
+     * @param lockoutSeconds          how long a lockout lasts
+     */
+    public LoginRateLimiter(int stripes, int emailAttemptsPerMinute, int sourceAttemptsPerMinute, int burst,
+                            int failuresBeforeLockout, long lockoutSeconds) {
+        this(stripes, emailAttemptsPerMinute, sourceAttemptsPerMinute, burst, failuresBeforeLockout,
+                lockoutSeconds, System::nanoTime);
+    }
+
+    /**
+     * Constructs a {@code LoginRateLimiter} with the given clock.
+     *
+     * @param stripes                 the number of stripes per limit, rounded up to a power of two
+     * @param emailAttemptsPerMinute  the sustained attempts allowed for one email
+     * @param sourceAttemptsPerMinute the sustained attempts allowed from one source
+     * @param burst                   how many attempts may be made back to back before throttling starts
+     * @param failuresBeforeLockout   how many failed logins in a row lock the email out
+     * @param lockoutSeconds          how long a lockout lasts
+     * @param nanoClock               the monotonic clock in nanoseconds
+     */
+    public LoginRateLimiter(int stripes, int emailAttemptsPerMinute, int sourceAttemptsPerMinute, int burst,
+                            int failuresBeforeLockout, long lockoutSeconds, LongSupplier nanoClock) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        long minute = TimeUnit.MINUTES.toNanos(1);
+        this.mask = size - 1;
+        this.clock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+        this.emailInterval = minute / Math.max(1, emailAttemptsPerMinute);
+        this.emailTolerance = emailInterval * (Math.max(1, burst) - 1);
+        this.sourceInterval = minute / Math.max(1, sourceAttemptsPerMinute);
+        this.sourceTolerance = sourceInterval * (Math.max(1, burst) - 1);
+        this.lockoutNanos = TimeUnit.SECONDS.toNanos(lockoutSeconds);
+        this.failureInterval = lockoutNanos / Math.max(1, failuresBeforeLockout);
+        this.failureTolerance = failureInterval * (Math.max(1, failuresBeforeLockout) - 2);
+        this.emailArrivals = new AtomicLongArray(size);
+        this.sourceArrivals = new AtomicLongArray(size);
+        this.failures = new AtomicReferenceArray<>(size * FAILURE_WAYS);
+    }
+
+    /**
+     * Returns the application-wide limiter configured in {@code application.yml}.
+     *
+     * @return the shared {@code LoginRateLimiter}
+     */
+    public static LoginRateLimiter getDefault() {
+        if (defaultLimiter == null) {
+            synchronized (LoginRateLimiter.class) {
+                if (defaultLimiter == null) {
+                    ConfigLoader configLoader = new ConfigLoader();
+                    defaultLimiter = new LoginRateLimiter(configLoader.getLoginLimiterStripes(),
+                            configLoader.getLoginEmailAttemptsPerMinute(),
+                            configLoader.getLoginSourceAttemptsPerMinute(), configLoader.getLoginBurst(),
+                            configLoader.getLoginFailuresBeforeLockout(), configLoader.getLoginLockoutSeconds());
+                }
+            }
+        }
+        return defaultLimiter;
+    }
+
+    /**
+     * Asks for permission to check a login attempt.
+     *
+     * @param email  the email the attempt is for
+     * @param source where the attempt comes from, or {@code null} if unknown
+     * @return whether the attempt may go ahead
+     */
+    public Decision tryAcquire(String email, String source) {
+        long now = now();
+        String key = key(email);
+        Failures emailFailures = failuresOf(key);
+        if (emailFailures != null && now < emailFailures.lockedUntil) {
+            lockedOut.increment();
+            return Decision.LOCKED_OUT;
+        }
+        int sourceStripe = source != null ? stripe(source) : -1;
+        if (sourceStripe >= 0 && !wouldConform(sourceArrivals, sourceStripe, now, sourceTolerance)) {
+            rateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+        if (!conform(emailArrivals, stripe(key), now, emailInterval, emailTolerance)) {
+            rateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+        if (sourceStripe >= 0 && !conform(sourceArrivals, sourceStripe, now, sourceInterval, sourceTolerance)) {
+            rateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+        allowed.increment();
+        return Decision.ALLOWED;
+    }
+
+    /**
+     * Counts a failed login for an email, locking it out once too many failures pile up.
+     *
+     * @param email the email whose login failed
+     */
+    public void recordFailure(String email) {
+        String key = key(email);
+        while (true) {
+            long now = now();
+            int slot = findFailures(key);
+            boolean own = slot >= 0;
+            if (!own) {
+                slot = freeFailureSlot(key, now);
+                if (slot < 0) {
+                    return;
+                }
+            }
+            Failures entry = failures.get(slot);
+            if (own ? entry == null || !entry.email.equals(key) : entry != null && entry.lockedUntil > now) {
+                // The slot was taken over since it was chosen.
+                continue;
+            }
+            long arrival = own ? entry.arrival : 0;
+            long lockedUntil = own ? entry.lockedUntil : 0;
+            long start = Math.max(arrival, now);
+            boolean lockout = start - failureTolerance > now;
+            Failures updated = lockout ? new Failures(key, 0, Math.max(lockedUntil, now + lockoutNanos))
+                    : new Failures(key, start + failureInterval, lockedUntil);
+            if (failures.compareAndSet(slot, entry, updated)) {
+                if (lockout) {
+                    lockouts.increment();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets the failed logins of an email after a successful one.
+     *
+     * @param email the email that logged in
+     */
+    public void recordSuccess(String email) {
+        String key = key(email);
+        while (true) {
+            int slot = findFailures(key);
+            if (slot < 0) {
+                return;
+            }
+            Failures entry = failures.get(slot);
+            if (entry == null || !entry.email.equals(key)) {
+                continue;
+            }
+            Failures updated = entry.lockedUntil > now() ? new Failures(key, 0, entry.lockedUntil) : null;
+            if (failures.compareAndSet(slot, entry, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lifts a lockout of an email and forgets its failed logins.
+     *
+     * @param email the email to unlock
+     */
+    public void unlock(String email) {
+        String key = key(email);
+        while (true) {
+            int slot = findFailures(key);
+            if (slot < 0) {
+                return;
+            }
+            Failures entry = failures.get(slot);
+            if (entry != null && entry.email.equals(key) && failures.compareAndSet(slot, entry, null)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns how many attempts were let through.
+     *
+     * @return the number of allowed attempts
+     */
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    /**
+     * Returns how many attempts were rejected for exceeding a rate.
+     *
+     * @return the number of rate-limited attempts
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Returns how many attempts were rejected because the email was locked out.
+     *
+     * @return the number of attempts on locked-out emails
+     */
+    public long getLockedOutCount() {
+        return lockedOut.sum();
+    }
+
+    /**
+     * Returns how many lockouts were started.
+     *
+     * @return the number of lockouts
+     */
+    public long getLockoutCount() {
+        return lockouts.sum();
+    }
+
+    private long now() {
+        return clock.getAsLong() - origin;
+    }
+
+    private static String key(String email) {
+        return email == null ? "" : email.toLowerCase(Locale.ROOT);
+    }
+
+    private int stripe(String key) {
+        int hash = key == null ? 0 : key.toLowerCase(Locale.ROOT).hashCode();
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private Failures failuresOf(String key) {
+        int slot = findFailures(key);
+        Failures entry = slot >= 0 ? failures.get(slot) : null;
+        return entry != null && entry.email.equals(key) ? entry : null;
+    }
+
+    /**
+     * Returns the slot holding the failures of an email, or {@code -1} if it has none.
+     */
+    private int findFailures(String key) {
+        int first = stripe(key) * FAILURE_WAYS;
+        for (int slot = first; slot < first + FAILURE_WAYS; slot++) {
+            Failures entry = failures.get(slot);
+            if (entry != null && entry.email.equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot a new email is to take: an empty or expired one, or else the one with the fewest recent
+     * failures that is not locked out.
+     *
+     * @return the slot, or {@code -1} if every slot of the stripe holds a lockout
+     */
+    private int freeFailureSlot(String key, long now) {
+        int first = stripe(key) * FAILURE_WAYS;
+        int victim = -1;
+        long victimArrival = Long.MAX_VALUE;
+        for (int slot = first; slot < first + FAILURE_WAYS; slot++) {
+            Failures entry = failures.get(slot);
+            if (entry == null || entry.isExpired(now)) {
+                return slot;
+            }
+            if (entry.lockedUntil <= now && entry.arrival < victimArrival) {
+                victim = slot;
+                victimArrival = entry.arrival;
+            }
+        }
+        return victim;
+    }
+
+    private static boolean wouldConform(AtomicLongArray arrivals, int stripe, long now, long tolerance) {
+        return Math.max(arrivals.get(stripe), now) - tolerance <= now;
+    }
+
+    private static boolean conform(AtomicLongArray arrivals, int stripe, long now, long interval, long tolerance) {
+        while (true) {
+            long arrival = arrivals.get(stripe);
+            long start = Math.max(arrival, now);
+            if (start - tolerance > now) {
+                return false;
+            }
+            if (arrivals.compareAndSet(stripe, arrival, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The failed logins of one email, in the same arrival-time form as the rate limits, and its lockout.
+     */
+    private static final class Failures {
+        private final String email;
+        private final long arrival;
+        private final long lockedUntil;
+
+        private Failures(String email, long arrival, long lockedUntil) {
+            this.email = email;
+            this.arrival = arrival;
+            this.lockedUntil = lockedUntil;
+        }
+
+        private boolean isExpired(long now) {
+            return arrival <= now && lockedUntil <= now;
+        }
+    }
+}
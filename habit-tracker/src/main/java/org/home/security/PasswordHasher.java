@@ -0,0 +1,175 @@
+package org.home.security;
+
+import org.home.config.ConfigLoader;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code PasswordHasher} class derives and checks password hashes with PBKDF2-HMAC-SHA256.
+ * <p>
+ * Hashes are stored as {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}, so the cost of every stored hash is
+ * known and hashes made with an older cost can be upgraded on the next successful login. Stored values
+ * without this prefix are legacy plaintext passwords; they still verify, but always need a rehash.
+ * <p>
+ * Hashing is CPU-bound, so the asynchronous methods run on a dedicated pool with a bounded queue. When the
+ * queue is full new work is rejected straight away instead of piling up behind a login storm.
+ */
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static volatile PasswordHasher defaultHasher;
+
+    private final int iterations;
+    private final ExecutorService executor;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Constructs a {@code PasswordHasher} with its own hashing pool.
+     *
+     * @param iterations    the PBKDF2 iteration count used for new hashes
+     * @param threads       the number of hashing threads; {@code 0} means one per available processor
+     * @param queueCapacity the number of hashing requests that may wait for a free thread
+     */
+    public PasswordHasher(int iterations, int threads, int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.iterations = iterations;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Returns the application-wide hasher configured in {@code application.yml}.
+     *
+     * @return the shared {@code PasswordHasher}
+     */
+    public static PasswordHasher getDefault() {
+        if (defaultHasher == null) {
+            synchronized (PasswordHasher.class) {
+                if (defaultHasher == null) {
+                    ConfigLoader configLoader = new ConfigLoader();
+                    defaultHasher = new PasswordHasher(configLoader.getPasswordHashIterations(),
+                            configLoader.getPasswordHashThreads(), configLoader.getPasswordHashQueueCapacity());
+                }
+            }
+        }
+        return defaultHasher;
+    }
+
+    /**
+     * Hashes a password on the hashing pool.
+     *
+     * @param password the plaintext password
+     * @return a future with the encoded hash, failed with {@link RejectedExecutionException} if the pool is full
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hash(password), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks a password against a stored value on the hashing pool.
+     *
+     * @param password the plaintext password
+     * @param stored   the stored hash or legacy plaintext password
+     * @return a future with the result, failed with {@link RejectedExecutionException} if the pool is full
+     */
+    public CompletableFuture<Boolean> verifyAsync(String password, String stored) {
+        try {
+            return CompletableFuture.supplyAsync(() -> verify(password, stored), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Hashes a password on the calling thread.
+     *
+     * @param password the plaintext password
+     * @return the encoded hash
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored value on the calling thread.
+     *
+     * @param password the plaintext password
+     * @param stored   the stored hash or legacy plaintext password
+     * @return {@code true} if the password matches
+     */
+    public boolean verify(String password, String stored) {
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(
+                    password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(parts[3]);
+        byte[] actual = derive(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Tells whether a stored value should be replaced by a fresh hash after a successful login.
+     *
+     * @param stored the stored hash or legacy plaintext password
+     * @return {@code true} if the value is plaintext or was hashed with a different cost
+     */
+    public boolean needsRehash(String stored) {
+        return !isHashed(stored) || !stored.startsWith(PREFIX + "$" + iterations + "$");
+    }
+
+    /**
+     * Tells whether a stored value is a hash produced by this class rather than a plaintext password.
+     *
+     * @param stored the stored value
+     * @return {@code true} if the value is a hash
+     */
+    public static boolean isHashed(String stored) {
+        return stored.startsWith(PREFIX + "$");
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
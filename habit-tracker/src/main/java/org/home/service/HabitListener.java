@@ -0,0 +1,35 @@
+package org.home.service;
+
+import org.home.model.Habit;
+
+/**
+ * The {@code HabitListener} interface is notified by {@link HabitService} when habits change, and by
+ * {@link UserDeletionService} when a user is deleted together with their habits.
+ * <p>
+ * Listeners are called on the thread that made the change, after it was written to the database, so they should
+ * return quickly.
+ */
+public interface HabitListener {
+
+    /**
+     * Called after a habit was created or edited.
+     *
+     * @param habit the saved {@link Habit}
+     */
+    void habitSaved(Habit habit);
+
+    /**
+     * Called after a habit was deleted.
+     *
+     * @param habit the deleted {@link Habit}
+     */
+    void habitDeleted(Habit habit);
+
+    /**
+     * Called after a user was deleted together with all of their habits.
+     *
+     * @param userId the ID of the deleted user
+     */
+    default void userDeleted(Long userId) {
+    }
+}
@@ -0,0 +1,30 @@
+package org.home.service;
+
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+
+/**
+ * The {@code HabitRecordListener} interface is notified by {@link HabitRecordService} when habit records change.
+ * <p>
+ * Listeners are called on the thread that changed the record, after the change was written to the database,
+ * so they should return quickly.
+ */
+public interface HabitRecordListener {
+
+    /**
+     * Called after a record was created or its completion status was changed.
+     *
+     * @param habit  the {@link Habit} the record belongs to
+     * @param record the saved {@link HabitRecord}
+     */
+    void recordSaved(Habit habit, HabitRecord record);
+
+    /**
+     * Called after a record was deleted.
+     *
+     * @param habit  the {@link Habit} the record belonged to
+     * @param record the deleted {@link HabitRecord}
+     */
+    default void recordDeleted(Habit habit, HabitRecord record) {
+    }
+}
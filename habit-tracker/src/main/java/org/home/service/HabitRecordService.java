@@ -1,34 +1,76 @@
 package org.home.service;
 
+import org.home.config.ConcurrencyLimiter;
+import org.home.config.UnitOfWork;
 import org.home.model.Habit;
 import org.home.model.HabitRecord;
 import org.home.repository.HabitRecordRepository;
+import org.home.repository.RecordSeries;
+import org.home.tracing.Tracer;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The {@code HabitRecordService} class provides methods for managing habit records.
+ * <p>
+ * Every change runs as one {@link UnitOfWork}. Components that follow record changes, such as the reminder
+ * scheduler, register a {@link HabitRecordListener} that is shared by all instances of the service and is
+ * notified once the change has been committed.
+ * <p>
+ * Check-ins, that is creating and editing records, run their queries at {@link ConcurrencyLimiter.Priority#HIGH}
+ * priority, so they are admitted ahead of statistics when the database is busy. Changes and lookups are traced
+ * by the {@link Tracer}.
  */
 public class HabitRecordService {
 
+    private static final List<HabitRecordListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a listener that is notified of record changes made through any {@code HabitRecordService}.
+     *
+     * @param listener the {@link HabitRecordListener} to add
+     */
+    public static void addListener(HabitRecordListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener}.
+     *
+     * @param listener the {@link HabitRecordListener} to remove
+     */
+    public static void removeListener(HabitRecordListener listener) {
+        LISTENERS.remove(listener);
+    }
+
     /**
      * Creates a new habit record for a specified habit on a given date.
+     * <p>
+     * The record is saved with {@link HabitRecordRepository#insertIfAbsent}, so apart from the returned record a
+     * check-in allocates little more than its connection and statement.
      *
      * @param habit    the {@link Habit} associated with the record
      * @param date     the date of the habit record
      * @param completed whether the habit was completed on that date
-     * @return the created {@link HabitRecord}, or {@code null} if a record for that date already exists
+     * @return the created {@link HabitRecord}, or {@code null} if a record for that date already exists or the
+     * record could not be saved
      */
     public HabitRecord createRecord(Habit habit, LocalDate date, boolean completed) {
-        if (HabitRecordRepository.recordExists(habit.getId(), date)) {
-            return null;
-        }
-        HabitRecord record = new HabitRecord(date, completed, habit.getId());
-        HabitRecordRepository.save(record);
-        return record;
+        return checkIn("HabitRecordService.createRecord", () -> {
+            long id = HabitRecordRepository.insertIfAbsent(habit.getId(), date.toEpochDay(), completed);
+            if (id == HabitRecordRepository.ALREADY_RECORDED || id == HabitRecordRepository.NOT_SAVED) {
+                return null;
+            }
+            HabitRecord record = new HabitRecord(id, date, completed, habit.getId());
+            UnitOfWork.afterCommit(() -> LISTENERS.forEach(listener -> listener.recordSaved(habit, record)));
+            return record;
+        });
     }
 
     /**
@@ -44,12 +86,17 @@ public class HabitRecordService {
             return;
         }
 
-        Optional<HabitRecord> maybeRecord = HabitRecordRepository.findByDateAndHabitId(date, habit.getId());
-        if (maybeRecord.isPresent()) {
-            HabitRecord record = maybeRecord.get();
-            record.setCompleted(newCompleted);
-            HabitRecordRepository.update(record);
-        }
+        checkIn("HabitRecordService.editRecord", () -> {
+            Optional<HabitRecord> maybeRecord = HabitRecordRepository.findByDateAndHabitId(date, habit.getId());
+            if (maybeRecord.isPresent()) {
+                HabitRecord record = maybeRecord.get();
+                record.setCompleted(newCompleted);
+                if (HabitRecordRepository.update(record)) {
+                    UnitOfWork.afterCommit(() -> LISTENERS.forEach(listener -> listener.recordSaved(habit, record)));
+                }
+            }
+            return null;
+        });
     }
 
     /**
@@ -59,8 +106,13 @@ public class HabitRecordService {
      * @param date  the date of the habit record to delete
      */
     public void deleteRecord(Habit habit, LocalDate date) {
-        Optional<HabitRecord> maybeRecord = HabitRecordRepository.findByDateAndHabitId(date, habit.getId());
-        maybeRecord.ifPresent(HabitRecordRepository::delete);
+        Tracer.trace("HabitRecordService.deleteRecord", () -> UnitOfWork.execute(() -> {
+            Optional<HabitRecord> maybeRecord = HabitRecordRepository.findByDateAndHabitId(date, habit.getId());
+            maybeRecord.filter(HabitRecordRepository::delete)
+                    .ifPresent(record -> UnitOfWork.afterCommit(
+                            () -> LISTENERS.forEach(listener -> listener.recordDeleted(habit, record))));
+            return null;
+        }));
     }
 
     /**
@@ -70,7 +122,22 @@ public class HabitRecordService {
      * @return a map of dates to {@link HabitRecord} objects
      */
     public Map<LocalDate, HabitRecord> getAllRecords(Habit habit) {
-        return new HashMap<>(HabitRecordRepository.getAllHabitRecords(habit));
+        return Tracer.trace("HabitRecordService.getAllRecords",
+                () -> new HashMap<>(HabitRecordRepository.getAllHabitRecords(habit)));
+    }
+
+    /**
+     * Retrieves the records of a habit dated within a range.
+     *
+     * @param habit         the {@link Habit} for which to retrieve records
+     * @param from          the first date to include, or {@code null} for no lower bound
+     * @param to            the last date to include, or {@code null} for no upper bound
+     * @param completedOnly whether to leave out records not marked as completed
+     * @return the records in date order
+     */
+    public RecordSeries getRecords(Habit habit, LocalDate from, LocalDate to, boolean completedOnly) {
+        return Tracer.trace("HabitRecordService.getRecords",
+                () -> HabitRecordRepository.findRecords(habit.getId(), from, to, completedOnly));
     }
 
     /**
@@ -81,7 +148,20 @@ public class HabitRecordService {
      * @return the found {@link HabitRecord}
      */
     public HabitRecord findByDateAndHabitId(Habit habit, LocalDate date) {
-        return HabitRecordRepository.findByDateAndHabitId(date, habit.getId()).orElseThrow();
+        return Tracer.trace("HabitRecordService.findByDateAndHabitId",
+                () -> HabitRecordRepository.findByDateAndHabitId(date, habit.getId())).orElseThrow();
+    }
+
+    /**
+     * Finds the records of several habits on a date with one query per database.
+     *
+     * @param habits the habits whose records to find
+     * @param date   the date of the habit records
+     * @return a map of the IDs of the habits that have a record on the date to their {@link HabitRecord} objects
+     */
+    public Map<Long, HabitRecord> findByDate(Collection<Habit> habits, LocalDate date) {
+        return Tracer.trace("HabitRecordService.findByDate", () -> new HashMap<>(
+                HabitRecordRepository.findByDateAndHabitIds(date, habits.stream().map(Habit::getId).toList())));
     }
 
     /**
@@ -94,4 +174,9 @@ public class HabitRecordService {
     public boolean recordExists(Long habitId, LocalDate date) {
         return HabitRecordRepository.recordExists(habitId, date);
     }
+
+    private static <T> T checkIn(String operation, UnitOfWork.Work<T> work) {
+        return Tracer.trace(operation, () -> ConcurrencyLimiter.withPriority(ConcurrencyLimiter.Priority.HIGH,
+                () -> UnitOfWork.execute(work)));
+    }
 }
@@ -1,19 +1,58 @@
 package org.home.service;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.home.cache.Fetched;
+import org.home.cache.LastKnownGood;
+import org.home.config.ConfigLoader;
+import org.home.config.DatabaseUnavailableException;
+import org.home.config.UnitOfWork;
 import org.home.model.Frequency;
 import org.home.model.Habit;
+import org.home.model.Schedule;
 import org.home.model.User;
 import org.home.repository.HabitRepository;
+import org.home.tracing.Tracer;
 
 /**
  * The {@code HabitService} class provides methods for managing habits associated with users.
+ * <p>
+ * Changes that look a habit up before writing it run as one {@link UnitOfWork}. Components that follow habit
+ * changes, such as the reminder scheduler, register a {@link HabitListener} that is shared by all instances of
+ * the service and is notified once the change has been committed.
+ * <p>
+ * The habits of a user are remembered in a {@link LastKnownGood} shared by all services, and shown as of their
+ * last read while the database is unavailable. Changes and lookups are traced by the {@link Tracer}.
  */
 public class HabitService {
 
+    private static final List<HabitListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static volatile LastKnownGood<Long, Map<String, Habit>> lastHabits;
+
+    /**
+     * Registers a listener that is notified of habit changes made through any {@code HabitService}.
+     *
+     * @param listener the {@link HabitListener} to add
+     */
+    public static void addListener(HabitListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener}.
+     *
+     * @param listener the {@link HabitListener} to remove
+     */
+    public static void removeListener(HabitListener listener) {
+        LISTENERS.remove(listener);
+    }
+
     /**
      * Creates a new habit for a specified user.
      *
@@ -24,13 +63,31 @@ public class HabitService {
      * @return the created {@link Habit}, or {@code null} if a habit with the same title already exists for the user
      */
     public Habit createHabit(User user, String title, String description, Frequency frequency) {
-        if (HabitRepository.habitExists(user.getId(), title)) {
-            return null;
-        }
+        return createHabit(user, title, description, Schedule.of(frequency));
+    }
 
-        Habit habit = new Habit(title, description, frequency, user.getId());
-        HabitRepository.save(habit);
-        return habit;
+    /**
+     * Creates a new habit following a custom schedule for a specified user.
+     *
+     * @param user        the {@link User} associated with the habit
+     * @param title       the title of the new habit
+     * @param description a description of the new habit
+     * @param schedule    the {@link Schedule} saying when the habit should be performed
+     * @return the created {@link Habit}, or {@code null} if a habit with the same title already exists for the user
+     */
+    public Habit createHabit(User user, String title, String description, Schedule schedule) {
+        return Tracer.trace("HabitService.createHabit", () -> UnitOfWork.execute(() -> {
+            if (HabitRepository.habitExists(user.getId(), title)) {
+                return null;
+            }
+
+            Habit habit = new Habit(title, description, schedule, user.getId());
+            HabitRepository.save(habit);
+            if (habit.getId() != null) {
+                UnitOfWork.afterCommit(() -> LISTENERS.forEach(listener -> listener.habitSaved(habit)));
+            }
+            return habit;
+        }));
     }
 
     /**
@@ -43,14 +100,32 @@ public class HabitService {
      * @param newFrequency  the new {@link Frequency} for the habit
      */
     public void editHabit(User user, String oldTitle, String newTitle, String newDescription, Frequency newFrequency) {
-        Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(oldTitle, user.getId());
-        if (maybeHabit.isPresent()) {
-            Habit habit = maybeHabit.get();
-            habit.setTitle(newTitle);
-            habit.setDescription(newDescription);
-            habit.setFrequency(newFrequency);
-            HabitRepository.update(habit);
-        }
+        editHabit(user, oldTitle, newTitle, newDescription, Schedule.of(newFrequency));
+    }
+
+    /**
+     * Edits an existing habit for a specified user, giving it a custom schedule.
+     *
+     * @param user           the {@link User} associated with the habit
+     * @param oldTitle       the current title of the habit
+     * @param newTitle       the new title for the habit
+     * @param newDescription the new description for the habit
+     * @param newSchedule    the new {@link Schedule} for the habit
+     */
+    public void editHabit(User user, String oldTitle, String newTitle, String newDescription, Schedule newSchedule) {
+        Tracer.trace("HabitService.editHabit", () -> UnitOfWork.execute(() -> {
+            Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(oldTitle, user.getId());
+            if (maybeHabit.isPresent()) {
+                Habit habit = maybeHabit.get();
+                habit.setTitle(newTitle);
+                habit.setDescription(newDescription);
+                habit.setSchedule(newSchedule);
+                if (HabitRepository.update(habit)) {
+                    UnitOfWork.afterCommit(() -> LISTENERS.forEach(listener -> listener.habitSaved(habit)));
+                }
+            }
+            return null;
+        }));
     }
 
     /**
@@ -60,18 +135,77 @@ public class HabitService {
      * @param title the title of the habit to delete
      */
     public void deleteHabit(User user, String title) {
-        Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(title, user.getId());
-        maybeHabit.ifPresent(HabitRepository::delete);
+        Tracer.trace("HabitService.deleteHabit", () -> UnitOfWork.execute(() -> {
+            HabitRepository.findByTitleAndUserId(title, user.getId())
+                    .filter(HabitRepository::delete)
+                    .ifPresent(habit -> UnitOfWork.afterCommit(
+                            () -> LISTENERS.forEach(listener -> listener.habitDeleted(habit))));
+            return null;
+        }));
+    }
+
+    /**
+     * Tells the listeners that a user was deleted together with their habits.
+     *
+     * @param userId the ID of the deleted user
+     */
+    static void userDeleted(Long userId) {
+        LISTENERS.forEach(listener -> listener.userDeleted(userId));
+    }
+
+    /**
+     * Returns the {@link LastKnownGood} the habits of users are remembered in, to read its metrics.
+     *
+     * @return the shared {@code LastKnownGood}
+     */
+    public static LastKnownGood<Long, Map<String, Habit>> lastHabits() {
+        if (lastHabits == null) {
+            synchronized (HabitService.class) {
+                if (lastHabits == null) {
+                    ConfigLoader configLoader = new ConfigLoader();
+                    lastHabits = new LastKnownGood<>(configLoader.getEntityCacheSize(),
+                            configLoader.getStaleRefreshMillis());
+                }
+            }
+        }
+        return lastHabits;
     }
 
     /**
      * Retrieves all habits associated with a specified user.
      *
      * @param user the {@link User} for whom to retrieve habits
-     * @return a map of titles to {@link Habit} objects
+     * @return a map of titles to {@link Habit} objects, as of their last read if the database is unavailable
+     * @throws DatabaseUnavailableException if the database is unavailable and the habits were never read
      */
     public Map<String, Habit> getAllHabits(User user) {
-        return new HashMap<>(HabitRepository.getAllUserHabits(user));
+        return fetchAllHabits(user, "HabitService.getAllHabits").getValue();
+    }
+
+    /**
+     * Retrieves all habits associated with a specified user, telling whether they are stale.
+     *
+     * @param user the {@link User} for whom to retrieve habits
+     * @return a map of titles to {@link Habit} objects, fresh or as of their last read if the database is
+     * unavailable
+     * @throws DatabaseUnavailableException if the database is unavailable and the habits were never read
+     */
+    public Fetched<Map<String, Habit>> fetchAllHabits(User user) {
+        return fetchAllHabits(user, "HabitService.fetchAllHabits");
+    }
+
+    private static Fetched<Map<String, Habit>> fetchAllHabits(User user, String operation) {
+        Fetched<Map<String, Habit>> habits = Tracer.trace(operation,
+                () -> lastHabits().get(user.getId(), () -> HabitRepository.getAllUserHabits(user)));
+        Map<String, Habit> copy = new HashMap<>();
+        habits.getValue().forEach((title, habit) -> copy.put(title, copyOf(habit)));
+        return habits.withValue(copy);
+    }
+
+    private static Habit copyOf(Habit habit) {
+        Habit copy = new Habit(habit.getTitle(), habit.getDescription(), habit.getSchedule(), habit.getUserId());
+        copy.setId(habit.getId());
+        return copy;
     }
 
     /**
@@ -82,7 +216,20 @@ public class HabitService {
      * @return the found {@link Habit}
      */
     public Habit findByTitleAndUserId(User user, String title) {
-        return HabitRepository.findByTitleAndUserId(title, user.getId()).orElseThrow();
+        return Tracer.trace("HabitService.findByTitleAndUserId",
+                () -> HabitRepository.findByTitleAndUserId(title, user.getId())).orElseThrow();
+    }
+
+    /**
+     * Finds habits of a user by their titles with one query.
+     *
+     * @param user   the {@link User} associated with the habits
+     * @param titles the titles of the habits to find
+     * @return a map of the titles found to their {@link Habit} objects
+     */
+    public Map<String, Habit> findByTitles(User user, Collection<String> titles) {
+        return Tracer.trace("HabitService.findByTitles",
+                () -> new HashMap<>(HabitRepository.findByTitlesAndUserId(titles, user.getId())));
     }
 
     /**
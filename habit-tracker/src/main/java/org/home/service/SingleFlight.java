@@ -0,0 +1,125 @@
+package org.home.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code SingleFlight} class lets concurrent calls for the same key share one computation.
+ * <p>
+ * The first call for a key runs the computation; calls made for the key while it runs wait for its result
+ * instead of running it again. A waiting call gives up after the configured time and runs the computation
+ * itself, so a slow computation never holds more than one caller for longer than that. Nothing is kept once
+ * a computation ends: a call made afterwards runs a new one and sees every change committed before it.
+ *
+ * @param <K> the type of the keys, which must implement {@code equals} and {@code hashCode}
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final long maxWaitMillis;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Constructs a {@code SingleFlight} with no computation in flight.
+     *
+     * @param maxWaitMillis how long a call waits for the computation of another call
+     */
+    public SingleFlight(long maxWaitMillis) {
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+    }
+
+    /**
+     * Returns the result of a computation, sharing the one in flight for the same key if there is one.
+     *
+     * @param key         the key identifying the computation
+     * @param computation computes the result when no computation for the key is in flight
+     * @return the result of this call's computation or of the shared one
+     * @throws RuntimeException if the computation, this call's or the shared one, fails
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+        if (leader == null) {
+            return lead(key, call, computation);
+        }
+
+        coalesced.increment();
+        try {
+            return leader.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timedOut.increment();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        executed.increment();
+        return computation.get();
+    }
+
+    /**
+     * Returns the number of computations run.
+     *
+     * @return the executed count
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * Returns the number of calls that found a computation for their key in flight and waited for it.
+     *
+     * @return the coalesced count, including calls that timed out
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of waiting calls that gave up and ran the computation themselves.
+     *
+     * @return the timed out count
+     */
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    /**
+     * Returns the number of computations in flight.
+     *
+     * @return the in-flight count
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, CompletableFuture<V> call, Supplier<V> computation) {
+        executed.increment();
+        try {
+            V result = computation.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+}
@@ -1,67 +1,178 @@
 package org.home.service;
 
-import lombok.NoArgsConstructor;
+import org.home.cache.EntityCache;
+import org.home.cache.Fetched;
+import org.home.cache.InvalidationBus;
+import org.home.cache.LastKnownGood;
+import org.home.config.ConcurrencyLimiter;
+import org.home.config.ConfigLoader;
+import org.home.config.DBConnectionProvider;
+import org.home.config.DatabaseUnavailableException;
+import org.home.config.QueryDeadline;
+import org.home.config.QueryTimeoutException;
+import org.home.jfr.StatisticsEvent;
 import org.home.model.Habit;
-import org.home.model.HabitRecord;
 import org.home.model.User;
-import org.home.model.Frequency;
 import org.home.repository.HabitRecordRepository;
 import org.home.repository.HabitRepository;
+import org.home.repository.RecordSeries;
+import org.home.statistics.PeriodGrid;
+import org.home.statistics.PeriodStatistics;
+import org.home.tracing.Tracer;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 /**
  * The {@code StatisticsService} class provides methods to calculate statistics related to user habits.
+ * <p>
+ * Statistics over a period read only the completed records of that period through
+ * {@link HabitRecordRepository#findRecords} and are computed on the periods of the habit's schedule by a
+ * {@link PeriodGrid}: days for a daily habit, weeks for a habit done a number of times a week, and so on.
+ * <p>
+ * Progress reports are computed through a {@link SingleFlight} shared by all services, keyed by the habit and
+ * the dates of the report, so that a burst of identical requests reads the records of the habit once. Reports
+ * are then kept in an {@link EntityCache} until the habit or its records are written, on this instance or, through
+ * the {@link InvalidationBus}, on another one, or until the day they were computed on, which their current streak
+ * counts up to, is over. Habits
+ * are looked up through {@link HabitRepository#loadByTitleAndUserId}, which batches the lookups of concurrent
+ * requests into one query.
+ * <p>
+ * Every statistics request runs within the {@code statistics-timeout-ms} {@link QueryDeadline}, and throws a
+ * {@link QueryTimeoutException} if its queries do not complete in time. Its queries run at
+ * {@link ConcurrencyLimiter.Priority#LOW} priority, so check-ins go first when the database is busy, and it is
+ * traced by the {@link Tracer}. Every streak and period statistics computed is recorded as a
+ * {@link StatisticsEvent} for JDK Flight Recorder.
+ * <p>
+ * The last progress report generated for a habit and dates is remembered in a {@link LastKnownGood}, and shown,
+ * marked with the time it was generated at, while the database is unavailable.
  */
-@NoArgsConstructor
 public class StatisticsService {
+    private static final long TIMEOUT_MILLIS = new ConfigLoader().getStatisticsTimeoutMillis();
+
+    private static volatile SingleFlight<ReportKey, String> defaultReports;
+    private static volatile EntityCache<ReportKey, String> defaultReportCache;
+    private static volatile LastKnownGood<List<Object>, String> lastReports;
+
     private final HabitService habitService = new HabitService();
+    private final SingleFlight<ReportKey, String> reports;
+    private final EntityCache<ReportKey, String> reportCache;
 
     /**
-     * Calculates the current streak of habit completions for a given user and habit title.
+     * Constructs a {@code StatisticsService} sharing progress reports with every other service constructed
+     * this way, waiting for them as long as configured in {@code application.yml}.
+     */
+    public StatisticsService() {
+        this(defaultReports(), defaultReportCache());
+    }
+
+    /**
+     * Constructs a {@code StatisticsService} sharing progress reports through the given {@link SingleFlight}
+     * without caching them.
      *
-     * @param user       the {@link User} whose habit streak is to be calculated
-     * @param habitTitle the title of the habit
-     * @return the current streak count; returns 0 if the habit is not found or if there are no completions
+     * @param reports the {@link SingleFlight} progress reports are computed through
      */
-    public int getCurrentStreak(User user, String habitTitle) {
-        Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(habitTitle, user.getId());
-        if (maybeHabit.isEmpty()) {
-            System.out.println("Habit not found.");
-            return 0;
-        }
+    public StatisticsService(SingleFlight<ReportKey, String> reports) {
+        this(reports, null);
+    }
 
-        Habit habit = maybeHabit.get();
-        Map<LocalDate, HabitRecord> completions = HabitRecordRepository.getAllHabitRecords(habit);
-        if (completions.isEmpty()) {
-            return 0;
-        }
+    /**
+     * Constructs a {@code StatisticsService} sharing progress reports through the given {@link SingleFlight} and
+     * caching them in the given {@link EntityCache}.
+     *
+     * @param reports     the {@link SingleFlight} progress reports are computed through
+     * @param reportCache the {@link EntityCache} progress reports are kept in, or {@code null} to compute every
+     *                    report
+     */
+    public StatisticsService(SingleFlight<ReportKey, String> reports, EntityCache<ReportKey, String> reportCache) {
+        this.reports = reports;
+        this.reportCache = reportCache;
+    }
 
-        LocalDate currentDate = LocalDate.now();
-        int streak = 0;
+    /**
+     * Returns the {@link SingleFlight} progress reports are computed through by default, to read its metrics.
+     *
+     * @return the shared {@code SingleFlight}
+     */
+    public static SingleFlight<ReportKey, String> defaultReports() {
+        if (defaultReports == null) {
+            synchronized (StatisticsService.class) {
+                if (defaultReports == null) {
+                    defaultReports = new SingleFlight<>(new ConfigLoader().getStatisticsCoalesceWaitMillis());
+                }
+            }
+        }
+        return defaultReports;
+    }
 
-        if (habit.getFrequency() == Frequency.DAILY) {
-            for (HabitRecord record : completions.values()) {
-                if (record.isCompleted()) {
-                    streak++;
-                    currentDate = currentDate.minusDays(1);
+    /**
+     * Returns the {@link EntityCache} progress reports are kept in by default, to read its metrics.
+     *
+     * @return the shared cache, registered with the {@link InvalidationBus}
+     */
+    public static EntityCache<ReportKey, String> defaultReportCache() {
+        if (defaultReportCache == null) {
+            synchronized (StatisticsService.class) {
+                if (defaultReportCache == null) {
+                    EntityCache<ReportKey, String> cache = new EntityCache<>(new ConfigLoader().getEntityCacheSize(),
+                            (key, report) -> List.of(DBConnectionProvider.habitKey(key.habitId),
+                                    DBConnectionProvider.userKey(key.userId)));
+                    InvalidationBus.addListener(cache);
+                    defaultReportCache = cache;
                 }
             }
-        } else if (habit.getFrequency() == Frequency.WEEKLY) {
-            for (HabitRecord record : completions.values()) {
-                if (record.isCompleted()) {
-                    streak++;
-                    currentDate = currentDate.minusWeeks(1);
+        }
+        return defaultReportCache;
+    }
+
+    /**
+     * Returns the {@link LastKnownGood} the last progress reports are remembered in, to read its metrics.
+     *
+     * @return the shared {@code LastKnownGood}
+     */
+    public static LastKnownGood<List<Object>, String> lastReports() {
+        if (lastReports == null) {
+            synchronized (StatisticsService.class) {
+                if (lastReports == null) {
+                    ConfigLoader configLoader = new ConfigLoader();
+                    lastReports = new LastKnownGood<>(configLoader.getEntityCacheSize(),
+                            configLoader.getStaleRefreshMillis());
                 }
             }
         }
-        return streak;
+        return lastReports;
+    }
+
+    /**
+     * Calculates the current streak of habit completions for a given user and habit title.
+     * <p>
+     * The streak is the number of consecutive successful periods of the habit's schedule ending with today's
+     * period, or with the one before it while today's is still under way, so a habit completed until yesterday
+     * still has its streak today and a habit that missed a period since has none.
+     *
+     * @param user       the {@link User} whose habit streak is to be calculated
+     * @param habitTitle the title of the habit
+     * @return the current streak count; returns 0 if the habit is not found or if there are no completions
+     * @throws QueryTimeoutException if the queries do not complete within the statistics deadline
+     */
+    public int getCurrentStreak(User user, String habitTitle) {
+        return statisticsRequest("StatisticsService.getCurrentStreak", () -> {
+            Optional<Habit> maybeHabit = findHabit(user, habitTitle);
+            if (maybeHabit.isEmpty()) {
+                System.out.println("Habit not found.");
+                return 0;
+            }
+
+            return currentStreak(maybeHabit.get(), LocalDate.now());
+        });
     }
 
     /**
@@ -72,95 +183,181 @@ public class StatisticsService {
      * @param habitTitle the title of the habit
      * @param startDate  the start date of the interval
      * @param endDate    the end date of the interval
-     * @return the success percentage of habit completions; returns 0.0 if the habit is not found
-     * or if the total days is less than or equal to zero
+     * @return the percentage of successful periods; returns 0.0 if the habit is not found
+     * or if the interval has no periods
+     * @throws QueryTimeoutException if the queries do not complete within the statistics deadline
      */
     public double getSuccessPercentage(User user, String habitTitle, LocalDate startDate, LocalDate endDate) {
-        Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(habitTitle, user.getId());
-        if (maybeHabit.isEmpty()) {
-            System.out.println("Habit not found.");
-            return 0.0;
-        }
-
-        Habit habit = maybeHabit.get();
-        List<HabitRecord> completions;
-        long totalDays;
-
-        if (habit.getFrequency() == Frequency.DAILY) {
-            completions = filterCompletionsByDate(habit, startDate, endDate);
-            totalDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
-        } else {
-            completions = filterCompletionsByWeek(habit, startDate, endDate);
-            totalDays = ChronoUnit.WEEKS.between(startDate, endDate) + 1;
-        }
-
-        if (totalDays <= 0) {
-            return 0.0;
-        }
+        return statisticsRequest("StatisticsService.getSuccessPercentage", () -> {
+            Optional<Habit> maybeHabit = findHabit(user, habitTitle);
+            if (maybeHabit.isEmpty()) {
+                System.out.println("Habit not found.");
+                return 0.0;
+            }
 
-        return (double) completions.size() / totalDays * 100;
+            return computeStatistics(maybeHabit.get(), startDate, endDate).getSuccessRate();
+        });
     }
 
     /**
      * Generates a progress report for a given user and habit title within a specified date range.
+     * <p>
+     * Concurrent calls for the same habit and dates share one computation of the report, which is cached until
+     * the habit or its records change or the day ends. While the database is unavailable the last report generated for the habit
+     * and dates is returned instead, ending with a line telling when it was generated.
      *
      * @param user       the {@link User} associated with the habit
      * @param habitTitle the title of the habit
      * @param startDate  the start date of the report period
      * @param endDate    the end date of the report period
      * @return a {@link String} containing the result of the operation
+     * @throws QueryTimeoutException        if the queries do not complete within the statistics deadline and no
+     *                                      report was generated before
+     * @throws DatabaseUnavailableException if the database is unavailable and no report was generated before
      */
     public String generateProgressReport(User user, String habitTitle, LocalDate startDate, LocalDate endDate) {
-        Optional<Habit> maybeHabit = HabitRepository.findByTitleAndUserId(habitTitle, user.getId());
-        if (maybeHabit.isEmpty()) {
-            return "Habit not found.";
+        Fetched<String> report = lastReports().get(Arrays.asList(user.getId(), habitTitle, startDate, endDate),
+                () -> progressReport(user, habitTitle, startDate, endDate));
+        if (!report.isStale()) {
+            return report.getValue();
         }
+        return String.format("%s%n(The database is unavailable: this report was generated at %s.)",
+                report.getValue(), LocalDateTime.ofInstant(report.getFetchedAt(), ZoneId.systemDefault())
+                        .truncatedTo(ChronoUnit.SECONDS));
+    }
 
-        Habit habit = maybeHabit.get();
-        List<HabitRecord> completions;
-        long totalDays;
+    private String progressReport(User user, String habitTitle, LocalDate startDate, LocalDate endDate) {
+        return statisticsRequest("StatisticsService.generateProgressReport", () -> {
+            Optional<Habit> maybeHabit = findHabit(user, habitTitle);
+            if (maybeHabit.isEmpty()) {
+                return "Habit not found.";
+            }
 
-        if (habit.getFrequency() == Frequency.DAILY) {
-            completions = filterCompletionsByDate(habit, startDate, endDate);
-            totalDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
-        } else {
-            completions = filterCompletionsByWeek(habit, startDate, endDate);
-            totalDays = ChronoUnit.WEEKS.between(startDate, endDate) + 1;
-        }
+            Habit habit = maybeHabit.get();
+            ReportKey key = new ReportKey(habit.getId(), habit.getUserId(), startDate, endDate, LocalDate.now());
+            if (reportCache == null) {
+                return computeProgressReport(key, habit);
+            }
+            return reportCache.get(key, k -> computeProgressReport(k, habit));
+        });
+    }
+
+    private static <T> T statisticsRequest(String operation, Supplier<T> request) {
+        return Tracer.trace(operation, () -> ConcurrencyLimiter.withPriority(ConcurrencyLimiter.Priority.LOW,
+                () -> QueryDeadline.within(TIMEOUT_MILLIS, request)));
+    }
+
+    private Optional<Habit> findHabit(User user, String habitTitle) {
+        return QueryDeadline.join(HabitRepository.loadByTitleAndUserId(habitTitle, user.getId()));
+    }
+
+    private String computeProgressReport(ReportKey key, Habit habit) {
+        return reports.execute(key, () -> formatProgressReport(habit, key.startDate, key.endDate, key.today));
+    }
 
-        int successfulDays = completions.size();
-        double successRate = (double) successfulDays / totalDays * 100;
-        int currentStreak = getCurrentStreak(user, habitTitle);
+    private String formatProgressReport(Habit habit, LocalDate startDate, LocalDate endDate, LocalDate today) {
+        PeriodStatistics statistics = computeStatistics(habit, startDate, endDate);
+        int currentStreak = currentStreak(habit, today);
 
         return String.format("Progress Report for Habit: %s%n"
+                        + "Schedule: %s%n"
                         + "Period: %s to %s%n"
                         + "Total intervals: %d%n"
                         + "Successful intervals: %d%n"
                         + "Success rate: %.2f%%%n"
+                        + "Longest streak in period: %d intervals%n"
                         + "Current streak: %d intervals",
-                habitTitle, startDate, endDate, totalDays, successfulDays, successRate, currentStreak);
-    }
-
-    private List<HabitRecord> filterCompletionsByDate(Habit habit, LocalDate startDate, LocalDate endDate) {
-        return HabitRecordRepository.getAllHabitRecords(habit).entrySet().stream()
-                .filter(entry -> !entry.getKey().isBefore(startDate)
-                        && !entry.getKey().isAfter(endDate)
-                        && entry.getValue().isCompleted())
-                .map(Map.Entry::getValue)
-                .toList();
-    }
-
-    private List<HabitRecord> filterCompletionsByWeek(Habit habit, LocalDate startDate, LocalDate endDate) {
-        return HabitRecordRepository.getAllHabitRecords(habit).entrySet().stream()
-                .filter(entry -> {
-                    LocalDate date = entry.getKey();
-                    LocalDate startOfWeek = startDate.with(DayOfWeek.MONDAY);
-                    LocalDate endOfWeek = endDate.with(DayOfWeek.SUNDAY);
-                    return !date.isBefore(startOfWeek)
-                            && !date.isAfter(endOfWeek)
-                            && entry.getValue().isCompleted();
-                })
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toList());
+                habit.getTitle(), habit.getSchedule(), startDate, endDate, statistics.getTotalPeriods(),
+                statistics.getSuccessfulPeriods(), statistics.getSuccessRate(), statistics.getLongestStreak(),
+                currentStreak);
+    }
+
+    private int currentStreak(Habit habit, LocalDate today) {
+        StatisticsEvent event = startEvent("currentStreak", habit);
+        RecordSeries completions = HabitRecordRepository.findRecords(habit.getId(), null, today, true);
+        if (completions.isEmpty()) {
+            commitEvent(event, "no-history", 0, 0);
+            return 0;
+        }
+        PeriodGrid grid = PeriodGrid.of(habit.getSchedule(), completions.date(0), today);
+        int streak = (int) grid.compute(completions.toEpochDays(), completions.size()).getCurrentStreak();
+        commitEvent(event, gridPath(habit), completions.size(), grid.getPeriodCount());
+        return streak;
+    }
+
+    private PeriodStatistics computeStatistics(Habit habit, LocalDate startDate, LocalDate endDate) {
+        StatisticsEvent event = startEvent("periodStatistics", habit);
+        PeriodGrid grid = PeriodGrid.of(habit.getSchedule(), startDate, endDate);
+        if (grid.getPeriodCount() == 0) {
+            commitEvent(event, "no-periods", 0, 0);
+            return grid.compute(new long[0], 0);
+        }
+        RecordSeries completions = HabitRecordRepository.findRecords(
+                habit.getId(), grid.getFirstDay(), grid.getLastDay(), true);
+        PeriodStatistics statistics = grid.compute(completions.toEpochDays(), completions.size());
+        commitEvent(event, gridPath(habit), completions.size(), grid.getPeriodCount());
+        return statistics;
+    }
+
+    private static StatisticsEvent startEvent(String operation, Habit habit) {
+        StatisticsEvent event = new StatisticsEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.habitId = habit.getId();
+            event.begin();
+        }
+        return event;
+    }
+
+    private static void commitEvent(StatisticsEvent event, String algorithm, int historyLength, long periods) {
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.historyLength = historyLength;
+            event.periods = periods;
+            event.commit();
+        }
+    }
+
+    private static String gridPath(Habit habit) {
+        return "grid-" + habit.getSchedule().getKind().name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Identifies a progress report: the habit, the dates it covers and the day it is computed on, which its
+     * current streak counts up to. The owner of the habit only tags the cached report, since it is the key habits
+     * are written under.
+     */
+    public static final class ReportKey {
+        private final Long habitId;
+        private final Long userId;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final LocalDate today;
+
+        private ReportKey(Long habitId, Long userId, LocalDate startDate, LocalDate endDate, LocalDate today) {
+            this.habitId = habitId;
+            this.userId = userId;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.today = today;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReportKey)) {
+                return false;
+            }
+            ReportKey other = (ReportKey) o;
+            return Objects.equals(habitId, other.habitId) && Objects.equals(startDate, other.startDate)
+                    && Objects.equals(endDate, other.endDate) && Objects.equals(today, other.today);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(habitId, startDate, endDate, today);
+        }
     }
 }
@@ -0,0 +1,145 @@
+package org.home.service;
+
+import org.home.config.ConfigLoader;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.UserRepository;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The {@code UserDeletionService} class deletes users together with their habits and records.
+ * <p>
+ * A user with a short history is deleted right away in one transaction, the habits and records following
+ * through {@code ON DELETE CASCADE}. A user with more records than the configured threshold is blocked at once
+ * and emptied in the background instead: the records go a chunk per transaction with a pause in between, so that
+ * no transaction locks the whole history, and the user row goes last. A deletion interrupted by a shutdown
+ * leaves the user blocked and is finished by deleting the user again. The {@link HabitListener}s of the
+ * {@link HabitService} are told once the user is gone.
+ */
+public class UserDeletionService {
+
+    private static volatile UserDeletionService defaultService;
+
+    private final long asyncThreshold;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final ExecutorService executor;
+    private final Map<Long, CompletableFuture<Boolean>> inProgress = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a {@code UserDeletionService}.
+     *
+     * @param asyncThreshold the number of records above which a user is deleted in the background
+     * @param chunkSize      the number of records deleted per transaction in the background
+     * @param pauseMillis    how long the background deletion waits between chunks
+     */
+    public UserDeletionService(long asyncThreshold, int chunkSize, long pauseMillis) {
+        this.asyncThreshold = Math.max(0, asyncThreshold);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the application-wide service configured in {@code application.yml}.
+     *
+     * @return the shared {@code UserDeletionService}
+     */
+    public static UserDeletionService getDefault() {
+        if (defaultService == null) {
+            synchronized (UserDeletionService.class) {
+                if (defaultService == null) {
+                    ConfigLoader configLoader = new ConfigLoader();
+                    defaultService = new UserDeletionService(configLoader.getUserDeletionAsyncThreshold(),
+                            configLoader.getUserDeletionChunkSize(), configLoader.getUserDeletionPauseMillis());
+                }
+            }
+        }
+        return defaultService;
+    }
+
+    /**
+     * Deletes a user with all habits and records, in the background if the history is long.
+     *
+     * @param user the {@link User} to delete
+     * @return a future telling whether the user was deleted; it is already complete unless the deletion runs
+     * in the background, and is shared by every call made for the same user in the meantime
+     */
+    public CompletableFuture<Boolean> delete(User user) {
+        CompletableFuture<Boolean> running = inProgress.get(user.getId());
+        if (running != null) {
+            return running;
+        }
+        long recordCount = HabitRecordRepository.countUserRecords(user.getId(), asyncThreshold + 1);
+        if (recordCount < 0) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (recordCount <= asyncThreshold) {
+            return CompletableFuture.completedFuture(deleteUser(user));
+        }
+
+        user.setBlocked(true);
+        UserRepository.update(user);
+        CompletableFuture<Boolean> deletion = new CompletableFuture<>();
+        running = inProgress.putIfAbsent(user.getId(), deletion);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                deletion.complete(deleteInChunks(user));
+            } catch (RuntimeException e) {
+                deletion.completeExceptionally(e);
+            } finally {
+                inProgress.remove(user.getId());
+            }
+        });
+        return deletion;
+    }
+
+    /**
+     * Tells whether a user is being deleted in the background.
+     *
+     * @param userId the ID of the user
+     * @return {@code true} if a background deletion of the user has not finished yet
+     */
+    public boolean isDeleting(Long userId) {
+        return inProgress.containsKey(userId);
+    }
+
+    private boolean deleteInChunks(User user) {
+        while (true) {
+            int deleted = HabitRecordRepository.deleteUserRecords(user.getId(), chunkSize);
+            if (deleted < 0) {
+                return false;
+            }
+            if (deleted < chunkSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return deleteUser(user);
+    }
+
+    private static boolean deleteUser(User user) {
+        if (!UserRepository.delete(user)) {
+            return false;
+        }
+        HabitService.userDeleted(user.getId());
+        return true;
+    }
+}
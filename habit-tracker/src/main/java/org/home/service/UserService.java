@@ -1,19 +1,94 @@
 package org.home.service;
 
+import org.home.cache.EntityCache;
+import org.home.cache.InvalidationBus;
+import org.home.config.ConfigLoader;
+import org.home.config.DBConnectionProvider;
+import org.home.config.QueryDeadline;
+import org.home.config.QueryTimeoutException;
 import org.home.model.Role;
 import org.home.model.User;
 import org.home.repository.UserRepository;
+import org.home.security.LoginRateLimiter;
+import org.home.security.PasswordHasher;
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.home.model.Role.ADMIN;
 
 /**
  * The {@code UserService} class provides methods for user management operations.
+ * <p>
+ * Passwords are stored as hashes produced by a {@link PasswordHasher}. Users whose stored password is still
+ * plaintext, or was hashed with an outdated cost, get a fresh hash on their next successful login.
+ * <p>
+ * Login attempts pass a {@link LoginRateLimiter} before the database is touched; too many failed logins
+ * lock the email out for a while, much like a temporary {@link #blockUser block}.
+ * <p>
+ * Deleted users take their habits and records with them; long histories are removed in the background by a
+ * {@link UserDeletionService}.
+ * <p>
+ * Users looked up by email are kept in an {@link EntityCache} shared by all services until they are written, on
+ * this instance or, through the {@link InvalidationBus}, on another one. Logins always read the database.
+ * <p>
+ * Every operation is traced by the {@link Tracer}; a password rehashed after an asynchronous login is written
+ * in the trace of that login.
  */
 public class UserService {
+    private static final long LOGIN_TIMEOUT_MILLIS = new ConfigLoader().getLoginTimeoutMillis();
+
+    private static volatile EntityCache<String, User> defaultUserCache;
+    private static volatile Executor passwordWriter;
+
+    private final PasswordHasher passwordHasher;
+    private final LoginRateLimiter loginRateLimiter;
+    private final UserDeletionService userDeletionService;
+
+    /**
+     * Constructs a {@code UserService} that uses the application-wide {@link PasswordHasher},
+     * {@link LoginRateLimiter} and {@link UserDeletionService}.
+     */
+    public UserService() {
+        this(PasswordHasher.getDefault(), LoginRateLimiter.getDefault());
+    }
+
+    /**
+     * Constructs a {@code UserService} with the given {@link PasswordHasher} and {@link LoginRateLimiter}
+     * and the application-wide {@link UserDeletionService}.
+     *
+     * @param passwordHasher   the hasher used for passwords
+     * @param loginRateLimiter the limiter guarding logins
+     */
+    public UserService(PasswordHasher passwordHasher, LoginRateLimiter loginRateLimiter) {
+        this(passwordHasher, loginRateLimiter, UserDeletionService.getDefault());
+    }
+
+    /**
+     * Constructs a {@code UserService} with the given {@link PasswordHasher}, {@link LoginRateLimiter}
+     * and {@link UserDeletionService}.
+     *
+     * @param passwordHasher      the hasher used for passwords
+     * @param loginRateLimiter    the limiter guarding logins
+     * @param userDeletionService the service deleting users and their histories
+     */
+    public UserService(PasswordHasher passwordHasher, LoginRateLimiter loginRateLimiter,
+                       UserDeletionService userDeletionService) {
+        this.passwordHasher = passwordHasher;
+        this.loginRateLimiter = loginRateLimiter;
+        this.userDeletionService = userDeletionService;
+    }
 
     /**
      * Registers a new user with given parameters.
@@ -22,16 +97,22 @@ public class UserService {
      * @param email    the email of the new user
      * @param password the password of the new user
      * @return the newly created {@link User} if registration is successful;
-     * returns null if the email is already registered
+     * returns null if the email is already registered or the password could not be hashed right now
      */
     public User register(String name, String email, String password) {
-        if (UserRepository.emailIsAlreadyRegistered(email)) {
-            return null;
-        }
+        return Tracer.trace("UserService.register", () -> {
+            if (UserRepository.emailIsAlreadyRegistered(email)) {
+                return null;
+            }
 
-        User newUser = new User(name, email, password, Role.USER);
-        UserRepository.save(newUser);
-        return newUser;
+            String passwordHash = hashPassword(password);
+            if (passwordHash == null) {
+                return null;
+            }
+            User newUser = new User(name, email, passwordHash, Role.USER);
+            UserRepository.save(newUser);
+            return newUser;
+        });
     }
 
     /**
@@ -40,23 +121,74 @@ public class UserService {
      * @param email    the email of the user for log in
      * @param password the password of the user for log in
      * @return the logged-in {@link User} if successful;
-     * returns null if the user is not found, blocked, or if the password is incorrect
+     * returns null if the user is not found, blocked, if the password is incorrect,
+     * or if too many logins are being attempted at the moment
      */
     public User login(String email, String password) {
-        Optional<User> maybeUser = UserRepository.findByEmail(email);
-
-        if (maybeUser.isEmpty()) {
-            return null;
-        }
+        return login(email, password, null);
+    }
 
-        User user = maybeUser.get();
-        if (user.isBlocked()) {
-            System.out.println("This account is blocked.");
-            return null;
-        } else if (user.getPassword().equals(password)) {
+    /**
+     * Logs in a user with the provided email and password, rate limiting attempts from the given source.
+     * <p>
+     * The password is checked, and rehashed if needed, on the calling thread, which waits for the result anyway;
+     * callers that should not wait use {@link #loginAsync}.
+     *
+     * @param email    the email of the user for log in
+     * @param password the password of the user for log in
+     * @param source   where the attempt comes from, such as a client address, or {@code null} if unknown
+     * @return the logged-in {@link User} if successful;
+     * returns null if the user is not found, blocked, locked out, if the password is incorrect,
+     * or if too many logins are being attempted at the moment
+     * @throws QueryTimeoutException if the user could not be looked up within the login deadline
+     */
+    public User login(String email, String password, String source) {
+        return Tracer.trace("UserService.login", () -> {
+            User user = findLoginCandidate(email, source);
+            if (user == null || !checkPassword(user, email, passwordHasher.verify(password, user.getPassword()))) {
+                return null;
+            }
+            if (passwordHasher.needsRehash(user.getPassword())) {
+                updatePassword(user, passwordHasher.hash(password));
+            }
             return user;
-        }
-        return null;
+        });
+    }
+
+    /**
+     * Logs in a user without blocking the calling thread while the password is checked.
+     * <p>
+     * The rate limit is checked and the user is looked up on the calling thread, within the
+     * {@code login-timeout-ms} {@link QueryDeadline}; the password check and any rehash run on the
+     * {@link PasswordHasher} pool, and a new hash is written to the database by a writer thread of its own, so
+     * that a slow database does not hold up hashing. The write continues the trace of the login.
+     *
+     * @param email    the email of the user for log in
+     * @param password the password of the user for log in
+     * @param source   where the attempt comes from, or {@code null} if unknown
+     * @return a future with the logged-in {@link User}, or with {@code null} if the attempt is rate limited,
+     * the user is not found, blocked, locked out, or if the password is incorrect; the future fails with
+     * {@link RejectedExecutionException} if the hashing pool is saturated
+     * @throws QueryTimeoutException if the user could not be looked up within the login deadline
+     */
+    public CompletableFuture<User> loginAsync(String email, String password, String source) {
+        return Tracer.trace("UserService.loginAsync", () -> {
+            User user = findLoginCandidate(email, source);
+            if (user == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Span login = Tracer.current();
+            return passwordHasher.verifyAsync(password, user.getPassword())
+                    .thenCompose(matches -> {
+                        if (!checkPassword(user, email, matches)) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        if (!passwordHasher.needsRehash(user.getPassword())) {
+                            return CompletableFuture.completedFuture(user);
+                        }
+                        return rehash(user, password, login);
+                    });
+        });
     }
 
     /**
@@ -68,27 +200,44 @@ public class UserService {
      * @param newPassword  the new password for the user
      */
     public void editProfile(User user, String newName, String newEmail, String newPassword) {
-        if (!user.getEmail().equals(newEmail) && UserRepository.emailIsAlreadyRegistered(newEmail)) {
-            return;
-        }
+        Tracer.trace("UserService.editProfile", () -> {
+            if (!user.getEmail().equals(newEmail) && UserRepository.emailIsAlreadyRegistered(newEmail)) {
+                return null;
+            }
 
-        user.setName(newName);
-        user.setEmail(newEmail);
-        user.setPassword(newPassword);
-        UserRepository.update(user);
+            String newPasswordHash = hashPassword(newPassword);
+            if (newPasswordHash == null) {
+                return null;
+            }
+            user.setName(newName);
+            user.setEmail(newEmail);
+            user.setPassword(newPasswordHash);
+            UserRepository.update(user);
+            return null;
+        });
     }
 
     /**
-     * Deletes a user account.
+     * Deletes a user account together with its habits and records.
+     * <p>
+     * A user with a long history is blocked right away and deleted in the background.
      *
      * @param user the {@link User} to be deleted
+     * @return a future telling whether the user was deleted, already complete unless the deletion runs in
+     * the background; {@code false} for an admin user
      */
-    public void deleteUser(User user) {
-        if (user.getRole().equals(ADMIN)) {
-            System.out.println("Cannot delete an admin user.");
-        } else {
-            UserRepository.delete(user);
-        }
+    public CompletableFuture<Boolean> deleteUser(User user) {
+        return Tracer.trace("UserService.deleteUser", () -> {
+            if (user.getRole().equals(ADMIN)) {
+                System.out.println("Cannot delete an admin user.");
+                return CompletableFuture.completedFuture(false);
+            }
+            CompletableFuture<Boolean> deletion = userDeletionService.delete(user);
+            if (!deletion.isDone()) {
+                System.out.println("The history of " + user.getName() + " is being deleted in the background.");
+            }
+            return deletion;
+        });
     }
 
     /**
@@ -102,12 +251,50 @@ public class UserService {
 
     /**
      * Finds a user by their email address.
+     * <p>
+     * The user may come from the cache; the returned {@link User} is a copy that can be changed freely.
      *
      * @param email the email of the user to find
      * @return the found {@link User} if they exist
+     * @throws NoSuchElementException if no user has the email
      */
     public User findUserByEmail(String email) {
-        return UserRepository.findByEmail(email).orElseThrow();
+        User user = Tracer.trace("UserService.findUserByEmail",
+                () -> defaultUserCache().get(email, e -> UserRepository.findByEmail(e).orElse(null)));
+        if (user == null) {
+            throw new NoSuchElementException("No value present");
+        }
+        return copyOf(user);
+    }
+
+    /**
+     * Returns the {@link EntityCache} users looked up by email are kept in, to read its metrics.
+     *
+     * @return the shared cache, registered with the {@link InvalidationBus}
+     */
+    public static EntityCache<String, User> defaultUserCache() {
+        if (defaultUserCache == null) {
+            synchronized (UserService.class) {
+                if (defaultUserCache == null) {
+                    EntityCache<String, User> cache = new EntityCache<>(new ConfigLoader().getEntityCacheSize(),
+                            (email, user) -> List.of(DBConnectionProvider.emailKey(email),
+                                    DBConnectionProvider.userKey(user.getId())));
+                    InvalidationBus.addListener(cache);
+                    defaultUserCache = cache;
+                }
+            }
+        }
+        return defaultUserCache;
+    }
+
+    /**
+     * Finds users by their email addresses with one query per database.
+     *
+     * @param emails the emails of the users to find
+     * @return a map of the emails found to their {@link User} objects
+     */
+    public Map<String, User> findUsersByEmail(Collection<String> emails) {
+        return new HashMap<>(UserRepository.findByEmails(emails));
     }
 
     /**
@@ -117,30 +304,142 @@ public class UserService {
      * @return a message indicating the result of the operation
      */
     public String blockUser(User user) {
-        if (user.isBlocked()) {
-            return "User is already blocked.";
-        } else if (user.getRole().equals(ADMIN)) {
-            return "Cannot block an admin user.";
-        } else {
-            user.setBlocked(true);
-            UserRepository.update(user);
-            return "User " + user.getName() + " has been blocked.";
-        }
+        return Tracer.trace("UserService.blockUser", () -> {
+            if (user.isBlocked()) {
+                return "User is already blocked.";
+            } else if (user.getRole().equals(ADMIN)) {
+                return "Cannot block an admin user.";
+            } else {
+                user.setBlocked(true);
+                UserRepository.update(user);
+                return "User " + user.getName() + " has been blocked.";
+            }
+        });
     }
 
     /**
-     * Unblocks a user account.
+     * Unblocks a user account and lifts a temporary lockout caused by failed logins.
      *
      * @param user the {@link User} to be unblocked
      * @return a message indicating the result of the operation
      */
     public String unblockUser(User user) {
-        if (!user.isBlocked()) {
-            return "User is already unblocked.";
+        return Tracer.trace("UserService.unblockUser", () -> {
+            loginRateLimiter.unlock(user.getEmail());
+            if (!user.isBlocked()) {
+                return "User is already unblocked.";
+            } else {
+                user.setBlocked(false);
+                UserRepository.update(user);
+                return "User " + user.getName() + " has been unblocked.";
+            }
+        });
+    }
+
+    private static User copyOf(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getPassword(), user.getRole(),
+                user.isBlocked());
+    }
+
+    /**
+     * Checks the rate limit and looks up the user of a login attempt.
+     *
+     * @return the user whose password is to be checked, or {@code null} if the attempt fails before that
+     */
+    private User findLoginCandidate(String email, String source) {
+        switch (loginRateLimiter.tryAcquire(email, source)) {
+            case LOCKED_OUT -> {
+                System.out.println("This account is temporarily locked. Please try again later.");
+                return null;
+            }
+            case RATE_LIMITED -> {
+                System.out.println("Too many login attempts. Please try again later.");
+                return null;
+            }
+            default -> {
+            }
+        }
+
+        Optional<User> maybeUser = QueryDeadline.within(LOGIN_TIMEOUT_MILLIS, () -> UserRepository.findByEmail(email));
+
+        if (maybeUser.isEmpty()) {
+            loginRateLimiter.recordFailure(email);
+            return null;
+        }
+
+        User user = maybeUser.get();
+        if (user.isBlocked()) {
+            System.out.println("This account is blocked.");
+            return null;
+        }
+        return user;
+    }
+
+    /**
+     * Records the outcome of a password check with the rate limiter.
+     *
+     * @return whether the password matched
+     */
+    private boolean checkPassword(User user, String email, boolean matches) {
+        if (matches) {
+            loginRateLimiter.recordSuccess(email);
         } else {
-            user.setBlocked(false);
-            UserRepository.update(user);
-            return "User " + user.getName() + " has been unblocked.";
+            loginRateLimiter.recordFailure(email);
+        }
+        return matches;
+    }
+
+    /**
+     * Hashes a password again and writes the new hash in the trace of the login.
+     */
+    private CompletableFuture<User> rehash(User user, String password, Span login) {
+        return passwordHasher.hashAsync(password)
+                .thenApplyAsync(passwordHash -> {
+                    try (Span span = Tracer.startSpan("UserService.rehash", login)) {
+                        try {
+                            updatePassword(user, passwordHash);
+                        } catch (RuntimeException e) {
+                            span.recordError(e);
+                            throw e;
+                        }
+                    }
+                    return user;
+                }, passwordWriter())
+                .exceptionally(e -> user);
+    }
+
+    private static void updatePassword(User user, String passwordHash) {
+        user.setPassword(passwordHash);
+        UserRepository.update(user);
+    }
+
+    /**
+     * Returns the thread that writes the passwords rehashed by {@link #loginAsync}.
+     */
+    private static Executor passwordWriter() {
+        if (passwordWriter == null) {
+            synchronized (UserService.class) {
+                if (passwordWriter == null) {
+                    passwordWriter = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "password-writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return passwordWriter;
+    }
+
+    private String hashPassword(String password) {
+        try {
+            return passwordHasher.hashAsync(password).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                System.out.println("The server is busy. Please try again later.");
+                return null;
+            }
+            throw e;
         }
     }
 }
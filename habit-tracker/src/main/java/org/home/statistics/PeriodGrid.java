@@ -0,0 +1,202 @@
+package org.home.statistics;
+
+import org.home.model.Schedule;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * The {@code PeriodGrid} class splits a date range into the periods of a {@link Schedule} and computes
+ * {@link PeriodStatistics} over them.
+ * <p>
+ * Periods are numbered on a grid laid over all days: days for a daily schedule, Monday to Sunday weeks for a
+ * times-per-week schedule, spans of N days from the anchor for an every-N-days schedule, and the scheduled days
+ * themselves for a weekday schedule. The grid is set up once per query, after which the period of a day is
+ * found with a little arithmetic, so statistics are computed in a single pass over the completed days, with no
+ * calendar objects and no allocation. A range covers every period it touches in full, so that a week is judged
+ * on all of its days even if the range starts mid-week.
+ */
+public final class PeriodGrid {
+
+    /**
+     * The epoch day of Monday, 5 January 1970, the start of the first full week.
+     */
+    private static final long FIRST_MONDAY = 4;
+    private static final long NO_PERIOD = Long.MIN_VALUE;
+
+    private final Schedule.Kind kind;
+    private final long origin;
+    private final int width;
+    private final int required;
+    private final int perWeek;
+    private final int[] weekdayRank;
+    private final int[] rankWeekday;
+    private final long firstPeriod;
+    private final long lastPeriod;
+
+    private PeriodGrid(Schedule schedule, long fromDay, long toDay) {
+        this.kind = schedule.getKind();
+        this.required = Math.max(1, schedule.getTimesPerWeek());
+        this.weekdayRank = new int[7];
+        this.rankWeekday = new int[7];
+        int rank = 0;
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            if (schedule.isScheduledOn(weekday)) {
+                rankWeekday[rank] = weekday.ordinal();
+                weekdayRank[weekday.ordinal()] = rank++;
+            } else {
+                weekdayRank[weekday.ordinal()] = -1;
+            }
+        }
+        this.perWeek = rank;
+        switch (kind) {
+            case TIMES_PER_WEEK, WEEKDAYS -> {
+                this.origin = FIRST_MONDAY;
+                this.width = 7;
+            }
+            case EVERY_N_DAYS -> {
+                this.origin = schedule.getAnchor().toEpochDay();
+                this.width = schedule.getPeriodDays();
+            }
+            default -> {
+                this.origin = 0;
+                this.width = 1;
+            }
+        }
+
+        long first = NO_PERIOD;
+        long last = NO_PERIOD;
+        for (int i = 0; i < 7 && fromDay + i <= toDay && first == NO_PERIOD; i++) {
+            first = periodOf(fromDay + i);
+        }
+        for (int i = 0; i < 7 && toDay - i >= fromDay && last == NO_PERIOD; i++) {
+            last = periodOf(toDay - i);
+        }
+        if (first == NO_PERIOD || last == NO_PERIOD) {
+            this.firstPeriod = 0;
+            this.lastPeriod = -1;
+        } else {
+            this.firstPeriod = first;
+            this.lastPeriod = last;
+        }
+    }
+
+    /**
+     * Lays the periods of a schedule over a date range.
+     *
+     * @param schedule the schedule of the habit
+     * @param from     the first day of the range
+     * @param to       the last day of the range
+     * @return the grid of the periods the range touches; it has no periods if {@code from} is after {@code to}
+     */
+    public static PeriodGrid of(Schedule schedule, LocalDate from, LocalDate to) {
+        return new PeriodGrid(schedule, from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * Returns the number of periods the range touches.
+     *
+     * @return the period count
+     */
+    public long getPeriodCount() {
+        return lastPeriod - firstPeriod + 1;
+    }
+
+    /**
+     * Returns the first day of the first period, which is where completions start to count.
+     *
+     * @return the first day covered by the grid, or {@code null} if it has no periods
+     */
+    public LocalDate getFirstDay() {
+        return getPeriodCount() == 0 ? null : LocalDate.ofEpochDay(firstDay(firstPeriod));
+    }
+
+    /**
+     * Returns the last day of the last period, after which completions no longer count.
+     *
+     * @return the last day covered by the grid, or {@code null} if it has no periods
+     */
+    public LocalDate getLastDay() {
+        return getPeriodCount() == 0 ? null : LocalDate.ofEpochDay(lastDay(lastPeriod));
+    }
+
+    /**
+     * Computes the statistics of the periods from the days the habit was completed on.
+     *
+     * @param completedDays the completed days as days since 1970-01-01 in ascending order; repeated days and
+     *                      days outside the grid are ignored
+     * @param length        the number of days to read from the start of {@code completedDays}
+     * @return the statistics of the periods of the grid
+     */
+    public PeriodStatistics compute(long[] completedDays, int length) {
+        long successful = 0;
+        long days = 0;
+        long run = 0;
+        long longest = 0;
+        long lastSuccess = NO_PERIOD;
+        long period = NO_PERIOD;
+        int count = 0;
+        long previousDay = NO_PERIOD;
+        for (int i = 0; i < length; i++) {
+            long day = completedDays[i];
+            if (day == previousDay) {
+                continue;
+            }
+            previousDay = day;
+            long dayPeriod = periodOf(day);
+            if (dayPeriod == NO_PERIOD || dayPeriod < firstPeriod || dayPeriod > lastPeriod) {
+                continue;
+            }
+            days++;
+            if (dayPeriod != period) {
+                if (count >= required) {
+                    successful++;
+                    run = lastSuccess == period - 1 ? run + 1 : 1;
+                    longest = Math.max(longest, run);
+                    lastSuccess = period;
+                }
+                period = dayPeriod;
+                count = 0;
+            }
+            count++;
+        }
+        if (count >= required) {
+            successful++;
+            run = lastSuccess == period - 1 ? run + 1 : 1;
+            longest = Math.max(longest, run);
+            lastSuccess = period;
+        }
+        long current = lastSuccess != NO_PERIOD && lastSuccess >= lastPeriod - 1 ? run : 0;
+        return new PeriodStatistics(getPeriodCount(), successful, days, run, current, longest);
+    }
+
+    /**
+     * Returns the number of the period a day belongs to.
+     */
+    private long periodOf(long epochDay) {
+        if (kind != Schedule.Kind.WEEKDAYS) {
+            return Math.floorDiv(epochDay - origin, width);
+        }
+        long week = Math.floorDiv(epochDay - origin, 7);
+        int rank = weekdayRank[(int) (epochDay - origin - week * 7)];
+        return rank < 0 ? NO_PERIOD : week * perWeek + rank;
+    }
+
+    /**
+     * Returns the first day of a period.
+     */
+    private long firstDay(long period) {
+        if (kind != Schedule.Kind.WEEKDAYS) {
+            return origin + period * width;
+        }
+        long week = Math.floorDiv(period, perWeek);
+        return origin + week * 7 + rankWeekday[(int) (period - week * perWeek)];
+    }
+
+    /**
+     * Returns the last day of a period.
+     */
+    private long lastDay(long period) {
+        return kind == Schedule.Kind.WEEKDAYS ? firstDay(period) : origin + (period + 1) * width - 1;
+    }
+}
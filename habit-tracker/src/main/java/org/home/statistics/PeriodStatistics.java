@@ -0,0 +1,56 @@
+package org.home.statistics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The {@code PeriodStatistics} class holds how well a habit kept to its schedule over a range of periods, as
+ * computed by {@link PeriodGrid#compute}.
+ * <p>
+ * A period is a day, a week or a span of days depending on the schedule; it is successful when the habit was
+ * completed on enough distinct days in it.
+ */
+@Getter
+@AllArgsConstructor
+public class PeriodStatistics {
+
+    /**
+     * The number of periods in the range.
+     */
+    private final long totalPeriods;
+
+    /**
+     * The number of periods in the range in which the habit was done often enough.
+     */
+    private final long successfulPeriods;
+
+    /**
+     * The number of distinct days the habit was completed on, counting only days that belong to a period.
+     */
+    private final long completedDays;
+
+    /**
+     * The number of consecutive successful periods ending with the last successful one.
+     */
+    private final long latestStreak;
+
+    /**
+     * The number of consecutive successful periods ending with the last period of the range or the one before
+     * it, which may still be under way, or {@code 0} if the habit has fallen behind its schedule.
+     */
+    private final long currentStreak;
+
+    /**
+     * The largest number of consecutive successful periods.
+     */
+    private final long longestStreak;
+
+    /**
+     * Returns the share of successful periods.
+     *
+     * @return the percentage of successful periods, or {@code 0.0} if the range has no periods
+     */
+    public double getSuccessRate() {
+        return totalPeriods <= 0 ? 0.0 : (double) successfulPeriods / totalPeriods * 100;
+    }
+}
@@ -0,0 +1,102 @@
+package org.home.tracing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code FileSpanExporter} class appends exported spans to a local NDJSON file, one span per line.
+ * <p>
+ * It stands in for a tracing backend: the spans of a trace share a {@code traceId} and point to their parent
+ * with {@code parentSpanId}, and IDs are written as hexadecimal strings. Every batch is written with a single
+ * write, but not forced to disk, since losing the last spans in a crash is acceptable.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private final Path file;
+
+    /**
+     * Constructs a {@code FileSpanExporter}.
+     *
+     * @param file the file spans are appended to
+     */
+    public FileSpanExporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void export(List<Span> spans) throws IOException {
+        StringBuilder lines = new StringBuilder(spans.size() * 160);
+        for (Span span : spans) {
+            lines.append("{\"traceId\":\"").append(hex(span.getTraceId()))
+                    .append("\",\"spanId\":\"").append(hex(span.getSpanId()))
+                    .append("\",\"parentSpanId\":");
+            if (span.getParentSpanId() == 0) {
+                lines.append("null");
+            } else {
+                lines.append('"').append(hex(span.getParentSpanId())).append('"');
+            }
+            lines.append(",\"name\":");
+            appendString(lines, span.getName());
+            lines.append(",\"startMicros\":").append(span.getStartEpochMicros())
+                    .append(",\"durationMicros\":").append(span.getDurationNanos() / 1000)
+                    .append(",\"attributes\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> attribute : span.getAttributes().entrySet()) {
+                if (!first) {
+                    lines.append(',');
+                }
+                first = false;
+                appendString(lines, attribute.getKey());
+                lines.append(':');
+                appendString(lines, attribute.getValue());
+            }
+            lines.append("},\"error\":");
+            if (span.getError() == null) {
+                lines.append("null");
+            } else {
+                appendString(lines, span.getError());
+            }
+            lines.append("}\n");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static String hex(long id) {
+        String digits = Long.toHexString(id);
+        return "0".repeat(16 - digits.length()) + digits;
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,30 @@
+package org.home.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code InMemorySpanExporter} class collects exported spans in memory until they are drained.
+ * <p>
+ * It stands in for a tracing backend in tests and local runs.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final List<Span> spans = new ArrayList<>();
+
+    @Override
+    public synchronized void export(List<Span> batch) {
+        spans.addAll(batch);
+    }
+
+    /**
+     * Removes and returns all spans exported so far.
+     *
+     * @return the exported spans, in export order
+     */
+    public synchronized List<Span> drain() {
+        List<Span> result = new ArrayList<>(spans);
+        spans.clear();
+        return result;
+    }
+}
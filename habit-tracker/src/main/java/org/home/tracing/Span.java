@@ -0,0 +1,176 @@
+package org.home.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed operation of a trace, such as a service call or a JDBC statement, started by the {@link Tracer}.
+ * <p>
+ * A span becomes the current span of the thread that started it, so that spans started within it are its
+ * children, and must be closed on that thread, which restores the span that was current before. Spans of traces
+ * that are not sampled record nothing: their attributes and errors are ignored and they are never exported.
+ */
+public final class Span implements AutoCloseable {
+
+    static final Span NOOP = new Span(null, 0, 0, 0, null, null);
+
+    private final Tracer tracer;
+    private final long traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String name;
+    private final Span previous;
+    private final long startEpochMicros;
+    private final long startNanos;
+    private long durationNanos = -1;
+    private Map<String, String> attributes;
+    private String error;
+
+    Span(Tracer tracer, long traceId, long spanId, long parentSpanId, String name, Span previous) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.previous = previous;
+        if (tracer != null) {
+            this.startEpochMicros = System.currentTimeMillis() * 1000;
+            this.startNanos = System.nanoTime();
+        } else {
+            this.startEpochMicros = 0;
+            this.startNanos = 0;
+        }
+    }
+
+    /**
+     * Adds an attribute to the span, such as the SQL of a statement.
+     *
+     * @param key   the name of the attribute
+     * @param value the value of the attribute; {@code null} values are left out
+     * @return this span
+     */
+    public Span setAttribute(String key, Object value) {
+        if (tracer != null && value != null) {
+            if (attributes == null) {
+                attributes = new LinkedHashMap<>();
+            }
+            attributes.put(key, String.valueOf(value));
+        }
+        return this;
+    }
+
+    /**
+     * Marks the span as failed.
+     *
+     * @param e the error the operation failed with
+     */
+    public void recordError(Throwable e) {
+        if (tracer != null) {
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Ends the span and makes the span that was current before it current again.
+     */
+    @Override
+    public void close() {
+        if (this == NOOP) {
+            return;
+        }
+        if (tracer != null) {
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        Tracer.end(this);
+    }
+
+    /**
+     * Tells whether the span belongs to a sampled trace and is exported once it ends.
+     *
+     * @return {@code true} if the span is recorded
+     */
+    public boolean isSampled() {
+        return tracer != null;
+    }
+
+    /**
+     * Returns the ID of the trace, shared by all spans of one user action.
+     *
+     * @return the trace ID
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Returns the ID of the span.
+     *
+     * @return the span ID
+     */
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Returns the ID of the span this span was started within.
+     *
+     * @return the parent span ID, or {@code 0} for the root span of a trace
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * Returns the name of the operation.
+     *
+     * @return the span name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns when the span started.
+     *
+     * @return the start time in microseconds since the epoch
+     */
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    /**
+     * Returns how long the operation took.
+     *
+     * @return the duration in nanoseconds, or {@code -1} while the span is running
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Returns the attributes of the span.
+     *
+     * @return the attributes, in the order they were added
+     */
+    public Map<String, String> getAttributes() {
+        return attributes == null ? Map.of() : Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * Returns the error the operation failed with.
+     *
+     * @return the type and message of the error, or {@code null} if the operation succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    Tracer getTracer() {
+        return tracer;
+    }
+
+    Span getPrevious() {
+        return previous;
+    }
+}
@@ -0,0 +1,20 @@
+package org.home.tracing;
+
+import java.util.List;
+
+/**
+ * The {@code SpanExporter} interface receives the ended spans of sampled traces from a {@link Tracer}.
+ * <p>
+ * Spans arrive in batches on the export thread of the tracer, roughly in the order they ended, so the children
+ * of a span usually come before it. A batch whose export throws is dropped.
+ */
+public interface SpanExporter {
+
+    /**
+     * Exports a batch of ended spans.
+     *
+     * @param spans the spans
+     * @throws Exception if the batch could not be exported
+     */
+    void export(List<Span> spans) throws Exception;
+}
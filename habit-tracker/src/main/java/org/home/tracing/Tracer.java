@@ -0,0 +1,275 @@
+package org.home.tracing;
+
+import org.home.config.ConfigLoader;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code Tracer} class records where the time of a user action goes, as a trace of nested {@link Span}s:
+ * one for the service operation and one for every JDBC statement it executes.
+ * <p>
+ * Spans are started through the static methods and are current for the thread that started them, held in a
+ * {@link ThreadLocal}, which works the same on platform and virtual threads. Work handed to another thread, such
+ * as a batched lookup, continues the trace by passing the current span on and starting its spans with it as the
+ * parent. Nothing is recorded until a tracer is {@link #start() started}.
+ * <p>
+ * Whether a trace is recorded is decided once, when its root span starts, with the configured sample rate; the
+ * spans of a trace that is not sampled cost a thread-local lookup and are never exported, which keeps the
+ * overhead under full traffic proportional to the sample rate. Ended spans wait in a bounded queue and are handed
+ * to a {@link SpanExporter} in batches by a background thread; spans that find the queue full are dropped.
+ */
+public class Tracer {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static volatile Tracer active;
+
+    private final SpanExporter exporter;
+    private final double sampleRate;
+    private final int batchSize;
+    private final long exportIntervalMillis;
+    private final BlockingQueue<Span> ended;
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failedExports = new LongAdder();
+    private ScheduledExecutorService exportThread;
+
+    /**
+     * Constructs a {@code Tracer}.
+     *
+     * @param exporter             the exporter ended spans are handed to
+     * @param sampleRate           the share of traces recorded, from {@code 0} for none to {@code 1} for all
+     * @param batchSize            the largest number of spans handed to the exporter at once
+     * @param queueSize            the number of ended spans kept until they are exported
+     * @param exportIntervalMillis how long the export thread waits between exports
+     */
+    public Tracer(SpanExporter exporter, double sampleRate, int batchSize, int queueSize, long exportIntervalMillis) {
+        this.exporter = exporter;
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        this.batchSize = Math.max(1, batchSize);
+        this.ended = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.exportIntervalMillis = Math.max(1, exportIntervalMillis);
+    }
+
+    /**
+     * Creates the tracer configured in {@code application.yml}, exporting to the configured trace file.
+     *
+     * @param configLoader the configuration to read
+     * @return a new {@code Tracer} that is not started yet
+     */
+    public static Tracer fromConfig(ConfigLoader configLoader) {
+        return new Tracer(new FileSpanExporter(Path.of(configLoader.getTracingFile())),
+                configLoader.getTracingSampleRate(), configLoader.getTracingBatchSize(),
+                configLoader.getTracingQueueSize(), configLoader.getTracingExportMillis());
+    }
+
+    /**
+     * Makes this tracer record the spans started from now on, and starts the thread that exports them.
+     */
+    public synchronized void start() {
+        if (exportThread != null) {
+            return;
+        }
+        exportThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "span-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exportThread.scheduleWithFixedDelay(this::export, exportIntervalMillis, exportIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        active = this;
+    }
+
+    /**
+     * Stops recording spans, stops the export thread and exports the spans that ended so far.
+     */
+    public synchronized void stop() {
+        if (exportThread == null) {
+            return;
+        }
+        if (active == this) {
+            active = null;
+        }
+        exportThread.shutdown();
+        exportThread = null;
+        flush();
+    }
+
+    /**
+     * Hands all ended spans to the exporter.
+     *
+     * @return the number of spans exported
+     */
+    public int flush() {
+        int count = 0;
+        List<Span> batch = new ArrayList<>(batchSize);
+        while (ended.drainTo(batch, batchSize) > 0) {
+            try {
+                exporter.export(batch);
+                exported.add(batch.size());
+                count += batch.size();
+            } catch (Exception e) {
+                failedExports.increment();
+                dropped.add(batch.size());
+                System.out.println("Failed to export spans: " + e.getMessage());
+            }
+            batch.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Starts a span within the current span of this thread, or the root span of a new trace.
+     *
+     * @param name the name of the operation
+     * @return the started span, to be closed on this thread when the operation ends
+     */
+    public static Span startSpan(String name) {
+        Tracer tracer = active;
+        if (tracer == null) {
+            return Span.NOOP;
+        }
+        return tracer.start(name, CURRENT.get());
+    }
+
+    /**
+     * Starts a span within a span of another thread, which continues its trace on this thread.
+     *
+     * @param name   the name of the operation
+     * @param parent the span the operation was handed over from, as returned by {@link #current()}, or
+     *               {@code null} to start a new trace
+     * @return the started span, to be closed on this thread when the operation ends
+     */
+    public static Span startSpan(String name, Span parent) {
+        Tracer tracer = active;
+        if (tracer == null) {
+            return Span.NOOP;
+        }
+        return tracer.start(name, parent);
+    }
+
+    /**
+     * Returns the current span of this thread, to hand a trace over to another thread.
+     *
+     * @return the current span, or {@code null} if no span is running on this thread
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an operation in a span, marking the span as failed if the operation throws.
+     *
+     * @param name      the name of the operation
+     * @param operation the operation
+     * @param <T>       the type of the result
+     * @return the result of the operation
+     */
+    public static <T> T trace(String name, Supplier<T> operation) {
+        try (Span span = startSpan(name)) {
+            try {
+                return operation.get();
+            } catch (RuntimeException | Error e) {
+                span.recordError(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of sampled spans that ended.
+     *
+     * @return the recorded count
+     */
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+
+    /**
+     * Returns the number of spans handed to the exporter.
+     *
+     * @return the exported count
+     */
+    public long getExportedCount() {
+        return exported.sum();
+    }
+
+    /**
+     * Returns the number of spans lost because the queue was full or their export failed.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of batches the exporter failed to export.
+     *
+     * @return the failed export count
+     */
+    public long getFailedExportCount() {
+        return failedExports.sum();
+    }
+
+    static void end(Span span) {
+        if (CURRENT.get() == span) {
+            if (span.getPrevious() == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(span.getPrevious());
+            }
+        }
+        Tracer tracer = span.getTracer();
+        if (tracer != null) {
+            tracer.recorded.increment();
+            if (!tracer.ended.offer(span)) {
+                tracer.dropped.increment();
+            }
+        }
+    }
+
+    private Span start(String name, Span parent) {
+        Span previous = CURRENT.get();
+        Span span;
+        if (parent == null) {
+            boolean sampled = sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+            span = sampled ? new Span(this, newId(), newId(), 0, name, previous)
+                    : new Span(null, 0, 0, 0, null, previous);
+        } else if (parent.isSampled()) {
+            span = new Span(parent.getTracer(), parent.getTraceId(), newId(), parent.getSpanId(), name, previous);
+        } else if (parent == previous) {
+            return Span.NOOP;
+        } else {
+            span = new Span(null, 0, 0, 0, null, previous);
+        }
+        CURRENT.set(span);
+        return span;
+    }
+
+    private void export() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.out.println("Failed to export spans: " + e.getMessage());
+        }
+    }
+
+    private static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+}
@@ -0,0 +1,178 @@
+package org.home.cache;
+
+import org.home.config.DBConnectionProvider;
+import org.home.config.DatabaseUnavailableException;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.UserRepository;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("InvalidationBus test")
+class InvalidationBusTest {
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private final BlockingQueue<String> remoteKeys = new LinkedBlockingQueue<>();
+    private final InvalidationListener recorder = new InvalidationListener() {
+        @Override
+        public void invalidate(Collection<String> keys, boolean remote) {
+            if (remote) {
+                remoteKeys.addAll(keys);
+            }
+        }
+
+        @Override
+        public void invalidateAll() {
+        }
+    };
+    private DBConnectionProvider connectionProvider;
+    private UserService userService;
+    private InvalidationBus first;
+    private InvalidationBus second;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        new OutboxRepository(connectionProvider);
+        userService = new UserService();
+        UserService.defaultUserCache();
+        InvalidationBus.addListener(recorder);
+        first = new InvalidationBus(connectionProvider, 10, 100);
+        second = new InvalidationBus(connectionProvider, 10, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.stop();
+        second.stop();
+        InvalidationBus.removeListener(recorder);
+    }
+
+    @Test
+    @DisplayName("Writes are announced to the other instances")
+    void shouldAnnounceWritesToOtherInstances() throws Exception {
+        first.start();
+        second.start();
+        User user = userService.findUserByEmail("tu@example.com");
+        Thread.sleep(500);
+
+        user.setName("Renamed User");
+        UserRepository.update(user);
+
+        assertThat(remoteKeys.poll(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(first.getPublishedKeyCount()).isPositive();
+        assertThat(second.getPublishedKeyCount()).isEqualTo(first.getPublishedKeyCount());
+        assertThat(first.getReceivedKeyCount() + second.getReceivedKeyCount()).isPositive();
+        assertThat(first.getFullInvalidationCount() + second.getFullInvalidationCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Cached users are evicted by local and remote writes")
+    void shouldEvictCachedUsers() throws Exception {
+        EntityCache<String, User> cache = UserService.defaultUserCache();
+        User user = userService.findUserByEmail("tu@example.com");
+        long hits = cache.getHitCount();
+        user.setName("Changed Locally");
+        assertThat(userService.findUserByEmail("tu@example.com").getName()).isNotEqualTo("Changed Locally");
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+
+        UserRepository.update(user);
+        long misses = cache.getMissCount();
+        assertThat(userService.findUserByEmail("tu@example.com").getName()).isEqualTo("Changed Locally");
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+
+        first.start();
+        Thread.sleep(500);
+        userService.findUserByEmail("tu@example.com");
+        hits = cache.getHitCount();
+        userService.findUserByEmail("tu@example.com");
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT pg_notify(?, ?)")) {
+            pstmt.setString(1, InvalidationBus.CHANNEL);
+            pstmt.setString(2, "another-instance\nuser:" + user.getId());
+            pstmt.execute();
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        }
+        assertThat(remoteKeys.poll(5, TimeUnit.SECONDS)).isEqualTo("user:" + user.getId());
+        misses = cache.getMissCount();
+        userService.findUserByEmail("tu@example.com");
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    @DisplayName("Writes that could not be announced are announced once the database is back")
+    void shouldResendAfterFailure() throws Exception {
+        AtomicBoolean down = new AtomicBoolean(true);
+        DBConnectionProvider flaky = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        ) {
+            @Override
+            public Connection getConnection() {
+                if (down.get()) {
+                    throw new DatabaseUnavailableException("The database is down");
+                }
+                return super.getConnection();
+            }
+        };
+        InvalidationBus sender = new InvalidationBus(flaky, 10, 100);
+        try {
+            second.start();
+            sender.start();
+            User user = userService.findUserByEmail("tu@example.com");
+            Thread.sleep(500);
+
+            user.setName("Renamed While Down");
+            UserRepository.update(user);
+            Thread.sleep(500);
+            assertThat(remoteKeys).isEmpty();
+            assertThat(sender.getSentNotificationCount()).isZero();
+
+            down.set(false);
+            assertThat(remoteKeys.poll(5, TimeUnit.SECONDS)).isNotNull();
+            assertThat(sender.getSentNotificationCount()).isPositive();
+        } finally {
+            sender.stop();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.home.config;
+
+import org.home.cache.Fetched;
+import org.home.cache.LastKnownGood;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("CircuitBreaker test")
+class CircuitBreakerTest {
+
+    @Test
+    @DisplayName("The circuit opens after consecutive failures and closes after a successful probe")
+    void shouldOpenAndCloseAfterProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 50);
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+
+        Thread.sleep(60);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+        breaker.recordSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.allowRequest()).isTrue();
+        assertThat(breaker.getOpenedCount()).isEqualTo(1);
+        assertThat(breaker.getRejectedCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A failed probe opens the circuit again")
+    void shouldReopenAfterFailedProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.recordFailure();
+        Thread.sleep(60);
+        assertThat(breaker.allowRequest()).isTrue();
+        breaker.recordFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.allowRequest()).isFalse();
+        assertThat(breaker.getOpenedCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Only connection errors count as an unavailable database")
+    void shouldTellUnavailableErrors() {
+        assertThat(CircuitBreaker.isUnavailable(new SQLException("refused", "08001"))).isTrue();
+        assertThat(CircuitBreaker.isUnavailable(new SQLException("shutdown", "57P01"))).isTrue();
+        assertThat(CircuitBreaker.isUnavailable(new SQLException("duplicate", "23505"))).isFalse();
+        assertThat(CircuitBreaker.isUnavailable(new SQLException("unknown"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("The last value is served stale while the database is unavailable and refreshed once it is back")
+    void shouldServeStaleValueAndRefresh() throws Exception {
+        LastKnownGood<Long, String> lastKnownGood = new LastKnownGood<>(10, 20);
+        AtomicBoolean available = new AtomicBoolean(true);
+        Supplier<String> loader = () -> {
+            if (!available.get()) {
+                throw new DatabaseUnavailableException("The database is unavailable");
+            }
+            return "habits";
+        };
+        assertThat(lastKnownGood.get(1L, loader).isStale()).isFalse();
+
+        available.set(false);
+        Fetched<String> stale = lastKnownGood.get(1L, loader);
+        assertThat(stale.isStale()).isTrue();
+        assertThat(stale.getValue()).isEqualTo("habits");
+        assertThatThrownBy(() -> lastKnownGood.get(2L, loader))
+                .isInstanceOf(DatabaseUnavailableException.class);
+
+        available.set(true);
+        for (int i = 0; i < 500 && lastKnownGood.getStaleKeyCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(lastKnownGood.getStaleKeyCount()).isZero();
+        assertThat(lastKnownGood.getRefreshedCount()).isEqualTo(1);
+        assertThat(lastKnownGood.getStaleServedCount()).isEqualTo(1);
+    }
+}
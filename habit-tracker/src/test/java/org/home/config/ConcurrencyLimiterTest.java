@@ -0,0 +1,107 @@
+package org.home.config;
+
+import org.home.config.ConcurrencyLimiter.Priority;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("ConcurrencyLimiter test")
+class ConcurrencyLimiterTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    @DisplayName("Queries beyond the limit wait, time out or are shed")
+    void shouldQueueAndShedQueriesBeyondLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 1, 1_000);
+        assertThat(limiter.acquire(Priority.NORMAL, Long.MAX_VALUE)).isTrue();
+        assertThat(limiter.acquire(Priority.NORMAL, Long.MAX_VALUE)).isTrue();
+        assertThat(limiter.acquire(Priority.NORMAL, 20 * MILLI)).isFalse();
+
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(
+                () -> limiter.acquire(Priority.NORMAL, Long.MAX_VALUE));
+        while (limiter.getQueueLength() == 0) {
+            Thread.sleep(1);
+        }
+        assertThatThrownBy(() -> limiter.acquire(Priority.HIGH, Long.MAX_VALUE))
+                .isInstanceOf(DatabaseOverloadedException.class);
+
+        limiter.release(MILLI, false);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.getAdmittedCount()).isEqualTo(3);
+        assertThat(limiter.getQueuedCount()).isEqualTo(2);
+        assertThat(limiter.getRejectedCount(Priority.NORMAL)).isEqualTo(1);
+        assertThat(limiter.getRejectedCount(Priority.HIGH)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Waiting check-ins are admitted ahead of waiting statistics")
+    void shouldAdmitHigherPriorityFirst() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 10, 5_000);
+        assertThat(limiter.acquire(Priority.NORMAL, Long.MAX_VALUE)).isTrue();
+        List<Priority> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> low = waitFor(limiter, Priority.LOW, order);
+        while (limiter.getQueueLength() < 1) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<Void> high = waitFor(limiter, Priority.HIGH, order);
+        while (limiter.getQueueLength() < 2) {
+            Thread.sleep(1);
+        }
+
+        limiter.release(MILLI, false);
+        CompletableFuture.allOf(low, high).get(5, TimeUnit.SECONDS);
+        assertThat(order).containsExactly(Priority.HIGH, Priority.LOW);
+    }
+
+    @Test
+    @DisplayName("The limit grows with steady latency and shrinks when latency or cancellations rise")
+    void shouldAdaptLimitToLatency() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 100, 100, 1_000);
+        for (int i = 0; i < 50; i++) {
+            runBatch(limiter, MILLI);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        for (int i = 0; i < 50; i++) {
+            runBatch(limiter, 20 * MILLI);
+        }
+        int shrunk = limiter.getLimit();
+        assertThat(shrunk).isLessThan(grown);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquire(Priority.NORMAL, 0)).isTrue();
+            limiter.release(20 * MILLI, true);
+        }
+        assertThat(limiter.getLimit()).isLessThan(shrunk);
+        assertThat(limiter.getDroppedCount()).isEqualTo(3);
+    }
+
+    private static void runBatch(ConcurrencyLimiter limiter, long rttNanos) {
+        int concurrency = limiter.getLimit();
+        for (int i = 0; i < concurrency; i++) {
+            assertThat(limiter.acquire(Priority.NORMAL, 0)).isTrue();
+        }
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(rttNanos, false);
+        }
+    }
+
+    private static CompletableFuture<Void> waitFor(ConcurrencyLimiter limiter, Priority priority,
+                                                   List<Priority> order) {
+        return CompletableFuture.runAsync(() -> {
+            if (limiter.acquire(priority, Long.MAX_VALUE)) {
+                order.add(priority);
+                limiter.release(MILLI, false);
+            }
+        }, runnable -> new Thread(runnable).start());
+    }
+}
@@ -0,0 +1,145 @@
+package org.home.config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("LiquibaseMigrator test")
+class LiquibaseMigratorTest {
+
+    private static final String CHANGE_LOG = "db/changelog/changelog.xml";
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres");
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @Test
+    @DisplayName("A database migrated with the current changelog is not migrated again")
+    void shouldSkipUpToDateDatabase() throws SQLException {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        ShardRouter shards = ShardRouter.single(connectionProvider);
+        String fingerprint = LiquibaseMigrator.fingerprint(CHANGE_LOG);
+
+        LiquibaseMigrator.updateMigrations(shards);
+        long applied = count(connectionProvider, "SELECT count(*) FROM databasechangelog");
+        assertThat(applied).isPositive();
+        assertThat(count(connectionProvider,
+                "SELECT count(*) FROM databasechangelog WHERE tag = '" + fingerprint + "'")).isEqualTo(1);
+
+        execute(connectionProvider, "DELETE FROM databasechangelog WHERE id = '001-create-schema'");
+        LiquibaseMigrator.updateMigrations(shards);
+        assertThat(count(connectionProvider, "SELECT count(*) FROM databasechangelog")).isEqualTo(applied - 1);
+
+        execute(connectionProvider, "UPDATE databasechangelog SET tag = NULL");
+        LiquibaseMigrator.updateMigrations(shards);
+        assertThat(count(connectionProvider, "SELECT count(*) FROM databasechangelog")).isEqualTo(applied);
+    }
+
+    @Test
+    @DisplayName("Only shard 0 is seeded with sample data")
+    void shouldSeedFirstShardOnly() throws SQLException {
+        DBConnectionProvider first = createDatabase("first_shard");
+        DBConnectionProvider second = createDatabase("second_shard");
+
+        LiquibaseMigrator.updateMigrations(new ShardRouter(List.of(first, second)));
+
+        assertThat(count(first, "SELECT count(*) FROM ylab_schema.users")).isEqualTo(3);
+        assertThat(count(first, "SELECT count(*) FROM ylab_schema.records")).isPositive();
+        assertThat(count(second, "SELECT count(*) FROM ylab_schema.users")).isZero();
+        assertThat(count(second, "SELECT count(*) FROM ylab_schema.habits")).isZero();
+        assertThat(count(second, "SELECT count(*) FROM ylab_schema.records")).isZero();
+    }
+
+    @Test
+    @DisplayName("An unreachable shard does not stop the migration of the others")
+    void shouldMigrateReachableShards() throws SQLException {
+        DBConnectionProvider unreachable = new DBConnectionProvider(
+                "jdbc:postgresql://localhost:1/missing",
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        DBConnectionProvider reachable = createDatabase("reachable_shard");
+
+        LiquibaseMigrator.updateMigrations(new ShardRouter(List.of(unreachable, reachable)));
+
+        assertThat(count(reachable, "SELECT count(*) FROM databasechangelog")).isPositive();
+    }
+
+    @Test
+    @DisplayName("Migrations are not bound by query deadlines")
+    void shouldMigrateOutsideQueryDeadline() throws SQLException {
+        DBConnectionProvider connectionProvider = createDatabase("deadline_shard");
+
+        QueryDeadline.within(1, () -> {
+            LiquibaseMigrator.updateMigrations(ShardRouter.single(connectionProvider));
+            return null;
+        });
+
+        assertThat(count(connectionProvider, "SELECT count(*) FROM ylab_schema.records")).isPositive();
+    }
+
+    @Test
+    @DisplayName("The fingerprint is stable and needs every changelog file")
+    void shouldFingerprintIncludedFiles() {
+        assertThat(LiquibaseMigrator.fingerprint(CHANGE_LOG)).isEqualTo(LiquibaseMigrator.fingerprint(CHANGE_LOG));
+        assertThat(LiquibaseMigrator.fingerprint("db/changelog/missing.xml")).isNull();
+    }
+
+    private static DBConnectionProvider createDatabase(String name) throws SQLException {
+        DBConnectionProvider server = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        try (Connection conn = server.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE DATABASE " + name);
+        }
+        return new DBConnectionProvider(
+                testDb.getJdbcUrl().replace("/" + testDb.getDatabaseName(), "/" + name),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+    }
+
+    private static void execute(DBConnectionProvider connectionProvider, String sql) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        }
+    }
+
+    private static long count(DBConnectionProvider connectionProvider, String sql) throws SQLException {
+        try (Connection conn = connectionProvider.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet resultSet = stmt.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.home.config;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.home.jfr.QueryEvent;
+import org.home.jfr.QueryRecorder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("QueryDeadline test")
+class QueryDeadlineTest {
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private DBConnectionProvider connectionProvider;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+    }
+
+    @Test
+    @DisplayName("A query running into the deadline is cancelled on the server")
+    void shouldCancelQueryAtDeadline() {
+        long cancellations = QueryDeadline.getCancellationCount();
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> QueryDeadline.within(200, () -> query("SELECT pg_sleep(10)")))
+                .isInstanceOf(QueryTimeoutException.class)
+                .hasCauseInstanceOf(SQLException.class);
+
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(5_000L);
+        assertThat(QueryDeadline.getCancellationCount()).isEqualTo(cancellations + 1);
+        assertThat(query("SELECT count(*) FROM pg_stat_activity WHERE query = 'SELECT pg_sleep(10)'"))
+                .isEqualTo("0");
+    }
+
+    @Test
+    @DisplayName("No query is started once the deadline has passed")
+    void shouldNotStartQueryAfterDeadline() {
+        long cancellations = QueryDeadline.getCancellationCount();
+
+        assertThatThrownBy(() -> QueryDeadline.within(50, () -> {
+            pause(100);
+            return query("SELECT 1");
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        assertThat(QueryDeadline.getCancellationCount()).isEqualTo(cancellations);
+
+        assertThat(QueryDeadline.within(1_000, () -> query("SELECT 1"))).isEqualTo("1");
+    }
+
+    @Test
+    @DisplayName("Nested operations keep the earlier deadline")
+    void shouldKeepEarlierDeadline() {
+        assertThat(QueryDeadline.remainingMillis()).isEqualTo(-1L);
+        QueryDeadline.within(500, () -> QueryDeadline.within(60_000, () -> {
+            assertThat(QueryDeadline.remainingMillis()).isBetween(0L, 500L);
+            return null;
+        }));
+        QueryDeadline.within(60_000, () -> QueryDeadline.within(500, () -> {
+            assertThat(QueryDeadline.remainingMillis()).isBetween(0L, 500L);
+            return null;
+        }));
+        assertThat(QueryDeadline.remainingMillis()).isEqualTo(-1L);
+    }
+
+    @Test
+    @DisplayName("A timeout rolls back the unit of work it happens in")
+    void shouldRollBackUnitOfWorkOnTimeout() {
+        assertThatThrownBy(() -> UnitOfWork.execute(() -> QueryDeadline.within(200, () -> {
+            query("UPDATE ylab_schema.users SET name = 'Timed Out' WHERE email = 'tu@example.com'");
+            return query("SELECT pg_sleep(10)");
+        }))).isInstanceOf(QueryTimeoutException.class);
+
+        assertThat(query("SELECT count(*) FROM ylab_schema.users WHERE name = 'Timed Out'")).isEqualTo("0");
+    }
+
+    @Test
+    @DisplayName("Queries cancelled at their deadline do not open the circuit")
+    void shouldNotOpenCircuitOnTimeouts() {
+        CircuitBreaker breaker = connectionProvider.getCircuitBreaker();
+
+        for (int i = 0; i < 6; i++) {
+            assertThatThrownBy(() -> QueryDeadline.within(100, () -> query("SELECT pg_sleep(10)")))
+                    .isInstanceOf(QueryTimeoutException.class);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getOpenedCount()).isZero();
+        assertThat(query("SELECT 1")).isEqualTo("1");
+    }
+
+    @Test
+    @DisplayName("A statement executed within a deadline is recorded with its SQL ID and rows")
+    void shouldRecordQueryEvents(@TempDir Path tempDir) throws Exception {
+        String select = "SELECT generate_series(1, 3)";
+        String update = "UPDATE ylab_schema.users SET name = name WHERE id = 1";
+        Path file = tempDir.resolve("queries.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(QueryEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+            assertThat(QueryDeadline.within(5_000, () -> prepared(select))).isEqualTo(3);
+            assertThat(QueryDeadline.within(5_000, () -> prepared(update))).isEqualTo(1);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(QueryEvent.NAME))
+                .toList();
+        RecordedEvent selected = findEvent(events, QueryRecorder.sqlId(select));
+        RecordedEvent updated = findEvent(events, QueryRecorder.sqlId(update));
+        assertThat(selected.getString("sql")).isEqualTo(select);
+        assertThat(selected.getString("method")).isEqualTo("executeQuery");
+        assertThat(selected.getLong("rows")).isEqualTo(3L);
+        assertThat(selected.getBoolean("failed")).isFalse();
+        assertThat(updated.getString("method")).isEqualTo("executeUpdate");
+        assertThat(updated.getLong("rows")).isEqualTo(1L);
+        assertThat(updated.getBoolean("failed")).isFalse();
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String sqlId) {
+        return events.stream().filter(event -> sqlId.equals(event.getString("sqlId"))).findFirst().orElseThrow();
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes a prepared statement and returns the rows it read or changed.
+     */
+    private int prepared(String sql) {
+        try (Connection conn = connectionProvider.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (!sql.startsWith("SELECT")) {
+                return stmt.executeUpdate();
+            }
+            int rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                }
+            }
+            return rows;
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private String query(String sql) {
+        try (Connection conn = connectionProvider.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (!stmt.execute(sql)) {
+                return null;
+            }
+            try (ResultSet rs = stmt.getResultSet()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            System.out.println("Got SQL Exception: " + e.getMessage());
+            return null;
+        }
+    }
+}
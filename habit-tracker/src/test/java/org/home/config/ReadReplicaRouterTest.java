@@ -0,0 +1,51 @@
+package org.home.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ReadReplicaRouter test")
+class ReadReplicaRouterTest {
+
+    @Test
+    @DisplayName("Reads go to the primary when there are no replicas")
+    void shouldUsePrimaryWithoutReplicas() {
+        ReadReplicaRouter router = new ReadReplicaRouter(0, ReplicaSelection.ROUND_ROBIN, 5000);
+
+        assertThat(router.candidates("user:1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Replicas are used in turn")
+    void shouldRotateReplicas() {
+        ReadReplicaRouter router = new ReadReplicaRouter(3, ReplicaSelection.ROUND_ROBIN, 5000);
+
+        assertThat(router.candidates(null)).containsExactly(0, 1, 2);
+        assertThat(router.candidates(null)).containsExactly(1, 2, 0);
+        assertThat(router.candidates(null)).containsExactly(2, 0, 1);
+    }
+
+    @Test
+    @DisplayName("Recently written keys are read from the primary")
+    void shouldPinWrittenKeyToPrimary() {
+        ReadReplicaRouter router = new ReadReplicaRouter(2, ReplicaSelection.ROUND_ROBIN, 60_000);
+
+        router.markWritten("user:1");
+
+        assertThat(router.candidates("user:1")).isEmpty();
+        assertThat(router.candidates("user:2")).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Failed replica is skipped and the fastest one is preferred")
+    void shouldSkipFailedReplicaAndPreferFastest() {
+        ReadReplicaRouter router = new ReadReplicaRouter(3, ReplicaSelection.LEAST_LATENCY, 5000);
+        router.recordSuccess(0, 5_000_000);
+        router.recordSuccess(1, 1_000_000);
+        router.recordSuccess(2, 3_000_000);
+        router.recordFailure(1);
+
+        assertThat(router.candidates(null)).containsExactly(2, 0);
+    }
+}
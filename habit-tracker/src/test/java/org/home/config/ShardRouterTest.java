@@ -0,0 +1,50 @@
+package org.home.config;
+
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ShardRouter test")
+class ShardRouterTest {
+    private final DBConnectionProvider first = new DBConnectionProvider("jdbc:postgresql://shard-0/habits", "", "");
+    private final DBConnectionProvider second = new DBConnectionProvider("jdbc:postgresql://shard-1/habits", "", "");
+    private final ShardRouter router = new ShardRouter(List.of(first, second));
+
+    @Test
+    @DisplayName("Queries on every shard run within the deadline, priority and trace of the caller")
+    void shouldScatterWithCallerContext() {
+        Tracer tracer = new Tracer(spans -> { }, 1, 100, 100, 60_000);
+        tracer.start();
+        try (Span root = Tracer.startSpan("UserService.findAll")) {
+            List<String> contexts = QueryDeadline.within(60_000, () -> ConcurrencyLimiter.withPriority(
+                    ConcurrencyLimiter.Priority.HIGH, () -> router.scatter(shard -> {
+                        Span span = Tracer.current();
+                        return (QueryDeadline.remainingMillis() > 0) + " " + ConcurrencyLimiter.currentPriority()
+                                + " " + (span.getParentSpanId() == root.getSpanId()) + " " + span.getAttributes();
+                    })));
+
+            assertThat(contexts).containsExactly("true HIGH true {shard=0}", "true HIGH true {shard=1}");
+        } finally {
+            tracer.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Queries on every shard run on the calling thread within a unit of work")
+    void shouldScatterOnCallerThreadInUnitOfWork() {
+        Thread caller = Thread.currentThread();
+
+        List<DBConnectionProvider> scattered = UnitOfWork.execute(() -> router.scatter(shard -> {
+            assertThat(Thread.currentThread()).isSameAs(caller);
+            assertThat(UnitOfWork.isActive()).isTrue();
+            return shard;
+        }));
+
+        assertThat(scattered).containsExactly(first, second);
+    }
+}
@@ -0,0 +1,140 @@
+package org.home.config;
+
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("UnitOfWork test")
+class UnitOfWorkTest {
+
+    private static final Long USER_ID = 1L;
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        new OutboxRepository(connectionProvider);
+    }
+
+    @Test
+    @DisplayName("Repository calls in a unit of work commit together")
+    void shouldCommitTogether() {
+        Habit habit = UnitOfWork.execute(() -> {
+            Habit created = new Habit("Floss", "Every night", Frequency.DAILY, USER_ID);
+            HabitRepository.save(created);
+            HabitRecordRepository.save(new HabitRecord(LocalDate.of(2024, 10, 1), true, created.getId()));
+            assertThat(HabitRepository.findByTitleAndUserId("Floss", USER_ID)).isPresent();
+            return created;
+        });
+
+        assertThat(habit).isNotNull();
+        assertThat(HabitRepository.findByTitleAndUserId("Floss", USER_ID)).isPresent();
+        assertThat(HabitRecordRepository.findByDateAndHabitId(LocalDate.of(2024, 10, 1), habit.getId())).isPresent();
+    }
+
+    @Test
+    @DisplayName("Nothing is written when the unit of work rolls back")
+    void shouldRollBackTogether() {
+        UnitOfWork.execute(() -> {
+            Habit created = new Habit("Plank", "One minute", Frequency.DAILY, USER_ID);
+            HabitRepository.save(created);
+            HabitRecordRepository.save(new HabitRecord(LocalDate.of(2024, 10, 1), true, created.getId()));
+            UnitOfWork.setRollbackOnly();
+            return created;
+        });
+
+        assertThat(HabitRepository.findByTitleAndUserId("Plank", USER_ID)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("An SQL error swallowed by a repository rolls back the whole unit of work")
+    void shouldRollBackOnSwallowedError() {
+        Habit result = UnitOfWork.execute(() -> {
+            Habit created = new Habit("Squats", "Twenty", Frequency.DAILY, USER_ID);
+            HabitRepository.save(created);
+            HabitRecordRepository.save(new HabitRecord(LocalDate.of(2024, 10, 1), true, -1L));
+            return created;
+        });
+
+        assertThat(result).isNull();
+        assertThat(HabitRepository.findByTitleAndUserId("Squats", USER_ID)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Serialization failures are retried and other errors are not")
+    void shouldRetrySerializationFailures() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = UnitOfWork.execute(TransactionIsolation.SERIALIZABLE, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new SQLException("could not serialize access", "40001");
+            }
+            return "done";
+        });
+
+        assertThat(result).isEqualTo("done");
+        assertThat(attempts.get()).isEqualTo(3);
+
+        attempts.set(0);
+        String failed = UnitOfWork.execute(() -> {
+            attempts.incrementAndGet();
+            throw new SQLException("syntax error", "42601");
+        });
+        assertThat(failed).isNull();
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("After-commit actions run only once the unit of work commits")
+    void shouldRunAfterCommitActions() {
+        AtomicInteger actions = new AtomicInteger();
+
+        UnitOfWork.execute(() -> {
+            UnitOfWork.afterCommit(actions::incrementAndGet);
+            assertThat(actions.get()).isZero();
+            return null;
+        });
+        UnitOfWork.execute(() -> {
+            UnitOfWork.afterCommit(actions::incrementAndGet);
+            UnitOfWork.setRollbackOnly();
+            return null;
+        });
+
+        assertThat(actions.get()).isEqualTo(1);
+    }
+}
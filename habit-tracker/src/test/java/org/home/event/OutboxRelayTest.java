@@ -0,0 +1,125 @@
+package org.home.event;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.EventType;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.OutboxEvent;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.UserRepository;
+import org.home.service.HabitRecordService;
+import org.home.service.HabitService;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("OutboxRelay test")
+class OutboxRelayTest {
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private UserService userService;
+    private HabitService habitService;
+    private HabitRecordService recordService;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        new OutboxRepository(connectionProvider);
+        userService = new UserService();
+        habitService = new HabitService();
+        recordService = new HabitRecordService();
+    }
+
+    @Test
+    @DisplayName("Changes are published in order and a restarted relay resumes from the stored offset")
+    void shouldPublishChangesInOrder() {
+        User user = userService.register("Publisher", "publisher@example.com", "password123");
+        Habit habit = habitService.createHabit(user, "Stretch", "Every morning", Frequency.DAILY);
+        LocalDate date = LocalDate.of(2024, 10, 1);
+        recordService.createRecord(habit, date, false);
+        recordService.editRecord(habit, false, true, date);
+        recordService.deleteRecord(habit, date);
+        InMemoryEventConsumer consumer = new InMemoryEventConsumer("ordered");
+
+        new OutboxRelay(List.of(consumer), 2, 100).pollOnce();
+
+        List<OutboxEvent> events = eventsOf(user, consumer.drain());
+        assertThat(events).extracting(OutboxEvent::getType).containsExactly(EventType.HABIT_CREATED,
+                EventType.RECORD_CREATED, EventType.RECORD_UPDATED, EventType.RECORD_DELETED);
+        assertThat(events.get(2).getPayload()).contains("\"completed\":true");
+
+        OutboxRelay restarted = new OutboxRelay(List.of(consumer), 2, 100);
+        restarted.pollOnce();
+        assertThat(eventsOf(user, consumer.drain())).isEmpty();
+        assertThat(restarted.getLag("ordered")).isZero();
+    }
+
+    @Test
+    @DisplayName("A batch the consumer fails to handle is delivered again")
+    void shouldRedeliverFailedBatch() {
+        User user = userService.register("Retrier", "retrier@example.com", "password123");
+        habitService.createHabit(user, "Journal", "Every evening", Frequency.DAILY);
+        InMemoryEventConsumer delegate = new InMemoryEventConsumer("retrying");
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        EventConsumer flaky = new EventConsumer() {
+            @Override
+            public String getName() {
+                return delegate.getName();
+            }
+
+            @Override
+            public void accept(List<OutboxEvent> events) throws Exception {
+                if (failNext.getAndSet(false)) {
+                    throw new Exception("Broker unavailable");
+                }
+                delegate.accept(events);
+            }
+        };
+        OutboxRelay relay = new OutboxRelay(List.of(flaky), 100, 100);
+
+        relay.pollOnce();
+        assertThat(relay.getFailedBatchCount("retrying")).isEqualTo(1);
+        assertThat(relay.getLag("retrying")).isPositive();
+
+        relay.pollOnce();
+        assertThat(eventsOf(user, delegate.drain())).extracting(OutboxEvent::getType)
+                .containsExactly(EventType.HABIT_CREATED);
+        assertThat(relay.getLag("retrying")).isZero();
+    }
+
+    private static List<OutboxEvent> eventsOf(User user, List<OutboxEvent> events) {
+        return events.stream().filter(event -> event.getUserId().equals(user.getId())).toList();
+    }
+}
@@ -0,0 +1,196 @@
+package org.home.io;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.model.Schedule;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.UserRepository;
+import org.home.service.HabitRecordService;
+import org.home.service.HabitService;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Habit history import and export test")
+class HabitHistoryTest {
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    @TempDir
+    Path tempDir;
+
+    private UserService userService;
+    private HabitService habitService;
+    private HabitRecordService recordService;
+    private HabitHistoryImporter importer;
+    private HabitHistoryExporter exporter;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        userService = new UserService();
+        habitService = new HabitService();
+        recordService = new HabitRecordService();
+        importer = new HabitHistoryImporter();
+        exporter = new HabitHistoryExporter();
+    }
+
+    @Test
+    @DisplayName("Import CSV creates missing habits and saves records")
+    void shouldImportCsv() throws IOException {
+        User user = userService.register("Csv Importer", "csv-import@example.com", "password123");
+        Path file = tempDir.resolve("history.csv");
+        Files.writeString(file, CsvRowParser.HEADER + "\n"
+                + "\"Read, daily\",\"Ten \"\"good\"\" pages\",DAILY,2024-10-01,true\n"
+                + "\"Read, daily\",\"Ten \"\"good\"\" pages\",DAILY,2024-10-02,false\n"
+                + "Swim,,WEEKLY,2024-10-03,true\n", StandardCharsets.UTF_8);
+
+        ImportResult result = importer.importHistory(user, file);
+
+        assertThat(result.getImportedRecords()).isEqualTo(3);
+        assertThat(result.getCreatedHabits()).isEqualTo(2);
+        Habit read = habitService.findByTitleAndUserId(user, "Read, daily");
+        assertThat(read.getDescription()).isEqualTo("Ten \"good\" pages");
+        Map<LocalDate, HabitRecord> records = recordService.getAllRecords(read);
+        assertThat(records).hasSize(2);
+        assertThat(records.get(LocalDate.of(2024, 10, 1)).isCompleted()).isTrue();
+        assertThat(records.get(LocalDate.of(2024, 10, 2)).isCompleted()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Importing the same dates twice skips them")
+    void shouldSkipAlreadyTrackedDates() throws IOException {
+        User user = userService.register("Repeat Importer", "repeat-import@example.com", "password123");
+        Path file = tempDir.resolve("history.ndjson");
+        Files.writeString(file, """
+                {"title":"Walk","frequency":"DAILY","date":"2024-10-01","completed":true}
+                {"title":"Walk","frequency":"DAILY","date":"2024-10-01","completed":false}
+                """, StandardCharsets.UTF_8);
+
+        ImportResult first = importer.importHistory(user, file);
+        ImportResult second = importer.importHistory(user, file);
+
+        assertThat(first.getImportedRecords()).isEqualTo(1);
+        assertThat(first.getSkippedRecords()).isEqualTo(1);
+        assertThat(second.getImportedRecords()).isZero();
+        assertThat(second.getSkippedRecords()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Exported history can be imported by another user")
+    void shouldRoundTripExport() throws IOException {
+        User source = userService.register("Exporter", "exporter@example.com", "password123");
+        Habit habit = habitService.createHabit(source, "Stretch", "Morning, \"slow\"", Frequency.DAILY);
+        for (int day = 1; day <= 30; day++) {
+            recordService.createRecord(habit, LocalDate.of(2024, 9, day), day % 3 != 0);
+        }
+
+        for (HistoryFormat format : HistoryFormat.values()) {
+            Path file = tempDir.resolve("export." + format.name().toLowerCase());
+            long exported = exporter.exportHistory(source, file);
+            User target = userService.register("Importer", "importer-" + format + "@example.com", "password123");
+
+            ImportResult result = importer.importHistory(target, file);
+
+            assertThat(exported).isEqualTo(30);
+            assertThat(result.getImportedRecords()).isEqualTo(30);
+            Habit imported = habitService.findByTitleAndUserId(target, "Stretch");
+            assertThat(imported.getDescription()).isEqualTo("Morning, \"slow\"");
+            Map<LocalDate, HabitRecord> records = recordService.getAllRecords(imported);
+            assertThat(records).hasSize(30);
+            assertThat(records.get(LocalDate.of(2024, 9, 3)).isCompleted()).isFalse();
+            assertThat(records.get(LocalDate.of(2024, 9, 4)).isCompleted()).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("Exported schedules are restored on import")
+    void shouldRoundTripSchedules() throws IOException {
+        User source = userService.register("Schedule Exporter", "schedule-exporter@example.com", "password123");
+        Schedule weekdays = Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.FRIDAY));
+        Schedule everyThreeDays = Schedule.everyNDays(3, LocalDate.of(2024, 9, 2));
+        Habit gym = habitService.createHabit(source, "Gym", "", weekdays);
+        Habit plants = habitService.createHabit(source, "Water plants", "", everyThreeDays);
+        recordService.createRecord(gym, LocalDate.of(2024, 9, 2), true);
+        recordService.createRecord(plants, LocalDate.of(2024, 9, 3), true);
+
+        for (HistoryFormat format : HistoryFormat.values()) {
+            Path file = tempDir.resolve("schedules." + format.name().toLowerCase());
+            exporter.exportHistory(source, file);
+            User target = userService.register("Schedule Importer",
+                    "schedule-importer-" + format + "@example.com", "password123");
+
+            importer.importHistory(target, file);
+
+            assertThat(habitService.findByTitleAndUserId(target, "Gym").getSchedule()).isEqualTo(weekdays);
+            assertThat(habitService.findByTitleAndUserId(target, "Water plants").getSchedule())
+                    .isEqualTo(everyThreeDays);
+        }
+    }
+
+    @Test
+    @DisplayName("Files without a schedule column take the schedule from the frequency")
+    void shouldImportFilesWithoutSchedule() throws IOException {
+        User user = userService.register("Old Importer", "old-import@example.com", "password123");
+        Path file = tempDir.resolve("old.csv");
+        Files.writeString(file, "title,description,frequency,date,completed\n"
+                + "Swim,,WEEKLY,2024-10-03,true\n", StandardCharsets.UTF_8);
+
+        ImportResult result = importer.importHistory(user, file);
+
+        assertThat(result.getImportedRecords()).isEqualTo(1);
+        assertThat(habitService.findByTitleAndUserId(user, "Swim").getSchedule())
+                .isEqualTo(Schedule.timesPerWeek(1));
+    }
+
+    @Test
+    @DisplayName("Malformed lines are reported with their line number")
+    void shouldReportMalformedLine() throws IOException {
+        User user = userService.register("Bad Importer", "bad-import@example.com", "password123");
+        Path file = tempDir.resolve("bad.csv");
+        Files.writeString(file, "Run,,DAILY,2024-10-01,true\nRun,,DAILY,2024-02-30,true\n", StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> importer.importHistory(user, file))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Line 2");
+    }
+}
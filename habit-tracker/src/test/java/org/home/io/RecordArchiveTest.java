@@ -0,0 +1,146 @@
+package org.home.io;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.Schedule;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.RecordBatch;
+import org.home.repository.UserRepository;
+import org.home.service.HabitService;
+import org.home.service.StatisticsService;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RecordArchive test")
+class RecordArchiveTest {
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    @TempDir
+    Path tempDir;
+
+    private UserService userService;
+    private HabitService habitService;
+    private StatisticsService statisticsService;
+    private RecordArchiver archiver;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        userService = new UserService();
+        habitService = new HabitService();
+        statisticsService = new StatisticsService();
+        archiver = new RecordArchiver();
+    }
+
+    @Test
+    @DisplayName("Archived statistics match StatisticsService for every schedule")
+    void shouldMatchStatisticsService() throws IOException {
+        User user = userService.register("Archivist", "archivist@example.com", "password123");
+        Habit daily = habitService.createHabit(user, "Meditate", "Ten minutes", Frequency.DAILY);
+        Habit weekly = habitService.createHabit(user, "Long run", "Saturday", Frequency.WEEKLY);
+        Habit gym = habitService.createHabit(user, "Gym", "Legs and back",
+                Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY)));
+        RecordBatch batch = new RecordBatch(20_000);
+        long firstDay = LocalDate.of(2010, 1, 1).toEpochDay();
+        for (int i = 0; i < 6000; i++) {
+            if (i % 17 != 5) {
+                batch.add(daily.getId(), firstDay + i, i % 4 != 0);
+            }
+        }
+        for (int i = 0; i < 600; i++) {
+            batch.add(weekly.getId(), firstDay + i * 7L, i % 3 != 0);
+        }
+        long today = LocalDate.now().toEpochDay();
+        for (long day = today - 3000; day <= today; day++) {
+            batch.add(gym.getId(), day, day % 11 != 0 || day > today - 30);
+        }
+        assertThat(HabitRecordRepository.saveAll(batch)).isTrue();
+
+        Path file = tempDir.resolve("history.archive");
+        long archived = archiver.archive(user, file, null);
+
+        assertThat(archived).isEqualTo(batch.size());
+        try (RecordArchive archive = RecordArchive.open(file)) {
+            assertThat(archive.getCurrentStreak(gym.getId())).isPositive();
+            for (Habit habit : new Habit[]{daily, weekly, gym}) {
+                assertThat(archive.getSchedule(habit.getId())).isEqualTo(habit.getSchedule());
+                assertThat(archive.getCurrentStreak(habit.getId()))
+                        .isEqualTo(statisticsService.getCurrentStreak(user, habit.getTitle()));
+                LocalDate[][] ranges = {
+                        {LocalDate.of(2010, 1, 1), LocalDate.of(2010, 1, 31)},
+                        {LocalDate.of(2011, 3, 9), LocalDate.of(2024, 6, 18)},
+                        {LocalDate.of(2009, 12, 1), LocalDate.of(2030, 1, 1)},
+                        {LocalDate.of(2015, 5, 5), LocalDate.of(2015, 5, 4)}
+                };
+                for (LocalDate[] range : ranges) {
+                    assertThat(archive.getSuccessPercentage(habit.getId(), range[0], range[1]))
+                            .isEqualTo(statisticsService.getSuccessPercentage(
+                                    user, habit.getTitle(), range[0], range[1]));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Archive is much smaller than a CSV export and holds only records before the cut-off")
+    void shouldBeCompactAndRespectCutOff() throws IOException {
+        User user = userService.register("Compact", "compact@example.com", "password123");
+        Habit habit = habitService.createHabit(user, "Drink water", "Two litres", Frequency.DAILY);
+        RecordBatch batch = new RecordBatch(5000);
+        long firstDay = LocalDate.of(2012, 1, 1).toEpochDay();
+        for (int i = 0; i < 5000; i++) {
+            batch.add(habit.getId(), firstDay + i, i % 5 != 0);
+        }
+        assertThat(HabitRecordRepository.saveAll(batch)).isTrue();
+
+        Path csv = tempDir.resolve("history.csv");
+        Path archiveFile = tempDir.resolve("history.archive");
+        new HabitHistoryExporter().exportHistory(user, csv);
+        LocalDate cutOff = LocalDate.ofEpochDay(firstDay + 4000);
+        long archived = archiver.archive(user, archiveFile, cutOff);
+
+        assertThat(archived).isEqualTo(4000);
+        assertThat(Files.size(archiveFile) * 50).isLessThan(Files.size(csv) * 4000 / 5000);
+        try (RecordArchive archive = RecordArchive.open(archiveFile)) {
+            assertThat(archive.getRecordCount(habit.getId())).isEqualTo(4000);
+            assertThat(archive.countCompleted(habit.getId(), cutOff, cutOff.plusDays(100))).isZero();
+        }
+    }
+}
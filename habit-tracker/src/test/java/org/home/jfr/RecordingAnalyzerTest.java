@@ -0,0 +1,58 @@
+package org.home.jfr;
+
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RecordingAnalyzer test")
+class RecordingAnalyzerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Recorded queries and statistics are summarized per method")
+    void shouldSummarizeRecording() throws Exception {
+        Path file = tempDir.resolve("recording.jfr");
+        Method executeUpdate = Statement.class.getMethod("executeUpdate", String.class);
+        try (Recording recording = new Recording()) {
+            recording.enable(QueryEvent.NAME).withThreshold(Duration.ZERO);
+            recording.enable(StatisticsEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+            for (int i = 0; i < 3; i++) {
+                QueryRecorder recorder = new QueryRecorder(null);
+                recorder.executed(recorder.begin(), executeUpdate,
+                        new Object[] {"DELETE FROM ylab_schema.habit_records WHERE id = 1"}, 2);
+            }
+            StatisticsEvent statistics = new StatisticsEvent();
+            statistics.begin();
+            statistics.operation = "periodStatistics";
+            statistics.algorithm = "grid-daily";
+            statistics.habitId = 1;
+            statistics.historyLength = 30;
+            statistics.commit();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        String summary = RecordingAnalyzer.summarize(file);
+        String sqlId = QueryRecorder.sqlId("DELETE FROM ylab_schema.habit_records WHERE id = 1");
+        assertThat(summary).containsPattern("sql " + sqlId + " +3 .* 2\\.0");
+        assertThat(summary).containsPattern("periodStatistics grid-daily +1 .* 30\\.0");
+    }
+
+    @Test
+    @DisplayName("Nothing is recorded without a recording")
+    void shouldNotRecordWithoutRecording() {
+        QueryRecorder recorder = new QueryRecorder("SELECT 1");
+        assertThat(recorder.begin()).isNull();
+    }
+}
@@ -0,0 +1,133 @@
+package org.home.leaderboard;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Habit;
+import org.home.model.Schedule;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.OutboxRepository;
+import org.home.repository.UserRepository;
+import org.home.service.HabitRecordService;
+import org.home.service.HabitService;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Leaderboards test")
+class LeaderboardsTest {
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private final Leaderboards leaderboards = new Leaderboards(
+            Clock.fixed(Instant.parse("2024-10-21T12:00:00Z"), ZoneOffset.UTC), 30, 60_000);
+    private HabitService habitService;
+    private HabitRecordService recordService;
+    private User user;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        new OutboxRepository(connectionProvider);
+        user = new UserService().findUserByEmail("tu@example.com");
+        habitService = new HabitService();
+        recordService = new HabitRecordService();
+        HabitRecordService.addListener(leaderboards);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HabitRecordService.removeListener(leaderboards);
+    }
+
+    @Test
+    @DisplayName("Rebuild ranks habits from the database")
+    void shouldRebuildFromDatabase() {
+        assertThat(leaderboards.rebuild()).isPositive();
+
+        LeaderboardEntry entry = find(leaderboards.getTop(LeaderboardMetric.CURRENT_STREAK, null, 100), 1L);
+        assertThat(entry.getTitle()).isEqualTo("Go to shower");
+        assertThat(entry.getCategory()).isEqualTo(Schedule.Kind.DAILY);
+        assertThat(entry.getScore()).isEqualTo(2.0);
+        assertThat(find(leaderboards.getTop(LeaderboardMetric.COMPLETION_RATE, Schedule.Kind.DAILY, 100), 1L)
+                .getScore()).isEqualTo(2.0 / 30 * 100);
+        assertThat(leaderboards.getTop(LeaderboardMetric.CURRENT_STREAK, Schedule.Kind.WEEKDAYS, 100)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Record changes move a habit on the leaderboards")
+    void shouldFollowRecordChanges() {
+        Habit habit = habitService.createHabit(user, "Stretch", "", Schedule.timesPerWeek(2));
+        LocalDate monday = LocalDate.parse("2024-10-14");
+        for (int day = 0; day < 9; day++) {
+            recordService.createRecord(habit, monday.plusDays(day), true);
+        }
+        assertThat(leaderboards.refresh()).isEqualTo(1);
+
+        List<LeaderboardEntry> weekly = leaderboards.getTop(
+                LeaderboardMetric.CURRENT_STREAK, Schedule.Kind.TIMES_PER_WEEK, 10);
+        assertThat(find(weekly, habit.getId()).getRank()).isEqualTo(1);
+        assertThat(find(weekly, habit.getId()).getScore()).isEqualTo(2.0);
+
+        recordService.deleteRecord(habit, LocalDate.parse("2024-10-22"));
+        recordService.editRecord(habit, true, false, LocalDate.parse("2024-10-21"));
+        leaderboards.refresh();
+
+        assertThat(find(leaderboards.getTop(LeaderboardMetric.CURRENT_STREAK, Schedule.Kind.TIMES_PER_WEEK, 10),
+                habit.getId()).getScore()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Skip list keeps entries ordered by score and then by ID")
+    void shouldOrderSkipList() {
+        RankedSkipList list = new RankedSkipList();
+        for (long id = 1; id <= 1000; id++) {
+            list.insert(id, id % 10);
+        }
+        assertThat(list.remove(999, 9)).isTrue();
+        assertThat(list.remove(998, 9)).isFalse();
+        list.insert(5, 100);
+        list.remove(5, 5);
+
+        List<Long> ids = new ArrayList<>();
+        list.forEachTop(4, (id, score) -> ids.add(id));
+
+        assertThat(ids).containsExactly(5L, 9L, 19L, 29L);
+        assertThat(list.size()).isEqualTo(999);
+    }
+
+    private static LeaderboardEntry find(List<LeaderboardEntry> entries, Long habitId) {
+        return entries.stream().filter(entry -> entry.getHabitId().equals(habitId)).findFirst().orElseThrow();
+    }
+}
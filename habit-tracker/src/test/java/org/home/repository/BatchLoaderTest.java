@@ -0,0 +1,78 @@
+package org.home.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("BatchLoader test")
+class BatchLoaderTest {
+
+    private final List<Set<Integer>> batches = new ArrayList<>();
+
+    @Test
+    @DisplayName("Keys requested within the window are looked up together")
+    void shouldBatchKeysWithinWindow() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(this::lookUp, 100, 50);
+
+        CompletableFuture<Optional<String>> one = loader.load(1);
+        CompletableFuture<Optional<String>> two = loader.load(2);
+        CompletableFuture<Optional<String>> again = loader.load(1);
+        CompletableFuture<Optional<String>> missing = loader.load(-1);
+
+        assertThat(one.join()).contains("value-1");
+        assertThat(two.join()).contains("value-2");
+        assertThat(again).isSameAs(one);
+        assertThat(missing.join()).isEmpty();
+        assertThat(batches).containsExactly(Set.of(1, 2, -1));
+        assertThat(loader.getLoadCount()).isEqualTo(4);
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+        assertThat(loader.getBatchedKeyCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Full batches are looked up at once and the rest on dispatch")
+    void shouldSplitLargeBatches() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(this::lookUp, 2, 60_000);
+
+        Map<Integer, String> found = loader.loadAll(List.of(1, 2, 3, -4, 5));
+
+        assertThat(found).containsOnlyKeys(1, 2, 3, 5);
+        assertThat(found.get(5)).isEqualTo("value-5");
+        assertThat(batches).containsExactly(Set.of(1, 2), Set.of(3, -4), Set.of(5));
+    }
+
+    @Test
+    @DisplayName("A failed lookup fails every caller of its batch")
+    void shouldFailWholeBatch() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            throw new IllegalStateException("database is down");
+        }, 100, 60_000);
+
+        CompletableFuture<Optional<String>> pending = loader.load(1);
+        assertThatThrownBy(() -> loader.loadAll(List.of(2))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(pending::join).isInstanceOf(CompletionException.class);
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+    }
+
+    private synchronized Map<Integer, String> lookUp(Set<Integer> keys) {
+        batches.add(Set.copyOf(keys));
+        Map<Integer, String> found = new HashMap<>();
+        for (Integer key : keys) {
+            if (key > 0) {
+                found.put(key, "value-" + key);
+            }
+        }
+        return found;
+    }
+}
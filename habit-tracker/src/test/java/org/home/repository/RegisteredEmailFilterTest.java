@@ -0,0 +1,92 @@
+package org.home.repository;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.User;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RegisteredEmailFilter test")
+class RegisteredEmailFilterTest {
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private final RegisteredEmailFilter filter = new RegisteredEmailFilter(0.01, 1000, 60_000);
+    private UserService userService;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        new UserRepository(connectionProvider);
+        new HabitRepository(connectionProvider);
+        new HabitRecordRepository(connectionProvider);
+        new OutboxRepository(connectionProvider);
+        userService = new UserService();
+        UserRepository.useEmailFilter(filter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserRepository.useEmailFilter(null);
+    }
+
+    @Test
+    @DisplayName("Unregistered emails are not looked up once the filter is built")
+    void shouldSkipProbesForNewEmails() {
+        assertThat(UserRepository.emailIsAlreadyRegistered("tu@example.com")).isTrue();
+        assertThat(filter.getSkippedProbeCount()).isZero();
+
+        assertThat(filter.rebuild()).isTrue();
+        for (int i = 0; i < 100; i++) {
+            assertThat(UserRepository.emailIsAlreadyRegistered("new" + i + "@example.com")).isFalse();
+        }
+        assertThat(UserRepository.emailIsAlreadyRegistered("tu@example.com")).isTrue();
+
+        assertThat(filter.getCheckCount()).isEqualTo(102);
+        assertThat(filter.getSkippedProbeCount() + filter.getFalsePositiveCount()).isEqualTo(100);
+        assertThat(filter.getFalsePositiveRate()).isLessThan(0.1);
+        assertThat(filter.getExpectedFalsePositiveRate()).isLessThan(0.01);
+    }
+
+    @Test
+    @DisplayName("The filter follows saved, renamed and deleted users")
+    void shouldFollowUserChanges() {
+        assertThat(filter.rebuild()).isTrue();
+
+        User user = userService.register("Filtered User", "filtered@example.com", "password123");
+        assertThat(filter.mightBeRegistered("filtered@example.com")).isTrue();
+        assertThat(userService.register("Filtered Again", "filtered@example.com", "password123")).isNull();
+
+        userService.editProfile(user, "Filtered User", "renamed@example.com", "password123");
+        assertThat(filter.mightBeRegistered("renamed@example.com")).isTrue();
+        assertThat(filter.mightBeRegistered("filtered@example.com")).isFalse();
+        assertThat(UserRepository.emailIsAlreadyRegistered("filtered@example.com")).isFalse();
+
+        userService.deleteUser(user).join();
+        assertThat(filter.mightBeRegistered("renamed@example.com")).isFalse();
+        assertThat(filter.rebuild()).isTrue();
+        assertThat(filter.mightBeRegistered("tu@example.com")).isTrue();
+        assertThat(filter.getRebuildCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,148 @@
+package org.home.repository;
+
+import org.home.config.DBConnectionProvider;
+import org.home.config.ShardRouter;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.model.User;
+import org.home.service.HabitRecordService;
+import org.home.service.HabitService;
+import org.home.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Sharded repositories test")
+class ShardedRepositoryTest {
+
+    private static PostgreSQLContainer<?> shard0 = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+    private static PostgreSQLContainer<?> shard1 = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private ShardRouter router;
+    private UserService userService;
+    private HabitService habitService;
+    private HabitRecordService recordService;
+
+    @BeforeAll
+    static void beforeAll() {
+        shard0.start();
+        shard1.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        shard0.stop();
+        shard1.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        router = new ShardRouter(List.of(providerFor(shard0), providerFor(shard1)));
+        UserRepository userRepository = new UserRepository(router);
+        HabitRepository habitRepository = new HabitRepository(router);
+        HabitRecordRepository recordRepository = new HabitRecordRepository(router);
+        userService = new UserService();
+        habitService = new HabitService();
+        recordService = new HabitRecordService();
+    }
+
+    @Test
+    @DisplayName("Users are placed on one shard and found across all shards")
+    void shouldPlaceUsersOnShardsAndScatterLookups() throws SQLException {
+        for (int i = 0; i < 6; i++) {
+            String email = "sharded" + i + "@example.com";
+            User user = userService.register("Sharded User " + i, email, "password123");
+            int shard = router.shardForNewUser(email);
+
+            assertThat(router.shardOf(user.getId())).isEqualTo(shard);
+            assertThat(countRows(shard, "users", user.getId())).isEqualTo(1);
+            assertThat(countRows(1 - shard, "users", user.getId())).isEqualTo(0);
+            assertThat(userService.findUserByEmail(email).getId()).isEqualTo(user.getId());
+            assertThat(userService.getAllUsers()).containsKey(email);
+        }
+    }
+
+    @Test
+    @DisplayName("Habits and records are stored on the shard of their owner")
+    void shouldColocateHabitsAndRecordsWithOwner() throws SQLException {
+        User user = userService.register("Habit Owner", "owner@example.com", "password123");
+        int shard = router.shardOf(user.getId());
+
+        Habit habit = habitService.createHabit(user, "Stretch", "Stretch every morning", Frequency.DAILY);
+        HabitRecord record = recordService.createRecord(habit, LocalDate.parse("2024-10-21"), true);
+
+        assertThat(router.shardOf(habit.getId())).isEqualTo(shard);
+        assertThat(router.shardOf(record.getId())).isEqualTo(shard);
+        assertThat(countRows(shard, "habits", habit.getId())).isEqualTo(1);
+        assertThat(countRows(1 - shard, "habits", habit.getId())).isEqualTo(0);
+        assertThat(recordService.getAllRecords(habit)).containsKey(LocalDate.parse("2024-10-21"));
+    }
+
+    @Test
+    @DisplayName("Batched lookups find users, habits and records on all shards")
+    void shouldBatchLookupsAcrossShards() {
+        LocalDate day = LocalDate.parse("2024-10-22");
+        List<String> emails = new ArrayList<>();
+        List<Habit> habits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String email = "batched" + i + "@example.com";
+            User user = userService.register("Batched User " + i, email, "password123");
+            Habit habit = habitService.createHabit(user, "Read", "Read a chapter", Frequency.DAILY);
+            habitService.createHabit(user, "Walk", "Walk the dog", Frequency.DAILY);
+            recordService.createRecord(habit, day, i % 2 == 0);
+            emails.add(email);
+            habits.add(habit);
+        }
+        emails.add("nobody@example.com");
+
+        Map<String, User> users = userService.findUsersByEmail(emails);
+        assertThat(users).hasSize(4).doesNotContainKey("nobody@example.com");
+        assertThat(users.get("batched3@example.com").getName()).isEqualTo("Batched User 3");
+
+        assertThat(habitService.findByTitles(users.get("batched1@example.com"), List.of("Read", "Walk", "Swim")))
+                .containsOnlyKeys("Read", "Walk");
+
+        Map<Long, HabitRecord> records = recordService.findByDate(habits, day);
+        assertThat(records).hasSize(4);
+        assertThat(records.get(habits.get(2).getId()).isCompleted()).isTrue();
+        assertThat(records.get(habits.get(3).getId()).isCompleted()).isFalse();
+        assertThat(records.get(habits.get(3).getId()).getDate()).isEqualTo(day);
+        assertThat(recordService.findByDate(habits, day.plusDays(1))).isEmpty();
+
+        Habit habit = HabitRepository.loadByTitleAndUserId("Read", users.get("batched0@example.com").getId())
+                .join().orElseThrow();
+        assertThat(habit.getId()).isEqualTo(habits.get(0).getId());
+    }
+
+    private static DBConnectionProvider providerFor(PostgreSQLContainer<?> container) {
+        return new DBConnectionProvider(container.getJdbcUrl(), container.getUsername(), container.getPassword());
+    }
+
+    private int countRows(int shard, String table, Long id) throws SQLException {
+        String sql = "SELECT count(*) FROM ylab_schema." + table + " WHERE id = ?";
+        try (Connection conn = router.shard(shard).getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, id);
+            ResultSet resultSet = pstmt.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
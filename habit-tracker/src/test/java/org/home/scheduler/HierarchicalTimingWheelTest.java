@@ -0,0 +1,101 @@
+package org.home.scheduler;
+
+import org.home.scheduler.HierarchicalTimingWheel.Timeout;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("HierarchicalTimingWheel test")
+class HierarchicalTimingWheelTest {
+
+    @Test
+    @DisplayName("Timeouts expire exactly at their tick across all levels")
+    void shouldExpireAtDeadline() {
+        long start = 1_000_003L;
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(start);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long delay = 1 + (long) Math.pow(2, random.nextDouble() * 21);
+            deadlines.add(start + delay);
+            wheel.schedule(start + delay, start + delay);
+        }
+        List<String> mismatches = new ArrayList<>();
+        List<Long> fired = new ArrayList<>();
+
+        long end = start + (1L << 21) + 2;
+        for (long tick = start + 1; tick <= end; tick++) {
+            long now = tick;
+            wheel.advanceTo(tick, deadline -> {
+                fired.add(deadline);
+                if (deadline != now) {
+                    mismatches.add(deadline + " fired at " + now);
+                }
+            });
+        }
+
+        assertThat(mismatches).isEmpty();
+        assertThat(fired).containsExactlyInAnyOrderElementsOf(deadlines);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Cancelled timeouts never expire")
+    void shouldNotExpireCancelled() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(0);
+        Timeout<String> kept = wheel.schedule(300, "kept");
+        Timeout<String> cancelled = wheel.schedule(300, "cancelled");
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(1_000, fired::add);
+
+        assertThat(fired).containsExactly("kept");
+        assertThat(kept.isPending()).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Overdue timeouts expire on the next tick and far ones wait beyond the wheel span")
+    void shouldHandleOverdueAndFarTimeouts() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(100);
+        wheel.schedule(50, "overdue");
+        long far = 100 + (1L << 33);
+        wheel.schedule(far, "far");
+        List<String> fired = new ArrayList<>();
+
+        wheel.advanceTo(101, fired::add);
+        assertThat(fired).containsExactly("overdue");
+
+        wheel.advanceTo(far - 1, fired::add);
+        assertThat(fired).containsExactly("overdue");
+        wheel.advanceTo(far, fired::add);
+        assertThat(fired).containsExactly("overdue", "far");
+    }
+
+    @Test
+    @DisplayName("Timeouts scheduled while expiring fire on a later tick")
+    void shouldAllowRescheduleWhileExpiring() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(0);
+        wheel.schedule(10, 1);
+        List<Long> firedAt = new ArrayList<>();
+
+        for (long tick = 1; tick <= 40; tick++) {
+            long now = tick;
+            wheel.advanceTo(tick, round -> {
+                firedAt.add(now);
+                if (round < 3) {
+                    wheel.schedule(now + 10, round + 1);
+                }
+            });
+        }
+
+        assertThat(firedAt).containsExactly(10L, 20L, 30L);
+    }
+}
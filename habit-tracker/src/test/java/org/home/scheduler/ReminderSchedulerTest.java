@@ -0,0 +1,198 @@
+package org.home.scheduler;
+
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ReminderScheduler test")
+class ReminderSchedulerTest {
+
+    private static final LocalTime NINE = LocalTime.of(9, 0);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-10-02T08:00:00Z"));
+    private final InMemoryReminderSink sink = new InMemoryReminderSink();
+    private final Map<Long, LocalDate> lastCompletions = new HashMap<>();
+    private final ReminderScheduler scheduler = new ReminderScheduler(sink, clock, NINE, 1000,
+            habitId -> Optional.ofNullable(lastCompletions.get(habitId)));
+
+    @Test
+    @DisplayName("A daily habit is due the day after it was completed and repeats until done")
+    void shouldRemindDailyHabit() {
+        Habit habit = new Habit(1L, "Go to shower", "", Frequency.DAILY, 7L);
+        scheduler.schedule(habit, LocalDate.of(2024, 10, 1));
+
+        assertThat(scheduler.getNextReminder(1L)).contains(Instant.parse("2024-10-02T09:00:00Z"));
+        assertThat(advance(Duration.ofMinutes(59))).isEmpty();
+
+        List<Reminder> fired = advance(Duration.ofMinutes(1));
+        assertThat(fired).hasSize(1);
+        assertThat(fired.get(0).getUserId()).isEqualTo(7L);
+        assertThat(fired.get(0).getTitle()).isEqualTo("Go to shower");
+        assertThat(scheduler.getNextReminder(1L)).contains(Instant.parse("2024-10-03T09:00:00Z"));
+    }
+
+    @Test
+    @DisplayName("Completing a habit moves its reminder to the next period")
+    void shouldRescheduleWhenCompleted() {
+        Habit habit = new Habit(2L, "Read a book", "", Frequency.WEEKLY, 7L);
+        scheduler.schedule(habit, null);
+        assertThat(scheduler.getNextReminder(2L)).contains(Instant.parse("2024-09-30T09:00:00Z"));
+
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 10, 2), true, 2L));
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 9, 20), true, 2L));
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 10, 3), false, 2L));
+
+        assertThat(scheduler.getNextReminder(2L)).contains(Instant.parse("2024-10-07T09:00:00Z"));
+        assertThat(advance(Duration.ofDays(5))).isEmpty();
+        assertThat(advance(Duration.ofHours(1))).hasSize(1);
+        assertThat(scheduler.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("A long neglected habit fires once and then waits for the next period")
+    void shouldFireOverdueHabitOnce() {
+        Habit habit = new Habit(3L, "Run", "", Frequency.DAILY, 8L);
+        scheduler.schedule(habit, LocalDate.of(2024, 6, 1));
+
+        assertThat(advance(Duration.ofSeconds(1))).hasSize(1);
+        assertThat(scheduler.getNextReminder(3L)).contains(Instant.parse("2024-10-02T09:00:00Z"));
+    }
+
+    @Test
+    @DisplayName("Cancelled reminders do not fire")
+    void shouldCancelReminder() {
+        scheduler.schedule(new Habit(4L, "Swim", "", Frequency.DAILY, 8L), null);
+
+        assertThat(scheduler.cancel(4L)).isTrue();
+        assertThat(advance(Duration.ofDays(2))).isEmpty();
+        assertThat(scheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("A created habit gets a reminder for its current period")
+    void shouldScheduleCreatedHabit() {
+        scheduler.habitSaved(new Habit(5L, "Meditate", "", Frequency.DAILY, 7L));
+
+        assertThat(scheduler.getNextReminder(5L)).contains(Instant.parse("2024-10-02T09:00:00Z"));
+        List<Reminder> fired = advance(Duration.ofHours(1));
+        assertThat(fired).hasSize(1);
+        assertThat(fired.get(0).getTitle()).isEqualTo("Meditate");
+    }
+
+    @Test
+    @DisplayName("An edited habit is reminded of on its new schedule and with its new title")
+    void shouldRescheduleEditedHabit() {
+        Habit habit = new Habit(6L, "Read", "", Frequency.DAILY, 7L);
+        scheduler.schedule(habit, LocalDate.of(2024, 10, 1));
+
+        habit.setTitle("Read a book");
+        habit.setFrequency(Frequency.WEEKLY);
+        scheduler.habitSaved(habit);
+
+        assertThat(scheduler.getNextReminder(6L)).contains(Instant.parse("2024-10-07T09:00:00Z"));
+        assertThat(advance(Duration.ofDays(5))).isEmpty();
+        List<Reminder> fired = advance(Duration.ofHours(1));
+        assertThat(fired).hasSize(1);
+        assertThat(fired.get(0).getTitle()).isEqualTo("Read a book");
+    }
+
+    @Test
+    @DisplayName("A deleted habit is no longer reminded of")
+    void shouldCancelDeletedHabit() {
+        Habit habit = new Habit(7L, "Stretch", "", Frequency.DAILY, 7L);
+        scheduler.habitSaved(habit);
+
+        scheduler.habitDeleted(habit);
+
+        assertThat(scheduler.getNextReminder(7L)).isEmpty();
+        assertThat(advance(Duration.ofDays(2))).isEmpty();
+        assertThat(scheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("The habits of a deleted user are no longer reminded of")
+    void shouldCancelHabitsOfDeletedUser() {
+        scheduler.habitSaved(new Habit(8L, "Walk", "", Frequency.DAILY, 8L));
+        scheduler.habitSaved(new Habit(9L, "Journal", "", Frequency.DAILY, 8L));
+        scheduler.habitSaved(new Habit(10L, "Cook", "", Frequency.DAILY, 9L));
+
+        scheduler.userDeleted(8L);
+
+        assertThat(scheduler.getPendingCount()).isEqualTo(1);
+        List<Reminder> fired = advance(Duration.ofHours(1));
+        assertThat(fired).hasSize(1);
+        assertThat(fired.get(0).getUserId()).isEqualTo(9L);
+    }
+
+    @Test
+    @DisplayName("Un-checking the latest completion moves the reminder back to the previous one")
+    void shouldRescheduleWhenLatestCompletionUnchecked() {
+        Habit habit = new Habit(11L, "Floss", "", Frequency.DAILY, 7L);
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 10, 2), true, 11L));
+        assertThat(scheduler.getNextReminder(11L)).contains(Instant.parse("2024-10-03T09:00:00Z"));
+        lastCompletions.put(11L, LocalDate.of(2024, 10, 1));
+
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 10, 2), false, 11L));
+
+        assertThat(scheduler.getNextReminder(11L)).contains(Instant.parse("2024-10-02T09:00:00Z"));
+        assertThat(advance(Duration.ofHours(1))).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Deleting the latest completion moves the reminder back, and deleting an older one does not")
+    void shouldRescheduleWhenLatestCompletionDeleted() {
+        Habit habit = new Habit(12L, "Plank", "", Frequency.DAILY, 7L);
+        scheduler.recordSaved(habit, new HabitRecord(LocalDate.of(2024, 10, 2), true, 12L));
+
+        scheduler.recordDeleted(habit, new HabitRecord(LocalDate.of(2024, 9, 30), true, 12L));
+        assertThat(scheduler.getNextReminder(12L)).contains(Instant.parse("2024-10-03T09:00:00Z"));
+
+        scheduler.recordDeleted(habit, new HabitRecord(LocalDate.of(2024, 10, 2), true, 12L));
+        assertThat(scheduler.getNextReminder(12L)).contains(Instant.parse("2024-10-02T09:00:00Z"));
+    }
+
+    private List<Reminder> advance(Duration duration) {
+        clock.now = clock.now.plus(duration);
+        scheduler.advanceTo(clock.now);
+        return sink.drain();
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.home.security;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.home.security.LoginRateLimiter.Decision.ALLOWED;
+import static org.home.security.LoginRateLimiter.Decision.LOCKED_OUT;
+import static org.home.security.LoginRateLimiter.Decision.RATE_LIMITED;
+
+@DisplayName("LoginRateLimiter test")
+class LoginRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private LoginRateLimiter limiter() {
+        return new LoginRateLimiter(1024, 6, 60, 3, 3, 60, clock::get);
+    }
+
+    @Test
+    @DisplayName("Attempts beyond the burst are rejected until the bucket refills")
+    void shouldRejectOverBurstAndRefill() {
+        LoginRateLimiter limiter = limiter();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(ALLOWED);
+        }
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(RATE_LIMITED);
+        assertThat(limiter.tryAcquire("jane@example.com", null)).isEqualTo(ALLOWED);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(ALLOWED);
+        assertThat(limiter.getRateLimitedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Repeated failures lock the email out until the lockout expires")
+    void shouldLockOutAfterFailures() {
+        LoginRateLimiter limiter = limiter();
+
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("john@example.com");
+        }
+
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(LOCKED_OUT);
+        assertThat(limiter.getLockoutCount()).isEqualTo(1);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(ALLOWED);
+    }
+
+    @Test
+    @DisplayName("A successful login forgets earlier failures")
+    void shouldResetFailuresOnSuccess() {
+        LoginRateLimiter limiter = limiter();
+
+        limiter.recordFailure("john@example.com");
+        limiter.recordFailure("john@example.com");
+        limiter.recordSuccess("john@example.com");
+        limiter.recordFailure("john@example.com");
+
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(ALLOWED);
+    }
+
+    @Test
+    @DisplayName("Unlocking lifts a lockout")
+    void shouldUnlock() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("john@example.com");
+        }
+
+        limiter.unlock("john@example.com");
+
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(ALLOWED);
+    }
+
+    @Test
+    @DisplayName("Failures of one email do not lock out the emails sharing its stripe")
+    void shouldLockOutExactEmail() {
+        LoginRateLimiter limiter = new LoginRateLimiter(1, 6, 60, 3, 3, 60, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("john@example.com");
+        }
+
+        assertThat(limiter.tryAcquire("JOHN@example.com", null)).isEqualTo(LOCKED_OUT);
+        assertThat(limiter.tryAcquire("jane@example.com", null)).isEqualTo(ALLOWED);
+        assertThat(limiter.tryAcquire("jack@example.com", null)).isEqualTo(ALLOWED);
+    }
+
+    @Test
+    @DisplayName("Failures of invented emails do not displace a lockout")
+    void shouldKeepLockoutUnderFailuresOfOtherEmails() {
+        LoginRateLimiter limiter = new LoginRateLimiter(1, 6, 60, 3, 3, 60, clock::get);
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("john@example.com");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            limiter.recordFailure("user" + i + "@example.com");
+        }
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("jane@example.com");
+        }
+
+        assertThat(limiter.tryAcquire("john@example.com", null)).isEqualTo(LOCKED_OUT);
+        assertThat(limiter.tryAcquire("jane@example.com", null)).isEqualTo(LOCKED_OUT);
+        assertThat(limiter.getLockoutCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Attempts rejected for their email do not spend the budget of their source")
+    void shouldCheckEmailBeforeSource() {
+        LoginRateLimiter limiter = limiter();
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("john@example.com", "10.0.0.1")).isEqualTo(ALLOWED);
+        }
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(3));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("john@example.com", "10.0.0.1")).isEqualTo(RATE_LIMITED);
+        }
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("jane@example.com");
+        }
+        assertThat(limiter.tryAcquire("jane@example.com", "10.0.0.1")).isEqualTo(LOCKED_OUT);
+
+        assertThat(limiter.tryAcquire("jack@example.com", "10.0.0.1")).isEqualTo(ALLOWED);
+    }
+}
@@ -0,0 +1,142 @@
+package org.home.service;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.repository.HabitRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guards the allocations of a check-in against regressions. The statements run on a {@link NoopDriver}, so only
+ * what the application allocates around them is measured: a check-in that looked the date up first and rendered
+ * its outbox payload in Java allocated about 5 KB in the repository and 7 KB in the service. A check-in is not
+ * allocation-free, and the budgets leave room for the connection and statement every call opens and prepares.
+ */
+@DisplayName("Check-in allocation test")
+class CheckInAllocationTest {
+
+    private static final long REPOSITORY_BUDGET_BYTES = 2048;
+    private static final long SERVICE_BUDGET_BYTES = 4096;
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 20_000;
+
+    private final LocalDate date = LocalDate.of(2024, 10, 1);
+    private final List<HabitRecord> savedRecords = new ArrayList<>();
+    private final HabitRecordListener listener = (savedHabit, record) -> savedRecords.add(record);
+    private HabitRecordService recordService;
+    private Habit habit;
+
+    @BeforeEach
+    void setUp() {
+        NoopDriver.register();
+        new HabitRecordRepository(new DBConnectionProvider(NoopDriver.URL, "", ""));
+        recordService = new HabitRecordService();
+        habit = new Habit("Drink water", "Eight glasses", Frequency.DAILY, 1L);
+        habit.setId(7L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        NoopDriver.updateCount = 1;
+        NoopDriver.failure = null;
+        HabitRecordService.removeListener(listener);
+    }
+
+    @Test
+    @DisplayName("Save a check-in record within the allocation budget")
+    void testInsertIfAbsentAllocations() {
+        long epochDay = date.toEpochDay();
+
+        long bytes = bytesPerCall(() -> HabitRecordRepository.insertIfAbsent(7L, epochDay, true));
+
+        assertThat(bytes).isLessThanOrEqualTo(REPOSITORY_BUDGET_BYTES);
+    }
+
+    @Test
+    @DisplayName("Check in within the allocation budget")
+    void testCreateRecordAllocations() {
+        long bytes = bytesPerCall(() -> recordService.createRecord(habit, date, true));
+
+        assertThat(bytes).isLessThanOrEqualTo(SERVICE_BUDGET_BYTES);
+    }
+
+    @Test
+    @DisplayName("Skip the check-in of a date that already has a record")
+    void testCreateRecordOnConflict() {
+        HabitRecord created = recordService.createRecord(habit, date, true);
+        NoopDriver.updateCount = 0;
+
+        HabitRecord duplicate = recordService.createRecord(habit, date, true);
+
+        assertThat(created).isNotNull();
+        assertThat(created.getHabitId()).isEqualTo(7L);
+        assertThat(created.getDate()).isEqualTo(date);
+        assertThat(duplicate).isNull();
+    }
+
+    @Test
+    @DisplayName("Tell a check-in record that could not be saved from one that already exists")
+    void testInsertIfAbsentOnError() {
+        long epochDay = date.toEpochDay();
+
+        NoopDriver.failure = foreignKeyViolation();
+        long unallocated = HabitRecordRepository.insertIfAbsent(7L, epochDay, true);
+        NoopDriver.failure = null;
+        long saved = HabitRecordRepository.insertIfAbsent(7L, epochDay, true);
+        NoopDriver.failure = foreignKeyViolation();
+        long unsaved = HabitRecordRepository.insertIfAbsent(7L, epochDay, true);
+        NoopDriver.failure = null;
+        NoopDriver.updateCount = 0;
+        long duplicate = HabitRecordRepository.insertIfAbsent(7L, epochDay, true);
+
+        assertThat(unallocated).isEqualTo(HabitRecordRepository.NOT_SAVED);
+        assertThat(saved).isPositive();
+        assertThat(unsaved).isEqualTo(HabitRecordRepository.NOT_SAVED);
+        assertThat(duplicate).isEqualTo(HabitRecordRepository.ALREADY_RECORDED);
+    }
+
+    @Test
+    @DisplayName("Do not report a check-in that could not be saved to the listeners")
+    void testCreateRecordOnError() {
+        HabitRecordService.addListener(listener);
+        recordService.createRecord(habit, date, true);
+        NoopDriver.failure = foreignKeyViolation();
+
+        HabitRecord unsaved = recordService.createRecord(habit, date, true);
+
+        assertThat(unsaved).isNull();
+        assertThat(savedRecords).hasSize(1);
+    }
+
+    private static SQLException foreignKeyViolation() {
+        return new SQLException("insert or update on table \"records\" violates foreign key constraint", "23503");
+    }
+
+    /**
+     * Returns the bytes the current thread allocates on average in a call, once the call has been compiled.
+     */
+    private static long bytesPerCall(Runnable call) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED_CALLS;
+    }
+}
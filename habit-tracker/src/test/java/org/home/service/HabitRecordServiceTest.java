@@ -6,6 +6,7 @@ import org.home.model.HabitRecord;
 import org.home.model.User;
 import org.home.repository.HabitRecordRepository;
 import org.home.repository.HabitRepository;
+import org.home.repository.RecordSeries;
 import org.home.repository.UserRepository;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -68,11 +69,25 @@ public class HabitRecordServiceTest {
         HabitRecord createdRecord = recordService.createRecord(habit, date, completed);
 
         assertThat(createdRecord).isNotNull();
+        assertThat(createdRecord.getId()).isNotNull();
         assertThat(createdRecord.getDate()).isEqualTo(date);
         assertThat(createdRecord.isCompleted()).isEqualTo(completed);
         assertThat(recordService.getAllRecords(habit)).containsKey(date);
     }
 
+    @Test
+    @DisplayName("Create records with distinct ids")
+    void testCreateRecordsWithDistinctIds() {
+        HabitRecord first = recordService.createRecord(habit, LocalDate.of(2024, 10, 4), true);
+        HabitRecord second = recordService.createRecord(habit, LocalDate.of(2024, 10, 5), false);
+
+        assertThat(first.getId()).isNotNull();
+        assertThat(second.getId()).isNotNull();
+        assertThat(second.getId()).isNotEqualTo(first.getId());
+        assertThat(recordService.findByDateAndHabitId(habit, LocalDate.of(2024, 10, 5)).getId())
+                .isEqualTo(second.getId());
+    }
+
     @Test
     @DisplayName("Edit record")
     void testEditRecord() {
@@ -101,4 +116,29 @@ public class HabitRecordServiceTest {
         recordService.deleteRecord(habit, date);
         assertThat(recordService.getAllRecords(habit)).doesNotContainKey(date);
     }
+
+    @Test
+    @DisplayName("Get records in a date range")
+    void testGetRecordsInRange() {
+        recordService.createRecord(habit, LocalDate.of(2024, 11, 14), true);
+        recordService.createRecord(habit, LocalDate.of(2024, 11, 10), true);
+        recordService.createRecord(habit, LocalDate.of(2024, 11, 12), true);
+        recordService.createRecord(habit, LocalDate.of(2024, 11, 11), false);
+
+        RecordSeries window = recordService.getRecords(habit, LocalDate.of(2024, 11, 11),
+                LocalDate.of(2024, 11, 12), false);
+        assertThat(window.size()).isEqualTo(2);
+        assertThat(window.date(0)).isEqualTo(LocalDate.of(2024, 11, 11));
+        assertThat(window.isCompleted(0)).isFalse();
+        assertThat(window.record(1).getId())
+                .isEqualTo(recordService.findByDateAndHabitId(habit, LocalDate.of(2024, 11, 12)).getId());
+
+        RecordSeries completed = recordService.getRecords(habit, LocalDate.of(2024, 11, 10),
+                LocalDate.of(2024, 11, 14), true);
+        assertThat(completed.size()).isEqualTo(3);
+        assertThat(completed.getCompletedCount()).isEqualTo(3);
+        assertThat(completed.date(2)).isEqualTo(LocalDate.of(2024, 11, 14));
+        assertThat(completed.indexOf(LocalDate.of(2024, 11, 11))).isNegative();
+        assertThat(completed.countCompleted(LocalDate.of(2024, 11, 11), LocalDate.of(2024, 11, 14))).isEqualTo(2);
+    }
 }
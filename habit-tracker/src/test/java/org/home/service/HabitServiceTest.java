@@ -59,6 +59,7 @@ class HabitServiceTest {
 
         Habit createdHabit = habitService.createHabit(user, title, description, frequency);
 
+        assertThat(createdHabit.getId()).isNotNull();
         assertThat(createdHabit.getTitle()).isEqualTo(title);
         assertThat(createdHabit.getDescription()).isEqualTo(description);
         assertThat(createdHabit.getFrequency()).isEqualTo(frequency);
@@ -0,0 +1,147 @@
+package org.home.service;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver whose connections execute nothing, to measure what the application itself allocates around its
+ * statements. Every update changes {@link #updateCount} rows, and every query returns no rows except a sequence
+ * lookup, which reserves a block large enough never to run out. While {@link #failure} is set, every statement
+ * fails with it instead.
+ */
+public final class NoopDriver implements Driver {
+
+    /**
+     * The URL the driver accepts.
+     */
+    public static final String URL = "jdbc:noop:";
+
+    private static final NoopDriver INSTANCE = new NoopDriver();
+
+    /**
+     * The number of rows every update reports to have changed.
+     */
+    public static volatile int updateCount = 1;
+
+    /**
+     * The error every statement fails with, or {@code null} for statements that succeed.
+     */
+    public static volatile SQLException failure;
+
+    static {
+        try {
+            DriverManager.registerDriver(INSTANCE);
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private NoopDriver() {
+    }
+
+    /**
+     * Makes sure the driver is registered with the {@link DriverManager}.
+     */
+    public static void register() {
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(NoopDriver.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().startsWith("prepare")) {
+                        return statement(method.getReturnType(), (String) args[0]);
+                    }
+                    if (method.getName().equals("createStatement")) {
+                        return statement(method.getReturnType(), null);
+                    }
+                    if (method.getName().equals("getAutoCommit") || method.getName().equals("isValid")) {
+                        return true;
+                    }
+                    return defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object statement(Class<?> type, String sql) {
+        return Proxy.newProxyInstance(NoopDriver.class.getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    SQLException error = failure;
+                    if (error != null && method.getName().startsWith("execute")) {
+                        throw error;
+                    }
+                    return switch (method.getName()) {
+                        case "executeUpdate" -> updateCount;
+                        case "executeLargeUpdate" -> (long) updateCount;
+                        case "executeQuery" -> resultSet(sql != null ? sql : (String) args[0]);
+                        default -> defaultValue(method.getReturnType());
+                    };
+                });
+    }
+
+    private static ResultSet resultSet(String sql) {
+        boolean[] read = {!sql.contains("nextval")};
+        return (ResultSet) Proxy.newProxyInstance(NoopDriver.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "next" -> {
+                        boolean hasRow = !read[0];
+                        read[0] = true;
+                        yield hasRow;
+                    }
+                    case "getLong" -> (int) args[0] == 1 ? 1L : 1L << 32;
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith(URL);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return Logger.getGlobal();
+    }
+}
@@ -0,0 +1,123 @@
+package org.home.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("SingleFlight test")
+class SingleFlightTest {
+
+    @Test
+    @DisplayName("Concurrent calls for the same key share one computation")
+    void shouldCoalesceConcurrentCalls() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(10_000);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> flight.execute("report", () -> {
+                    runs.incrementAndGet();
+                    await(release);
+                    return 42;
+                })));
+            }
+            while (flight.getCoalescedCount() < 7) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (Future<Integer> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(42);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(flight.getExecutedCount()).isEqualTo(1);
+        assertThat(flight.getCoalescedCount()).isEqualTo(7);
+        assertThat(flight.getInFlightCount()).isZero();
+        assertThat(flight.execute("report", () -> 43)).isEqualTo(43);
+    }
+
+    @Test
+    @DisplayName("A call that waits too long computes the result itself")
+    void shouldStopWaitingAfterTimeout() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> leader = executor.submit(() -> flight.execute("report", () -> {
+                started.countDown();
+                await(release);
+                return 1;
+            }));
+            started.await();
+
+            assertThat(flight.execute("report", () -> 2)).isEqualTo(2);
+            assertThat(flight.execute("other", () -> 3)).isEqualTo(3);
+            release.countDown();
+            assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(flight.getTimedOutCount()).isEqualTo(1);
+        assertThat(flight.getCoalescedCount()).isEqualTo(1);
+        assertThat(flight.getExecutedCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("A failed computation fails its waiting calls and is not kept")
+    void shouldShareFailure() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> leader = executor.submit(() -> flight.execute("report", () -> {
+                await(release);
+                throw new IllegalStateException("database is down");
+            }));
+            while (flight.getInFlightCount() == 0) {
+                Thread.sleep(10);
+            }
+            executor.submit(() -> {
+                while (flight.getCoalescedCount() == 0) {
+                    Thread.onSpinWait();
+                }
+                release.countDown();
+            });
+
+            assertThatThrownBy(() -> flight.execute("report", () -> 2))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("database is down");
+            assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(flight.execute("report", () -> 3)).isEqualTo(3);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
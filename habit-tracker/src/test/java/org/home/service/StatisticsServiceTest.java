@@ -1,6 +1,7 @@
 package org.home.service;
 
 import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
 import org.home.model.Habit;
 import org.home.model.HabitRecord;
 import org.home.model.User;
@@ -68,10 +69,35 @@ public class StatisticsServiceTest {
     @Test
     @DisplayName("Get current streak")
     void testGetCurrentStreakTest() {
-        int streak = statisticsService.getCurrentStreak(user, habit.getTitle());
+        Habit daily = habitService.createHabit(user, "Stretch", "Ten minutes", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+        recordService.createRecord(daily, today.minusDays(2), true);
+        recordService.createRecord(daily, today.minusDays(1), true);
+
+        int streak = statisticsService.getCurrentStreak(user, daily.getTitle());
         assertThat(streak).isEqualTo(2);
     }
 
+    @Test
+    @DisplayName("Get no current streak after a missed period")
+    void testGetCurrentStreakAfterGapTest() {
+        int oldStreak = statisticsService.getCurrentStreak(user, habit.getTitle());
+
+        Habit daily = habitService.createHabit(user, "Plank", "One minute", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+        recordService.createRecord(daily, today.minusDays(4), true);
+        recordService.createRecord(daily, today.minusDays(3), true);
+        recordService.createRecord(daily, today.minusDays(2), true);
+        int brokenStreak = statisticsService.getCurrentStreak(user, daily.getTitle());
+
+        recordService.createRecord(daily, today, true);
+        int newStreak = statisticsService.getCurrentStreak(user, daily.getTitle());
+
+        assertThat(oldStreak).isZero();
+        assertThat(brokenStreak).isZero();
+        assertThat(newStreak).isEqualTo(1);
+    }
+
     @Test
     @DisplayName("Get success percentage")
     void testGetSuccessPercentageTest() {
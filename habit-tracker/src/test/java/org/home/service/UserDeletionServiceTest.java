@@ -0,0 +1,114 @@
+package org.home.service;
+
+import org.home.config.DBConnectionProvider;
+import org.home.model.Frequency;
+import org.home.model.Habit;
+import org.home.model.HabitRecord;
+import org.home.model.Role;
+import org.home.model.User;
+import org.home.repository.HabitRecordRepository;
+import org.home.repository.HabitRepository;
+import org.home.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("UserDeletionService test")
+class UserDeletionServiceTest {
+
+    private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
+            .withInitScript("test-schema.sql");
+
+    private UserDeletionService deletionService;
+
+    @BeforeAll
+    static void beforeAll() {
+        testDb.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        testDb.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DBConnectionProvider connectionProvider = new DBConnectionProvider(
+                testDb.getJdbcUrl(),
+                testDb.getUsername(),
+                testDb.getPassword()
+        );
+        UserRepository userRepository = new UserRepository(connectionProvider);
+        HabitRepository habitRepository = new HabitRepository(connectionProvider);
+        HabitRecordRepository recordRepository = new HabitRecordRepository(connectionProvider);
+        deletionService = new UserDeletionService(10, 4, 0);
+    }
+
+    @Test
+    @DisplayName("Delete a user with a short history at once, habits and records included")
+    void shouldDeleteShortHistoryAtOnce() {
+        User user = createUser("short@example.com");
+        Habit habit = createHabitWithRecords(user, 5);
+
+        CompletableFuture<Boolean> deletion = deletionService.delete(user);
+
+        assertThat(deletion.isDone()).isTrue();
+        assertThat(deletion.join()).isTrue();
+        assertThat(UserRepository.findByEmail("short@example.com")).isEmpty();
+        assertThat(HabitRepository.getAllUserHabits(user)).isEmpty();
+        assertThat(HabitRecordRepository.getAllHabitRecords(habit)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Block a user with a long history and delete it in chunks")
+    void shouldDeleteLongHistoryInBackground() {
+        User user = createUser("long@example.com");
+        Habit habit = createHabitWithRecords(user, 23);
+
+        CompletableFuture<Boolean> deletion = deletionService.delete(user);
+
+        assertThat(user.isBlocked()).isTrue();
+        assertThat(deletion.join()).isTrue();
+        assertThat(deletionService.isDeleting(user.getId())).isFalse();
+        assertThat(UserRepository.findByEmail("long@example.com")).isEmpty();
+        assertThat(HabitRecordRepository.getAllHabitRecords(habit)).isEmpty();
+        assertThat(HabitRecordRepository.countUserRecords(user.getId(), 100)).isZero();
+    }
+
+    @Test
+    @DisplayName("Delete a habit together with its records")
+    void shouldDeleteHabitWithRecords() {
+        User user = createUser("habit@example.com");
+        Habit habit = createHabitWithRecords(user, 3);
+
+        assertThat(HabitRepository.delete(habit)).isTrue();
+        assertThat(HabitRecordRepository.getAllHabitRecords(habit)).isEmpty();
+    }
+
+    private static User createUser(String email) {
+        User user = new User("Deleted User", email, "password", Role.USER);
+        UserRepository.save(user);
+        return user;
+    }
+
+    private static Habit createHabitWithRecords(User user, int days) {
+        Habit habit = new Habit("Read", "Read every day", Frequency.DAILY, user.getId());
+        HabitRepository.save(habit);
+        List<HabitRecord> records = new ArrayList<>();
+        for (int day = 0; day < days; day++) {
+            records.add(new HabitRecord(LocalDate.of(2024, 1, 1).plusDays(day), true, habit.getId()));
+        }
+        assertThat(HabitRecordRepository.saveAll(records)).isTrue();
+        return habit;
+    }
+}
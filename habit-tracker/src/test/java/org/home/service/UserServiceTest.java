@@ -3,6 +3,11 @@ package org.home.service;
 import org.home.config.DBConnectionProvider;
 import org.home.model.User;
 import org.home.repository.UserRepository;
+import org.home.security.LoginRateLimiter;
+import org.home.security.PasswordHasher;
+import org.home.tracing.InMemorySpanExporter;
+import org.home.tracing.Span;
+import org.home.tracing.Tracer;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,6 +15,8 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.PostgreSQLContainer;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @DisplayName("UserService test")
@@ -18,6 +25,8 @@ class UserServiceTest {
     private static PostgreSQLContainer<?> testDb = new PostgreSQLContainer<>("postgres")
         .withInitScript("test-schema.sql");
 
+    private static final PasswordHasher passwordHasher = new PasswordHasher(1000, 2, 16);
+
     private UserService userService;
 
     @BeforeAll
@@ -37,7 +46,7 @@ class UserServiceTest {
                 testDb.getUsername(),
                 testDb.getPassword()
         );
-        userService = new UserService();
+        userService = new UserService(passwordHasher, new LoginRateLimiter(1024, 10, 60, 5, 3, 60));
         UserRepository userRepository = new UserRepository(connectionProvider);
     }
 
@@ -49,7 +58,8 @@ class UserServiceTest {
         assertThat(user).isNotNull();
         assertThat(user.getName()).isEqualTo("Catharina Mane");
         assertThat(user.getEmail()).isEqualTo("kate@example.com");
-        assertThat(user.getPassword()).isEqualTo("password123");
+        assertThat(user.getPassword()).isNotEqualTo("password123");
+        assertThat(passwordHasher.verify("password123", user.getPassword())).isTrue();
         assertThat(userService.getAllUsers()).containsKey("kate@example.com");
     }
 
@@ -75,7 +85,62 @@ class UserServiceTest {
 
         assertThat(loggedInUser).isNotNull();
         assertThat(loggedInUser.getEmail()).isEqualTo("john@example.com");
-        assertThat(loggedInUser.getPassword()).isEqualTo("password123");
+        assertThat(passwordHasher.verify("password123", loggedInUser.getPassword())).isTrue();
+    }
+
+    @Test
+    @DisplayName("Rehash legacy plaintext password on login")
+    void shouldRehashLegacyPasswordOnLogin() {
+        User loggedInUser = userService.login("tu@example.com", "testuserpass123");
+
+        assertThat(loggedInUser).isNotNull();
+        assertThat(PasswordHasher.isHashed(loggedInUser.getPassword())).isTrue();
+        assertThat(userService.getAllUsers().get("tu@example.com").getPassword())
+                .isEqualTo(loggedInUser.getPassword());
+        assertThat(userService.login("tu@example.com", "testuserpass123")).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Rehash a password of an outdated cost on an asynchronous login")
+    void shouldRehashOutdatedPasswordOnAsyncLogin() {
+        new UserService(new PasswordHasher(500, 1, 4), new LoginRateLimiter(1024, 10, 60, 5, 3, 60))
+                .register("Old Hash", "oldhash@example.com", "password123");
+
+        User loggedInUser = userService.loginAsync("oldhash@example.com", "password123", null).join();
+
+        assertThat(loggedInUser).isNotNull();
+        assertThat(passwordHasher.needsRehash(loggedInUser.getPassword())).isFalse();
+        assertThat(userService.getAllUsers().get("oldhash@example.com").getPassword())
+                .isEqualTo(loggedInUser.getPassword());
+    }
+
+    @Test
+    @DisplayName("Write the password rehashed on an asynchronous login in the trace of the login")
+    void shouldTraceAsyncRehashInLoginTrace() {
+        new UserService(new PasswordHasher(500, 1, 4), new LoginRateLimiter(1024, 10, 60, 5, 3, 60))
+                .register("Traced Hash", "tracedhash@example.com", "password123");
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        Tracer tracer = new Tracer(exporter, 1, 1000, 1000, 60_000);
+        tracer.start();
+        try {
+            assertThat(userService.loginAsync("tracedhash@example.com", "password123", null).join()).isNotNull();
+        } finally {
+            tracer.stop();
+        }
+
+        List<Span> spans = exporter.drain();
+        Span login = findSpan(spans, "UserService.loginAsync");
+        Span rehash = findSpan(spans, "UserService.rehash");
+        assertThat(login.getParentSpanId()).isZero();
+        assertThat(rehash.getTraceId()).isEqualTo(login.getTraceId());
+        assertThat(rehash.getParentSpanId()).isEqualTo(login.getSpanId());
+        assertThat(spans.stream().map(Span::getTraceId).distinct().toList()).containsExactly(login.getTraceId());
+        assertThat(spans.stream().anyMatch(span -> span.getName().equals("db.execute")
+                && span.getParentSpanId() == rehash.getSpanId())).isTrue();
+    }
+
+    private static Span findSpan(List<Span> spans, String name) {
+        return spans.stream().filter(span -> span.getName().equals(name)).findFirst().orElseThrow();
     }
 
     @Test
@@ -87,6 +152,31 @@ class UserServiceTest {
         assertThat(loggedInUser).isNull();
     }
 
+    @Test
+    @DisplayName("Lock out email after repeated failed logins")
+    void shouldLockOutAfterRepeatedFailures() {
+        userService.register("Lock Out", "lockout@example.com", "password123");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(userService.login("lockout@example.com", "wrongpassword")).isNull();
+        }
+
+        assertThat(userService.login("lockout@example.com", "password123")).isNull();
+    }
+
+    @Test
+    @DisplayName("Reject logins from a source over its rate before checking credentials")
+    void shouldRateLimitLoginsFromSameSource() {
+        userService.register("Rate Limited", "ratelimited@example.com", "password123");
+
+        for (int i = 0; i < 5; i++) {
+            userService.login("unknown" + i + "@example.com", "password", "10.0.0.1");
+        }
+
+        assertThat(userService.login("ratelimited@example.com", "password123", "10.0.0.1")).isNull();
+        assertThat(userService.login("ratelimited@example.com", "password123", "10.0.0.2")).isNotNull();
+    }
+
     @Test
     @DisplayName("Edit user profile with valid data")
     void shouldEditProfileSuccessfully() {
@@ -97,7 +187,7 @@ class UserServiceTest {
 
         assertThat(user.getName()).isEqualTo("Johnny");
         assertThat(user.getEmail()).isEqualTo("johnny@example.com");
-        assertThat(user.getPassword()).isEqualTo("newpassword123");
+        assertThat(passwordHasher.verify("newpassword123", user.getPassword())).isTrue();
     }
 
     @Test
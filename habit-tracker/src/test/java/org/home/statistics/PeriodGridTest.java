@@ -0,0 +1,119 @@
+package org.home.statistics;
+
+import org.home.model.Schedule;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("PeriodGrid test")
+class PeriodGridTest {
+
+    @Test
+    @DisplayName("Daily schedule counts every day of the range")
+    void shouldCountDays() {
+        PeriodGrid grid = PeriodGrid.of(Schedule.daily(), date("2024-10-19"), date("2024-10-22"));
+
+        PeriodStatistics statistics = compute(grid, "2024-10-18", "2024-10-19", "2024-10-20", "2024-10-20");
+
+        assertThat(grid.getPeriodCount()).isEqualTo(4);
+        assertThat(statistics.getSuccessfulPeriods()).isEqualTo(2);
+        assertThat(statistics.getCompletedDays()).isEqualTo(2);
+        assertThat(statistics.getSuccessRate()).isEqualTo(50.0);
+        assertThat(statistics.getLatestStreak()).isEqualTo(2);
+        assertThat(statistics.getCurrentStreak()).isZero();
+    }
+
+    @Test
+    @DisplayName("Times-per-week schedule needs enough distinct days in a full week")
+    void shouldCountDistinctDaysPerWeek() {
+        PeriodGrid grid = PeriodGrid.of(Schedule.timesPerWeek(3), date("2024-10-09"), date("2024-10-22"));
+
+        PeriodStatistics statistics = compute(grid,
+                "2024-10-07", "2024-10-08", "2024-10-08", "2024-10-10",
+                "2024-10-14", "2024-10-15", "2024-10-15", "2024-10-15",
+                "2024-10-21", "2024-10-22", "2024-10-27");
+
+        assertThat(grid.getFirstDay()).isEqualTo(date("2024-10-07"));
+        assertThat(grid.getLastDay()).isEqualTo(date("2024-10-27"));
+        assertThat(statistics.getTotalPeriods()).isEqualTo(3);
+        assertThat(statistics.getSuccessfulPeriods()).isEqualTo(2);
+        assertThat(statistics.getLatestStreak()).isEqualTo(1);
+        assertThat(statistics.getLongestStreak()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Weekday schedule only counts the scheduled days")
+    void shouldCountScheduledWeekdays() {
+        PeriodGrid grid = PeriodGrid.of(Schedule.parse("WEEKDAYS MON,WED,FRI"),
+                date("2024-10-08"), date("2024-10-15"));
+
+        PeriodStatistics statistics = compute(grid, "2024-10-09", "2024-10-10", "2024-10-11", "2024-10-14");
+
+        assertThat(grid.getFirstDay()).isEqualTo(date("2024-10-09"));
+        assertThat(grid.getLastDay()).isEqualTo(date("2024-10-14"));
+        assertThat(statistics.getTotalPeriods()).isEqualTo(3);
+        assertThat(statistics.getSuccessfulPeriods()).isEqualTo(3);
+        assertThat(statistics.getCompletedDays()).isEqualTo(3);
+        assertThat(statistics.getLongestStreak()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Every-N-days schedule counts periods from its anchor")
+    void shouldCountPeriodsFromAnchor() {
+        PeriodGrid grid = PeriodGrid.of(Schedule.everyNDays(3, date("2024-10-01")),
+                date("2024-10-02"), date("2024-10-10"));
+
+        PeriodStatistics statistics = compute(grid, "2024-10-01", "2024-10-05", "2024-10-12", "2024-10-13");
+
+        assertThat(grid.getFirstDay()).isEqualTo(date("2024-10-01"));
+        assertThat(grid.getLastDay()).isEqualTo(date("2024-10-12"));
+        assertThat(statistics.getTotalPeriods()).isEqualTo(4);
+        assertThat(statistics.getSuccessfulPeriods()).isEqualTo(3);
+        assertThat(statistics.getLatestStreak()).isEqualTo(1);
+        assertThat(statistics.getCurrentStreak()).isEqualTo(1);
+        assertThat(statistics.getLongestStreak()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Range without periods has no statistics")
+    void shouldHandleEmptyRange() {
+        PeriodGrid reversed = PeriodGrid.of(Schedule.daily(), date("2024-10-22"), date("2024-10-19"));
+        PeriodGrid unscheduled = PeriodGrid.of(Schedule.parse("WEEKDAYS SAT,SUN"),
+                date("2024-10-14"), date("2024-10-18"));
+
+        assertThat(reversed.getPeriodCount()).isZero();
+        assertThat(reversed.getFirstDay()).isNull();
+        assertThat(unscheduled.getPeriodCount()).isZero();
+        assertThat(compute(unscheduled, "2024-10-15").getSuccessRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    @DisplayName("Schedules are written and read back")
+    void shouldParseSchedules() {
+        LocalDate today = date("2024-10-01");
+
+        assertThat(Schedule.parse("weekly")).isEqualTo(Schedule.timesPerWeek(1));
+        assertThat(Schedule.parse("TIMES_PER_WEEK 3").toString()).isEqualTo("TIMES_PER_WEEK 3");
+        assertThat(Schedule.parse("WEEKDAYS FRI,MON").toString()).isEqualTo("WEEKDAYS MON,FRI");
+        assertThat(Schedule.parse("EVERY_N_DAYS 3", today).toString()).isEqualTo("EVERY_N_DAYS 3 2024-10-01");
+        assertThat(Schedule.parse("EVERY_N_DAYS 1", today)).isEqualTo(Schedule.daily());
+        assertThatThrownBy(() -> Schedule.parse("TIMES_PER_WEEK 8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Schedule.parse("MONTHLY")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static PeriodStatistics compute(PeriodGrid grid, String... dates) {
+        long[] days = new long[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            days[i] = date(dates[i]).toEpochDay();
+        }
+        return grid.compute(days, days.length);
+    }
+
+    private static LocalDate date(String text) {
+        return LocalDate.parse(text);
+    }
+}
@@ -0,0 +1,97 @@
+package org.home.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Tracer test")
+class TracerTest {
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter();
+    private Tracer tracer;
+
+    @AfterEach
+    void tearDown() {
+        tracer.stop();
+    }
+
+    @Test
+    @DisplayName("Nested spans of a sampled trace are exported with their parents")
+    void shouldExportNestedSpans() {
+        tracer = new Tracer(exporter, 1, 100, 100, 60_000);
+        tracer.start();
+
+        Tracer.trace("StatisticsService.generateProgressReport", () -> {
+            try (Span query = Tracer.startSpan("db.execute")) {
+                query.setAttribute("db.statement", "SELECT 1");
+            }
+            return null;
+        });
+        assertThat(Tracer.current()).isNull();
+        assertThat(tracer.flush()).isEqualTo(2);
+
+        List<Span> spans = exporter.drain();
+        Span query = spans.get(0);
+        Span report = spans.get(1);
+        assertThat(report.getName()).isEqualTo("StatisticsService.generateProgressReport");
+        assertThat(report.getParentSpanId()).isZero();
+        assertThat(query.getTraceId()).isEqualTo(report.getTraceId());
+        assertThat(query.getParentSpanId()).isEqualTo(report.getSpanId());
+        assertThat(query.getAttributes()).containsEntry("db.statement", "SELECT 1");
+        assertThat(query.getDurationNanos()).isLessThanOrEqualTo(report.getDurationNanos());
+    }
+
+    @Test
+    @DisplayName("A failed operation marks its span and a trace continues on another thread")
+    void shouldRecordErrorsAndContinueOnAnotherThread() throws Exception {
+        tracer = new Tracer(exporter, 1, 100, 100, 60_000);
+        tracer.start();
+
+        try (Span root = Tracer.startSpan("HabitService.fetchAllHabits")) {
+            Span parent = Tracer.current();
+            CompletableFuture.runAsync(() -> {
+                try (Span batch = Tracer.startSpan("batch.load", parent)) {
+                    batch.setAttribute("batch.size", 3);
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> Tracer.trace("db.execute", () -> {
+                throw new IllegalStateException("boom");
+            })).isInstanceOf(IllegalStateException.class);
+            assertThat(Tracer.current()).isSameAs(root);
+        }
+        tracer.flush();
+
+        List<Span> spans = exporter.drain();
+        assertThat(spans).hasSize(3);
+        Span root = spans.get(2);
+        assertThat(spans.get(0).getParentSpanId()).isEqualTo(root.getSpanId());
+        assertThat(spans.get(0).getTraceId()).isEqualTo(root.getTraceId());
+        assertThat(spans.get(1).getError()).isEqualTo("IllegalStateException: boom");
+        assertThat(root.getError()).isNull();
+    }
+
+    @Test
+    @DisplayName("Traces that are not sampled record nothing")
+    void shouldNotRecordUnsampledTraces() {
+        tracer = new Tracer(exporter, 0, 100, 100, 60_000);
+        tracer.start();
+
+        for (int i = 0; i < 100; i++) {
+            Tracer.trace("HabitRecordService.createRecord", () -> {
+                try (Span query = Tracer.startSpan("db.execute")) {
+                    assertThat(query.isSampled()).isFalse();
+                }
+                return null;
+            });
+        }
+        assertThat(Tracer.current()).isNull();
+        assertThat(tracer.flush()).isZero();
+        assertThat(tracer.getRecordedCount()).isZero();
+    }
+}
@@ -2,8 +2,10 @@ CREATE SCHEMA ylab_schema;
 
 CREATE TYPE role AS ENUM ('USER', 'ADMIN');
 
+CREATE SEQUENCE ylab_schema.user_id_seq START 2 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS ylab_schema.users (
-	id bigint GENERATED ALWAYS AS IDENTITY,
+	id bigint DEFAULT nextval('ylab_schema.user_id_seq') NOT NULL,
 	email varchar(255) NOT NULL,
 	name varchar(255) NOT NULL,
 	password varchar(255) NOT NULL,
@@ -13,33 +15,62 @@ CREATE TABLE IF NOT EXISTS ylab_schema.users (
 	CONSTRAINT users_pkey PRIMARY KEY (id)
 );
 
-INSERT INTO ylab_schema.users (name, email, password, role) VALUES
-('Test User', 'tu@example.com', 'testuserpass123', 'USER');
+INSERT INTO ylab_schema.users (id, name, email, password, role) VALUES
+(1, 'Test User', 'tu@example.com', 'testuserpass123', 'USER');
 
 CREATE TYPE frequency AS ENUM ('DAILY', 'WEEKLY');
 
+CREATE SEQUENCE ylab_schema.habit_id_seq START 2 INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS ylab_schema.habits (
-	id bigint GENERATED ALWAYS AS IDENTITY,
+	id bigint DEFAULT nextval('ylab_schema.habit_id_seq') NOT NULL,
 	title varchar(255) NOT NULL,
 	description varchar(255) NOT NULL,
 	frequency varchar(255) NOT NULL,
 	user_id bigint NOT NULL,
+	schedule varchar(64),
 	CONSTRAINT habits_pkey PRIMARY KEY (id),
-	CONSTRAINT fk_habit_user FOREIGN KEY (user_id) REFERENCES ylab_schema.users(id)
+	CONSTRAINT fk_habit_user FOREIGN KEY (user_id) REFERENCES ylab_schema.users(id) ON DELETE CASCADE
 );
 
-INSERT INTO ylab_schema.habits (title, description, frequency, user_id) VALUES
-('Go to shower', 'Go to shower every day', 'DAILY', 1);
+INSERT INTO ylab_schema.habits (id, title, description, frequency, user_id) VALUES
+(1, 'Go to shower', 'Go to shower every day', 'DAILY', 1);
+
+CREATE INDEX habits_user_id_idx ON ylab_schema.habits (user_id);
+
+CREATE SEQUENCE ylab_schema.record_id_seq START 3 INCREMENT BY 50;
 
 CREATE TABLE IF NOT EXISTS ylab_schema.records (
-	id bigint GENERATED ALWAYS AS IDENTITY,
+	id bigint DEFAULT nextval('ylab_schema.record_id_seq') NOT NULL,
 	date timestamp NOT NULL,
 	completed bool NOT NULL,
 	habit_id bigint NOT NULL,
 	CONSTRAINT records_pkey PRIMARY KEY (id),
-	CONSTRAINT fk_record_habit FOREIGN KEY (habit_id) REFERENCES ylab_schema.habits(id)
+	CONSTRAINT fk_record_habit FOREIGN KEY (habit_id) REFERENCES ylab_schema.habits(id) ON DELETE CASCADE
 );
 
-INSERT INTO ylab_schema.records (date, completed, habit_id) VALUES
-('2024-10-19 00:00:00.000', true, 1),
-('2024-10-20 00:00:00.000', true, 1);
+INSERT INTO ylab_schema.records (id, date, completed, habit_id) VALUES
+(1, '2024-10-19 00:00:00.000', true, 1),
+(2, '2024-10-20 00:00:00.000', true, 1);
+
+CREATE UNIQUE INDEX records_habit_id_date_key ON ylab_schema.records (habit_id, date);
+
+CREATE TABLE IF NOT EXISTS ylab_schema.outbox (
+	id bigserial NOT NULL,
+	txid xid8 DEFAULT pg_current_xact_id() NOT NULL,
+	user_id bigint NOT NULL,
+	event_type varchar(32) NOT NULL,
+	aggregate_id bigint NOT NULL,
+	payload text NOT NULL,
+	created_at timestamptz DEFAULT now() NOT NULL,
+	CONSTRAINT outbox_pkey PRIMARY KEY (id)
+);
+
+CREATE INDEX outbox_position_idx ON ylab_schema.outbox (txid, id);
+
+CREATE TABLE IF NOT EXISTS ylab_schema.outbox_offsets (
+	consumer varchar(255) NOT NULL,
+	last_txid bigint NOT NULL,
+	last_id bigint NOT NULL,
+	CONSTRAINT outbox_offsets_pkey PRIMARY KEY (consumer)
+);